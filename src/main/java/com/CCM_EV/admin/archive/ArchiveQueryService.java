@@ -0,0 +1,306 @@
+package com.CCM_EV.admin.archive;
+
+import com.CCM_EV.admin.partition.PartitionManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Grouped sums over a fact table that span both live partitions and archived files.
+ *
+ * The live part is a plain GROUP BY on the table; archived partitions overlapping the range are
+ * scanned file by file, inflating only the group, sum and partition key columns, and folded into
+ * the same groups. Partitions detached but not archived yet are aggregated from their detached
+ * tables, read after the live table so a partition detached meanwhile is still found. Archived
+ * partitions were dropped from the table, so no row is counted twice. A partition found in none
+ * of these is listed as missing and the result is marked incomplete.
+ * The pseudo column "day" groups by the UTC day of the partition key.
+ */
+@Service
+@RequiredArgsConstructor
+public class ArchiveQueryService {
+
+    public static final String DAY = "day";
+
+    private static final Set<String> NUMERIC_TYPES =
+            Set.of("smallint", "integer", "bigint", "numeric", "real", "double precision");
+
+    private final JdbcTemplate jdbc;
+    private final ArchiveService archiveService;
+    private final PartitionManager partitionManager;
+
+    public Map<String, Object> aggregate(String table, LocalDate from, LocalDate to,
+                                         List<String> groupBy, List<String> sums) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        Map<String, String> columns = columnsOf(table);
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Unknown table: " + table);
+        }
+        for (String column : groupBy) {
+            if (!DAY.equals(column) && !columns.containsKey(column)) {
+                throw new IllegalArgumentException("Unknown column " + column + " of " + table);
+            }
+        }
+        for (String column : sums) {
+            if (!NUMERIC_TYPES.contains(columns.get(column))) {
+                throw new IllegalArgumentException("Unknown or non-numeric column " + column + " of " + table);
+            }
+        }
+        String key = partitionManager.partitionKey(table);
+
+        Map<List<Object>, Group> groups = new HashMap<>();
+        long liveRows = aggregateLive(table, key, from, to, groupBy, sums, groups);
+
+        long detachedRows = 0;
+        List<String> detached = new ArrayList<>();
+        List<Map<String, Object>> archivedFiles = new ArrayList<>();
+        List<Map<String, Object>> missing = new ArrayList<>();
+        for (Map<String, Object> partition : archiveService.getDetachedPartitions(table, from, to)) {
+            String name = (String) partition.get("partition_name");
+            try {
+                detachedRows += aggregateLive(name, key, from, to, groupBy, sums, groups);
+                detached.add(name);
+            } catch (BadSqlGrammarException e) {
+                // Archived and dropped since the manifest was read, or the table is gone
+                archiveService.getArchivedFile(name).ifPresentOrElse(archivedFiles::add, () -> missing.add(range(partition)));
+            }
+        }
+
+        long archivedRows = 0;
+        List<String> scanned = new ArrayList<>();
+        archivedFiles.addAll(0, archiveService.getArchivedFiles(table, from, to));
+        for (Map<String, Object> archived : archivedFiles) {
+            String name = (String) archived.get("partition_name");
+            if (scanned.contains(name)) {
+                continue;
+            }
+            archivedRows += aggregateFile(Paths.get((String) archived.get("file_path")), key, from, to, groupBy, sums, groups);
+            scanned.add(name);
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>(groups.size());
+        groups.forEach((values, group) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < groupBy.size(); i++) {
+                row.put(groupBy.get(i), values.get(i));
+            }
+            row.put("count", group.count);
+            for (int i = 0; i < sums.size(); i++) {
+                row.put(sums.get(i), group.sums[i]);
+            }
+            rows.add(row);
+        });
+        rows.sort((a, b) -> compareGroups(a, b, groupBy));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("table", table);
+        result.put("from", from);
+        result.put("to", to);
+        result.put("groupBy", groupBy);
+        result.put("rows", rows);
+        result.put("liveRows", liveRows);
+        result.put("detachedRows", detachedRows);
+        result.put("archivedRows", archivedRows);
+        result.put("detachedPartitions", detached);
+        result.put("archivedPartitions", scanned);
+        result.put("missingPartitions", missing);
+        result.put("complete", missing.isEmpty());
+        return result;
+    }
+
+    private static Map<String, Object> range(Map<String, Object> partition) {
+        Map<String, Object> range = new LinkedHashMap<>();
+        range.put("partition", partition.get("partition_name"));
+        range.put("from", partition.get("range_from"));
+        range.put("to", partition.get("range_to"));
+        return range;
+    }
+
+    private long aggregateLive(String table, String key, LocalDate from, LocalDate to,
+                               List<String> groupBy, List<String> sums, Map<List<Object>, Group> groups) {
+        List<String> select = new ArrayList<>();
+        for (String column : groupBy) {
+            select.add(DAY.equals(column) ? "(" + key + " AT TIME ZONE 'UTC')::date" : column);
+        }
+        int groupColumns = select.size();
+        select.add("COUNT(*)");
+        for (String column : sums) {
+            select.add("SUM(" + column + ")");
+        }
+        String groupClause = groupColumns == 0 ? "" : " GROUP BY " + String.join(", ", select.subList(0, groupColumns));
+
+        long[] rows = new long[1];
+        jdbc.query("SELECT " + String.join(", ", select) + " FROM " + table +
+                   " WHERE " + key + " >= ? AND " + key + " < ?" + groupClause,
+            rs -> {
+                List<Object> values = new ArrayList<>(groupColumns);
+                for (int i = 1; i <= groupColumns; i++) {
+                    values.add(normalize(rs.getObject(i)));
+                }
+                long count = rs.getLong(groupColumns + 1);
+                Group group = groups.computeIfAbsent(values, v -> new Group(sums.size()));
+                group.count += count;
+                for (int i = 0; i < sums.size(); i++) {
+                    group.add(i, rs.getObject(groupColumns + 2 + i));
+                }
+                rows[0] += count;
+            }, from, to);
+        return rows[0];
+    }
+
+    private long aggregateFile(Path file, String key, LocalDate from, LocalDate to,
+                               List<String> groupBy, List<String> sums, Map<List<Object>, Group> groups) {
+        try (ColumnarFileReader reader = new ColumnarFileReader(file)) {
+            int keyIndex = indexOf(reader, key);
+            int[] groupIndexes = new int[groupBy.size()];
+            for (int i = 0; i < groupBy.size(); i++) {
+                groupIndexes[i] = DAY.equals(groupBy.get(i)) ? keyIndex : indexOf(reader, groupBy.get(i));
+            }
+            int[] sumIndexes = new int[sums.size()];
+            for (int i = 0; i < sums.size(); i++) {
+                sumIndexes[i] = indexOf(reader, sums.get(i));
+            }
+            int[] projection = Arrays.stream(concat(keyIndex, groupIndexes, sumIndexes)).distinct().toArray();
+
+            long[] rows = new long[1];
+            reader.scan(projection, row -> {
+                LocalDate day = dayOf(row[keyIndex]);
+                if (day == null || day.isBefore(from) || !day.isBefore(to)) {
+                    return;
+                }
+                List<Object> values = new ArrayList<>(groupIndexes.length);
+                for (int i = 0; i < groupIndexes.length; i++) {
+                    values.add(DAY.equals(groupBy.get(i)) ? day : normalize(row[groupIndexes[i]]));
+                }
+                Group group = groups.computeIfAbsent(values, v -> new Group(sums.size()));
+                group.count++;
+                for (int i = 0; i < sumIndexes.length; i++) {
+                    group.add(i, row[sumIndexes[i]]);
+                }
+                rows[0]++;
+            });
+            return rows[0];
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archive file " + file, e);
+        }
+    }
+
+    /**
+     * Column names of the table with their types
+     */
+    private Map<String, String> columnsOf(String table) {
+        Map<String, String> columns = new HashMap<>();
+        jdbc.query("""
+            SELECT column_name, data_type FROM information_schema.columns
+            WHERE table_schema = current_schema() AND table_name = ?
+            """, rs -> {
+                columns.put(rs.getString("column_name"), rs.getString("data_type"));
+            }, table);
+        return columns;
+    }
+
+    private static int indexOf(ColumnarFileReader reader, String column) throws IOException {
+        int index = reader.indexOf(column);
+        if (index < 0) {
+            throw new IOException("Archive file has no column " + column);
+        }
+        return index;
+    }
+
+    private static int[] concat(int first, int[] a, int[] b) {
+        int[] all = new int[1 + a.length + b.length];
+        all[0] = first;
+        System.arraycopy(a, 0, all, 1, a.length);
+        System.arraycopy(b, 0, all, 1 + a.length, b.length);
+        return all;
+    }
+
+    /**
+     * Day of a partition key value; range bounds of the partitions are UTC days
+     */
+    private static LocalDate dayOf(Object value) {
+        if (value instanceof OffsetDateTime timestamp) {
+            return timestamp.withOffsetSameInstant(ZoneOffset.UTC).toLocalDate();
+        }
+        return value instanceof LocalDate date ? date : null;
+    }
+
+    /**
+     * Same representation for a value read from JDBC and from a file, so both land in one group
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Date date) {
+            return date.toLocalDate();
+        }
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toInstant().atOffset(ZoneOffset.UTC);
+        }
+        if (value instanceof Integer || value instanceof Short) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.stripTrailingZeros();
+        }
+        return value;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareGroups(Map<String, Object> a, Map<String, Object> b, List<String> groupBy) {
+        for (String column : groupBy) {
+            Object x = a.get(column);
+            Object y = b.get(column);
+            if (x == y) {
+                continue;
+            }
+            if (x == null || y == null) {
+                return x == null ? 1 : -1;
+            }
+            int result = x instanceof Comparable comparable && x.getClass() == y.getClass()
+                    ? comparable.compareTo(y) : String.valueOf(x).compareTo(String.valueOf(y));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    private static final class Group {
+        private long count;
+        private final BigDecimal[] sums;
+
+        private Group(int size) {
+            this.sums = new BigDecimal[size];
+        }
+
+        private void add(int index, Object value) {
+            if (value == null) {
+                return;
+            }
+            BigDecimal decimal = value instanceof BigDecimal d ? d
+                    : value instanceof Double || value instanceof Float ? BigDecimal.valueOf(((Number) value).doubleValue())
+                    : BigDecimal.valueOf(((Number) value).longValue());
+            sums[index] = sums[index] == null ? decimal : sums[index].add(decimal);
+        }
+    }
+}
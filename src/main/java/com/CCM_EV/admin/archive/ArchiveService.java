@@ -0,0 +1,274 @@
+package com.CCM_EV.admin.archive;
+
+import com.CCM_EV.admin.archive.ColumnarFile.Column;
+import com.CCM_EV.admin.cache.TableVersions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Moves partitions past retention out of the database into compressed columnar files.
+ *
+ * A partition is detached and recorded as DETACHED in archived_partitions in one transaction.
+ * Archiving then streams the detached table through a server-side cursor into a temporary file
+ * in the archive directory, forces it to disk and renames it into place. The file is then read
+ * back in full, and only if it holds as many rows as the table is the manifest row marked
+ * ARCHIVED and the table dropped, again in one transaction. A crash or a mismatch at any point
+ * leaves the table, and DETACHED rows are picked up again on the next run.
+ */
+@Slf4j
+@Service
+public class ArchiveService {
+
+    public static final String STATUS_DETACHED = "DETACHED";
+    public static final String STATUS_ARCHIVED = "ARCHIVED";
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate cursorJdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final TableVersions tableVersions;
+    private final Path directory;
+    private final int rowGroupSize;
+    private final long lockTimeoutMs;
+    private final boolean enabled;
+
+    public ArchiveService(JdbcTemplate jdbc,
+                          DataSource dataSource,
+                          TransactionTemplate transactionTemplate,
+                          TableVersions tableVersions,
+                          @Value("${app.archive.directory:./data/archive}") String directory,
+                          @Value("${app.archive.fetch-size:10000}") int fetchSize,
+                          @Value("${app.archive.row-group-size:65536}") int rowGroupSize,
+                          @Value("${app.partitions.lock-timeout-ms:5000}") long lockTimeoutMs,
+                          @Value("${app.archive.enabled:true}") boolean enabled) {
+        this.jdbc = jdbc;
+        // The PostgreSQL driver only fetches through a cursor inside a transaction with a fetch size set
+        this.cursorJdbc = new JdbcTemplate(dataSource);
+        this.cursorJdbc.setFetchSize(fetchSize);
+        this.transactionTemplate = transactionTemplate;
+        this.tableVersions = tableVersions;
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.rowGroupSize = rowGroupSize;
+        this.lockTimeoutMs = lockTimeoutMs;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Detach a partition and record it for archiving
+     */
+    public void detach(String table, String partition, LocalDate from, LocalDate to) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbc.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+            jdbc.execute("ALTER TABLE " + identifier(table) + " DETACH PARTITION " + identifier(partition));
+            jdbc.update("""
+                INSERT INTO archived_partitions (partition_name, table_name, range_from, range_to, status)
+                VALUES (?, ?, ?, ?, ?)
+                ON CONFLICT (partition_name) DO UPDATE
+                SET range_from = EXCLUDED.range_from, range_to = EXCLUDED.range_to,
+                    status = EXCLUDED.status, detached_at = now()
+                """, partition, table, from, to, STATUS_DETACHED);
+            tableVersions.bump(List.of(table));
+        });
+    }
+
+    /**
+     * Archive every detached partition not archived yet
+     * @return one line per archived partition
+     */
+    public synchronized List<String> archivePending() {
+        List<String> actions = new ArrayList<>();
+        List<Map<String, Object>> pending = jdbc.queryForList(
+            "SELECT partition_name, table_name FROM archived_partitions WHERE status = ? ORDER BY range_from",
+            STATUS_DETACHED);
+        for (Map<String, Object> row : pending) {
+            String partition = (String) row.get("partition_name");
+            try {
+                actions.add(archive((String) row.get("table_name"), partition));
+            } catch (Exception e) {
+                // Left DETACHED, retried on the next run
+                log.error("Failed to archive partition {}", partition, e);
+                actions.add("failed " + partition + ": " + e.getMessage());
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * Archived partitions of a table whose range overlaps [from, to)
+     */
+    public List<Map<String, Object>> getArchivedFiles(String table, LocalDate from, LocalDate to) {
+        return getPartitions(table, STATUS_ARCHIVED, from, to);
+    }
+
+    /**
+     * Partitions of a table detached but not archived yet whose range overlaps [from, to),
+     * their rows are only in the detached tables
+     */
+    public List<Map<String, Object>> getDetachedPartitions(String table, LocalDate from, LocalDate to) {
+        return getPartitions(table, STATUS_DETACHED, from, to);
+    }
+
+    /**
+     * The archived partition, empty when it is not archived
+     */
+    public Optional<Map<String, Object>> getArchivedFile(String partition) {
+        return jdbc.queryForList("""
+            SELECT partition_name, range_from, range_to, file_path, row_count
+            FROM archived_partitions
+            WHERE partition_name = ? AND status = ?
+            """, partition, STATUS_ARCHIVED).stream().findFirst();
+    }
+
+    public List<Map<String, Object>> getManifest() {
+        return jdbc.queryForList("""
+            SELECT partition_name, table_name, range_from, range_to, status, file_path,
+                   row_count, file_bytes, detached_at, archived_at
+            FROM archived_partitions
+            ORDER BY table_name, range_from
+            """);
+    }
+
+    public Map<String, Object> getState() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("directory", directory.toString());
+        result.put("partitions", getManifest());
+        return result;
+    }
+
+    private List<Map<String, Object>> getPartitions(String table, String status, LocalDate from, LocalDate to) {
+        return jdbc.queryForList("""
+            SELECT partition_name, range_from, range_to, file_path, row_count
+            FROM archived_partitions
+            WHERE table_name = ? AND status = ? AND range_from < ? AND range_to > ?
+            ORDER BY range_from
+            """, table, status, to, from);
+    }
+
+    private String archive(String table, String partition) throws IOException {
+        String name = identifier(partition);
+        Path tableDirectory = directory.resolve(identifier(table));
+        Files.createDirectories(tableDirectory);
+        Path target = tableDirectory.resolve(name + ColumnarFile.EXTENSION);
+        Path temporary = tableDirectory.resolve(name + ColumnarFile.EXTENSION + ".tmp");
+        Files.deleteIfExists(temporary);
+
+        long started = System.currentTimeMillis();
+        long rows = write(name, temporary);
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        long bytes = Files.size(target);
+        long readBack = readBack(target);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbc.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+            Long tableRows = jdbc.queryForObject("SELECT count(*) FROM " + name, Long.class);
+            if (tableRows == null || tableRows != readBack || readBack != rows) {
+                throw new IllegalStateException("Archive file " + target + " holds " + readBack + " of "
+                        + tableRows + " rows, keeping the table");
+            }
+            jdbc.update("""
+                UPDATE archived_partitions
+                SET status = ?, file_path = ?, row_count = ?, file_bytes = ?, archived_at = now()
+                WHERE partition_name = ?
+                """, STATUS_ARCHIVED, target.toString(), rows, bytes, partition);
+            jdbc.execute("DROP TABLE IF EXISTS " + name);
+        });
+
+        log.info("Archived partition {} of {}: {} rows, {} bytes to {} in {} ms",
+                name, table, rows, bytes, target, System.currentTimeMillis() - started);
+        return "archived " + name + " (" + rows + " rows)";
+    }
+
+    /**
+     * Stream the detached table into the file
+     * @return rows written
+     */
+    private long write(String partition, Path file) {
+        return transactionTemplate.execute(status -> {
+            ColumnarFileWriter[] writer = new ColumnarFileWriter[1];
+            try {
+                cursorJdbc.query("SELECT * FROM " + partition, rs -> {
+                    try {
+                        if (writer[0] == null) {
+                            writer[0] = new ColumnarFileWriter(file, Column.of(rs.getMetaData()), rowGroupSize);
+                        }
+                        writer[0].write(rs);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (writer[0] == null) {
+                    // Empty partition, still archived so the manifest covers its range
+                    writer[0] = new ColumnarFileWriter(file, columnsOf(partition), rowGroupSize);
+                }
+                writer[0].close();
+                return writer[0].getRowCount();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                closeQuietly(writer[0]);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Decode every value of the file
+     * @return rows read
+     */
+    private static long readBack(Path file) throws IOException {
+        try (ColumnarFileReader reader = new ColumnarFileReader(file)) {
+            long[] rows = new long[1];
+            reader.scan(IntStream.range(0, reader.getColumns().size()).toArray(), row -> rows[0]++);
+            return rows[0];
+        }
+    }
+
+    private static void closeQuietly(ColumnarFileWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.debug("Failed to close partial archive file: {}", e.getMessage());
+        }
+    }
+
+    private List<Column> columnsOf(String table) {
+        ResultSetExtractor<List<Column>> extractor = rs -> Column.of(rs.getMetaData());
+        return jdbc.query("SELECT * FROM " + table + " LIMIT 0", extractor);
+    }
+
+    private static String identifier(String name) {
+        if (name == null || !IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("Unexpected table name: " + name);
+        }
+        return name;
+    }
+}
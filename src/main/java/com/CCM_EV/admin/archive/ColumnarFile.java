@@ -0,0 +1,142 @@
+package com.CCM_EV.admin.archive;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Layout of archive files: a compressed columnar format for archived partitions.
+ *
+ * Header: magic, column count, then name and type of every column.
+ * Row groups: row count, then per column the length and deflated bytes of its values, so a
+ * reader inflates only the columns it needs. A row count of 0 ends the file.
+ * Values: a null flag byte, then the value; strings and decimals as length-prefixed UTF-8,
+ * timestamps as epoch microseconds, dates as epoch days.
+ */
+final class ColumnarFile {
+
+    static final byte[] MAGIC = "CCMCOL1".getBytes(StandardCharsets.US_ASCII);
+    static final String EXTENSION = ".ccol";
+
+    private ColumnarFile() {
+    }
+
+    enum Type {
+        LONG, DOUBLE, DECIMAL, BOOLEAN, TIMESTAMP, DATE, STRING;
+
+        static Type of(String pgType) {
+            return switch (pgType) {
+                case "int2", "int4", "int8", "serial", "bigserial" -> LONG;
+                case "float4", "float8" -> DOUBLE;
+                case "numeric" -> DECIMAL;
+                case "bool" -> BOOLEAN;
+                case "timestamp", "timestamptz" -> TIMESTAMP;
+                case "date" -> DATE;
+                default -> STRING;
+            };
+        }
+
+        /**
+         * Append the value of a column of the current row
+         */
+        void write(ResultSet rs, int index, DataOutputStream out) throws SQLException, IOException {
+            Object value = switch (this) {
+                case LONG -> rs.getLong(index);
+                case DOUBLE -> rs.getDouble(index);
+                case DECIMAL -> rs.getBigDecimal(index);
+                case BOOLEAN -> rs.getBoolean(index);
+                case TIMESTAMP -> rs.getTimestamp(index);
+                case DATE -> rs.getDate(index);
+                case STRING -> rs.getString(index);
+            };
+            if (value == null || rs.wasNull()) {
+                out.writeBoolean(false);
+                return;
+            }
+            out.writeBoolean(true);
+            switch (this) {
+                case LONG -> out.writeLong((Long) value);
+                case DOUBLE -> out.writeDouble((Double) value);
+                case BOOLEAN -> out.writeBoolean((Boolean) value);
+                case TIMESTAMP -> {
+                    Instant instant = ((Timestamp) value).toInstant();
+                    out.writeLong(instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1_000);
+                }
+                case DATE -> out.writeInt((int) ((Date) value).toLocalDate().toEpochDay());
+                case DECIMAL -> writeString(out, ((BigDecimal) value).toPlainString());
+                case STRING -> writeString(out, (String) value);
+            }
+        }
+
+        Object read(DataInputStream in) throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            return switch (this) {
+                case LONG -> in.readLong();
+                case DOUBLE -> in.readDouble();
+                case BOOLEAN -> in.readBoolean();
+                case TIMESTAMP -> {
+                    long micros = in.readLong();
+                    yield OffsetDateTime.ofInstant(
+                        Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1_000),
+                        ZoneOffset.UTC);
+                }
+                case DATE -> LocalDate.ofEpochDay(in.readInt());
+                case DECIMAL -> new BigDecimal(readString(in));
+                case STRING -> readString(in);
+            };
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    static final class Column {
+        private final String name;
+        private final Type type;
+
+        Column(String name, Type type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        Type getType() {
+            return type;
+        }
+
+        static List<Column> of(ResultSetMetaData meta) throws SQLException {
+            List<Column> columns = new ArrayList<>(meta.getColumnCount());
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                columns.add(new Column(meta.getColumnName(i), Type.of(meta.getColumnTypeName(i))));
+            }
+            return columns;
+        }
+    }
+}
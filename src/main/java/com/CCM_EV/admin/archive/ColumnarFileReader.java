@@ -0,0 +1,95 @@
+package com.CCM_EV.admin.archive;
+
+import com.CCM_EV.admin.archive.ColumnarFile.Column;
+import com.CCM_EV.admin.archive.ColumnarFile.Type;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Scans a {@link ColumnarFile}, inflating only the projected columns of every row group
+ */
+final class ColumnarFileReader implements Closeable {
+
+    private final DataInputStream in;
+    private final List<Column> columns;
+
+    ColumnarFileReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        byte[] magic = new byte[ColumnarFile.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, ColumnarFile.MAGIC)) {
+            in.close();
+            throw new IOException("Not an archive file: " + file);
+        }
+        int count = in.readInt();
+        List<Column> header = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            header.add(new Column(in.readUTF(), Type.valueOf(in.readUTF())));
+        }
+        this.columns = Collections.unmodifiableList(header);
+    }
+
+    List<Column> getColumns() {
+        return columns;
+    }
+
+    int indexOf(String name) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Pass every row to the consumer. The array has a slot per column of the file, but only
+     * the projected indexes are filled; it is reused between rows.
+     */
+    void scan(int[] projection, Consumer<Object[]> consumer) throws IOException {
+        boolean[] wanted = new boolean[columns.size()];
+        for (int index : projection) {
+            wanted[index] = true;
+        }
+        Object[] row = new Object[columns.size()];
+        DataInputStream[] values = new DataInputStream[columns.size()];
+
+        int rows;
+        while ((rows = in.readInt()) > 0) {
+            for (int i = 0; i < columns.size(); i++) {
+                int length = in.readInt();
+                if (wanted[i]) {
+                    byte[] compressed = new byte[length];
+                    in.readFully(compressed);
+                    values[i] = new DataInputStream(new BufferedInputStream(
+                            new InflaterInputStream(new ByteArrayInputStream(compressed))));
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+            for (int r = 0; r < rows; r++) {
+                for (int index : projection) {
+                    row[index] = columns.get(index).getType().read(values[index]);
+                }
+                consumer.accept(row);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
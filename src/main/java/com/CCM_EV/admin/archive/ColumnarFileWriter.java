@@ -0,0 +1,109 @@
+package com.CCM_EV.admin.archive;
+
+import com.CCM_EV.admin.archive.ColumnarFile.Column;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes rows of a result set into a {@link ColumnarFile}, one row group at a time,
+ * so memory is bounded by the row group size rather than the partition size
+ */
+final class ColumnarFileWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final List<Column> columns;
+    private final int rowGroupSize;
+    private final List<ByteArrayOutputStream> buffers = new ArrayList<>();
+    private final List<DataOutputStream> columnOuts = new ArrayList<>();
+
+    private int groupRows;
+    private long rowCount;
+
+    ColumnarFileWriter(Path file, List<Column> columns, int rowGroupSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        this.columns = columns;
+        this.rowGroupSize = rowGroupSize;
+
+        out.write(ColumnarFile.MAGIC);
+        out.writeInt(columns.size());
+        for (Column column : columns) {
+            out.writeUTF(column.getName());
+            out.writeUTF(column.getType().name());
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            buffers.add(buffer);
+            columnOuts.add(new DataOutputStream(buffer));
+        }
+    }
+
+    /**
+     * Append the current row of the result set
+     */
+    void write(ResultSet rs) throws SQLException, IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            columns.get(i).getType().write(rs, i + 1, columnOuts.get(i));
+        }
+        rowCount++;
+        if (++groupRows >= rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+
+    private void flushRowGroup() throws IOException {
+        if (groupRows == 0) {
+            return;
+        }
+        out.writeInt(groupRows);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            for (int i = 0; i < columns.size(); i++) {
+                columnOuts.get(i).flush();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (DeflaterOutputStream deflating = new DeflaterOutputStream(compressed, deflater)) {
+                    buffers.get(i).writeTo(deflating);
+                }
+                deflater.reset();
+                out.writeInt(compressed.size());
+                compressed.writeTo(out);
+                buffers.get(i).reset();
+            }
+        } finally {
+            deflater.end();
+        }
+        groupRows = 0;
+    }
+
+    /**
+     * Write the last row group and the end marker, and force the file to disk
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushRowGroup();
+            out.writeInt(0);
+            out.flush();
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+    }
+}
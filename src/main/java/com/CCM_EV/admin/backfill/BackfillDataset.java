@@ -0,0 +1,141 @@
+package com.CCM_EV.admin.backfill;
+
+import com.CCM_EV.admin.mq.consumer.FactRows;
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+import com.CCM_EV.admin.mq.dto.common.IssuanceEventDTO;
+import com.CCM_EV.admin.mq.dto.common.PaymentEventDTO;
+import com.CCM_EV.admin.mq.dto.common.TradeEventDTO;
+import com.CCM_EV.admin.mq.dto.common.UserEventDTO;
+import com.CCM_EV.admin.rollup.Rollup;
+import com.CCM_EV.admin.rollup.Rollups;
+import lombok.Getter;
+
+import java.util.function.Function;
+
+/**
+ * Event types the backfill can load, with their staging layout, merge target and rollup
+ */
+@Getter
+public enum BackfillDataset {
+
+    TRADE(
+        TradeEventDTO.class,
+        "fact_trade",
+        "executed_at",
+        "order_id, executed_at",
+        FactRows.TRADE_COLUMNS,
+        """
+            order_id text, listing_id text, buyer_id bigint, seller_id bigint, quantity numeric,
+            unit text, unit_price numeric, amount numeric, currency text, executed_at timestamptz,
+            region text, is_auction boolean, order_status text, status_changed_at timestamptz""",
+        "order_id IS NOT NULL AND buyer_id IS NOT NULL AND seller_id IS NOT NULL AND quantity IS NOT NULL "
+            + "AND unit_price IS NOT NULL AND amount IS NOT NULL",
+        FactRows.TRADE_UPSERT_ACTION,
+        Rollups.TRADE_DAILY,
+        event -> FactRows.tradeRow((TradeEventDTO) event)
+    ),
+
+    PAYMENT(
+        PaymentEventDTO.class,
+        "fact_payment",
+        "completed_at",
+        "payment_id, completed_at",
+        FactRows.PAYMENT_COLUMNS,
+        """
+            payment_id text, order_id text, payer_id text, payee_id text, amount numeric,
+            currency text, status text, payment_method text, completed_at timestamptz,
+            region text, status_changed_at timestamptz""",
+        "payment_id IS NOT NULL AND order_id IS NOT NULL AND amount IS NOT NULL AND status IS NOT NULL",
+        FactRows.PAYMENT_UPSERT_ACTION,
+        Rollups.PAYMENT_DAILY,
+        event -> FactRows.paymentRow((PaymentEventDTO) event)
+    ),
+
+    ISSUANCE(
+        IssuanceEventDTO.class,
+        "fact_issuance",
+        "issued_at",
+        "issuance_id, issued_at",
+        FactRows.ISSUANCE_COLUMNS,
+        """
+            issuance_id text, user_id bigint, vehicle_id text, quantity_tco2e numeric,
+            distance_km numeric, energy_kwh numeric, co2_avoided_kg numeric, issued_at timestamptz,
+            region text, request_id text, status text""",
+        "issuance_id IS NOT NULL AND user_id IS NOT NULL AND quantity_tco2e IS NOT NULL",
+        FactRows.ISSUANCE_UPSERT_ACTION,
+        Rollups.ISSUANCE_DAILY,
+        event -> FactRows.issuanceRow((IssuanceEventDTO) event)
+    ),
+
+    /**
+     * dim_users is not partitioned, its events are folded per user instead
+     */
+    USER(
+        UserEventDTO.class,
+        "dim_users",
+        null,
+        "user_id",
+        "user_id, action, username, email, role, region, enabled, organization_name, phone_number, occurred_at",
+        """
+            user_id bigint, action text, username text, email text, role text, region text,
+            enabled boolean, organization_name text, phone_number text, occurred_at timestamptz""",
+        null,
+        null,
+        null,
+        event -> BackfillDataset.userRow((UserEventDTO) event)
+    );
+
+    private final Class<? extends BaseEvent> eventClass;
+    private final String targetTable;
+    private final String partitionColumn;
+    private final String keyColumns;
+    private final String columns;
+    private final String stagingColumns;
+    private final String requiredColumns;
+    private final String upsertAction;
+    private final Rollup rollup;
+    private final Function<BaseEvent, Object[]> rowMapper;
+
+    BackfillDataset(Class<? extends BaseEvent> eventClass, String targetTable, String partitionColumn,
+                    String keyColumns, String columns, String stagingColumns, String requiredColumns,
+                    String upsertAction, Rollup rollup, Function<BaseEvent, Object[]> rowMapper) {
+        this.eventClass = eventClass;
+        this.targetTable = targetTable;
+        this.partitionColumn = partitionColumn;
+        this.keyColumns = keyColumns;
+        this.columns = columns;
+        this.stagingColumns = stagingColumns;
+        this.requiredColumns = requiredColumns;
+        this.upsertAction = upsertAction;
+        this.rollup = rollup;
+        this.rowMapper = rowMapper;
+    }
+
+    public Object[] toRow(BaseEvent event) {
+        return rowMapper.apply(event);
+    }
+
+    private static Object[] userRow(UserEventDTO event) {
+        Long userId = null;
+        try {
+            if (event.getUserId() != null && !event.getUserId().isEmpty()) {
+                userId = Long.parseLong(event.getUserId());
+            }
+        } catch (NumberFormatException e) {
+            // Rows without a usable id are skipped at merge time, like the consumer's failed CAST
+        }
+
+        return new Object[] {
+            userId,
+            event.getAction(),
+            event.getUsername(),
+            event.getEmail(),
+            event.getRole(),
+            event.getRegion(),
+            event.getEnabled(),
+            event.getOrganizationName(),
+            event.getPhoneNumber(),
+            event.getTimestamp()
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package com.CCM_EV.admin.backfill;
+
+import lombok.Getter;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one bulk load
+ */
+@Getter
+public class BackfillJob {
+
+    public enum Status { QUEUED, STAGING, MERGING, COMPLETED, FAILED }
+
+    private final String id;
+    private final BackfillDataset dataset;
+    private final List<String> files;
+    private final OffsetDateTime submittedAt = OffsetDateTime.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile OffsetDateTime finishedAt;
+    private volatile String error;
+
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong parseErrors = new AtomicLong();
+    private final AtomicLong rowsStaged = new AtomicLong();
+    private final AtomicLong rowsMerged = new AtomicLong();
+    private final AtomicInteger partitionsTotal = new AtomicInteger();
+    private final AtomicInteger partitionsDone = new AtomicInteger();
+
+    BackfillJob(String id, BackfillDataset dataset, List<String> files) {
+        this.id = id;
+        this.dataset = dataset;
+        this.files = files;
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+    }
+
+    void complete() {
+        this.status = Status.COMPLETED;
+        this.finishedAt = OffsetDateTime.now();
+    }
+
+    void fail(String error) {
+        this.status = Status.FAILED;
+        this.error = error;
+        this.finishedAt = OffsetDateTime.now();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jobId", id);
+        result.put("dataset", dataset);
+        result.put("files", files);
+        result.put("status", status);
+        result.put("linesRead", linesRead.get());
+        result.put("parseErrors", parseErrors.get());
+        result.put("rowsStaged", rowsStaged.get());
+        result.put("rowsMerged", rowsMerged.get());
+        result.put("partitionsTotal", partitionsTotal.get());
+        result.put("partitionsDone", partitionsDone.get());
+        result.put("submittedAt", submittedAt);
+        result.put("finishedAt", finishedAt);
+        result.put("error", error);
+        return result;
+    }
+}
@@ -0,0 +1,406 @@
+package com.CCM_EV.admin.backfill;
+
+import com.CCM_EV.admin.cache.TableVersions;
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+import com.CCM_EV.admin.partition.PartitionManager;
+import com.CCM_EV.admin.rollup.RollupService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk loader for historical events.
+ *
+ * NDJSON files are mapped with the consumers' row mapping and streamed with COPY into an unlogged
+ * staging table, one connection per file. The staging rows are then merged into the target table
+ * with the consumers' upsert action, one statement per monthly partition, partitions in parallel.
+ * Within a load the last event per key wins, matching arrival order over RabbitMQ.
+ */
+@Slf4j
+@Service
+public class BackfillService {
+
+    private static final int COPY_FLUSH_CHARS = 1 << 20;
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final PartitionManager partitionManager;
+    private final RollupService rollups;
+    private final TableVersions tableVersions;
+    private final Path directory;
+    private final ExecutorService jobExecutor;
+    private final ExecutorService workers;
+    private final Map<String, BackfillJob> jobs = new ConcurrentHashMap<>();
+
+    public BackfillService(DataSource dataSource,
+                           JdbcTemplate jdbc,
+                           TransactionTemplate transactionTemplate,
+                           ObjectMapper objectMapper,
+                           PartitionManager partitionManager,
+                           RollupService rollups,
+                           TableVersions tableVersions,
+                           @Value("${app.backfill.directory:/data/backfill}") String directory,
+                           @Value("${app.backfill.parallelism:4}") int parallelism) {
+        this.dataSource = dataSource;
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.partitionManager = partitionManager;
+        this.rollups = rollups;
+        this.tableVersions = tableVersions;
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+        // Jobs run one at a time, each fanning out over the worker pool
+        this.jobExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("backfill-job-"));
+        this.workers = Executors.newFixedThreadPool(parallelism, new CustomizableThreadFactory("backfill-worker-"));
+    }
+
+    /**
+     * Queue a load of NDJSON files, relative to the backfill directory
+     */
+    public BackfillJob submit(BackfillDataset dataset, List<String> files) {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("At least one file is required");
+        }
+        List<Path> paths = files.stream().map(this::resolve).toList();
+
+        BackfillJob job = new BackfillJob(UUID.randomUUID().toString().substring(0, 8), dataset, List.copyOf(files));
+        jobs.put(job.getId(), job);
+        jobExecutor.submit(() -> run(job, paths));
+
+        log.info("Queued backfill job {} for {} ({} files)", job.getId(), dataset, files.size());
+        return job;
+    }
+
+    public Optional<BackfillJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    public List<BackfillJob> getJobs() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(BackfillJob::getSubmittedAt).reversed())
+                .toList();
+    }
+
+    private Path resolve(String file) {
+        Path path = directory.resolve(file).normalize();
+        if (!path.startsWith(directory)) {
+            throw new IllegalArgumentException("File must be inside " + directory + ": " + file);
+        }
+        if (!Files.isReadable(path)) {
+            throw new IllegalArgumentException("File not found or not readable: " + file);
+        }
+        return path;
+    }
+
+    private void run(BackfillJob job, List<Path> files) {
+        BackfillDataset dataset = job.getDataset();
+        String staging = "backfill_" + dataset.name().toLowerCase() + "_" + job.getId();
+        long startTime = System.currentTimeMillis();
+
+        try {
+            jdbc.execute("CREATE UNLOGGED TABLE " + staging + " (seq bigint, " + dataset.getStagingColumns() + ")");
+
+            job.setStatus(BackfillJob.Status.STAGING);
+            List<Future<?>> copies = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                int fileIndex = i;
+                Path file = files.get(i);
+                copies.add(workers.submit(() -> {
+                    copyFile(job, file, fileIndex, staging);
+                    return null;
+                }));
+            }
+            awaitAll(copies);
+            jdbc.execute("ANALYZE " + staging);
+
+            job.setStatus(BackfillJob.Status.MERGING);
+            if (dataset.getPartitionColumn() != null) {
+                mergePartitions(job, staging);
+            } else {
+                mergeUsers(job, staging);
+            }
+
+            job.complete();
+            log.info("Backfill job {} completed: {} rows staged, {} merged, {} parse errors in {}ms",
+                    job.getId(), job.getRowsStaged().get(), job.getRowsMerged().get(),
+                    job.getParseErrors().get(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.error("Backfill job {} failed", job.getId(), e);
+            job.fail(e.getMessage());
+        } finally {
+            try {
+                jdbc.execute("DROP TABLE IF EXISTS " + staging);
+            } catch (Exception e) {
+                log.warn("Failed to drop staging table {}: {}", staging, e.getMessage());
+            }
+        }
+    }
+
+    private void copyFile(BackfillJob job, Path file, int fileIndex, String staging) throws IOException, SQLException {
+        BackfillDataset dataset = job.getDataset();
+        String sql = "COPY " + staging + " (seq, " + dataset.getColumns() + ") FROM STDIN";
+
+        try (Connection connection = dataSource.getConnection();
+             BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            try {
+                StringBuilder buffer = new StringBuilder(COPY_FLUSH_CHARS + 4096);
+                long lineNo = 0;
+                long parseErrors = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNo++;
+                    if (lineNo % PROGRESS_INTERVAL == 0) {
+                        job.getLinesRead().addAndGet(PROGRESS_INTERVAL);
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Backfill of " + file + " interrupted");
+                        }
+                    }
+                    if (line.isBlank()) {
+                        continue;
+                    }
+
+                    BaseEvent event;
+                    try {
+                        event = objectMapper.readValue(line, dataset.getEventClass());
+                    } catch (JsonProcessingException e) {
+                        if (parseErrors++ == 0) {
+                            log.warn("Skipping unparseable line {} of {}: {}", lineNo, file.getFileName(), e.getOriginalMessage());
+                        }
+                        continue;
+                    }
+
+                    // File index in the high bits keeps the global order across files
+                    CopyEncoder.appendRow(buffer, ((long) fileIndex << 40) | lineNo, dataset.toRow(event));
+                    if (buffer.length() >= COPY_FLUSH_CHARS) {
+                        flush(copyIn, buffer);
+                    }
+                }
+                job.getLinesRead().addAndGet(lineNo % PROGRESS_INTERVAL);
+                job.getParseErrors().addAndGet(parseErrors);
+
+                flush(copyIn, buffer);
+                job.getRowsStaged().addAndGet(copyIn.endCopy());
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+        log.info("Staged {} for backfill job {}", file.getFileName(), job.getId());
+    }
+
+    private void flush(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    private void mergePartitions(BackfillJob job, String staging) throws Exception {
+        BackfillDataset dataset = job.getDataset();
+        String table = dataset.getTargetTable();
+        String partitionColumn = dataset.getPartitionColumn();
+
+        List<LocalDate> months = jdbc.queryForList(
+            "SELECT DISTINCT date_trunc('month', " + partitionColumn + ")::date FROM " + staging +
+            " WHERE " + partitionColumn + " IS NOT NULL ORDER BY 1",
+            LocalDate.class
+        );
+        job.getPartitionsTotal().set(months.size());
+
+        // Create missing partitions up front, CREATE ... PARTITION OF would queue behind the running merges
+        List<String> partitions = new ArrayList<>(months.size());
+        for (LocalDate month : months) {
+            partitions.add(partitionManager.createPartition(table, month));
+        }
+
+        // Rows of one partition can only conflict with each other, so partitions merge independently
+        String mergeSql = """
+            INSERT INTO %s (%s)
+            SELECT DISTINCT ON (%s) %s
+            FROM %s
+            WHERE %s >= ? AND %s < ? AND %s
+            ORDER BY %s, seq DESC
+            %s
+            """.formatted(
+                table, dataset.getColumns(),
+                dataset.getKeyColumns(), dataset.getColumns(),
+                staging,
+                partitionColumn, partitionColumn, dataset.getRequiredColumns(),
+                dataset.getKeyColumns(),
+                dataset.getUpsertAction()
+            );
+
+        List<Future<?>> merges = new ArrayList<>(months.size());
+        for (int i = 0; i < months.size(); i++) {
+            LocalDate month = months.get(i);
+            String partition = partitions.get(i);
+            merges.add(workers.submit(() -> {
+                int merged = merge(dataset, staging, mergeSql, month);
+                jdbc.execute("ANALYZE " + partition);
+                job.getRowsMerged().addAndGet(merged);
+                job.getPartitionsDone().incrementAndGet();
+                log.info("Backfill job {} merged {} rows into {}", job.getId(), merged, partition);
+                return null;
+            }));
+        }
+        awaitAll(merges);
+    }
+
+    /**
+     * Merge one month of staged rows, adding the change it makes to the facts to the rollup
+     * @return rows merged
+     */
+    private int merge(BackfillDataset dataset, String staging, String mergeSql, LocalDate month) {
+        LocalDate next = month.plusMonths(1);
+        String partitionColumn = dataset.getPartitionColumn();
+        String keySource = "SELECT DISTINCT " + dataset.getKeyColumns() + " FROM " + staging +
+                " WHERE " + partitionColumn + " >= ? AND " + partitionColumn + " < ? AND " + dataset.getRequiredColumns();
+        int[] merged = new int[1];
+        transactionTemplate.executeWithoutResult(status -> {
+            rollups.track(dataset.getRollup(), keySource,
+                    new Object[] {month, next}, () -> merged[0] = jdbc.update(mergeSql, month, next));
+            tableVersions.bump(List.of(dataset.getTargetTable()));
+        });
+        return merged[0];
+    }
+
+    /**
+     * Fold each user's events into its final dim_users state, applying the same rules as
+     * UserEventConsumer in arrival order: the last registration replaces the row, later updates
+     * only overwrite non-null fields, and events for unknown users are no-ops. The status goes
+     * by event time like UserStateBuffer's: it only applies when newer than the row's enabled_at.
+     */
+    private void mergeUsers(BackfillJob job, String staging) {
+        job.getPartitionsTotal().set(1);
+
+        Integer merged = transactionTemplate.execute(status -> {
+            jdbc.execute("""
+                CREATE TEMP TABLE backfill_users_folded ON COMMIT DROP AS
+                WITH ev AS (
+                    SELECT s.*,
+                           max(seq) FILTER (WHERE action = 'REGISTERED') OVER (PARTITION BY user_id) AS reg_seq,
+                           min(occurred_at) FILTER (WHERE action = 'REGISTERED') OVER (PARTITION BY user_id) AS first_reg_at
+                    FROM %s s
+                    WHERE user_id IS NOT NULL
+                      AND action IN ('REGISTERED', 'LOGGED_IN', 'UPDATED', 'DELETED', 'ENABLED', 'DISABLED')
+                )
+                SELECT user_id,
+                       bool_or(seq = reg_seq) AS registered,
+                       min(first_reg_at) AS created_at,
+                       (array_agg(username ORDER BY seq DESC) FILTER (WHERE seq = reg_seq OR (action = 'UPDATED' AND username IS NOT NULL)))[1] AS username,
+                       (array_agg(email ORDER BY seq DESC) FILTER (WHERE seq = reg_seq OR (action = 'UPDATED' AND email IS NOT NULL)))[1] AS email,
+                       (array_agg(role ORDER BY seq DESC) FILTER (WHERE seq = reg_seq OR (action = 'UPDATED' AND role IS NOT NULL)))[1] AS role,
+                       (array_agg(region ORDER BY seq DESC) FILTER (WHERE seq = reg_seq OR (action = 'UPDATED' AND region IS NOT NULL)))[1] AS region,
+                       (array_agg(organization_name ORDER BY seq DESC) FILTER (WHERE seq = reg_seq OR (action = 'UPDATED' AND organization_name IS NOT NULL)))[1] AS organization_name,
+                       (array_agg(phone_number ORDER BY seq DESC) FILTER (WHERE seq = reg_seq OR (action = 'UPDATED' AND phone_number IS NOT NULL)))[1] AS phone_number,
+                       bool_or(action IN ('REGISTERED', 'DELETED', 'ENABLED', 'DISABLED')) AS status_changed,
+                       (array_agg(CASE action WHEN 'REGISTERED' THEN COALESCE(enabled, true) WHEN 'DELETED' THEN false ELSE enabled END ORDER BY seq DESC)
+                            FILTER (WHERE action IN ('REGISTERED', 'DELETED', 'ENABLED', 'DISABLED')))[1] AS enabled,
+                       (array_agg(occurred_at ORDER BY seq DESC)
+                            FILTER (WHERE action IN ('REGISTERED', 'DELETED', 'ENABLED', 'DISABLED')))[1] AS enabled_at,
+                       (array_agg(occurred_at ORDER BY seq DESC) FILTER (WHERE action IN ('REGISTERED', 'LOGGED_IN')))[1] AS last_login_at,
+                       (array_agg(occurred_at ORDER BY seq DESC))[1] AS updated_at
+                FROM ev
+                WHERE reg_seq IS NULL OR seq >= reg_seq
+                GROUP BY user_id
+                """.formatted(staging));
+
+            int registered = jdbc.update("""
+                INSERT INTO dim_users AS d (user_id, username, email, role, region, enabled, created_at, updated_at, organization_name, phone_number, last_login_at, enabled_at)
+                SELECT user_id, username, email, role, region, enabled, created_at, updated_at, organization_name, phone_number, last_login_at, enabled_at
+                FROM backfill_users_folded
+                WHERE registered
+                ON CONFLICT (user_id) DO UPDATE SET
+                    username = EXCLUDED.username,
+                    email = EXCLUDED.email,
+                    role = EXCLUDED.role,
+                    region = EXCLUDED.region,
+                    enabled = CASE WHEN d.enabled_at IS NULL OR EXCLUDED.enabled_at > d.enabled_at
+                                   THEN EXCLUDED.enabled ELSE d.enabled END,
+                    enabled_at = GREATEST(d.enabled_at, EXCLUDED.enabled_at),
+                    updated_at = EXCLUDED.updated_at,
+                    organization_name = EXCLUDED.organization_name,
+                    phone_number = EXCLUDED.phone_number,
+                    last_login_at = EXCLUDED.last_login_at
+                """);
+
+            int updated = jdbc.update("""
+                UPDATE dim_users d
+                SET username = COALESCE(f.username, d.username),
+                    email = COALESCE(f.email, d.email),
+                    role = COALESCE(f.role, d.role),
+                    region = COALESCE(f.region, d.region),
+                    organization_name = COALESCE(f.organization_name, d.organization_name),
+                    phone_number = COALESCE(f.phone_number, d.phone_number),
+                    enabled = CASE WHEN f.status_changed AND (d.enabled_at IS NULL OR f.enabled_at > d.enabled_at)
+                                   THEN f.enabled ELSE d.enabled END,
+                    enabled_at = CASE WHEN f.status_changed THEN GREATEST(d.enabled_at, f.enabled_at) ELSE d.enabled_at END,
+                    last_login_at = COALESCE(f.last_login_at, d.last_login_at),
+                    updated_at = f.updated_at
+                FROM backfill_users_folded f
+                WHERE d.user_id = f.user_id AND NOT f.registered
+                """);
+
+            tableVersions.bump(List.of("dim_users"));
+            return registered + updated;
+        });
+
+        job.getRowsMerged().addAndGet(merged != null ? merged : 0);
+        job.getPartitionsDone().incrementAndGet();
+        jdbc.execute("ANALYZE dim_users");
+    }
+
+    private void awaitAll(List<Future<?>> futures) throws Exception {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,44 @@
+package com.CCM_EV.admin.backfill;
+
+import java.math.BigDecimal;
+
+/**
+ * Encodes rows in PostgreSQL COPY text format (tab separated, \N for null)
+ */
+final class CopyEncoder {
+
+    private CopyEncoder() {
+    }
+
+    static void appendRow(StringBuilder out, long seq, Object[] row) {
+        out.append(seq);
+        for (Object value : row) {
+            out.append('\t');
+            appendValue(out, value);
+        }
+        out.append('\n');
+    }
+
+    private static void appendValue(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("\\N");
+        } else if (value instanceof BigDecimal decimal) {
+            out.append(decimal.toPlainString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else {
+            // OffsetDateTime renders as ISO-8601, which timestamptz accepts
+            String text = value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '\\' -> out.append("\\\\");
+                    case '\t' -> out.append("\\t");
+                    case '\n' -> out.append("\\n");
+                    case '\r' -> out.append("\\r");
+                    default -> out.append(c);
+                }
+            }
+        }
+    }
+}
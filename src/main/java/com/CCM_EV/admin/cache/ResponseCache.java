@@ -0,0 +1,196 @@
+package com.CCM_EV.admin.cache;
+
+import com.CCM_EV.admin.config.ResponseCacheProperties;
+import com.CCM_EV.admin.config.ResponseCacheProperties.Endpoint;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache of report responses: per instance in Caffeine, shared between instances in Redis.
+ *
+ * Keys are the endpoint, its parameters in name order and the current versions of the tables
+ * the endpoint reads ({@link TableVersions}), so a commit to one of those tables moves every
+ * later request to a new key; old entries are never served again and expire with their TTL.
+ * Concurrent misses on one key in an instance load the response once.
+ *
+ * Responses from Redis are the JSON the endpoint would have returned, read back into maps.
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    private static final TypeReference<Map<String, Object>> RESPONSE_TYPE = new TypeReference<>() { };
+
+    private final ResponseCacheProperties properties;
+    private final TableVersions versions;
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader responseReader;
+    private final Map<String, Tier> tiers = new LinkedHashMap<>();
+
+    public ResponseCache(ResponseCacheProperties properties,
+                         TableVersions versions,
+                         StringRedisTemplate redis,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.versions = versions;
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.responseReader = objectMapper.readerFor(RESPONSE_TYPE)
+            .with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        properties.getEndpoints().forEach((name, endpoint) -> tiers.put(name, new Tier(name, endpoint, meterRegistry)));
+    }
+
+    /**
+     * The cached response for the endpoint and parameters, loaded and cached on a miss.
+     * Endpoints without a configuration are always loaded.
+     */
+    public Map<String, Object> get(String endpoint, Map<String, ?> params, Supplier<Map<String, Object>> loader) {
+        Tier tier = tiers.get(endpoint);
+        if (!properties.isEnabled() || tier == null) {
+            return loader.get();
+        }
+        String key = endpoint + "?" + new TreeMap<>(params) + "@" + versions.current(tier.endpoint.getTables());
+
+        Map<String, Object> response = tier.local.getIfPresent(key);
+        if (response != null) {
+            tier.localHits.increment();
+            return response;
+        }
+        return tier.local.get(key, k -> {
+            Map<String, Object> shared = readShared(k);
+            if (shared != null) {
+                tier.redisHits.increment();
+                return shared;
+            }
+            tier.misses.increment();
+            Map<String, Object> loaded = tier.loadTimer.record(loader);
+            writeShared(k, loaded, tier.endpoint);
+            return loaded;
+        });
+    }
+
+    /**
+     * Invalidate every response computed from the tables, for writes outside the consumers
+     */
+    public void invalidate(List<String> tables) {
+        versions.bump(tables);
+    }
+
+    public List<Map<String, Object>> getState() {
+        List<Map<String, Object>> state = new ArrayList<>();
+        for (Tier tier : tiers.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("endpoint", tier.name);
+            entry.put("ttl", tier.endpoint.getTtl().toString());
+            entry.put("tables", tier.endpoint.getTables());
+            entry.put("localEntries", tier.local.estimatedSize());
+            entry.put("localHits", (long) tier.localHits.count());
+            entry.put("redisHits", (long) tier.redisHits.count());
+            entry.put("misses", (long) tier.misses.count());
+            entry.put("hitRatio", tier.hitRatio());
+            entry.put("meanLoadMs", tier.loadTimer.mean(TimeUnit.MILLISECONDS));
+            entry.put("maxLoadMs", tier.loadTimer.max(TimeUnit.MILLISECONDS));
+            state.add(entry);
+        }
+        return state;
+    }
+
+    public Map<String, Long> getTableVersions() {
+        return versions.getLocalVersions();
+    }
+
+    private Map<String, Object> readShared(String key) {
+        if (!properties.getRedis().isEnabled()) {
+            return null;
+        }
+        try {
+            String json = redis.opsForValue().get(properties.getRedis().getKeyPrefix() + key);
+            return json != null ? responseReader.readValue(json) : null;
+        } catch (Exception e) {
+            log.debug("Redis response cache unavailable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeShared(String key, Map<String, Object> response, Endpoint endpoint) {
+        if (!properties.getRedis().isEnabled()) {
+            return;
+        }
+        try {
+            redis.opsForValue().set(properties.getRedis().getKeyPrefix() + key,
+                objectMapper.writeValueAsString(response), endpoint.getTtl());
+        } catch (Exception e) {
+            log.debug("Failed to share cached response {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Local entries and meters of one endpoint
+     */
+    private final class Tier {
+
+        private final String name;
+        private final Endpoint endpoint;
+        private final Cache<String, Map<String, Object>> local;
+        private final Counter localHits;
+        private final Counter redisHits;
+        private final Counter misses;
+        private final Timer loadTimer;
+
+        private Tier(String name, Endpoint endpoint, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.endpoint = endpoint;
+            this.local = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalMaxEntries())
+                .expireAfterWrite(endpoint.getTtl())
+                .build();
+            this.localHits = requests(meterRegistry, "local_hit");
+            this.redisHits = requests(meterRegistry, "redis_hit");
+            this.misses = requests(meterRegistry, "miss");
+            this.loadTimer = Timer.builder("admin.cache.load")
+                .description("Time to compute a response on a cache miss")
+                .tag("endpoint", name)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+            Gauge.builder("admin.cache.hit.ratio", this, Tier::hitRatio)
+                .description("Share of requests answered from either cache tier")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        }
+
+        private Counter requests(MeterRegistry meterRegistry, String result) {
+            return Counter.builder("admin.cache.requests")
+                .description("Cached endpoint requests by the tier that answered them")
+                .tag("endpoint", name)
+                .tag("result", result)
+                .register(meterRegistry);
+        }
+
+        private double hitRatio() {
+            double hits = localHits.count() + redisHits.count();
+            double total = hits + misses.count();
+            return total > 0 ? hits / total : 0.0;
+        }
+    }
+}
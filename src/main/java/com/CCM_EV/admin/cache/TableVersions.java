@@ -0,0 +1,155 @@
+package com.CCM_EV.admin.cache;
+
+import com.CCM_EV.admin.config.ResponseCacheProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Change counters per table, bumped by every writer once its transaction committed.
+ * A cached response records the versions of its tables, so any commit to one of them makes it
+ * unreachable without tracking which responses it touched. The consumers' bumps are coalesced
+ * and flushed on a schedule, so steady ingestion does not invalidate responses on every commit.
+ *
+ * Versions are counted in this instance and, with the Redis tier enabled, also in Redis, so a
+ * commit by one instance invalidates the responses of all of them. When Redis cannot be read
+ * the local versions are used; they carry their own prefix and never match a Redis version.
+ */
+@Slf4j
+@Component
+public class TableVersions {
+
+    private final StringRedisTemplate redis;
+    private final boolean redisEnabled;
+    private final String keyPrefix;
+    private final Map<String, AtomicLong> local = new ConcurrentHashMap<>();
+    // Tables committed to since the last flush of the coalesced bumps
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public TableVersions(StringRedisTemplate redis, ResponseCacheProperties properties) {
+        this.redis = redis;
+        this.redisEnabled = properties.getRedis().isEnabled();
+        this.keyPrefix = properties.getRedis().getKeyPrefix() + "version:";
+    }
+
+    /**
+     * Bump the tables once the current transaction committed, right away outside of one
+     */
+    public void bump(Collection<String> tables) {
+        if (tables.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Set<String> copy = Set.copyOf(tables);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(copy);
+                }
+            });
+        } else {
+            increment(tables);
+        }
+    }
+
+    /**
+     * Bump the tables at the next flush once the current transaction committed, for writers
+     * committing many times a second: however often they commit, a table is bumped at most
+     * once per flush interval and its cached responses lag that much at most
+     */
+    public void bumpCoalesced(Collection<String> tables) {
+        if (tables.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Set<String> copy = Set.copyOf(tables);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pending.addAll(copy);
+                }
+            });
+        } else {
+            pending.addAll(tables);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.response-cache.bump-interval-ms:1000}")
+    @PreDestroy
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> tables = new ArrayList<>();
+        for (String table : List.copyOf(pending)) {
+            if (pending.remove(table)) {
+                tables.add(table);
+            }
+        }
+        increment(tables);
+    }
+
+    /**
+     * Current versions of the tables, in order, as one key part
+     */
+    public String current(List<String> tables) {
+        if (redisEnabled) {
+            try {
+                List<String> versions = redis.opsForValue().multiGet(tables.stream().map(table -> keyPrefix + table).toList());
+                if (versions != null) {
+                    return "r" + String.join(".", versions.stream().map(v -> v != null ? v : "0").toList());
+                }
+            } catch (Exception e) {
+                log.debug("Redis table versions unavailable, using local versions: {}", e.getMessage());
+            }
+        }
+        StringBuilder key = new StringBuilder("l");
+        for (int i = 0; i < tables.size(); i++) {
+            key.append(i > 0 ? "." : "").append(localVersion(tables.get(i)).get());
+        }
+        return key.toString();
+    }
+
+    public Map<String, Long> getLocalVersions() {
+        Map<String, Long> versions = new TreeMap<>();
+        local.forEach((table, version) -> versions.put(table, version.get()));
+        return versions;
+    }
+
+    private void increment(Collection<String> tables) {
+        tables.forEach(table -> localVersion(table).incrementAndGet());
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            redis.executePipelined((RedisCallback<Object>) connection -> {
+                for (String table : tables) {
+                    connection.stringCommands().incr((keyPrefix + table).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // Other instances serve responses of this table until their TTL runs out
+            log.warn("Failed to bump Redis table versions of {}: {}", tables, e.getMessage());
+        }
+    }
+
+    private AtomicLong localVersion(String table) {
+        return local.computeIfAbsent(table, t -> new AtomicLong());
+    }
+}
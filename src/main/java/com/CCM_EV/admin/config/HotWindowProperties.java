@@ -0,0 +1,33 @@
+package com.CCM_EV.admin.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * In-process columnar copy of the recent facts the dashboards aggregate
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.hot-window")
+public class HotWindowProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * How far back the window reaches; queries starting earlier go to the database
+     */
+    private Duration window = Duration.ofDays(90);
+
+    /**
+     * Rows fetched per round trip by the cursor loading the window
+     */
+    private int fetchSize = 10000;
+
+    /**
+     * Rows of a table from which its segments are scanned in parallel
+     */
+    private int parallelThreshold = 262144;
+}
@@ -0,0 +1,79 @@
+package com.CCM_EV.admin.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Materialized views, their refresh schedules and the views each one is built from
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.materialized-views")
+public class MaterializedViewProperties {
+
+    /**
+     * Maximum number of views refreshed at the same time, each on its own connection
+     */
+    private int parallelism = 2;
+
+    /**
+     * Changed source rows that trigger a refresh before the view's next scheduled one
+     */
+    private long changeThreshold = 10000;
+
+    /**
+     * How often the change counters of the source tables are checked against the threshold
+     */
+    private long changeCheckIntervalMs = 60000;
+
+    /**
+     * Views keyed by name
+     */
+    private Map<String, View> views = defaultViews();
+
+    private static Map<String, View> defaultViews() {
+        Map<String, View> views = new LinkedHashMap<>();
+        views.put("mv_trades_daily", View.of("fact_trade"));
+        views.put("mv_issuance_daily", View.of("fact_issuance"));
+        views.put("mv_payments_daily", View.of("fact_payment"));
+        views.put("mv_user_activity_daily", View.of("fact_user_activity"));
+        return views;
+    }
+
+    @Data
+    public static class View {
+
+        /**
+         * When the view is refreshed, "-" to only refresh it on demand or with its dependencies
+         */
+        private String cron = "0 15 * * * *";
+
+        /**
+         * Materialized views this one selects from, refreshed before it
+         */
+        private List<String> dependsOn = new ArrayList<>();
+
+        /**
+         * Tables the view selects from; when none of them changed since the last refresh, the
+         * scheduled refresh is skipped. Without sources the view always refreshes on schedule.
+         */
+        private List<String> sources = new ArrayList<>();
+
+        /**
+         * Overrides the global change threshold
+         */
+        private Long changeThreshold;
+
+        static View of(String... sources) {
+            View view = new View();
+            view.setSources(new ArrayList<>(List.of(sources)));
+            return view;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.CCM_EV.admin.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cached report endpoints, how long their responses live and the tables they are computed from
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.response-cache")
+public class ResponseCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Responses kept per endpoint in the per-instance tier
+     */
+    private long localMaxEntries = 1000;
+
+    /**
+     * Consumer commits bump a table's version at most once per this interval
+     */
+    private long bumpIntervalMs = 1000;
+
+    private Redis redis = new Redis();
+
+    /**
+     * Endpoints keyed by cache name; endpoints not listed here are not cached
+     */
+    private Map<String, Endpoint> endpoints = defaultEndpoints();
+
+    private static Map<String, Endpoint> defaultEndpoints() {
+        Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+        endpoints.put("dashboard-overview", Endpoint.of(Duration.ofSeconds(30),
+            "dim_users", "fact_trade", "fact_issuance", "fact_user_activity"));
+        endpoints.put("metrics-summary", Endpoint.of(Duration.ofSeconds(30),
+            "dim_users", "fact_trade", "fact_issuance", "fact_user_activity"));
+        endpoints.put("comprehensive-report", Endpoint.of(Duration.ofMinutes(5),
+            "dim_users", "fact_trade", "fact_issuance"));
+        endpoints.put("regional-transactions", Endpoint.of(Duration.ofMinutes(5), "fact_trade"));
+        endpoints.put("regional-users", Endpoint.of(Duration.ofMinutes(5), "dim_users"));
+        return endpoints;
+    }
+
+    @Data
+    public static class Redis {
+
+        /**
+         * Share responses and table versions between instances
+         */
+        private boolean enabled = false;
+
+        private String keyPrefix = "rc:";
+    }
+
+    @Data
+    public static class Endpoint {
+
+        /**
+         * Upper bound on the age of a response, also for changes no table version covers,
+         * e.g. "last 24 hours" windows moving on
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+
+        /**
+         * Tables the response is computed from; a commit to any of them invalidates it
+         */
+        private List<String> tables = new ArrayList<>();
+
+        static Endpoint of(Duration ttl, String... tables) {
+            Endpoint endpoint = new Endpoint();
+            endpoint.setTtl(ttl);
+            endpoint.setTables(new ArrayList<>(List.of(tables)));
+            return endpoint;
+        }
+    }
+}
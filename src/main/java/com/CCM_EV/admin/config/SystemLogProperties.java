@@ -0,0 +1,56 @@
+package com.CCM_EV.admin.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings for the write-behind system log writer and per-category log policies
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.system-logs")
+public class SystemLogProperties {
+
+    /**
+     * Maximum number of log entries waiting to be written
+     */
+    private int queueCapacity = 50000;
+
+    /**
+     * Maximum rows per insert batch
+     */
+    private int batchSize = 500;
+
+    /**
+     * Flush a partial batch after this long
+     */
+    private long flushIntervalMs = 1000;
+
+    /**
+     * How long a producer waits for queue space before writing the entry itself
+     */
+    private long offerTimeoutMs = 200;
+
+    /**
+     * Policies keyed by log category (SYSTEM, BUSINESS, USER, ...)
+     */
+    private Map<String, CategoryPolicy> policies = new HashMap<>();
+
+    @Data
+    public static class CategoryPolicy {
+
+        /**
+         * Entries below this level are discarded
+         */
+        private String minLevel = "DEBUG";
+
+        /**
+         * Fraction of DEBUG/INFO entries that are kept; WARN and above are never sampled
+         */
+        private double sampleRate = 1.0;
+    }
+}
@@ -1,26 +1,61 @@
 package com.CCM_EV.admin.controller;
 
+import com.CCM_EV.admin.cache.ResponseCache;
+import com.CCM_EV.admin.hotwindow.HotQuery;
+import com.CCM_EV.admin.hotwindow.HotTable;
+import com.CCM_EV.admin.hotwindow.HotTables;
+import com.CCM_EV.admin.hotwindow.HotWindowService;
+import com.CCM_EV.admin.query.FreshView;
+import com.CCM_EV.admin.query.FreshViewService;
+import com.CCM_EV.admin.rollup.HyperLogLog;
+import com.CCM_EV.admin.rollup.SketchService;
+import com.CCM_EV.admin.rollup.Sketches;
+import com.CCM_EV.admin.timeseries.Resolution;
+import com.CCM_EV.admin.timeseries.TimeSeries;
+import com.CCM_EV.admin.timeseries.TimeSeriesCatalog;
+import com.CCM_EV.admin.timeseries.TimeSeriesTierService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/admin")
 @RequiredArgsConstructor
 @CrossOrigin(origins = "*")
 public class AdminController {
+
+    /**
+     * Points per chart when only a resolution is requested
+     */
+    private static final int DEFAULT_MAX_POINTS = 500;
     
     private final JdbcTemplate jdbc;
+    private final FreshViewService freshViews;
+    private final TimeSeriesTierService timeSeries;
+    private final ResponseCache responseCache;
+    private final SketchService sketches;
+    private final HotWindowService hotWindow;
 
     /**
      * Dashboard Overview - Summary statistics
      */
     @GetMapping("/dashboard/overview")
     public Map<String, Object> getDashboardOverview() {
+        return responseCache.get("dashboard-overview", Map.of(), this::loadDashboardOverview);
+    }
+
+    private Map<String, Object> loadDashboardOverview() {
         Map<String, Object> overview = new HashMap<>();
         
         // Total users
@@ -96,29 +131,48 @@ public class AdminController {
     }
 
     /**
-     * User Activity Analytics - Optimized with materialized views and partition pruning
+     * User Activity Analytics - Optimized with materialized views and partition pruning.
+     * With resolution or maxPoints the timeline is read from the time-series tiers instead.
      */
     @GetMapping("/activities")
-    public Map<String, Object> getActivityStats(
-        @RequestParam(defaultValue = "7") int days
+    public ResponseEntity<Map<String, Object>> getActivityStats(
+        @RequestParam(defaultValue = "7") int days,
+        @RequestParam(required = false) String resolution,
+        @RequestParam(required = false) Integer maxPoints
     ) {
         Map<String, Object> stats = new HashMap<>();
+        boolean tiered = resolution != null || maxPoints != null;
+        if (tiered) {
+            try {
+                Map<String, Object> timeline = readTier(TimeSeriesCatalog.ACTIVITIES, daysAgo(days), resolution, maxPoints, true);
+                stats.put("resolution", timeline.get("resolution"));
+                stats.put("timeline", points(timeline, "bucket", "date", "key", "event_type", "event_count", "count"));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+        }
+        FreshView activity = freshViews.view("mv_user_activity_daily");
         
-        // Activity by type - USE MATERIALIZED VIEW (faster aggregation)
+        // Activity by type - USE MATERIALIZED VIEW (faster aggregation), live since its last refresh
         stats.put("byType", jdbc.queryForList(
             "SELECT event_type, SUM(event_count) as count, SUM(unique_users) as unique_users " +
-            "FROM mv_user_activity_daily " +
+            "FROM " + activity.getRelation() + " " +
             "WHERE day > NOW() - INTERVAL '" + days + " days' " +
-            "GROUP BY event_type ORDER BY count DESC"
+            "GROUP BY event_type ORDER BY count DESC",
+            activity.getArgs()
         ));
         
         // Activity timeline (daily) - USE MATERIALIZED VIEW
-        stats.put("timeline", jdbc.queryForList(
-            "SELECT day as date, event_type, event_count as count, unique_users " +
-            "FROM mv_user_activity_daily " +
-            "WHERE day > NOW() - INTERVAL '" + days + " days' " +
-            "ORDER BY day DESC, event_type"
-        ));
+        if (!tiered) {
+            stats.put("timeline", jdbc.queryForList(
+                "SELECT day as date, event_type, event_count as count, unique_users " +
+                "FROM " + activity.getRelation() + " " +
+                "WHERE day > NOW() - INTERVAL '" + days + " days' " +
+                "ORDER BY day DESC, event_type",
+                activity.getArgs()
+            ));
+        }
+        stats.put("freshness", activity.getFreshness());
         
         // Most active users (partition-aware query with composite index)
         stats.put("topUsers", jdbc.queryForList(
@@ -131,7 +185,7 @@ public class AdminController {
             "LIMIT 10"
         ));
         
-        return stats;
+        return ResponseEntity.ok(stats);
     }
 
     /**
@@ -143,17 +197,34 @@ public class AdminController {
     ) {
         Map<String, Object> stats = new HashMap<>();
         
-        // Total trades (with partition pruning)
-        stats.put("totalTrades", jdbc.queryForObject(
-            "SELECT COUNT(*) FROM fact_trade WHERE executed_at > NOW() - INTERVAL '" + days + " days'", 
-            Integer.class
-        ));
-        
-        // Trade volume by currency (partition-aware)
-        stats.put("volumeByCurrency", jdbc.queryForList(
-            "SELECT currency, COUNT(*) as trade_count, SUM(quantity) as total_quantity, SUM(amount) as total_amount " +
-            "FROM fact_trade WHERE executed_at > NOW() - INTERVAL '90 days' GROUP BY currency"
-        ));
+        // Total trades - from the hot window, else with partition pruning
+        stats.put("totalTrades", hotTotals(HotTables.TRADES, days).map(totals -> totals.get("count")).orElseGet(() ->
+            jdbc.queryForObject(
+                "SELECT COUNT(*) FROM fact_trade WHERE executed_at > NOW() - INTERVAL '" + days + " days'", 
+                Integer.class
+            )));
+        
+        // Trade volume by currency - from the hot window, else partition-aware
+        HotQuery volume = HotQuery.builder()
+            .table(HotTables.TRADES)
+            .from(daysAgo(90).toInstant())
+            .groupBy("currency")
+            .measure("quantity")
+            .measure("amount")
+            .build();
+        stats.put("volumeByCurrency", hotWindow.tryAggregate(volume)
+            .map(rows -> rows.stream().map(row -> {
+                Map<String, Object> currency = new LinkedHashMap<>();
+                currency.put("currency", row.get("currency"));
+                currency.put("trade_count", row.get("count"));
+                currency.put("total_quantity", row.get("quantity"));
+                currency.put("total_amount", row.get("amount"));
+                return currency;
+            }).toList())
+            .orElseGet(() -> jdbc.queryForList(
+                "SELECT currency, COUNT(*) as trade_count, SUM(quantity) as total_quantity, SUM(amount) as total_amount " +
+                "FROM fact_trade WHERE executed_at > NOW() - INTERVAL '90 days' GROUP BY currency"
+            )));
         
         // Recent trades (uses idx_fact_trade_executed_at)
         stats.put("recentTrades", jdbc.queryForList(
@@ -161,19 +232,23 @@ public class AdminController {
             "FROM fact_trade ORDER BY executed_at DESC LIMIT 10"
         ));
         
-        // Trade timeline - USE MATERIALIZED VIEW for fast aggregation
+        // Trade timeline - USE MATERIALIZED VIEW for fast aggregation, live since its last refresh
+        FreshView trades = freshViews.view("mv_trades_daily");
         stats.put("timeline", jdbc.queryForList(
             "SELECT day as date, trade_count, revenue as total_amount, avg_unit_price " +
-            "FROM mv_trades_daily " +
+            "FROM " + trades.getRelation() + " " +
             "WHERE day > NOW() - INTERVAL '" + days + " days' " +
-            "ORDER BY day DESC"
+            "ORDER BY day DESC",
+            trades.getArgs()
         ));
         
-        // Additional stats from MV
-        stats.put("buyerSellersStats", jdbc.queryForMap(
-            "SELECT SUM(unique_buyers) as total_unique_buyers, SUM(unique_sellers) as total_unique_sellers " +
-            "FROM mv_trades_daily WHERE day > NOW() - INTERVAL '" + days + " days'"
-        ));
+        // Distinct buyers and sellers over the period - merged daily sketches, daily distinct counts would add up repeat traders
+        Map<String, Object> buyerSellersStats = new LinkedHashMap<>();
+        buyerSellersStats.put("total_unique_buyers", sketches.estimate(Sketches.TRADE_BUYERS, days));
+        buyerSellersStats.put("total_unique_sellers", sketches.estimate(Sketches.TRADE_SELLERS, days));
+        buyerSellersStats.put("relative_error", HyperLogLog.RELATIVE_ERROR);
+        stats.put("buyerSellersStats", buyerSellersStats);
+        stats.put("freshness", trades.getFreshness());
         
         return stats;
     }
@@ -187,32 +262,36 @@ public class AdminController {
     ) {
         Map<String, Object> stats = new HashMap<>();
         
-        // Total issuances (partition-aware)
-        stats.put("totalIssuances", jdbc.queryForObject(
-            "SELECT COUNT(*) FROM fact_issuance WHERE issued_at > NOW() - INTERVAL '" + days + " days'", 
-            Integer.class
-        ));
-        
-        // Total CO2e issued (partition-aware)
-        stats.put("totalTco2e", jdbc.queryForObject(
-            "SELECT COALESCE(SUM(quantity_tco2e), 0) FROM fact_issuance WHERE issued_at > NOW() - INTERVAL '" + days + " days'", 
-            Double.class
-        ));
+        Optional<Map<String, Object>> hotIssuances = hotTotals(HotTables.ISSUANCES, days, "quantity_tco2e");
+        if (hotIssuances.isPresent()) {
+            // Total issuances and CO2e issued from the hot window
+            stats.put("totalIssuances", hotIssuances.get().get("count"));
+            stats.put("totalTco2e", hotIssuances.get().get("quantity_tco2e"));
+        } else {
+            // Total issuances (partition-aware)
+            stats.put("totalIssuances", jdbc.queryForObject(
+                "SELECT COUNT(*) FROM fact_issuance WHERE issued_at > NOW() - INTERVAL '" + days + " days'", 
+                Integer.class
+            ));
+            
+            // Total CO2e issued (partition-aware)
+            stats.put("totalTco2e", jdbc.queryForObject(
+                "SELECT COALESCE(SUM(quantity_tco2e), 0) FROM fact_issuance WHERE issued_at > NOW() - INTERVAL '" + days + " days'", 
+                Double.class
+            ));
+        }
         
-        // Environmental impact (partition-aware for better performance)
+        // Environmental impact - from the hot window, else one partition-aware scan
         Map<String, Object> impact = new HashMap<>();
-        impact.put("totalDistance", jdbc.queryForObject(
-            "SELECT COALESCE(SUM(distance_km), 0) FROM fact_issuance WHERE issued_at > NOW() - INTERVAL '90 days'", 
-            Double.class
-        ));
-        impact.put("totalEnergy", jdbc.queryForObject(
-            "SELECT COALESCE(SUM(energy_kwh), 0) FROM fact_issuance WHERE issued_at > NOW() - INTERVAL '90 days'", 
-            Double.class
-        ));
-        impact.put("totalCo2Avoided", jdbc.queryForObject(
-            "SELECT COALESCE(SUM(co2_avoided_kg), 0) FROM fact_issuance WHERE issued_at > NOW() - INTERVAL '90 days'", 
-            Double.class
-        ));
+        Map<String, Object> impactTotals = hotTotals(HotTables.ISSUANCES, 90, "distance_km", "energy_kwh", "co2_avoided_kg")
+            .orElseGet(() -> jdbc.queryForMap(
+                "SELECT COALESCE(SUM(distance_km), 0) as distance_km, COALESCE(SUM(energy_kwh), 0) as energy_kwh, " +
+                "COALESCE(SUM(co2_avoided_kg), 0) as co2_avoided_kg " +
+                "FROM fact_issuance WHERE issued_at > NOW() - INTERVAL '90 days'"
+            ));
+        impact.put("totalDistance", impactTotals.get("distance_km"));
+        impact.put("totalEnergy", impactTotals.get("energy_kwh"));
+        impact.put("totalCo2Avoided", impactTotals.get("co2_avoided_kg"));
         stats.put("environmentalImpact", impact);
         
         // Recent issuances (uses idx_fact_issuance_issued_at)
@@ -221,29 +300,53 @@ public class AdminController {
             "FROM fact_issuance ORDER BY issued_at DESC LIMIT 10"
         ));
         
-        // Issuance timeline - USE MATERIALIZED VIEW
+        // Issuance timeline - USE MATERIALIZED VIEW, live since its last refresh
+        FreshView issuances = freshViews.view("mv_issuance_daily");
         stats.put("timeline", jdbc.queryForList(
             "SELECT day as date, issuance_count as count, credits_issued as total_tco2e, avg_issuance " +
-            "FROM mv_issuance_daily " +
+            "FROM " + issuances.getRelation() + " " +
             "WHERE day > NOW() - INTERVAL '" + days + " days' " +
-            "ORDER BY day DESC"
+            "ORDER BY day DESC",
+            issuances.getArgs()
         ));
         
-        // Unique users from MV
-        stats.put("uniqueUsers", jdbc.queryForObject(
-            "SELECT SUM(unique_users) FROM mv_issuance_daily WHERE day > NOW() - INTERVAL '" + days + " days'",
-            Long.class
-        ));
+        // Unique users over the period - merged daily sketches
+        stats.put("uniqueUsers", sketches.estimate(Sketches.ISSUANCE_USERS, days));
+        stats.put("freshness", issuances.getFreshness());
         
         return stats;
     }
 
     /**
-     * Event Processing Health
+     * Event Processing Health. With resolution or maxPoints the timeline is read from the
+     * time-series tiers instead of hourly from consumed_events.
      */
     @GetMapping("/health/events")
-    public Map<String, Object> getEventHealth() {
+    public ResponseEntity<Map<String, Object>> getEventHealth(
+        @RequestParam(required = false) String resolution,
+        @RequestParam(required = false) Integer maxPoints
+    ) {
         Map<String, Object> health = new HashMap<>();
+        if (resolution != null || maxPoints != null) {
+            try {
+                Map<String, Object> timeline = readTier(
+                    TimeSeriesCatalog.EVENTS, OffsetDateTime.now(ZoneOffset.UTC).minusHours(24), resolution, maxPoints, false
+                );
+                health.put("resolution", timeline.get("resolution"));
+                health.put("processingTimeline", points(timeline, "bucket", "time", "event_count", "count"));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+        } else {
+            // Event processing timeline (hourly for last 24h)
+            health.put("processingTimeline", jdbc.queryForList(
+                "SELECT DATE_TRUNC('hour', received_at) as hour, COUNT(*) as count " +
+                "FROM consumed_events " +
+                "WHERE received_at > NOW() - INTERVAL '24 hours' " +
+                "GROUP BY DATE_TRUNC('hour', received_at) " +
+                "ORDER BY hour DESC"
+            ));
+        }
         
         // Total events processed
         health.put("totalEvents", jdbc.queryForObject("SELECT COUNT(*) FROM consumed_events", Integer.class));
@@ -260,16 +363,7 @@ public class AdminController {
         );
         health.put("latestEvent", latestEvent);
         
-        // Event processing timeline (hourly for last 24h)
-        health.put("processingTimeline", jdbc.queryForList(
-            "SELECT DATE_TRUNC('hour', received_at) as hour, COUNT(*) as count " +
-            "FROM consumed_events " +
-            "WHERE received_at > NOW() - INTERVAL '24 hours' " +
-            "GROUP BY DATE_TRUNC('hour', received_at) " +
-            "ORDER BY hour DESC"
-        ));
-        
-        return health;
+        return ResponseEntity.ok(health);
     }
 
     /**
@@ -277,6 +371,10 @@ public class AdminController {
      */
     @GetMapping("/metrics/summary")
     public Map<String, Object> getSystemMetrics() {
+        return responseCache.get("metrics-summary", Map.of(), this::loadSystemMetrics);
+    }
+
+    private Map<String, Object> loadSystemMetrics() {
         Map<String, Object> metrics = new HashMap<>();
         
         // Core metrics
@@ -311,11 +409,15 @@ public class AdminController {
     }
 
     /**
-     * Time-series data for Grafana charts - Optimized with materialized views
+     * Time-series data for Grafana charts - Optimized with materialized views.
+     * With resolution or maxPoints, trades, issuances and events are read from the time-series
+     * tiers at that resolution, or the finest one giving at most maxPoints points.
      */
     @GetMapping("/metrics/timeseries")
-    public Map<String, Object> getTimeSeriesData(
-        @RequestParam(defaultValue = "30") int days
+    public ResponseEntity<Map<String, Object>> getTimeSeriesData(
+        @RequestParam(defaultValue = "30") int days,
+        @RequestParam(required = false) String resolution,
+        @RequestParam(required = false) Integer maxPoints
     ) {
         Map<String, Object> timeseries = new HashMap<>();
         
@@ -327,23 +429,50 @@ public class AdminController {
             "GROUP BY DATE(created_at) " +
             "ORDER BY date"
         ));
+
+        if (resolution != null || maxPoints != null) {
+            try {
+                OffsetDateTime from = daysAgo(days);
+                Map<String, Object> trades = readTier(TimeSeriesCatalog.TRADES, from, resolution, maxPoints, false);
+                timeseries.put("resolution", trades.get("resolution"));
+                timeseries.put("tradeVolume", points(trades,
+                    "bucket", "date", "event_count", "trades", "amount", "volume", "quantity", "credits_sold"));
+                timeseries.put("carbonIssuance", points(
+                    readTier(TimeSeriesCatalog.ISSUANCES, from, resolution, maxPoints, false),
+                    "bucket", "date", "event_count", "count", "quantity", "total_tco2e"));
+                timeseries.put("eventProcessing", points(
+                    readTier(TimeSeriesCatalog.EVENTS, from, resolution, maxPoints, false),
+                    "bucket", "date", "event_count", "count"));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+            return ResponseEntity.ok(timeseries);
+        }
         
-        // Trade volume over time - USE MATERIALIZED VIEW
+        // Trade volume over time - USE MATERIALIZED VIEW, live since its last refresh
+        FreshView trades = freshViews.view("mv_trades_daily");
         timeseries.put("tradeVolume", jdbc.queryForList(
             "SELECT day as date, trade_count as trades, revenue as volume, " +
             "       credits_sold, avg_unit_price, unique_buyers, unique_sellers " +
-            "FROM mv_trades_daily " +
+            "FROM " + trades.getRelation() + " " +
             "WHERE day > NOW() - INTERVAL '" + days + " days' " +
-            "ORDER BY day"
+            "ORDER BY day",
+            trades.getArgs()
         ));
         
         // Carbon credits issued over time - USE MATERIALIZED VIEW
+        FreshView issuances = freshViews.view("mv_issuance_daily");
         timeseries.put("carbonIssuance", jdbc.queryForList(
             "SELECT day as date, issuance_count as count, credits_issued as total_tco2e, " +
             "       avg_issuance, unique_users " +
-            "FROM mv_issuance_daily " +
+            "FROM " + issuances.getRelation() + " " +
             "WHERE day > NOW() - INTERVAL '" + days + " days' " +
-            "ORDER BY day"
+            "ORDER BY day",
+            issuances.getArgs()
+        ));
+        timeseries.put("freshness", Map.of(
+            "tradeVolume", trades.getFreshness(),
+            "carbonIssuance", issuances.getFreshness()
         ));
         
         // Event processing rate (uses idx_consumed_events_received_at)
@@ -355,7 +484,7 @@ public class AdminController {
             "ORDER BY date"
         ));
         
-        return timeseries;
+        return ResponseEntity.ok(timeseries);
     }
 
     /**
@@ -396,4 +525,61 @@ public class AdminController {
         
         return quality;
     }
+
+    private Map<String, Object> readTier(TimeSeries series, OffsetDateTime from, String resolution,
+                                         Integer maxPoints, boolean byKey) {
+        Resolution tier = null;
+        if (resolution != null) {
+            tier = Resolution.byName(resolution).orElseThrow(() -> new IllegalArgumentException(
+                "Unknown resolution: " + resolution + ", expected minute, hour, day or month"));
+        }
+        if (maxPoints != null && maxPoints < 1) {
+            throw new IllegalArgumentException("maxPoints must be positive");
+        }
+        return timeSeries.read(series, from, OffsetDateTime.now(ZoneOffset.UTC), tier,
+            maxPoints != null ? maxPoints : DEFAULT_MAX_POINTS, byKey);
+    }
+
+    /**
+     * Row count and measure sums over the last days from the hot window, empty when the window
+     * does not reach back that far
+     */
+    private Optional<Map<String, Object>> hotTotals(HotTable table, int days, String... measures) {
+        HotQuery query = HotQuery.builder()
+            .table(table)
+            .from(daysAgo(days).toInstant())
+            .measures(List.of(measures))
+            .build();
+        return hotWindow.tryAggregate(query).map(rows -> {
+            if (!rows.isEmpty()) {
+                return rows.get(0);
+            }
+            Map<String, Object> zero = new LinkedHashMap<>();
+            zero.put("count", 0L);
+            for (String measure : measures) {
+                zero.put(measure, BigDecimal.ZERO);
+            }
+            return zero;
+        });
+    }
+
+    private static OffsetDateTime daysAgo(int days) {
+        return OffsetDateTime.now(ZoneOffset.UTC).minusDays(days);
+    }
+
+    /**
+     * Tier points with their columns renamed, columns given as pairs of tier column and name
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> points(Map<String, Object> tier, String... columns) {
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (Map<String, Object> row : (List<Map<String, Object>>) tier.get("points")) {
+            Map<String, Object> point = new LinkedHashMap<>();
+            for (int i = 0; i < columns.length; i += 2) {
+                point.put(columns[i + 1], row.get(columns[i]));
+            }
+            points.add(point);
+        }
+        return points;
+    }
 }
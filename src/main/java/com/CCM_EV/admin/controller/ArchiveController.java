@@ -0,0 +1,67 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.archive.ArchiveQueryService;
+import com.CCM_EV.admin.archive.ArchiveService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Partitions archived to files, and reports that reach into them
+ */
+@RestController
+@RequestMapping("/api/admin/archive")
+@RequiredArgsConstructor
+@Tag(name = "Archive", description = "Fact table partitions archived past retention")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class ArchiveController {
+
+    private final ArchiveService archiveService;
+    private final ArchiveQueryService archiveQueryService;
+
+    @GetMapping("/partitions")
+    @Operation(summary = "List archived partitions", description = "Manifest of detached and archived partitions with their files")
+    public Map<String, Object> getPartitions() {
+        return archiveService.getState();
+    }
+
+    @PostMapping("/partitions/archive")
+    @Operation(summary = "Archive detached partitions now",
+               description = "Write every detached partition not archived yet to its file and drop it")
+    public Map<String, Object> archivePending() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("actions", archiveService.archivePending());
+        result.put("partitions", archiveService.getManifest());
+        return result;
+    }
+
+    @GetMapping("/{table}/aggregate")
+    @Operation(summary = "Aggregate a fact table over live and archived data",
+               description = "Row count and sums of the given columns per group in [from, to); " +
+                             "group by table columns or 'day'. Partitions found neither in the database nor " +
+                             "in an archive file are listed in missingPartitions and complete is false")
+    public ResponseEntity<Map<String, Object>> aggregate(
+            @PathVariable String table,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "region") List<String> groupBy,
+            @RequestParam(defaultValue = "") List<String> sum
+    ) {
+        try {
+            return ResponseEntity.ok(archiveQueryService.aggregate(table, from, to, groupBy, sum));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
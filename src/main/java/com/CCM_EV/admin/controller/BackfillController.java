@@ -0,0 +1,59 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.backfill.BackfillDataset;
+import com.CCM_EV.admin.backfill.BackfillJob;
+import com.CCM_EV.admin.backfill.BackfillService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk loading of historical events into the reporting tables
+ */
+@RestController
+@RequestMapping("/api/admin/backfill")
+@RequiredArgsConstructor
+@Tag(name = "Backfill", description = "Bulk load historical events from NDJSON files")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class BackfillController {
+
+    private final BackfillService backfillService;
+
+    @PostMapping("/jobs")
+    @Operation(summary = "Start a backfill",
+               description = "Load NDJSON files (relative to the backfill directory) of one event type")
+    public ResponseEntity<Map<String, Object>> startJob(
+            @RequestParam BackfillDataset dataset,
+            @RequestParam List<String> files
+    ) {
+        try {
+            BackfillJob job = backfillService.submit(dataset, files);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toMap());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs")
+    @Operation(summary = "List backfill jobs")
+    public List<Map<String, Object>> getJobs() {
+        return backfillService.getJobs().stream().map(BackfillJob::toMap).toList();
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    @Operation(summary = "Get backfill job progress")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId) {
+        return backfillService.getJob(jobId)
+                .map(job -> ResponseEntity.ok(job.toMap()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
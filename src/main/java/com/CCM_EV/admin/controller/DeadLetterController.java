@@ -0,0 +1,116 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.mq.dlq.DeadLetterFilter;
+import com.CCM_EV.admin.mq.dlq.DeadLetterReplayService;
+import com.CCM_EV.admin.mq.dlq.DeadLetterStore;
+import com.CCM_EV.admin.mq.dlq.ReplayJob;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Browse and replay dead-lettered messages.
+ * Filters: sourceQueue, eventType, errorClass, errorContains, status, from, to
+ */
+@RestController
+@RequestMapping("/api/admin/dead-letters")
+@RequiredArgsConstructor
+@Tag(name = "Dead Letters", description = "Browse and replay messages that failed processing")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class DeadLetterController {
+
+    private final DeadLetterStore store;
+    private final DeadLetterReplayService replayService;
+
+    @GetMapping
+    @Operation(summary = "List dead letters", description = "Newest first, filtered by event type, error, queue or status")
+    public Map<String, Object> getDeadLetters(
+            @ModelAttribute DeadLetterFilter filter,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size
+    ) {
+        return Map.of(
+            "items", store.search(filter, page, size),
+            "page", page,
+            "size", size,
+            "retrievedAt", OffsetDateTime.now()
+        );
+    }
+
+    @GetMapping("/summary")
+    @Operation(summary = "Dead letter counts by queue, event type, error and status")
+    public Map<String, Object> getSummary(@ModelAttribute DeadLetterFilter filter) {
+        return Map.of(
+            "groups", store.summarize(filter),
+            "retrievedAt", OffsetDateTime.now()
+        );
+    }
+
+    @GetMapping("/{id}")
+    @Operation(summary = "Get a dead letter with its payload and headers")
+    public ResponseEntity<Map<String, Object>> getDeadLetter(@PathVariable long id) {
+        return store.findById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/discard")
+    @Operation(summary = "Discard pending dead letters matching the filter")
+    public Map<String, Object> discard(@ModelAttribute DeadLetterFilter filter) {
+        return Map.of(
+            "discarded", store.discard(filter),
+            "discardedAt", OffsetDateTime.now()
+        );
+    }
+
+    @PostMapping("/replay")
+    @Operation(summary = "Replay pending dead letters",
+               description = "Re-publish matching pending letters to their source queue at the given rate")
+    public ResponseEntity<Map<String, Object>> replay(
+            @ModelAttribute DeadLetterFilter filter,
+            @RequestParam(required = false) Integer ratePerSecond,
+            @RequestParam(required = false) Long limit
+    ) {
+        try {
+            ReplayJob job = replayService.start(filter, ratePerSecond, limit);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toMap());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/replay/jobs")
+    @Operation(summary = "List replay jobs")
+    public List<Map<String, Object>> getReplayJobs() {
+        return replayService.getJobs().stream().map(ReplayJob::toMap).toList();
+    }
+
+    @GetMapping("/replay/jobs/{jobId}")
+    @Operation(summary = "Get replay job progress")
+    public ResponseEntity<Map<String, Object>> getReplayJob(@PathVariable String jobId) {
+        return replayService.getJob(jobId)
+                .map(job -> ResponseEntity.ok(job.toMap()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/replay/jobs/{jobId}/cancel")
+    @Operation(summary = "Stop a running replay after its current page")
+    public ResponseEntity<Map<String, Object>> cancelReplayJob(@PathVariable String jobId) {
+        return replayService.getJob(jobId)
+                .map(job -> {
+                    job.cancel();
+                    return ResponseEntity.ok(job.toMap());
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
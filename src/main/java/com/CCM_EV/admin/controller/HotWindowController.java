@@ -0,0 +1,101 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.hotwindow.HotQuery;
+import com.CCM_EV.admin.hotwindow.HotTable;
+import com.CCM_EV.admin.hotwindow.HotTables;
+import com.CCM_EV.admin.hotwindow.HotWindowService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * In-process columnar window of the recent facts
+ */
+@RestController
+@RequestMapping("/api/admin/hot-window")
+@RequiredArgsConstructor
+@Tag(name = "Hot Window", description = "Recent facts held in process for the dashboards' aggregates")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class HotWindowController {
+
+    private final HotWindowService hotWindow;
+
+    @GetMapping
+    @Operation(summary = "Hot window state", description = "Window start and, per table, whether it is loaded, its rows and off-heap size")
+    public Map<String, Object> getState() {
+        return hotWindow.getState();
+    }
+
+    @GetMapping("/aggregate")
+    @Operation(summary = "Aggregate a hot table",
+               description = "Row count and measure sums per group over the last days; filters are dimension:value, repeated for several values")
+    public ResponseEntity<Map<String, Object>> aggregate(
+            @RequestParam String table,
+            @RequestParam(defaultValue = "7") int days,
+            @RequestParam(required = false) List<String> groupBy,
+            @RequestParam(required = false) List<String> measures,
+            @RequestParam(required = false) List<String> filter
+    ) {
+        Optional<HotTable> hotTable = HotTables.byName(table);
+        if (hotTable.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            HotQuery.HotQueryBuilder query = HotQuery.builder()
+                .table(hotTable.get())
+                .from(Instant.now().minus(Duration.ofDays(days)))
+                .filters(filters(filter));
+            if (groupBy != null) {
+                query.groupBy(groupBy);
+            }
+            if (measures != null) {
+                query.measures(measures);
+            }
+            Optional<List<Map<String, Object>>> rows = hotWindow.tryAggregate(query.build());
+            if (rows.isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of(
+                    "error", "The hot window does not cover the last " + days + " days of " + table));
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("table", table);
+            result.put("days", days);
+            result.put("rows", rows.get());
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Allowed values per dimension from dimension:value filters
+     */
+    private static Map<String, Set<String>> filters(List<String> filter) {
+        Map<String, Set<String>> filters = new LinkedHashMap<>();
+        if (filter == null) {
+            return filters;
+        }
+        for (String condition : filter) {
+            int colon = condition.indexOf(':');
+            if (colon < 1) {
+                throw new IllegalArgumentException("Filter must be dimension:value, got " + condition);
+            }
+            filters.computeIfAbsent(condition.substring(0, colon), dimension -> new LinkedHashSet<>())
+                .add(condition.substring(colon + 1));
+        }
+        return filters;
+    }
+}
@@ -0,0 +1,49 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.metrics.BusinessCounters;
+import com.CCM_EV.admin.mq.dispatch.AdaptiveConcurrencyTuner;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Event ingestion tuning state and the totals it maintains
+ */
+@RestController
+@RequestMapping("/api/admin/ingestion")
+@RequiredArgsConstructor
+@Tag(name = "Ingestion", description = "Event ingestion concurrency and business totals")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class IngestionController {
+
+    private final AdaptiveConcurrencyTuner tuner;
+    private final BusinessCounters businessCounters;
+
+    @GetMapping("/concurrency")
+    @Operation(summary = "Adaptive concurrency state",
+               description = "Active lanes, batch size per queue, last signals and recent decisions")
+    public Map<String, Object> getConcurrency() {
+        Map<String, Object> result = new LinkedHashMap<>(tuner.getState());
+        result.put("retrievedAt", OffsetDateTime.now());
+        return result;
+    }
+
+    @GetMapping("/counters")
+    @Operation(summary = "Business totals",
+               description = "In-memory totals maintained by the consumers and their drift from the database at the last reconciliation")
+    public Map<String, Object> getCounters() {
+        Map<String, Object> result = new LinkedHashMap<>(businessCounters.getState());
+        result.put("retrievedAt", OffsetDateTime.now());
+        return result;
+    }
+}
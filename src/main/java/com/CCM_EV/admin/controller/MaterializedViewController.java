@@ -5,6 +5,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -30,32 +31,39 @@ public class MaterializedViewController {
     private final JdbcTemplate jdbc;
     
     @PostMapping("/{viewName}/refresh")
-    @Operation(summary = "Manually refresh a materialized view")
-    public Map<String, Object> refreshView(@PathVariable String viewName) {
+    @Operation(summary = "Manually refresh a materialized view",
+               description = "Refreshes the view, then the views depending on it")
+    public ResponseEntity<Map<String, Object>> refreshView(@PathVariable String viewName) {
+        if (!mvService.isView(viewName)) {
+            return ResponseEntity.notFound().build();
+        }
         OffsetDateTime startTime = OffsetDateTime.now();
-        mvService.refreshView(viewName);
+        List<Map<String, Object>> results = mvService.refresh(List.of(viewName)).join();
         OffsetDateTime endTime = OffsetDateTime.now();
         
-        return Map.of(
+        return ResponseEntity.ok(Map.of(
             "viewName", viewName,
             "refreshedAt", endTime,
             "durationMs", java.time.Duration.between(startTime, endTime).toMillis(),
-            "status", "SUCCESS"
-        );
+            "status", overallStatus(results),
+            "views", results
+        ));
     }
     
     @PostMapping("/refresh-all")
-    @Operation(summary = "Refresh all materialized views")
+    @Operation(summary = "Refresh all materialized views",
+               description = "Independent views refresh in parallel, dependent views after their dependencies")
     public Map<String, Object> refreshAllViews() {
         OffsetDateTime startTime = OffsetDateTime.now();
-        mvService.refreshAllViews();
+        List<Map<String, Object>> results = mvService.refreshAllViews();
         OffsetDateTime endTime = OffsetDateTime.now();
         
         return Map.of(
             "refreshedAt", endTime,
             "durationMs", java.time.Duration.between(startTime, endTime).toMillis(),
-            "status", "SUCCESS",
-            "message", "All materialized views refreshed"
+            "status", overallStatus(results),
+            "message", "All materialized views refreshed",
+            "views", results
         );
     }
     
@@ -64,25 +72,17 @@ public class MaterializedViewController {
     public Map<String, Object> getStatus() {
         Map<String, Object> result = new HashMap<>();
         
-        String[] views = {
-            "mv_trades_daily",
-            "mv_issuance_daily",
-            "mv_payments_daily",
-            "mv_user_activity_daily"
-        };
-        
         List<Map<String, Object>> viewStatus = new java.util.ArrayList<>();
         
-        for (String viewName : views) {
+        for (String viewName : mvService.getViews()) {
             Map<String, Object> status = new HashMap<>();
             status.put("view_name", viewName);
             status.put("viewName", viewName);
+            status.put("cron", mvService.getView(viewName).getCron());
+            status.put("dependsOn", mvService.getView(viewName).getDependsOn());
             
-            // Get row count
-            Long rowCount = jdbc.queryForObject(
-                "SELECT COUNT(*) FROM " + viewName,
-                Long.class
-            );
+            // Estimated row count from the catalog, the last refresh analyzes the view
+            Long rowCount = mvService.getEstimatedRowCount(viewName);
             status.put("row_count", rowCount);
             status.put("rowCount", rowCount);
             
@@ -100,14 +100,20 @@ public class MaterializedViewController {
             status.put("lastRefresh", lastRefresh);
             
             // Get data freshness
+            Long pendingChanges = mvService.getPendingChanges(viewName);
+            status.put("pendingChanges", pendingChanges);
+            status.put("refreshing", mvService.isRefreshing(viewName));
             if (lastRefresh != null) {
                 long hoursSinceRefresh = java.time.Duration.between(
                     lastRefresh, 
                     OffsetDateTime.now()
                 ).toHours();
                 status.put("hoursSinceRefresh", hoursSinceRefresh);
-                status.put("isStale", hoursSinceRefresh > 2); // Stale if > 2 hours
             }
+            // Stale once its sources changed; views without known sources after 2 hours
+            status.put("isStale", pendingChanges != null
+                ? pendingChanges > 0
+                : lastRefresh == null || status.get("hoursSinceRefresh") instanceof Long hours && hours > 2);
             
             viewStatus.add(status);
         }
@@ -235,4 +241,12 @@ public class MaterializedViewController {
             "retrievedAt", OffsetDateTime.now()
         );
     }
+    
+    private static String overallStatus(List<Map<String, Object>> results) {
+        return results.stream()
+            .map(r -> (String) r.get("status"))
+            .filter(status -> !MaterializedViewService.STATUS_SUCCESS.equals(status))
+            .findFirst()
+            .orElse(MaterializedViewService.STATUS_SUCCESS);
+    }
 }
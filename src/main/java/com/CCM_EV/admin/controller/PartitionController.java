@@ -0,0 +1,47 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.partition.PartitionManager;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Partition lifecycle of the fact tables
+ */
+@RestController
+@RequestMapping("/api/admin/partitions")
+@RequiredArgsConstructor
+@Tag(name = "Partitions", description = "Monthly partitions of the fact tables")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class PartitionController {
+
+    private final PartitionManager partitionManager;
+
+    @GetMapping
+    @Operation(summary = "Get partitions and maintenance state",
+               description = "Partitions of every managed table with estimated rows, and the last run of each job")
+    public Map<String, Object> getState() {
+        return partitionManager.getState();
+    }
+
+    @PostMapping("/maintenance")
+    @Operation(summary = "Run partition maintenance now",
+               description = "Create partitions ahead, split rows out of default partitions and analyze new partitions")
+    public Map<String, Object> runMaintenance() {
+        partitionManager.maintain();
+        return partitionManager.getState();
+    }
+
+    @PostMapping("/retention")
+    @Operation(summary = "Enforce retention now", description = "Detach partitions older than the table's retention")
+    public Map<String, Object> runRetention() {
+        partitionManager.enforceRetention();
+        return partitionManager.getState();
+    }
+}
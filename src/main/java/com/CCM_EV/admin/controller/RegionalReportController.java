@@ -1,5 +1,13 @@
 package com.CCM_EV.admin.controller;
 
+import com.CCM_EV.admin.cache.ResponseCache;
+import com.CCM_EV.admin.hotwindow.HotQuery;
+import com.CCM_EV.admin.hotwindow.HotTables;
+import com.CCM_EV.admin.hotwindow.HotWindowService;
+import com.CCM_EV.admin.query.AggregateNavigator;
+import com.CCM_EV.admin.query.ReportSubjects;
+import com.CCM_EV.admin.rollup.SketchService;
+import com.CCM_EV.admin.rollup.Sketches;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -8,9 +16,16 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Regional Reporting Controller - comprehensive reports by region
@@ -24,6 +39,10 @@ import java.util.Map;
 public class RegionalReportController {
     
     private final JdbcTemplate jdbc;
+    private final AggregateNavigator navigator;
+    private final ResponseCache responseCache;
+    private final SketchService sketches;
+    private final HotWindowService hotWindow;
     
     @GetMapping("/regional/co2")
     @Operation(summary = "Get regional CO2 statistics - Optimized with view")
@@ -120,23 +139,31 @@ public class RegionalReportController {
     public Map<String, Object> getRegionalTransactionStats(
             @RequestParam(defaultValue = "30") int days
     ) {
+        return responseCache.get("regional-transactions", Map.of("days", days), () -> loadRegionalTransactionStats(days));
+    }
+
+    private Map<String, Object> loadRegionalTransactionStats(int days) {
         Map<String, Object> result = new HashMap<>();
         
-        // Transactions by region
-        List<Map<String, Object>> byRegion = jdbc.queryForList("""
-            SELECT 
-                COALESCE(region, 'Unknown') as region,
-                COUNT(*) as transaction_count,
-                SUM(CASE WHEN is_auction THEN 1 ELSE 0 END) as auction_count,
-                SUM(CASE WHEN is_auction THEN 0 ELSE 1 END) as fixed_count
-            FROM fact_trade
-            WHERE executed_at > NOW() - INTERVAL '? days'
-            GROUP BY COALESCE(region, 'Unknown')
-            ORDER BY transaction_count DESC
-            """.replace("?", String.valueOf(days)));
+        // Transactions by region - USE ROLLUP via the aggregate navigator
+        Map<String, Object> trades = navigator.query(ReportSubjects.TRADES,
+            List.of("trade_count", "auction_count"), List.of("region"), days);
+        List<Map<String, Object>> byRegion = new ArrayList<>();
+        for (Map<String, Object> row : rows(trades)) {
+            long count = ((Number) row.get("trade_count")).longValue();
+            long auctions = ((Number) row.get("auction_count")).longValue();
+            Map<String, Object> region = new LinkedHashMap<>();
+            region.put("region", row.get("region"));
+            region.put("transaction_count", count);
+            region.put("auction_count", auctions);
+            region.put("fixed_count", count - auctions);
+            byRegion.add(region);
+        }
+        byRegion.sort(Comparator.comparing((Map<String, Object> row) -> (Long) row.get("transaction_count")).reversed());
         
         result.put("byRegion", byRegion);
         result.put("days", days);
+        result.put("source", trades.get("source"));
         
         return result;
     }
@@ -144,6 +171,10 @@ public class RegionalReportController {
     @GetMapping("/regional/users")
     @Operation(summary = "Get regional user distribution - Optimized with view")
     public Map<String, Object> getRegionalUserStats() {
+        return responseCache.get("regional-users", Map.of(), this::loadRegionalUserStats);
+    }
+
+    private Map<String, Object> loadRegionalUserStats() {
         Map<String, Object> result = new HashMap<>();
         
         // Users by region and role - USE REGIONAL VIEW
@@ -176,60 +207,75 @@ public class RegionalReportController {
     
     @GetMapping("/comprehensive")
     @Operation(summary = "Get comprehensive report - Optimized", 
-               description = "Get all metrics (CO2, revenue, transactions, users) using materialized views and optimized queries")
+               description = "Get all metrics (CO2, revenue, transactions, users) from the sources picked by the aggregate navigator")
     public Map<String, Object> getComprehensiveReport(
             @RequestParam(defaultValue = "30") int days
     ) {
+        return responseCache.get("comprehensive-report", Map.of("days", days), () -> loadComprehensiveReport(days));
+    }
+
+    private Map<String, Object> loadComprehensiveReport(int days) {
         Map<String, Object> result = new HashMap<>();
         
-        // CO2 metrics - USE MATERIALIZED VIEW for fast aggregation
-        Map<String, Object> co2 = jdbc.queryForMap("""
-            SELECT 
-                COALESCE(SUM(credits_issued), 0) as total_tco2e,
-                COUNT(*) as total_issuances,
-                COALESCE(SUM(unique_users), 0) as unique_contributors
-            FROM mv_issuance_daily
-            WHERE day > NOW() - INTERVAL '? days'
-            """.replace("?", String.valueOf(days)));
+        Map<String, Object> sources = new LinkedHashMap<>();
         
-        // Additional CO2 details from fact table (partition-aware)
-        Map<String, Object> co2Details = jdbc.queryForMap("""
-            SELECT 
-                COALESCE(SUM(distance_km), 0) as total_distance_km,
-                COALESCE(SUM(co2_avoided_kg), 0) as total_co2_avoided_kg,
-                COALESCE(SUM(energy_kwh), 0) as total_energy_kwh
-            FROM fact_issuance 
-            WHERE issued_at > NOW() - INTERVAL '? days'
-            """.replace("?", String.valueOf(days)));
-        co2.putAll(co2Details);
+        // CO2 metrics - USE ROLLUP via the aggregate navigator
+        Map<String, Object> issuances = navigator.query(ReportSubjects.ISSUANCES,
+            List.of("credits_issued", "issuance_count", "distance_km", "co2_avoided_kg", "energy_kwh"), List.of(), days);
+        Map<String, Object> issuanceTotals = rows(issuances).get(0);
+        Map<String, Object> co2 = new HashMap<>();
+        co2.put("total_tco2e", orZero(issuanceTotals.get("credits_issued")));
+        co2.put("total_issuances", orZero(issuanceTotals.get("issuance_count")));
+        // Distinct users over the whole period cannot be summed from daily rows, the daily sketches merge
+        co2.put("unique_contributors", sketches.estimate(Sketches.ISSUANCE_USERS, days));
+        co2.put("total_distance_km", orZero(issuanceTotals.get("distance_km")));
+        co2.put("total_co2_avoided_kg", orZero(issuanceTotals.get("co2_avoided_kg")));
+        co2.put("total_energy_kwh", orZero(issuanceTotals.get("energy_kwh")));
         result.put("co2_metrics", co2);
+        sources.put("co2_metrics", issuances.get("source"));
+        sources.put("co2_metrics.unique_contributors", "rollup_sketches");
         
-        // Revenue metrics - USE MATERIALIZED VIEW
-        List<Map<String, Object>> revenue = jdbc.queryForList("""
-            SELECT 
-                'VND' as currency,
-                COALESCE(SUM(revenue), 0) as total_revenue,
-                COALESCE(AVG(avg_unit_price), 0) as avg_price,
-                SUM(trade_count) as trade_count,
-                SUM(credits_sold) as total_credits_sold,
-                SUM(unique_buyers) as unique_buyers,
-                SUM(unique_sellers) as unique_sellers
-            FROM mv_trades_daily
-            WHERE day > NOW() - INTERVAL '? days'
-            """.replace("?", String.valueOf(days)));
-        result.put("revenue_metrics", revenue.isEmpty() ? Map.of() : revenue.get(0));
-        
-        // Transaction metrics - partition-aware with single query
-        Map<String, Object> transactions = jdbc.queryForMap("""
+        // Transaction metrics - from the hot window, else partition-aware with single query;
+        // distinct traders from the sketches
+        HotQuery marketplace = HotQuery.builder()
+            .table(HotTables.TRADES)
+            .from(Instant.now().minus(Duration.ofDays(days)))
+            .groupBy("marketplace")
+            .build();
+        Optional<List<Map<String, Object>>> hotTrades = hotWindow.tryAggregate(marketplace);
+        Map<String, Object> transactions = hotTrades.map(rows -> {
+            Map<String, Object> totals = new LinkedHashMap<>();
+            totals.put("total_trades", rows.stream().mapToLong(row -> (Long) row.get("count")).sum());
+            totals.put("marketplace_trades", rows.stream().filter(row -> "true".equals(row.get("marketplace")))
+                .mapToLong(row -> (Long) row.get("count")).sum());
+            return totals;
+        }).orElseGet(() -> jdbc.queryForMap("""
             SELECT 
                 COUNT(*) as total_trades,
-                SUM(CASE WHEN listing_id IS NOT NULL THEN 1 ELSE 0 END) as marketplace_trades,
-                COUNT(DISTINCT buyer_id) as unique_buyers,
-                COUNT(DISTINCT seller_id) as unique_sellers
+                SUM(CASE WHEN listing_id IS NOT NULL THEN 1 ELSE 0 END) as marketplace_trades
             FROM fact_trade 
             WHERE executed_at > NOW() - INTERVAL '? days'
-            """.replace("?", String.valueOf(days)));
+            """.replace("?", String.valueOf(days))));
+        transactions.put("unique_buyers", sketches.estimate(Sketches.TRADE_BUYERS, days));
+        transactions.put("unique_sellers", sketches.estimate(Sketches.TRADE_SELLERS, days));
         result.put("transaction_metrics", transactions);
+        sources.put("transaction_metrics", hotTrades.isPresent() ? "hot_window" : "fact_trade");
+        sources.put("transaction_metrics.unique_buyers", "rollup_sketches");
+        
+        // Revenue metrics - USE ROLLUP via the aggregate navigator, distinct counts from the transaction metrics
+        Map<String, Object> trades = navigator.query(ReportSubjects.TRADES,
+            List.of("revenue", "avg_unit_price", "trade_count", "credits_sold"), List.of(), days);
+        Map<String, Object> tradeTotals = rows(trades).get(0);
+        Map<String, Object> revenue = new HashMap<>();
+        revenue.put("currency", "VND");
+        revenue.put("total_revenue", orZero(tradeTotals.get("revenue")));
+        revenue.put("avg_price", orZero(tradeTotals.get("avg_unit_price")));
+        revenue.put("trade_count", tradeTotals.get("trade_count"));
+        revenue.put("total_credits_sold", tradeTotals.get("credits_sold"));
+        revenue.put("unique_buyers", transactions.get("unique_buyers"));
+        revenue.put("unique_sellers", transactions.get("unique_sellers"));
+        result.put("revenue_metrics", revenue);
+        sources.put("revenue_metrics", trades.get("source"));
         
         // User metrics - use indexed role column
         Map<String, Object> users = new HashMap<>();
@@ -239,28 +285,39 @@ public class RegionalReportController {
         ));
         result.put("user_metrics", users);
         
-        // Regional breakdown - USE REGIONAL VIEWS (much faster)
-        result.put("regional_breakdown", jdbc.queryForList("""
-            SELECT 
-                COALESCE(t.region, c.region) as region,
-                SUM(t.trade_count) as trades,
-                SUM(t.total_amount) as revenue,
-                SUM(c.issuance_count) as issuances,
-                SUM(c.total_tco2e) as tco2e
-            FROM v_regional_trade_stats t
-            FULL OUTER JOIN v_regional_co2_stats c ON t.region = c.region AND t.date = c.date
-            WHERE (t.date > NOW() - INTERVAL '? days' OR c.date > NOW() - INTERVAL '? days')
-            GROUP BY COALESCE(t.region, c.region)
-            ORDER BY revenue DESC NULLS LAST
-            """.replace("?", String.valueOf(days))));
+        // Regional breakdown - per-region totals of both rollups, merged by region
+        Map<String, Object> tradesByRegion = navigator.query(ReportSubjects.TRADES,
+            List.of("trade_count", "revenue"), List.of("region"), days);
+        Map<String, Object> issuancesByRegion = navigator.query(ReportSubjects.ISSUANCES,
+            List.of("issuance_count", "credits_issued"), List.of("region"), days);
+        Map<Object, Map<String, Object>> regions = new LinkedHashMap<>();
+        for (Map<String, Object> row : rows(tradesByRegion)) {
+            Map<String, Object> region = regions.computeIfAbsent(row.get("region"), RegionalReportController::region);
+            region.put("trades", row.get("trade_count"));
+            region.put("revenue", row.get("revenue"));
+        }
+        for (Map<String, Object> row : rows(issuancesByRegion)) {
+            Map<String, Object> region = regions.computeIfAbsent(row.get("region"), RegionalReportController::region);
+            region.put("issuances", row.get("issuance_count"));
+            region.put("tco2e", row.get("credits_issued"));
+        }
+        sketches.estimateByRegion(Sketches.TRADE_BUYERS, days).forEach((name, buyers) ->
+            regions.computeIfAbsent(name, RegionalReportController::region).put("unique_buyers", buyers));
+        sketches.estimateByRegion(Sketches.ISSUANCE_USERS, days).forEach((name, contributors) ->
+            regions.computeIfAbsent(name, RegionalReportController::region).put("unique_contributors", contributors));
+        List<Map<String, Object>> breakdown = new ArrayList<>(regions.values());
+        breakdown.sort(Comparator.comparing((Map<String, Object> row) -> (BigDecimal) row.get("revenue"),
+            Comparator.nullsFirst(Comparator.<BigDecimal>naturalOrder())).reversed());
+        result.put("regional_breakdown", breakdown);
+        sources.put("regional_breakdown", List.of(tradesByRegion.get("source"), issuancesByRegion.get("source"), "rollup_sketches"));
         
         result.put("period_days", days);
         result.put("generated_at", java.time.OffsetDateTime.now());
         result.put("optimization_info", Map.of(
-            "uses_materialized_views", true,
+            "uses_rollups", true,
             "uses_partition_pruning", true,
-            "uses_regional_views", true,
-            "query_optimization", "All queries use indexes and pre-aggregated views for optimal performance"
+            "sources", sources,
+            "query_optimization", "Sources picked by the aggregate navigator, distinct counts from merged HyperLogLog sketches"
         ));
         
         return result;
@@ -289,16 +346,55 @@ public class RegionalReportController {
         activityMetrics.put("total_activities", jdbc.queryForObject(
             "SELECT COUNT(*) FROM fact_user_activity", Long.class
         ));
-        activityMetrics.put("activities_24h", jdbc.queryForObject(
-            "SELECT COUNT(*) FROM fact_user_activity WHERE occurred_at > NOW() - INTERVAL '24 hours'", Long.class
-        ));
-        activityMetrics.put("by_type", jdbc.queryForList(
-            "SELECT event_type, COUNT(*) as count FROM fact_user_activity WHERE occurred_at > NOW() - INTERVAL '7 days' GROUP BY event_type ORDER BY count DESC LIMIT 10"
-        ));
+        // Recent activity - from the hot window, else partition-aware
+        Instant now = Instant.now();
+        HotQuery last24h = HotQuery.builder()
+            .table(HotTables.ACTIVITIES)
+            .from(now.minus(Duration.ofHours(24)))
+            .build();
+        activityMetrics.put("activities_24h", hotWindow.tryAggregate(last24h)
+            .map(rows -> rows.isEmpty() ? 0L : rows.get(0).get("count"))
+            .orElseGet(() -> jdbc.queryForObject(
+                "SELECT COUNT(*) FROM fact_user_activity WHERE occurred_at > NOW() - INTERVAL '24 hours'", Long.class
+            )));
+        HotQuery byType = HotQuery.builder()
+            .table(HotTables.ACTIVITIES)
+            .from(now.minus(Duration.ofDays(7)))
+            .groupBy("event_type")
+            .build();
+        activityMetrics.put("by_type", hotWindow.tryAggregate(byType)
+            .map(rows -> rows.stream()
+                .sorted(Comparator.comparing((Map<String, Object> row) -> (Long) row.get("count")).reversed())
+                .limit(10)
+                .toList())
+            .orElseGet(() -> jdbc.queryForList(
+                "SELECT event_type, COUNT(*) as count FROM fact_user_activity WHERE occurred_at > NOW() - INTERVAL '7 days' GROUP BY event_type ORDER BY count DESC LIMIT 10"
+            )));
         result.put("user_activity", activityMetrics);
         
         result.put("generated_at", java.time.OffsetDateTime.now());
         
         return result;
     }
+    
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> rows(Map<String, Object> queryResult) {
+        return (List<Map<String, Object>>) queryResult.get("rows");
+    }
+    
+    private static Object orZero(Object value) {
+        return value != null ? value : 0;
+    }
+    
+    private static Map<String, Object> region(Object name) {
+        Map<String, Object> region = new LinkedHashMap<>();
+        region.put("region", name);
+        region.put("trades", null);
+        region.put("revenue", null);
+        region.put("issuances", null);
+        region.put("tco2e", null);
+        region.put("unique_buyers", null);
+        region.put("unique_contributors", null);
+        return region;
+    }
 }
@@ -0,0 +1,77 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.query.AggregateNavigator;
+import com.CCM_EV.admin.query.AggregateSource;
+import com.CCM_EV.admin.query.ReportSubjects;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dimensional report queries answered from the smallest matching pre-aggregate
+ */
+@RestController
+@RequestMapping("/api/admin/reports/query")
+@RequiredArgsConstructor
+@Tag(name = "Report Query", description = "Measures by dimension over a time range, from rollups, views or raw facts")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class ReportQueryController {
+
+    private final AggregateNavigator navigator;
+
+    @GetMapping
+    @Operation(summary = "List subjects", description = "Dimensions, measures and sources of every report subject")
+    public List<Map<String, Object>> getSubjects() {
+        List<Map<String, Object>> subjects = new ArrayList<>();
+        ReportSubjects.ALL.forEach(subject -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("subject", subject.getName());
+            entry.put("dimensions", subject.getRawSource().getDimensions().keySet());
+            entry.put("measures", subject.getRawSource().getMeasures().keySet());
+            entry.put("sources", subject.getSources().stream().map(AggregateSource::getName).toList());
+            subjects.add(entry);
+        });
+        return subjects;
+    }
+
+    @GetMapping("/{subject}")
+    @Operation(summary = "Query a subject",
+               description = "Measures grouped by dimensions (day, hour, region, currency, status, role, ...) over [from, to). " +
+                             "Without from and to, the last 'days' UTC days including today. " +
+                             "The response names the source that answered and why others could not.")
+    public ResponseEntity<Map<String, Object>> query(
+            @PathVariable String subject,
+            @RequestParam List<String> measures,
+            @RequestParam(defaultValue = "") List<String> groupBy,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime to,
+            @RequestParam(defaultValue = "30") int days
+    ) {
+        if ((from == null) != (to == null)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "from and to go together"));
+        }
+        return ReportSubjects.byName(subject)
+                .map(reportSubject -> {
+                    try {
+                        return ResponseEntity.ok(from != null
+                                ? navigator.query(reportSubject, measures, groupBy, from, to)
+                                : navigator.query(reportSubject, measures, groupBy, days));
+                    } catch (IllegalArgumentException e) {
+                        return ResponseEntity.badRequest().body(Map.<String, Object>of("error", e.getMessage()));
+                    }
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
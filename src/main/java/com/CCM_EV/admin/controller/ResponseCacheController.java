@@ -0,0 +1,52 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.cache.ResponseCache;
+import com.CCM_EV.admin.config.ResponseCacheProperties;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response cache of the dashboard and report endpoints
+ */
+@RestController
+@RequestMapping("/api/admin/cache")
+@RequiredArgsConstructor
+@Tag(name = "Response Cache", description = "Cached report responses and the table versions invalidating them")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class ResponseCacheController {
+
+    private final ResponseCache responseCache;
+    private final ResponseCacheProperties properties;
+
+    @GetMapping
+    @Operation(summary = "Cache state", description = "Hits per tier, hit ratio and load time per cached endpoint, and this instance's table versions")
+    public Map<String, Object> getState() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", properties.isEnabled());
+        state.put("redisEnabled", properties.getRedis().isEnabled());
+        state.put("endpoints", responseCache.getState());
+        state.put("tableVersions", responseCache.getTableVersions());
+        return state;
+    }
+
+    @PostMapping("/invalidate")
+    @Operation(summary = "Invalidate cached responses",
+               description = "Bump the versions of tables changed outside the consumers, e.g. by hand, on every instance")
+    public ResponseEntity<Map<String, Object>> invalidate(@RequestParam List<String> tables) {
+        if (tables.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "At least one table is required"));
+        }
+        responseCache.invalidate(tables);
+        return ResponseEntity.ok(Map.of("invalidated", tables));
+    }
+}
@@ -0,0 +1,68 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.rollup.RollupService;
+import com.CCM_EV.admin.rollup.Rollups;
+import com.CCM_EV.admin.rollup.SketchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incrementally maintained rollup tables
+ */
+@RestController
+@RequestMapping("/api/admin/rollups")
+@RequiredArgsConstructor
+@Tag(name = "Rollups", description = "Daily rollups maintained by the consumers")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class RollupController {
+
+    private final RollupService rollupService;
+    private final SketchService sketchService;
+
+    @GetMapping
+    @Operation(summary = "List rollups", description = "Dimensions, measures, estimated rows and last update of every rollup")
+    public List<Map<String, Object>> getRollups() {
+        return rollupService.getState();
+    }
+
+    @GetMapping("/sketches")
+    @Operation(summary = "List distinct-count sketches", description = "Sketches, the days they cover and their last update")
+    public List<Map<String, Object>> getSketches() {
+        return sketchService.getState();
+    }
+
+    @PostMapping("/{name}/rebuild")
+    @Operation(summary = "Rebuild a rollup from the facts",
+               description = "Recompute the days [from, to) of the rollup, its sketches and the time-series tiers from the fact partitions, e.g. after facts were changed by hand")
+    public ResponseEntity<Map<String, Object>> rebuild(
+            @PathVariable String name,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to
+    ) {
+        if (!from.isBefore(to)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "from must be before to"));
+        }
+        return Rollups.byName(name)
+                .map(rollup -> {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("rollup", name);
+                    result.put("from", from);
+                    result.put("to", to);
+                    result.put("groups", rollupService.rebuild(rollup, from, to));
+                    return ResponseEntity.ok(result);
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
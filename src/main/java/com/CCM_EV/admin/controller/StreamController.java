@@ -0,0 +1,80 @@
+package com.CCM_EV.admin.controller;
+
+import com.CCM_EV.admin.mq.stream.StreamIngestionService;
+import com.CCM_EV.admin.mq.stream.StreamReplayJob;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stream ingestion positions and replays, only available in stream ingestion mode
+ */
+@RestController
+@RequestMapping("/api/admin/streams")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.rabbitmq.ingestion.mode", havingValue = "stream")
+@Tag(name = "Event Streams", description = "Stream ingestion offsets and replay into fact tables")
+@SecurityRequirement(name = "Bearer Authentication")
+@PreAuthorize("hasRole('ADMIN')")
+public class StreamController {
+
+    private final StreamIngestionService ingestionService;
+
+    @GetMapping
+    @Operation(summary = "List streams with their committed offsets")
+    public Map<String, Object> getStreams() {
+        return Map.of(
+            "streams", ingestionService.getStreams(),
+            "retrievedAt", OffsetDateTime.now()
+        );
+    }
+
+    @PostMapping("/{stream}/replay")
+    @Operation(summary = "Replay a stream into the fact tables",
+               description = "Re-applies fact upserts from fromOffset or fromTimestamp up to the committed offset")
+    public ResponseEntity<Map<String, Object>> replay(
+            @PathVariable String stream,
+            @RequestParam(required = false) Long fromOffset,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) OffsetDateTime fromTimestamp
+    ) {
+        try {
+            StreamReplayJob job = ingestionService.replay(stream, fromOffset, fromTimestamp);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toMap());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/replay/jobs")
+    @Operation(summary = "List stream replay jobs")
+    public List<Map<String, Object>> getReplayJobs() {
+        return ingestionService.getReplayJobs().stream().map(StreamReplayJob::toMap).toList();
+    }
+
+    @GetMapping("/replay/jobs/{jobId}")
+    @Operation(summary = "Get stream replay progress")
+    public ResponseEntity<Map<String, Object>> getReplayJob(@PathVariable String jobId) {
+        return ingestionService.getReplayJob(jobId)
+                .map(job -> ResponseEntity.ok(job.toMap()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/replay/jobs/{jobId}/cancel")
+    @Operation(summary = "Stop a running stream replay")
+    public ResponseEntity<Map<String, Object>> cancelReplayJob(@PathVariable String jobId) {
+        return ingestionService.cancelReplay(jobId)
+                .map(job -> ResponseEntity.ok(job.toMap()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
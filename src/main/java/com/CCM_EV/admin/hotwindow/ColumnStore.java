@@ -0,0 +1,440 @@
+package com.CCM_EV.admin.hotwindow;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Off-heap columns of one hot table.
+ *
+ * Rows are kept in segments of 64k rows with one direct buffer per column: the key hash, the
+ * timestamp as epoch milliseconds, every dimension as its dictionary code and every measure as
+ * a scaled long. Each segment records the time range of its rows, so scans skip segments
+ * outside the queried range. A primitive index maps key hashes to row positions; an upsert of a
+ * known key overwrites the row in place, and as the key includes the timestamp a row never moves
+ * until compaction drops the segments before it.
+ *
+ * Scans hold the read lock and add up every segment into dense per-group arrays, segments in
+ * parallel once the table is large enough; writes hold the write lock.
+ */
+final class ColumnStore {
+
+    static final int SEGMENT_ROWS = 1 << 16;
+
+    // Upper bound on the groups of one query, the product of the grouped dictionaries' sizes
+    private static final int MAX_GROUPS = 1 << 20;
+
+    private final HotTable table;
+    private final Dictionary[] dictionaries;
+    private List<Segment> segments = new ArrayList<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private KeyIndex index = new KeyIndex();
+    private volatile int rowCount;
+    private volatile boolean loaded;
+
+    ColumnStore(HotTable table) {
+        this.table = table;
+        this.dictionaries = new Dictionary[table.getDimensions().size()];
+        for (int i = 0; i < dictionaries.length; i++) {
+            dictionaries[i] = new Dictionary();
+        }
+    }
+
+    HotTable table() {
+        return table;
+    }
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    void markLoaded() {
+        loaded = true;
+    }
+
+    long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) segments.size() * SEGMENT_ROWS * bytesPerRow();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert the rows, overwriting rows of the same key
+     * @param replace false to keep rows already present, for the initial load racing the consumers
+     */
+    void upsert(List<HotRow> rows, boolean replace) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (HotRow row : rows) {
+                int position = index.get(row.getKey());
+                if (position < 0) {
+                    position = append(row.getKey(), row.getTime());
+                    index.put(row.getKey(), position);
+                } else if (!replace) {
+                    continue;
+                }
+                Segment segment = segments.get(position / SEGMENT_ROWS);
+                int offset = position % SEGMENT_ROWS;
+                for (int d = 0; d < dictionaries.length; d++) {
+                    segment.dimensions[d].put(offset, dictionaries[d].encode(row.getDimensions()[d]));
+                }
+                for (int m = 0; m < segment.measures.length; m++) {
+                    segment.measures[m].put(offset, row.getMeasures()[m]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop the rows before the time. Rows arrive roughly in time order, so whole segments expire
+     * and are let go; only segments straddling the time are copied. The new segments and index
+     * are built aside and swapped in at the end, a failure leaves the store as it was.
+     * @return rows dropped
+     */
+    int retainFrom(long fromMillis) {
+        lock.writeLock().lock();
+        try {
+            if (segments.stream().allMatch(segment -> segment.size == 0 || segment.minTime >= fromMillis)) {
+                return 0;
+            }
+            List<Segment> kept = new ArrayList<>(segments.size());
+            int retained = 0;
+            for (Segment segment : segments) {
+                if (segment.size == 0 || segment.maxTime < fromMillis) {
+                    continue;
+                }
+                Segment survivors = segment.minTime < fromMillis ? segment.retainFrom(fromMillis) : segment;
+                kept.add(survivors);
+                retained += survivors.size;
+            }
+            // Positions move with the dropped segments
+            KeyIndex keptIndex = new KeyIndex(retained);
+            for (int s = 0; s < kept.size(); s++) {
+                Segment segment = kept.get(s);
+                for (int i = 0; i < segment.size; i++) {
+                    keptIndex.put(segment.keys.get(i), s * SEGMENT_ROWS + i);
+                }
+            }
+            int dropped = rowCount - retained;
+            segments = kept;
+            index = keptIndex;
+            rowCount = retained;
+            return dropped;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Row count and measure sums per group of the rows in [from, to) that pass the filters
+     * @param parallelThreshold rows from which segments are scanned in parallel
+     */
+    List<Map<String, Object>> aggregate(long from, long to, List<String> groupBy, List<String> measureNames,
+                                        Map<String, Set<String>> filters, int parallelThreshold) {
+        int[] groupDims = groupBy.stream().mapToInt(table::dimensionIndex).toArray();
+        int[] measureIndexes = measureNames.stream().mapToInt(table::measureIndex).toArray();
+
+        lock.readLock().lock();
+        try {
+            int[] sizes = new int[groupDims.length];
+            int[] strides = new int[groupDims.length];
+            long groups = 1;
+            for (int g = groupDims.length - 1; g >= 0; g--) {
+                sizes[g] = dictionaries[groupDims[g]].size();
+                strides[g] = (int) groups;
+                groups *= sizes[g];
+                if (groups > MAX_GROUPS) {
+                    throw new IllegalArgumentException("Too many groups for " + groupBy);
+                }
+            }
+
+            // Allowed codes per filtered dimension, null where not filtered
+            boolean[][] allowed = new boolean[dictionaries.length][];
+            filters.forEach((name, values) -> {
+                int d = table.dimensionIndex(name);
+                allowed[d] = new boolean[dictionaries[d].size()];
+                for (String value : values) {
+                    int code = dictionaries[d].code(value);
+                    if (code >= 0) {
+                        allowed[d][code] = true;
+                    }
+                }
+            });
+            int[] filterDims = IntStream.range(0, allowed.length).filter(d -> allowed[d] != null).toArray();
+
+            Scan scan = new Scan(from, to, groupDims, strides, filterDims, allowed, measureIndexes, (int) groups);
+            long[] totals;
+            if (rowCount >= parallelThreshold && segments.size() > 1) {
+                totals = segments.parallelStream()
+                    .map(scan::run)
+                    .reduce(ColumnStore::add)
+                    .orElseGet(scan::empty);
+            } else {
+                totals = scan.empty();
+                for (Segment segment : segments) {
+                    scan.into(segment, totals);
+                }
+            }
+
+            List<Map<String, Object>> rows = new ArrayList<>();
+            int width = 1 + measureIndexes.length;
+            for (int cell = 0; cell < groups; cell++) {
+                long count = totals[cell * width];
+                if (count == 0) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                for (int g = 0; g < groupDims.length; g++) {
+                    row.put(groupBy.get(g), dictionaries[groupDims[g]].decode((cell / strides[g]) % sizes[g]));
+                }
+                row.put("count", count);
+                for (int m = 0; m < measureIndexes.length; m++) {
+                    row.put(measureNames.get(m), BigDecimal.valueOf(totals[cell * width + 1 + m],
+                        table.getMeasures().get(measureIndexes[m]).getScale()));
+                }
+                rows.add(row);
+            }
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int append(long key, long time) {
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.size == SEGMENT_ROWS) {
+            segment = new Segment(dictionaries.length, table.getMeasures().size());
+            segments.add(segment);
+        }
+        int offset = segment.size++;
+        segment.keys.put(offset, key);
+        segment.times.put(offset, time);
+        segment.minTime = Math.min(segment.minTime, time);
+        segment.maxTime = Math.max(segment.maxTime, time);
+        rowCount++;
+        return (segments.size() - 1) * SEGMENT_ROWS + offset;
+    }
+
+    private int bytesPerRow() {
+        return 2 * Long.BYTES + dictionaries.length * Integer.BYTES + table.getMeasures().size() * Long.BYTES;
+    }
+
+    private static long[] add(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] += b[i];
+        }
+        return a;
+    }
+
+    /**
+     * One segment of columns, each in its own direct buffer
+     */
+    private static final class Segment {
+
+        private final LongBuffer keys = longs();
+        private final LongBuffer times = longs();
+        private final IntBuffer[] dimensions;
+        private final LongBuffer[] measures;
+        private int size;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+
+        private Segment(int dimensionCount, int measureCount) {
+            dimensions = new IntBuffer[dimensionCount];
+            for (int d = 0; d < dimensionCount; d++) {
+                dimensions[d] = ByteBuffer.allocateDirect(SEGMENT_ROWS * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+            measures = new LongBuffer[measureCount];
+            for (int m = 0; m < measureCount; m++) {
+                measures[m] = longs();
+            }
+        }
+
+        /**
+         * Copy of the rows from the time on, in their order
+         */
+        private Segment retainFrom(long fromMillis) {
+            Segment copy = new Segment(dimensions.length, measures.length);
+            for (int i = 0; i < size; i++) {
+                long time = times.get(i);
+                if (time < fromMillis) {
+                    continue;
+                }
+                int offset = copy.size++;
+                copy.keys.put(offset, keys.get(i));
+                copy.times.put(offset, time);
+                copy.minTime = Math.min(copy.minTime, time);
+                copy.maxTime = Math.max(copy.maxTime, time);
+                for (int d = 0; d < dimensions.length; d++) {
+                    copy.dimensions[d].put(offset, dimensions[d].get(i));
+                }
+                for (int m = 0; m < measures.length; m++) {
+                    copy.measures[m].put(offset, measures[m].get(i));
+                }
+            }
+            return copy;
+        }
+
+        private static LongBuffer longs() {
+            return ByteBuffer.allocateDirect(SEGMENT_ROWS * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+    }
+
+    /**
+     * A filtered group-by over segments: per group the row count, then the measure sums
+     */
+    private static final class Scan {
+
+        private final long from;
+        private final long to;
+        private final int[] groupDims;
+        private final int[] strides;
+        private final int[] filterDims;
+        private final boolean[][] allowed;
+        private final int[] measures;
+        private final int width;
+        private final int groups;
+
+        private Scan(long from, long to, int[] groupDims, int[] strides, int[] filterDims,
+                     boolean[][] allowed, int[] measures, int groups) {
+            this.from = from;
+            this.to = to;
+            this.groupDims = groupDims;
+            this.strides = strides;
+            this.filterDims = filterDims;
+            this.allowed = allowed;
+            this.measures = measures;
+            this.width = 1 + measures.length;
+            this.groups = groups;
+        }
+
+        private long[] empty() {
+            return new long[groups * width];
+        }
+
+        private long[] run(Segment segment) {
+            long[] totals = empty();
+            into(segment, totals);
+            return totals;
+        }
+
+        private void into(Segment segment, long[] totals) {
+            if (segment.size == 0 || segment.maxTime < from || segment.minTime >= to) {
+                return;
+            }
+            rows:
+            for (int i = 0; i < segment.size; i++) {
+                long time = segment.times.get(i);
+                if (time < from || time >= to) {
+                    continue;
+                }
+                for (int d : filterDims) {
+                    if (!allowed[d][segment.dimensions[d].get(i)]) {
+                        continue rows;
+                    }
+                }
+                int cell = 0;
+                for (int g = 0; g < groupDims.length; g++) {
+                    cell += segment.dimensions[groupDims[g]].get(i) * strides[g];
+                }
+                int base = cell * width;
+                totals[base]++;
+                for (int m = 0; m < measures.length; m++) {
+                    totals[base + 1 + m] += segment.measures[measures[m]].get(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open-addressing map from key hash to row position, 0 marks a free slot
+     */
+    private static final class KeyIndex {
+
+        private long[] keys;
+        private int[] positions;
+        private int size;
+
+        private KeyIndex() {
+            this(0);
+        }
+
+        /**
+         * Sized for the keys without growing
+         */
+        private KeyIndex(int expected) {
+            int capacity = 1024;
+            while (expected * 10L > capacity * 6L) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            positions = new int[capacity];
+        }
+
+        private int get(long key) {
+            key = nonZero(key);
+            int mask = keys.length - 1;
+            for (int slot = (int) key & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return positions[slot];
+                }
+            }
+            return -1;
+        }
+
+        private void put(long key, int position) {
+            if ((size + 1) * 10L > keys.length * 6L) {
+                grow();
+            }
+            key = nonZero(key);
+            int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                size++;
+            }
+            keys[slot] = key;
+            positions[slot] = position;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldPositions = positions;
+            keys = new long[oldKeys.length * 2];
+            positions = new int[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldPositions[i]);
+                }
+            }
+        }
+
+        private static long nonZero(long key) {
+            return key != 0 ? key : 1;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.CCM_EV.admin.hotwindow;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codes of the distinct values of a dimension, in order of first appearance; 0 is null.
+ * Not thread-safe, guarded by the lock of its {@link ColumnStore}.
+ */
+final class Dictionary {
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    Dictionary() {
+        values.add(null);
+    }
+
+    int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return codes.computeIfAbsent(value, v -> {
+            values.add(v);
+            return values.size() - 1;
+        });
+    }
+
+    /**
+     * Code of a value, -1 if it never appeared
+     */
+    int code(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : -1;
+    }
+
+    String decode(int code) {
+        return values.get(code);
+    }
+
+    int size() {
+        return values.size();
+    }
+}
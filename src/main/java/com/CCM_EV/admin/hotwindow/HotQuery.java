@@ -0,0 +1,36 @@
+package com.CCM_EV.admin.hotwindow;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A filtered group-by over a hot table: row count and measure sums per group of the rows in
+ * [from, to) whose dimensions take one of the filter values
+ */
+@Getter
+@Builder
+public class HotQuery {
+
+    private final HotTable table;
+    private final Instant from;
+
+    /**
+     * End of the range, exclusive; null for everything up to now
+     */
+    private final Instant to;
+
+    @Singular("groupBy")
+    private final List<String> groupBy;
+
+    @Singular
+    private final List<String> measures;
+
+    @Singular
+    private final Map<String, Set<String>> filters;
+}
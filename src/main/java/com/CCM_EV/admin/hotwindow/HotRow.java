@@ -0,0 +1,60 @@
+package com.CCM_EV.admin.hotwindow;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A fact row as read for the hot window, before its dimensions are dictionary-encoded
+ */
+@Getter
+final class HotRow {
+
+    private final long key;
+    private final long time;
+    private final String[] dimensions;
+    private final long[] measures;
+
+    private HotRow(long key, long time, String[] dimensions, long[] measures) {
+        this.key = key;
+        this.time = time;
+        this.dimensions = dimensions;
+        this.measures = measures;
+    }
+
+    /**
+     * Row of a query selecting the key text, the epoch milliseconds, the dimensions and the
+     * scaled measures of the table, in that order
+     */
+    static HotRow of(HotTable table, ResultSet rs) throws SQLException {
+        String[] dimensions = new String[table.getDimensions().size()];
+        for (int d = 0; d < dimensions.length; d++) {
+            dimensions[d] = rs.getString(3 + d);
+        }
+        long[] measures = new long[table.getMeasures().size()];
+        for (int m = 0; m < measures.length; m++) {
+            measures[m] = rs.getLong(3 + dimensions.length + m);
+        }
+        return new HotRow(hash(rs.getString(1)), rs.getLong(2), dimensions, measures);
+    }
+
+    /**
+     * 64-bit FNV-1a of the key, mixed with the MurmurHash3 finalizer; at a few million keys a
+     * collision, which would merge two rows, is a one in a million event
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,80 @@
+package com.CCM_EV.admin.hotwindow;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.util.List;
+
+/**
+ * Definition of a fact table held in the hot window: its key, the timestamp rows are windowed
+ * by, the dictionary-encoded dimensions and the measures, kept as longs in units of their scale.
+ * Every column is a SQL expression over the fact row, used both to load the window and to
+ * re-read the rows a write touched.
+ */
+@Getter
+@Builder
+public class HotTable {
+
+    private final String name;
+    private final String factTable;
+    private final String timeColumn;
+
+    /**
+     * Primary key of the fact table and its SQL types, the time column is part of it
+     */
+    private final List<String> keyColumns;
+    private final List<String> keyTypes;
+
+    @Singular
+    private final List<Dimension> dimensions;
+
+    @Singular
+    private final List<Measure> measures;
+
+    public int dimensionIndex(String name) {
+        for (int i = 0; i < dimensions.size(); i++) {
+            if (dimensions.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown dimension " + name + " of " + this.name);
+    }
+
+    public int measureIndex(String name) {
+        for (int i = 0; i < measures.size(); i++) {
+            if (measures.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown measure " + name + " of " + this.name);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Dimension {
+        private final String name;
+        private final String expression;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Measure {
+        private final String name;
+        private final String expression;
+
+        /**
+         * Decimal places kept, values are rounded and stored as value * 10^scale
+         */
+        private final int scale;
+    }
+
+    public static Dimension dimension(String name, String expression) {
+        return new Dimension(name, expression);
+    }
+
+    public static Measure measure(String name, String expression, int scale) {
+        return new Measure(name, expression, scale);
+    }
+}
@@ -0,0 +1,78 @@
+package com.CCM_EV.admin.hotwindow;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.CCM_EV.admin.hotwindow.HotTable.dimension;
+import static com.CCM_EV.admin.hotwindow.HotTable.measure;
+
+/**
+ * The fact tables held in the hot window
+ */
+public final class HotTables {
+
+    public static final HotTable TRADES = HotTable.builder()
+        .name("trades")
+        .factTable("fact_trade")
+        .timeColumn("executed_at")
+        .keyColumns(List.of("order_id", "executed_at"))
+        .keyTypes(List.of("text", "timestamptz"))
+        .dimension(dimension("region", "region"))
+        .dimension(dimension("currency", "currency"))
+        .dimension(dimension("order_status", "order_status"))
+        .dimension(dimension("is_auction", "COALESCE(is_auction, false)::text"))
+        .dimension(dimension("marketplace", "(listing_id IS NOT NULL)::text"))
+        .measure(measure("quantity", "quantity", 6))
+        .measure(measure("amount", "amount", 2))
+        .measure(measure("unit_price", "unit_price", 2))
+        .build();
+
+    public static final HotTable PAYMENTS = HotTable.builder()
+        .name("payments")
+        .factTable("fact_payment")
+        .timeColumn("completed_at")
+        .keyColumns(List.of("payment_id", "completed_at"))
+        .keyTypes(List.of("text", "timestamptz"))
+        .dimension(dimension("region", "region"))
+        .dimension(dimension("currency", "currency"))
+        .dimension(dimension("status", "status"))
+        .dimension(dimension("payment_method", "payment_method"))
+        .measure(measure("amount", "amount", 2))
+        .build();
+
+    public static final HotTable ISSUANCES = HotTable.builder()
+        .name("issuances")
+        .factTable("fact_issuance")
+        .timeColumn("issued_at")
+        .keyColumns(List.of("issuance_id", "issued_at"))
+        .keyTypes(List.of("text", "timestamptz"))
+        .dimension(dimension("region", "region"))
+        .dimension(dimension("status", "status"))
+        .measure(measure("quantity_tco2e", "quantity_tco2e", 6))
+        .measure(measure("distance_km", "distance_km", 2))
+        .measure(measure("energy_kwh", "energy_kwh", 2))
+        .measure(measure("co2_avoided_kg", "co2_avoided_kg", 2))
+        .build();
+
+    public static final HotTable ACTIVITIES = HotTable.builder()
+        .name("activities")
+        .factTable("fact_user_activity")
+        .timeColumn("occurred_at")
+        .keyColumns(List.of("id", "occurred_at"))
+        .keyTypes(List.of("bigint", "timestamptz"))
+        .dimension(dimension("event_type", "event_type"))
+        .build();
+
+    public static final List<HotTable> ALL = List.of(TRADES, PAYMENTS, ISSUANCES, ACTIVITIES);
+
+    public static Optional<HotTable> byName(String name) {
+        return ALL.stream().filter(table -> table.getName().equals(name)).findFirst();
+    }
+
+    public static Optional<HotTable> byFactTable(String factTable) {
+        return ALL.stream().filter(table -> table.getFactTable().equals(factTable)).findFirst();
+    }
+
+    private HotTables() {
+    }
+}
@@ -0,0 +1,243 @@
+package com.CCM_EV.admin.hotwindow;
+
+import com.CCM_EV.admin.config.HotWindowProperties;
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * The hot window: the facts of the last days, held in {@link ColumnStore}s so the dashboards'
+ * filtered group-bys run in process instead of in the database.
+ *
+ * The window is loaded in the background once the application is ready, through a cursor that
+ * streams the rows; until a table finished loading its queries go to the database. Writers to
+ * the facts hand over the keys they touched ({@link #capture}): the touched rows are read back
+ * in the write's transaction and applied once it committed, so the window holds committed rows
+ * as they were written, including the columns an upsert kept. Rows the load reads after the
+ * consumers already applied them are skipped. Rows falling out of the window are dropped by a
+ * periodic compaction.
+ */
+@Slf4j
+@Service
+public class HotWindowService {
+
+    private static final int LOAD_BATCH = 10000;
+
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate streaming;
+    private final TransactionTemplate transactionTemplate;
+    private final HotWindowProperties properties;
+    private final Map<HotTable, ColumnStore> stores = new LinkedHashMap<>();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("hot-window-load-"));
+    // Rows before this time may already be dropped; later rows are all held once loaded
+    private volatile Instant windowStart;
+
+    public HotWindowService(DataSource dataSource,
+                            JdbcTemplate jdbc,
+                            TransactionTemplate transactionTemplate,
+                            HotWindowProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+        // Inside a transaction the driver streams with a cursor instead of buffering the whole result
+        this.streaming = new JdbcTemplate(dataSource);
+        this.streaming.setFetchSize(properties.getFetchSize());
+        this.windowStart = Instant.now().minus(properties.getWindow());
+        for (HotTable table : HotTables.ALL) {
+            ColumnStore store = new ColumnStore(table);
+            stores.put(table, store);
+            Gauge.builder("admin.hotwindow.rows", store, ColumnStore::rowCount)
+                .description("Rows held in the hot window")
+                .tag("table", table.getName())
+                .register(meterRegistry);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (properties.isEnabled()) {
+            loader.submit(this::loadAll);
+        }
+    }
+
+    /**
+     * Whether queries over the table from the time on can be answered from the window
+     */
+    public boolean covers(HotTable table, Instant from) {
+        return properties.isEnabled() && stores.get(table).isLoaded() && !from.isBefore(windowStart);
+    }
+
+    /**
+     * Row count ("count") and measure sums per group, as rows of the group dimensions and measures.
+     * Only valid where {@link #covers} holds for the query's start.
+     */
+    public List<Map<String, Object>> aggregate(HotQuery query) {
+        long to = query.getTo() != null ? query.getTo().toEpochMilli() : Long.MAX_VALUE;
+        return stores.get(query.getTable()).aggregate(query.getFrom().toEpochMilli(), to,
+            query.getGroupBy(), query.getMeasures(), query.getFilters(), properties.getParallelThreshold());
+    }
+
+    /**
+     * The aggregate from the window, empty when the window does not cover the query's start
+     */
+    public Optional<List<Map<String, Object>>> tryAggregate(HotQuery query) {
+        return covers(query.getTable(), query.getFrom()) ? Optional.of(aggregate(query)) : Optional.empty();
+    }
+
+    /**
+     * Read back the rows of a fact table a write touched and apply them once the transaction
+     * committed, must run inside the write's transaction after the write
+     * @param keySource query returning the key columns of the touched rows, without duplicates
+     */
+    public void capture(String factTable, String keySource, Object[] args) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        HotTables.byFactTable(factTable).ifPresent(table -> {
+            Object[] withStart = Arrays.copyOf(args, args.length + 1);
+            withStart[args.length] = Timestamp.from(windowStart);
+            List<HotRow> rows = jdbc.query(select(table) + """
+                FROM (%s) AS k (%s)
+                JOIN %s f USING (%s)
+                WHERE f.%s >= ?
+                """.formatted(keySource, String.join(", ", table.getKeyColumns()),
+                    table.getFactTable(), String.join(", ", table.getKeyColumns()), table.getTimeColumn()),
+                (rs, rowNum) -> HotRow.of(table, rs), withStart);
+            ColumnStore store = stores.get(table);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        store.upsert(rows, true);
+                    }
+                });
+            } else {
+                store.upsert(rows, true);
+            }
+        });
+    }
+
+    /**
+     * Same, for rows given by their keys in {@link HotTable#getKeyColumns()} order
+     */
+    public void capture(HotTable table, List<Object[]> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        String row = table.getKeyTypes().stream()
+            .map(type -> "CAST(? AS " + type + ")")
+            .collect(Collectors.joining(", ", "(", ")"));
+        String source = "VALUES " + String.join(", ", Collections.nCopies(keys.size(), row));
+        capture(table.getFactTable(), source, keys.stream().flatMap(Arrays::stream).toArray());
+    }
+
+    /**
+     * Drop the rows that fell out of the window
+     */
+    @Scheduled(fixedDelayString = "${app.hot-window.compact-interval-ms:3600000}")
+    public void compact() {
+        if (!properties.isEnabled() || stores.values().stream().anyMatch(store -> !store.isLoaded())) {
+            return;
+        }
+        Instant start = Instant.now().minus(properties.getWindow());
+        // Queries from before the new start go to the database from now on
+        windowStart = start;
+        for (ColumnStore store : stores.values()) {
+            int dropped = store.retainFrom(start.toEpochMilli());
+            if (dropped > 0) {
+                log.info("Dropped {} rows before {} from the hot window of {}", dropped, start, store.table().getName());
+            }
+        }
+    }
+
+    public Map<String, Object> getState() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", properties.isEnabled());
+        state.put("window", properties.getWindow().toString());
+        state.put("windowStart", windowStart);
+        List<Map<String, Object>> tables = new ArrayList<>();
+        for (ColumnStore store : stores.values()) {
+            Map<String, Object> table = new LinkedHashMap<>();
+            table.put("table", store.table().getName());
+            table.put("factTable", store.table().getFactTable());
+            table.put("loaded", store.isLoaded());
+            table.put("rows", store.rowCount());
+            table.put("offHeapBytes", store.offHeapBytes());
+            tables.add(table);
+        }
+        state.put("tables", tables);
+        return state;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    private void loadAll() {
+        Instant start = windowStart;
+        for (ColumnStore store : stores.values()) {
+            HotTable table = store.table();
+            long begin = System.currentTimeMillis();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    List<HotRow> batch = new ArrayList<>(LOAD_BATCH);
+                    streaming.query(select(table) + "FROM " + table.getFactTable() + " f WHERE f." + table.getTimeColumn() + " >= ?",
+                        rs -> {
+                            batch.add(HotRow.of(table, rs));
+                            if (batch.size() == LOAD_BATCH) {
+                                store.upsert(batch, false);
+                                batch.clear();
+                            }
+                        }, Timestamp.from(start));
+                    store.upsert(batch, false);
+                });
+                store.markLoaded();
+                log.info("Loaded {} rows of {} into the hot window in {}ms",
+                    store.rowCount(), table.getFactTable(), System.currentTimeMillis() - begin);
+            } catch (Exception e) {
+                // The table stays unloaded and its queries keep going to the database
+                log.error("Failed to load {} into the hot window: {}", table.getFactTable(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Select list of the key text, epoch milliseconds, dimensions and scaled measures of a fact row f
+     */
+    private static String select(HotTable table) {
+        List<String> columns = new ArrayList<>();
+        columns.add("concat_ws('|', " + table.getKeyColumns().stream().map(column -> "f." + column + "::text")
+            .collect(Collectors.joining(", ")) + ")");
+        columns.add("(extract(epoch FROM f." + table.getTimeColumn() + ") * 1000)::bigint");
+        table.getDimensions().forEach(dimension -> columns.add(dimension.getExpression()));
+        table.getMeasures().forEach(measure -> columns.add(
+            "round(COALESCE(" + measure.getExpression() + ", 0) * 1e" + measure.getScale() + ")::bigint"));
+        return "SELECT " + String.join(", ", columns) + "\n";
+    }
+}
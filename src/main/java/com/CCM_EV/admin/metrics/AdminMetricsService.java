@@ -4,28 +4,16 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-
 @Service
 @Slf4j
 public class AdminMetricsService {
 
-    private final JdbcTemplate jdbc;
     private final MeterRegistry meterRegistry;
 
-    // Atomic counters for real-time metrics
-    private final AtomicInteger totalUsers = new AtomicInteger(0);
-    private final AtomicInteger totalTrades = new AtomicInteger(0);
-    private final AtomicInteger totalIssuances = new AtomicInteger(0);
-    private final AtomicLong totalEventsProcessed = new AtomicLong(0);
-    private final AtomicInteger todayActivities = new AtomicInteger(0);
-    private final AtomicLong totalTradeVolume = new AtomicLong(0);
-    private final AtomicInteger totalCarbonCredits = new AtomicInteger(0);
+    // Business totals maintained by the consumers
+    private final BusinessCounters businessCounters;
 
     // Event counters
     private Counter userRegisteredCounter;
@@ -36,45 +24,56 @@ public class AdminMetricsService {
     private Counter paymentCompletedCounter;
     private Counter paymentFailedCounter;
 
-    public AdminMetricsService(JdbcTemplate jdbc, MeterRegistry meterRegistry) {
-        this.jdbc = jdbc;
+    // Idempotency filter counters
+    private Counter idempotencyMissCounter;
+    private Counter idempotencyLocalHitCounter;
+    private Counter idempotencyRedisHitCounter;
+    private Counter idempotencyDatabaseHitCounter;
+    private Counter idempotencyFalsePositiveCounter;
+
+    // Dead-letter counters
+    private Counter deadLetterCapturedCounter;
+    private Counter deadLetterReplayedCounter;
+
+    public AdminMetricsService(MeterRegistry meterRegistry, BusinessCounters businessCounters) {
         this.meterRegistry = meterRegistry;
+        this.businessCounters = businessCounters;
         initializeMetrics();
     }
 
     private void initializeMetrics() {
-        // Register Gauges for database-backed metrics
-        Gauge.builder("admin.users.total", totalUsers, AtomicInteger::get)
+        // Register Gauges for the business totals
+        Gauge.builder("admin.users.total", businessCounters, c -> c.get(BusinessCounters.USERS))
             .description("Total number of users in the system")
             .tag("type", "dimension")
             .register(meterRegistry);
 
-        Gauge.builder("admin.trades.total", totalTrades, AtomicInteger::get)
+        Gauge.builder("admin.trades.total", businessCounters, c -> c.get(BusinessCounters.TRADES))
             .description("Total number of trades executed")
             .tag("type", "fact")
             .register(meterRegistry);
 
-        Gauge.builder("admin.issuances.total", totalIssuances, AtomicInteger::get)
+        Gauge.builder("admin.issuances.total", businessCounters, c -> c.get(BusinessCounters.ISSUANCES))
             .description("Total number of carbon credit issuances")
             .tag("type", "fact")
             .register(meterRegistry);
 
-        Gauge.builder("admin.events.processed.total", totalEventsProcessed, AtomicLong::get)
+        Gauge.builder("admin.events.processed.total", businessCounters, c -> c.get(BusinessCounters.EVENTS_PROCESSED))
             .description("Total number of events processed")
             .tag("type", "event")
             .register(meterRegistry);
 
-        Gauge.builder("admin.activities.today", todayActivities, AtomicInteger::get)
+        Gauge.builder("admin.activities.today", businessCounters, c -> c.get(BusinessCounters.ACTIVITIES_TODAY))
             .description("Number of user activities today")
             .tag("type", "activity")
             .register(meterRegistry);
 
-        Gauge.builder("admin.trade.volume.total", totalTradeVolume, AtomicLong::get)
+        Gauge.builder("admin.trade.volume.total", businessCounters, c -> c.get(BusinessCounters.TRADE_VOLUME))
             .description("Total trade volume in VND")
             .tag("currency", "VND")
             .register(meterRegistry);
 
-        Gauge.builder("admin.carbon.credits.total", totalCarbonCredits, AtomicInteger::get)
+        Gauge.builder("admin.carbon.credits.total", businessCounters, c -> c.get(BusinessCounters.CARBON_CREDITS))
             .description("Total carbon credits issued (tCO2e)")
             .tag("unit", "tCO2e")
             .register(meterRegistry);
@@ -115,58 +114,47 @@ public class AdminMetricsService {
             .tag("status", "FAILED")
             .register(meterRegistry);
 
-        log.info("Admin metrics initialized successfully");
-    }
+        idempotencyMissCounter = Counter.builder("admin.idempotency.checks")
+            .description("Event IDs the local filter classified as definitely new")
+            .tag("tier", "local")
+            .tag("result", "miss")
+            .register(meterRegistry);
 
-    /**
-     * Update metrics from database every 30 seconds
-     */
-    @Scheduled(fixedDelay = 30000)
-    public void updateMetrics() {
-        try {
-            // Update total users
-            Integer users = jdbc.queryForObject("SELECT COUNT(*) FROM dim_users", Integer.class);
-            totalUsers.set(users != null ? users : 0);
-
-            // Update total trades
-            Integer trades = jdbc.queryForObject("SELECT COUNT(*) FROM fact_trade", Integer.class);
-            totalTrades.set(trades != null ? trades : 0);
-
-            // Update total issuances
-            Integer issuances = jdbc.queryForObject("SELECT COUNT(*) FROM fact_issuance", Integer.class);
-            totalIssuances.set(issuances != null ? issuances : 0);
-
-            // Update total events processed
-            Long events = jdbc.queryForObject("SELECT COUNT(*) FROM consumed_events", Long.class);
-            totalEventsProcessed.set(events != null ? events : 0);
-
-            // Update today's activities
-            Integer activities = jdbc.queryForObject(
-                "SELECT COUNT(*) FROM fact_user_activity WHERE occurred_at > CURRENT_DATE",
-                Integer.class
-            );
-            todayActivities.set(activities != null ? activities : 0);
-
-            // Update total trade volume
-            Long volume = jdbc.queryForObject(
-                "SELECT COALESCE(SUM(amount), 0) FROM fact_trade",
-                Long.class
-            );
-            totalTradeVolume.set(volume != null ? volume : 0);
-
-            // Update total carbon credits
-            Double credits = jdbc.queryForObject(
-                "SELECT COALESCE(SUM(quantity_tco2e), 0) FROM fact_issuance",
-                Double.class
-            );
-            totalCarbonCredits.set(credits != null ? (int)(credits * 1000) : 0); // Convert to milliTCO2e for integer
-
-            log.debug("Metrics updated: users={}, trades={}, issuances={}, events={}", 
-                users, trades, issuances, events);
-        } catch (Exception e) {
-            log.error("Error updating metrics: {}", e.getMessage());
-            eventProcessingErrorCounter.increment();
-        }
+        idempotencyLocalHitCounter = Counter.builder("admin.idempotency.checks")
+            .description("Duplicate event IDs answered by the local LRU")
+            .tag("tier", "local")
+            .tag("result", "hit")
+            .register(meterRegistry);
+
+        idempotencyRedisHitCounter = Counter.builder("admin.idempotency.checks")
+            .description("Event IDs already claimed in Redis, sent to the database for confirmation")
+            .tag("tier", "redis")
+            .tag("result", "hit")
+            .register(meterRegistry);
+
+        idempotencyDatabaseHitCounter = Counter.builder("admin.idempotency.checks")
+            .description("Possible duplicates confirmed by consumed_events")
+            .tag("tier", "database")
+            .tag("result", "hit")
+            .register(meterRegistry);
+
+        idempotencyFalsePositiveCounter = Counter.builder("admin.idempotency.checks")
+            .description("Possible duplicates the database showed to be new")
+            .tag("tier", "database")
+            .tag("result", "false_positive")
+            .register(meterRegistry);
+
+        deadLetterCapturedCounter = Counter.builder("admin.dead_letters")
+            .description("Dead-lettered messages captured")
+            .tag("action", "captured")
+            .register(meterRegistry);
+
+        deadLetterReplayedCounter = Counter.builder("admin.dead_letters")
+            .description("Dead-lettered messages re-published to their source queue")
+            .tag("action", "replayed")
+            .register(meterRegistry);
+
+        log.info("Admin metrics initialized successfully");
     }
 
     // Methods to increment event counters (called by consumers)
@@ -197,4 +185,32 @@ public class AdminMetricsService {
             paymentFailedCounter.increment();
         }
     }
+
+    public void recordIdempotencyMiss(int count) {
+        idempotencyMissCounter.increment(count);
+    }
+
+    public void recordIdempotencyLocalHit(int count) {
+        idempotencyLocalHitCounter.increment(count);
+    }
+
+    public void recordIdempotencyRedisHit(int count) {
+        idempotencyRedisHitCounter.increment(count);
+    }
+
+    public void recordIdempotencyDatabaseHit(int count) {
+        idempotencyDatabaseHitCounter.increment(count);
+    }
+
+    public void recordIdempotencyFalsePositive(int count) {
+        idempotencyFalsePositiveCounter.increment(count);
+    }
+
+    public void recordDeadLettersCaptured(int count) {
+        deadLetterCapturedCounter.increment(count);
+    }
+
+    public void recordDeadLettersReplayed(int count) {
+        deadLetterReplayedCounter.increment(count);
+    }
 }
@@ -0,0 +1,239 @@
+package com.CCM_EV.admin.metrics;
+
+import com.CCM_EV.admin.rollup.Rollup.Column;
+import com.CCM_EV.admin.rollup.RollupDeltas;
+import com.CCM_EV.admin.rollup.Rollups;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Business totals kept in memory and moved by the writes that change them.
+ *
+ * Fact totals follow the rollup deltas, which are the exact change a write made to the facts,
+ * so upserts that update a row instead of inserting one are counted correctly; users follow
+ * the registrations that inserted a row, processed events the claimed event IDs. Changes are
+ * added once their transaction committed. Sums are kept as whole units of their scale, e.g.
+ * milli-tCO2e, in striped {@link LongAdder}s.
+ *
+ * Totals are loaded from the database when the application starts and then reconciled on a
+ * slow schedule: the difference to the database is published as drift and corrected. A total
+ * that moved while its query ran is left for the next run, the query may or may not have seen
+ * those changes.
+ */
+@Slf4j
+@Component
+public class BusinessCounters {
+
+    public static final String USERS = "users";
+    public static final String TRADES = "trades";
+    public static final String ISSUANCES = "issuances";
+    public static final String EVENTS_PROCESSED = "events_processed";
+    public static final String ACTIVITIES_TODAY = "activities_today";
+    public static final String TRADE_VOLUME = "trade_volume";
+    public static final String CARBON_CREDITS = "carbon_credits";
+
+    private static final int RECONCILE_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbc;
+    private final Map<String, Total> totals = new LinkedHashMap<>();
+    // UTC day the activities total counts, reset when the day changes
+    private final AtomicReference<LocalDate> activityDay = new AtomicReference<>(today());
+
+    public BusinessCounters(JdbcTemplate jdbc, MeterRegistry meterRegistry) {
+        this.jdbc = jdbc;
+        define(USERS, 0, "SELECT COUNT(*) FROM dim_users");
+        define(TRADES, 0, "SELECT COUNT(*) FROM fact_trade");
+        define(ISSUANCES, 0, "SELECT COUNT(*) FROM fact_issuance");
+        define(EVENTS_PROCESSED, 0, "SELECT COUNT(*) FROM consumed_events");
+        define(ACTIVITIES_TODAY, 0,
+            "SELECT COUNT(*) FROM fact_user_activity WHERE occurred_at >= date_trunc('day', now(), 'UTC')");
+        define(TRADE_VOLUME, 2, "SELECT COALESCE(SUM(amount), 0) FROM fact_trade");
+        define(CARBON_CREDITS, 3, "SELECT COALESCE(SUM(quantity_tco2e), 0) FROM fact_issuance");
+
+        totals.values().forEach(total -> Gauge.builder("admin.counters.drift", total, t -> t.drift)
+            .description("Database total minus the in-memory total at the last reconciliation")
+            .tag("counter", total.name)
+            .register(meterRegistry));
+    }
+
+    /**
+     * Current value of a total, in its unit
+     */
+    public double get(String name) {
+        if (ACTIVITIES_TODAY.equals(name)) {
+            rollActivityDay();
+        }
+        return totals.get(name).value();
+    }
+
+    /**
+     * Add the fact totals a rollup delta changes, once the current transaction committed
+     */
+    public void add(RollupDeltas deltas) {
+        if (deltas.getRollup() == Rollups.TRADE_DAILY) {
+            afterCommit(Map.of(TRADES, measure(deltas, "trade_count", null),
+                               TRADE_VOLUME, measure(deltas, "revenue", null)));
+        } else if (deltas.getRollup() == Rollups.ISSUANCE_DAILY) {
+            afterCommit(Map.of(ISSUANCES, measure(deltas, "issuance_count", null),
+                               CARBON_CREDITS, measure(deltas, "credits_issued", null)));
+        } else if (deltas.getRollup() == Rollups.USER_ACTIVITY_DAILY) {
+            afterCommit(Map.of(ACTIVITIES_TODAY, measure(deltas, "event_count", today())));
+        }
+    }
+
+    public void addUsers(long count) {
+        afterCommit(Map.of(USERS, BigDecimal.valueOf(count)));
+    }
+
+    public void addEventsProcessed(long count) {
+        afterCommit(Map.of(EVENTS_PROCESSED, BigDecimal.valueOf(count)));
+    }
+
+    /**
+     * Load the totals from the database on startup and correct their drift afterwards
+     */
+    @Scheduled(fixedDelayString = "${app.business-counters.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        rollActivityDay();
+        for (Total total : totals.values()) {
+            try {
+                reconcile(total);
+            } catch (Exception e) {
+                log.error("Failed to reconcile the {} total: {}", total.name, e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> getState() {
+        rollActivityDay();
+        Map<String, Object> state = new LinkedHashMap<>();
+        totals.values().forEach(total -> state.put(total.name, Map.of(
+            "value", total.value(),
+            "drift", total.drift,
+            "reconciled", total.reconciled
+        )));
+        return state;
+    }
+
+    private void reconcile(Total total) {
+        for (int attempt = 0; attempt < RECONCILE_ATTEMPTS; attempt++) {
+            long before = total.units.sum();
+            BigDecimal database = jdbc.queryForObject(total.sql, BigDecimal.class);
+            long after = total.units.sum();
+            if (before != after) {
+                continue;
+            }
+            long drift = total.toUnits(database != null ? database : BigDecimal.ZERO) - before;
+            total.units.add(drift);
+            total.drift = drift / total.scaleFactor;
+            total.reconciled = true;
+            if (drift != 0) {
+                log.info("Reconciled the {} total, drift {}", total.name, total.drift);
+            }
+            return;
+        }
+        log.debug("The {} total kept moving, reconciling it on the next run", total.name);
+    }
+
+    private void afterCommit(Map<String, BigDecimal> changes) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(changes);
+                }
+            });
+        } else {
+            apply(changes);
+        }
+    }
+
+    private void apply(Map<String, BigDecimal> changes) {
+        if (changes.containsKey(ACTIVITIES_TODAY)) {
+            rollActivityDay();
+        }
+        changes.forEach((name, change) -> {
+            Total total = totals.get(name);
+            total.units.add(total.toUnits(change));
+        });
+    }
+
+    /**
+     * Sum of a measure over the delta's groups, only over groups of the given day if set
+     */
+    private static BigDecimal measure(RollupDeltas deltas, String measure, LocalDate day) {
+        List<Column> measures = deltas.getRollup().getMeasures();
+        int index = 0;
+        while (!measures.get(index).getName().equals(measure)) {
+            index++;
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Map.Entry<List<Object>, BigDecimal[]> change : deltas.changes()) {
+            if (day == null || day.equals(change.getKey().get(0))) {
+                sum = sum.add(change.getValue()[index]);
+            }
+        }
+        return sum;
+    }
+
+    private void rollActivityDay() {
+        LocalDate today = today();
+        LocalDate counted = activityDay.get();
+        if (!today.equals(counted) && activityDay.compareAndSet(counted, today)) {
+            totals.get(ACTIVITIES_TODAY).units.reset();
+        }
+    }
+
+    private void define(String name, int scale, String sql) {
+        totals.put(name, new Total(name, scale, sql));
+    }
+
+    private static LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    /**
+     * One total and the query it is reconciled with
+     */
+    private static final class Total {
+
+        private final String name;
+        private final int scale;
+        private final double scaleFactor;
+        private final String sql;
+        private final LongAdder units = new LongAdder();
+        private volatile double drift;
+        private volatile boolean reconciled;
+
+        private Total(String name, int scale, String sql) {
+            this.name = name;
+            this.scale = scale;
+            this.scaleFactor = Math.pow(10, scale);
+            this.sql = sql;
+        }
+
+        private long toUnits(BigDecimal value) {
+            return value.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        }
+
+        private double value() {
+            return units.sum() / scaleFactor;
+        }
+    }
+}
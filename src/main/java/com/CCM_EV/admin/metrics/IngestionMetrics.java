@@ -0,0 +1,210 @@
+package com.CCM_EV.admin.metrics;
+
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Timing of the event ingestion path, for finding the slow stage when ingestion latency spikes.
+ *
+ * admin.ingest.stage: time spent per batch in each stage, one sample per batch, so the
+ * percentiles show slow batches. Tagged with the queue, which is the same for the whole batch,
+ * and with the batch's event type and routing key, "mixed" where it has several.
+ * admin.ingest.batch.size: events per batch in each stage, next to the stage time.
+ * admin.ingest.latency: producer timestamp to commit, per event.
+ * admin.ingest.lag: per queue, the age of the oldest event received but not settled yet, so the
+ * lag keeps growing while batches fail or are requeued; once everything received is settled,
+ * producer timestamp to commit of the newest event of the last committed batch.
+ */
+@Component
+public class IngestionMetrics {
+
+    public enum Stage { DECODE, DEDUPE, CLAIM, UPSERT, AUDIT_LOG, NOTIFICATION }
+
+    private static final String UNKNOWN = "unknown";
+    private static final String MIXED = "mixed";
+    private static final double[] PERCENTILES = { 0.5, 0.95, 0.99 };
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, StageMeters> stages = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, QueueLag> lags = new ConcurrentHashMap<>();
+
+    public IngestionMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void time(Stage stage, String queue, List<? extends BaseEvent> events, Runnable work) {
+        long start = System.nanoTime();
+        try {
+            work.run();
+        } finally {
+            recordStage(stage, queue, events, System.nanoTime() - start);
+        }
+    }
+
+    public <T> T time(Stage stage, String queue, List<? extends BaseEvent> events, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            recordStage(stage, queue, events, System.nanoTime() - start);
+        }
+    }
+
+    public void recordStage(Stage stage, String queue, List<? extends BaseEvent> events, long elapsedNanos) {
+        if (events.isEmpty()) {
+            return;
+        }
+        String eventType = batchValue(events, BaseEvent::getEventType);
+        String routingKey = batchValue(events, BaseEvent::getRoutingKey);
+        StageMeters meters = stages.computeIfAbsent(stage.name() + "|" + queue + "|" + eventType + "|" + routingKey, key -> {
+            String stageTag = stage.name().toLowerCase(Locale.ROOT);
+            return new StageMeters(
+                Timer.builder("admin.ingest.stage")
+                    .description("Time per batch spent in an ingestion stage")
+                    .tag("stage", stageTag)
+                    .tag("queue", queue)
+                    .tag("event_type", eventType)
+                    .tag("routing_key", routingKey)
+                    .publishPercentileHistogram()
+                    .publishPercentiles(PERCENTILES)
+                    .register(meterRegistry),
+                DistributionSummary.builder("admin.ingest.batch.size")
+                    .description("Events per batch in an ingestion stage")
+                    .baseUnit("events")
+                    .tag("stage", stageTag)
+                    .tag("queue", queue)
+                    .tag("event_type", eventType)
+                    .tag("routing_key", routingKey)
+                    .register(meterRegistry));
+        });
+        meters.getTime().record(elapsedNanos, TimeUnit.NANOSECONDS);
+        meters.getBatchSize().record(events.size());
+    }
+
+    /**
+     * Note events received from the queue, they count towards its lag until their batch is settled
+     */
+    public void recordReceived(String queue, List<? extends BaseEvent> events) {
+        OffsetDateTime oldest = null;
+        for (BaseEvent event : events) {
+            if (event.getTimestamp() != null && (oldest == null || event.getTimestamp().isBefore(oldest))) {
+                oldest = event.getTimestamp();
+            }
+        }
+        if (oldest != null) {
+            OffsetDateTime received = oldest;
+            lagOf(queue).oldestPending.accumulateAndGet(received,
+                (pending, next) -> pending == null || next.isBefore(pending) ? next : pending);
+        }
+    }
+
+    /**
+     * Record end-to-end latency of events whose transaction just committed
+     */
+    public void recordCommitted(String queue, List<? extends BaseEvent> events) {
+        OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime newest = null;
+        for (BaseEvent event : events) {
+            if (event.getTimestamp() == null) {
+                continue;
+            }
+            String eventType = tagValue(event.getEventType());
+            String routingKey = tagValue(event.getRoutingKey());
+            timers.computeIfAbsent("latency|" + eventType + "|" + routingKey,
+                    key -> Timer.builder("admin.ingest.latency")
+                        .description("Producer timestamp to commit in the reporting database")
+                        .tag("event_type", eventType)
+                        .tag("routing_key", routingKey)
+                        .publishPercentileHistogram()
+                        .publishPercentiles(PERCENTILES)
+                        .register(meterRegistry))
+                .record(Duration.between(event.getTimestamp(), now));
+            if (newest == null || event.getTimestamp().isAfter(newest)) {
+                newest = event.getTimestamp();
+            }
+        }
+        if (newest != null) {
+            lagOf(queue).committedMs.set(Duration.between(newest, now).toMillis());
+        }
+    }
+
+    /**
+     * The received batch is done with: committed, dropped as duplicates or dead-lettered.
+     * Pending events up to its newest one are covered, batches received since report again.
+     */
+    public void recordSettled(String queue, List<? extends BaseEvent> events) {
+        OffsetDateTime newest = null;
+        for (BaseEvent event : events) {
+            if (event.getTimestamp() != null && (newest == null || event.getTimestamp().isAfter(newest))) {
+                newest = event.getTimestamp();
+            }
+        }
+        if (newest != null) {
+            OffsetDateTime covered = newest;
+            lagOf(queue).oldestPending.updateAndGet(pending -> pending != null && !pending.isAfter(covered) ? null : pending);
+        }
+    }
+
+    private QueueLag lagOf(String queue) {
+        return lags.computeIfAbsent(queue, q -> {
+            QueueLag lag = new QueueLag();
+            TimeGauge.builder("admin.ingest.lag", lag, TimeUnit.MILLISECONDS, QueueLag::millis)
+                .description("Event-time lag of the oldest uncommitted event, or of the last committed batch")
+                .tag("queue", q)
+                .register(meterRegistry);
+            return lag;
+        });
+    }
+
+    /**
+     * Value shared by the batch's events, "mixed" if they differ
+     */
+    private static String batchValue(List<? extends BaseEvent> events, Function<BaseEvent, String> value) {
+        String first = value.apply(events.get(0));
+        for (BaseEvent event : events) {
+            if (!Objects.equals(value.apply(event), first)) {
+                return MIXED;
+            }
+        }
+        return tagValue(first);
+    }
+
+    private static String tagValue(String value) {
+        return value != null ? value : UNKNOWN;
+    }
+
+    @Value
+    private static class StageMeters {
+        Timer time;
+        DistributionSummary batchSize;
+    }
+
+    private static class QueueLag {
+        private final AtomicLong committedMs = new AtomicLong();
+        private final AtomicReference<OffsetDateTime> oldestPending = new AtomicReference<>();
+
+        private double millis() {
+            OffsetDateTime pending = oldestPending.get();
+            return pending != null ? Duration.between(pending, OffsetDateTime.now()).toMillis() : committedMs.get();
+        }
+    }
+}
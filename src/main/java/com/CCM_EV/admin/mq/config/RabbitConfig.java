@@ -2,17 +2,37 @@ package com.CCM_EV.admin.mq.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 @Configuration
 public class RabbitConfig {
     public static final String EX_EVENTS = "co2.events";
     public static final String EX_DLX    = "co2.events.dlx";
+    public static final String Q_DLQ     = "admin.events.dlq";
+
+    // Routing keys per queue, shared by the classic queue and stream bindings
+    // User events from Auth service
+    public static final List<String> USER_ROUTING_KEYS = List.of(
+        "auth.user.registered", "auth.user.loggedin", "auth.user.updated", "auth.user.deleted");
+    // Trade events from Marketplace service
+    public static final List<String> TRADE_ROUTING_KEYS = List.of(
+        "marketplace.trade.created", "marketplace.trade.updated", "marketplace.trade.completed", "marketplace.trade.cancelled");
+    // Issuance events from Carbon service
+    public static final List<String> ISSUANCE_ROUTING_KEYS = List.of(
+        "carbon.issuance.approved", "carbon.credit.requested", "carbon.credit.issued", "carbon.credit.rejected");
+    // Payment events from Payment service, matches publisher routing keys payment.payment.created|success|failed
+    public static final List<String> PAYMENT_ROUTING_KEYS = List.of(
+        "payment.payment.created", "payment.payment.success", "payment.payment.failed");
 
     @Bean TopicExchange events() { return new TopicExchange(EX_EVENTS, true, false); }
     @Bean TopicExchange dlx()    { return new TopicExchange(EX_DLX, true, false); }
@@ -23,42 +43,90 @@ public class RabbitConfig {
     @Bean Queue qIssuanceEvents() { return QueueBuilder.durable("admin.issuance.events").withArgument("x-dead-letter-exchange", EX_DLX).build(); }
     @Bean Queue qPaymentEvents()  { return QueueBuilder.durable("admin.payment.events").withArgument("x-dead-letter-exchange", EX_DLX).build(); }
 
-    // Bindings - User events from Auth service
-    @Bean Binding bUserRegistered() { return BindingBuilder.bind(qUserEvents()).to(events()).with("auth.user.registered"); }
-    @Bean Binding bUserLoggedIn()   { return BindingBuilder.bind(qUserEvents()).to(events()).with("auth.user.loggedin"); }
-    @Bean Binding bUserUpdated()    { return BindingBuilder.bind(qUserEvents()).to(events()).with("auth.user.updated"); }
-    @Bean Binding bUserDeleted()    { return BindingBuilder.bind(qUserEvents()).to(events()).with("auth.user.deleted"); }
-    
-    // Bindings - Trade events from Marketplace service
-    @Bean Binding bTradeCreated()    { return BindingBuilder.bind(qTradeEvents()).to(events()).with("marketplace.trade.created"); }
-    @Bean Binding bTradeUpdated()    { return BindingBuilder.bind(qTradeEvents()).to(events()).with("marketplace.trade.updated"); }
-    @Bean Binding bTradeCompleted()  { return BindingBuilder.bind(qTradeEvents()).to(events()).with("marketplace.trade.completed"); }
-    @Bean Binding bTradeCancelled()  { return BindingBuilder.bind(qTradeEvents()).to(events()).with("marketplace.trade.cancelled"); }
-    
-    // Bindings - Issuance events from Carbon service
-    @Bean Binding bIssuanceApproved() { return BindingBuilder.bind(qIssuanceEvents()).to(events()).with("carbon.issuance.approved"); }
-    @Bean Binding bCreditRequested()  { return BindingBuilder.bind(qIssuanceEvents()).to(events()).with("carbon.credit.requested"); }
-    @Bean Binding bCreditIssued()     { return BindingBuilder.bind(qIssuanceEvents()).to(events()).with("carbon.credit.issued"); }
-    @Bean Binding bCreditRejected()   { return BindingBuilder.bind(qIssuanceEvents()).to(events()).with("carbon.credit.rejected"); }
-    
-    // Bindings - Payment events from Payment service
-    // Matches Payment publisher routing keys: payment.payment.created|success|failed
-    @Bean Binding bPaymentCreated()  { return BindingBuilder.bind(qPaymentEvents()).to(events()).with("payment.payment.created"); }
-    @Bean Binding bPaymentSuccess()  { return BindingBuilder.bind(qPaymentEvents()).to(events()).with("payment.payment.success"); }
-    @Bean Binding bPaymentFailed()   { return BindingBuilder.bind(qPaymentEvents()).to(events()).with("payment.payment.failed"); }
+    // Dead letters from every queue, routing key is kept from the original message
+    @Bean Queue qDeadLetters()    { return QueueBuilder.durable(Q_DLQ).build(); }
+    @Bean Binding bDeadLetters()  { return BindingBuilder.bind(qDeadLetters()).to(dlx()).with("#"); }
+
+    /**
+     * Bind a queue or stream to the events exchange with the given routing keys
+     */
+    public static Declarables eventBindings(String queue, List<String> routingKeys) {
+        return new Declarables(routingKeys.stream()
+                .map(key -> new Binding(queue, Binding.DestinationType.QUEUE, EX_EVENTS, key, null))
+                .toList());
+    }
+
+    /**
+     * In stream ingestion mode events are routed to the streams instead, the classic queues then only
+     * receive dead-letter replays. Declaring never removes a binding, so switching an existing broker
+     * to stream mode also needs the old queue bindings deleted once.
+     */
+    @Configuration
+    @ConditionalOnProperty(name = "app.rabbitmq.ingestion.mode", havingValue = "queue", matchIfMissing = true)
+    static class QueueBindings {
+        @Bean Declarables bUserEvents()     { return eventBindings("admin.user.events", USER_ROUTING_KEYS); }
+        @Bean Declarables bTradeEvents()    { return eventBindings("admin.trade.events", TRADE_ROUTING_KEYS); }
+        @Bean Declarables bIssuanceEvents() { return eventBindings("admin.issuance.events", ISSUANCE_ROUTING_KEYS); }
+        @Bean Declarables bPaymentEvents()  { return eventBindings("admin.payment.events", PAYMENT_ROUTING_KEYS); }
+    }
 
     @Bean public MessageConverter jackson2MessageConverter(ObjectMapper om){ return new Jackson2JsonMessageConverter(om); }
 
+    /**
+     * Batch listener factory: each consumer thread hands the listener up to batchSize messages,
+     * or whatever arrived before receiveTimeout elapsed.
+     * One consumer per queue keeps delivery order; the listeners fan batches out over
+     * LaneDispatcher lanes for parallelism, so concurrency must not be raised here.
+     * Acknowledgement is manual: an EventPipeline acks a batch once its write committed, while
+     * the next batch is already being decoded, so prefetch covers two batches.
+     * The factories are built here from app.rabbitmq.listener, spring.rabbitmq.listener.simple does not apply.
+     */
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
-            ConnectionFactory cf, MessageConverter mc) {
+            ConnectionFactory cf, MessageConverter mc,
+            @Value("${app.rabbitmq.listener.batch-size:100}") int batchSize,
+            @Value("${app.rabbitmq.listener.batch-receive-timeout-ms:250}") long receiveTimeoutMs,
+            @Value("${app.rabbitmq.listener.idle-event-interval-ms:1000}") long idleEventIntervalMs) {
         var f = new SimpleRabbitListenerContainerFactory();
         f.setConnectionFactory(cf);
         f.setMessageConverter(mc);
-        f.setConcurrentConsumers(2);
-        f.setMaxConcurrentConsumers(8);
-        f.setPrefetchCount(100);
+        f.setConcurrentConsumers(1);
+        f.setMaxConcurrentConsumers(1);
+        f.setPrefetchCount(Math.max(100, 2 * batchSize));
+        f.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        f.setBatchListener(true);
+        f.setConsumerBatchEnabled(true);
+        f.setBatchSize(batchSize);
+        f.setReceiveTimeout(receiveTimeoutMs);
         f.setDefaultRequeueRejected(false);
+        // Idle events let a pipeline acknowledge its last batch on the consumer thread
+        f.setIdleEventInterval(idleEventIntervalMs);
+        return f;
+    }
+
+    /**
+     * Factory for the dead-letter queue: raw messages, and a failed insert backs off and
+     * requeues instead of dropping the message, since there is nowhere further to dead-letter it.
+     * Only an unavailable database fails the insert, rows the table refuses are parked by DeadLetterStore.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory deadLetterContainerFactory(
+            ConnectionFactory cf,
+            @Value("${app.rabbitmq.listener.batch-size:100}") int batchSize,
+            @Value("${app.rabbitmq.listener.batch-receive-timeout-ms:250}") long receiveTimeoutMs) {
+        var f = new SimpleRabbitListenerContainerFactory();
+        f.setConnectionFactory(cf);
+        f.setConcurrentConsumers(1);
+        f.setPrefetchCount(Math.max(100, batchSize));
+        f.setBatchListener(true);
+        f.setConsumerBatchEnabled(true);
+        f.setBatchSize(batchSize);
+        f.setReceiveTimeout(receiveTimeoutMs);
+        f.setDefaultRequeueRejected(true);
+        f.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxAttempts(5)
+                .backOffOptions(1000, 2.0, 30000)
+                .build());
         return f;
     }
 }
@@ -0,0 +1,242 @@
+package com.CCM_EV.admin.mq.consumer;
+
+import com.CCM_EV.admin.metrics.AdminMetricsService;
+import com.CCM_EV.admin.metrics.BusinessCounters;
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+import com.CCM_EV.admin.mq.idempotency.ProcessedEventFilter;
+import com.CCM_EV.admin.mq.idempotency.RedisEventClaims;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Idempotency store backed by consumed_events, shared by all event consumers.
+ *
+ * Lookups go through the local {@link ProcessedEventFilter} and, when enabled, the shared
+ * {@link RedisEventClaims} tier; only possible duplicates reach the database.
+ * The consumed_events insert at the start of the write transaction is the final guard.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConsumedEventStore {
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final ProcessedEventFilter filter;
+    private final RedisEventClaims redisClaims;
+    private final AdminMetricsService metricsService;
+    private final BusinessCounters businessCounters;
+
+    @Value("${app.idempotency.warmup-hours:24}")
+    private int warmupHours;
+
+    @Value("${app.idempotency.bloom.expected-insertions:1000000}")
+    private int warmupLimit;
+
+    /**
+     * Seed the local filter with recent event IDs so redeliveries after a restart stay cheap
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            List<String> recent = jdbc.queryForList(
+                "SELECT event_id FROM consumed_events WHERE received_at > NOW() - make_interval(hours => ?) LIMIT ?",
+                String.class,
+                warmupHours,
+                warmupLimit / 2
+            );
+            filter.seed(recent);
+            log.info("Seeded processed event filter with {} recent event IDs", recent.size());
+        } catch (Exception e) {
+            log.warn("Failed to seed processed event filter: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Drop events that were already processed or that repeat an earlier event in the same batch.
+     * Events without an eventId cannot be deduplicated and are always kept.
+     */
+    public <E extends BaseEvent> List<E> filterUnprocessed(List<E> events) {
+        Map<String, E> byId = new LinkedHashMap<>();
+        List<E> withoutId = new ArrayList<>();
+        for (E event : events) {
+            if (event.getEventId() == null) {
+                withoutId.add(event);
+            } else {
+                byId.putIfAbsent(event.getEventId(), event);
+            }
+        }
+
+        // Local tier: Bloom filter plus LRU of recently committed IDs
+        List<String> likelyNew = new ArrayList<>();
+        Set<String> maybe = new HashSet<>();
+        Set<String> duplicates = new HashSet<>();
+        for (String eventId : byId.keySet()) {
+            switch (filter.check(eventId)) {
+                case NEW -> likelyNew.add(eventId);
+                case DUPLICATE -> duplicates.add(eventId);
+                case MAYBE -> maybe.add(eventId);
+            }
+        }
+        metricsService.recordIdempotencyMiss(likelyNew.size());
+        metricsService.recordIdempotencyLocalHit(duplicates.size());
+
+        // Shared tier: IDs another instance already claimed have to be confirmed
+        Set<String> claimedHere = new HashSet<>();
+        if (redisClaims.isEnabled()) {
+            List<String> claimedElsewhere = redisClaims.claim(likelyNew);
+            metricsService.recordIdempotencyRedisHit(claimedElsewhere.size());
+            maybe.addAll(claimedElsewhere);
+            claimedHere.addAll(likelyNew);
+            claimedElsewhere.forEach(claimedHere::remove);
+        }
+
+        // Database only for possible duplicates
+        if (!maybe.isEmpty()) {
+            try {
+                Set<String> processed = findProcessed(maybe);
+                metricsService.recordIdempotencyDatabaseHit(processed.size());
+                metricsService.recordIdempotencyFalsePositive(maybe.size() - processed.size());
+                duplicates.addAll(processed);
+            } catch (RuntimeException e) {
+                // The batch is not written, its claims must not outlive it until their TTL
+                redisClaims.release(claimedHere);
+                throw e;
+            }
+        }
+
+        List<E> pending = new ArrayList<>(byId.size() + withoutId.size());
+        byId.forEach((eventId, event) -> {
+            if (duplicates.contains(eventId)) {
+                log.debug("Event {} already processed, skipping", eventId);
+            } else {
+                pending.add(event);
+            }
+        });
+        pending.addAll(withoutId);
+        return pending;
+    }
+
+    /**
+     * Single round trip lookup of already consumed event IDs
+     */
+    public Set<String> findProcessed(Set<String> eventIds) {
+        if (eventIds.isEmpty()) {
+            return Set.of();
+        }
+        List<String> found = jdbc.queryForList(
+            "SELECT event_id FROM consumed_events WHERE event_id = ANY(?)",
+            String.class,
+            (Object) eventIds.toArray(String[]::new)
+        );
+        return new HashSet<>(found);
+    }
+
+    /**
+     * Record a batch of events as processed and return the ones this transaction won.
+     * Must run first in the write transaction: events another consumer already committed are dropped,
+     * so the caller only applies facts for the returned events.
+     */
+    public <E extends BaseEvent> List<E> claim(String eventType, List<E> events) {
+        List<String> ids = new ArrayList<>(events.size());
+        List<String> payloads = new ArrayList<>(events.size());
+        for (E event : events) {
+            if (event.getEventId() != null) {
+                ids.add(event.getEventId());
+                payloads.add(payloadOf(event));
+            }
+        }
+        if (ids.isEmpty()) {
+            return events;
+        }
+
+        // Registered before the insert so claims are released whenever the transaction rolls back,
+        // all of the batch's if the insert itself failed
+        Set<String> claimed = new HashSet<>();
+        boolean[] inserted = {false};
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        filter.recordProcessed(claimed);
+                    } else {
+                        redisClaims.release(inserted[0] ? claimed : new HashSet<>(ids));
+                    }
+                }
+            });
+        }
+
+        claimed.addAll(jdbc.queryForList("""
+            INSERT INTO consumed_events (event_id, event_type, payload, received_at)
+            SELECT e.event_id, ?, e.payload::jsonb, ?
+            FROM unnest(?::text[], ?::text[]) AS e(event_id, payload)
+            ON CONFLICT (event_id) DO NOTHING
+            RETURNING event_id
+            """,
+            String.class,
+            eventType,
+            OffsetDateTime.now(),
+            ids.toArray(String[]::new),
+            payloads.toArray(String[]::new)
+        ));
+        inserted[0] = true;
+        businessCounters.addEventsProcessed(claimed.size());
+
+        List<E> won = new ArrayList<>(events.size());
+        for (E event : events) {
+            if (event.getEventId() == null || claimed.contains(event.getEventId())) {
+                won.add(event);
+            } else {
+                log.debug("Event {} committed concurrently by another consumer, skipping", event.getEventId());
+            }
+        }
+        return won;
+    }
+
+    /**
+     * Release the shared claims of events that could not be written, e.g. because their
+     * transaction never started, so their redelivery is not held up
+     */
+    public void release(List<? extends BaseEvent> events) {
+        Set<String> eventIds = new HashSet<>();
+        for (BaseEvent event : events) {
+            if (event.getEventId() != null) {
+                eventIds.add(event.getEventId());
+            }
+        }
+        redisClaims.release(eventIds);
+    }
+
+    /**
+     * JSON payload of an event as stored in consumed_events and system_logs.
+     * Events decoded from a message reuse the received body, others are serialized.
+     */
+    public String payloadOf(BaseEvent event) {
+        if (event.getRawPayload() != null) {
+            return event.getRawPayload();
+        }
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize event " + event.getEventId(), e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.CCM_EV.admin.mq.consumer;
+
+import com.CCM_EV.admin.metrics.AdminMetricsService;
+import com.CCM_EV.admin.metrics.IngestionMetrics;
+import com.CCM_EV.admin.mq.dlq.DeadLetterPublisher;
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a batch of AMQP messages into events, parsing each body once.
+ * The received body is kept on the event, so consumed_events and system_logs store it as is
+ * instead of serializing the event again.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventDecoder {
+
+    private final ObjectMapper objectMapper;
+    private final DeadLetterPublisher deadLetters;
+    private final AdminMetricsService metricsService;
+    private final IngestionMetrics ingestionMetrics;
+
+    /**
+     * Decode every message of the batch. Messages that are not a valid event are dead-lettered
+     * and left out, so the rest of the batch still goes through. A dead letter the broker does
+     * not confirm fails the whole batch, see {@link DeadLetterPublisher}.
+     */
+    public <E extends BaseEvent> List<E> decode(List<Message> messages, Class<E> type, String sourceQueue) {
+        long start = System.nanoTime();
+        List<E> events = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            byte[] body = message.getBody();
+            try {
+                E event = objectMapper.readValue(body, type);
+                event.setRawPayload(new String(body, StandardCharsets.UTF_8));
+                event.setRoutingKey(message.getMessageProperties().getReceivedRoutingKey());
+                event.setMessageHeaders(message.getMessageProperties().getHeaders());
+                events.add(event);
+            } catch (Exception e) {
+                log.error("Failed to decode message from {} as {}", sourceQueue, type.getSimpleName(), e);
+                metricsService.recordProcessingError();
+                deadLetters.publish(sourceQueue, message, e);
+            }
+        }
+        ingestionMetrics.recordStage(IngestionMetrics.Stage.DECODE, sourceQueue, events, System.nanoTime() - start);
+        return events;
+    }
+}
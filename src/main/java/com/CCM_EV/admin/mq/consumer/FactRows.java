@@ -0,0 +1,158 @@
+package com.CCM_EV.admin.mq.consumer;
+
+import com.CCM_EV.admin.mq.dto.common.IssuanceEventDTO;
+import com.CCM_EV.admin.mq.dto.common.PaymentEventDTO;
+import com.CCM_EV.admin.mq.dto.common.TradeEventDTO;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Column lists, upsert actions and row mapping for the fact tables.
+ * Shared by the consumers and the bulk backfill so both write identical rows.
+ */
+@Slf4j
+public final class FactRows {
+
+    public static final String TRADE_COLUMNS = """
+        order_id, listing_id, buyer_id, seller_id, quantity, unit, unit_price,
+        amount, currency, executed_at, region, is_auction, order_status, status_changed_at""";
+
+    public static final String TRADE_UPSERT_ACTION = """
+        ON CONFLICT (order_id, executed_at) DO UPDATE SET
+            listing_id = EXCLUDED.listing_id,
+            buyer_id = EXCLUDED.buyer_id,
+            seller_id = EXCLUDED.seller_id,
+            quantity = EXCLUDED.quantity,
+            unit = EXCLUDED.unit,
+            unit_price = EXCLUDED.unit_price,
+            amount = EXCLUDED.amount,
+            currency = EXCLUDED.currency,
+            region = EXCLUDED.region,
+            is_auction = EXCLUDED.is_auction,
+            order_status = EXCLUDED.order_status,
+            status_changed_at = EXCLUDED.status_changed_at""";
+
+    public static final String PAYMENT_COLUMNS = """
+        payment_id, order_id, payer_id, payee_id, amount, currency,
+        status, payment_method, completed_at, region, status_changed_at""";
+
+    public static final String PAYMENT_UPSERT_ACTION = """
+        ON CONFLICT (payment_id, completed_at) DO UPDATE SET
+            status = EXCLUDED.status,
+            completed_at = EXCLUDED.completed_at,
+            payer_id = EXCLUDED.payer_id,
+            payee_id = EXCLUDED.payee_id,
+            region = EXCLUDED.region,
+            status_changed_at = EXCLUDED.status_changed_at""";
+
+    public static final String ISSUANCE_COLUMNS = """
+        issuance_id, user_id, vehicle_id, quantity_tco2e, distance_km,
+        energy_kwh, co2_avoided_kg, issued_at, region, request_id, status""";
+
+    public static final String ISSUANCE_UPSERT_ACTION = """
+        ON CONFLICT (issuance_id, issued_at) DO UPDATE SET
+            user_id = EXCLUDED.user_id,
+            vehicle_id = EXCLUDED.vehicle_id,
+            quantity_tco2e = EXCLUDED.quantity_tco2e,
+            distance_km = EXCLUDED.distance_km,
+            energy_kwh = EXCLUDED.energy_kwh,
+            co2_avoided_kg = EXCLUDED.co2_avoided_kg,
+            region = EXCLUDED.region,
+            status = EXCLUDED.status""";
+
+    private FactRows() {
+    }
+
+    /**
+     * Row values in {@link #TRADE_COLUMNS} order, key is (order_id, executed_at)
+     */
+    public static Object[] tradeRow(TradeEventDTO event) {
+        // Convert buyerId and sellerId from String to Long for database
+        Long buyerId = null;
+        Long sellerId = null;
+        try {
+            if (event.getBuyerId() != null && !event.getBuyerId().isEmpty()) {
+                buyerId = Long.parseLong(event.getBuyerId());
+            }
+            if (event.getSellerId() != null && !event.getSellerId().isEmpty()) {
+                sellerId = Long.parseLong(event.getSellerId());
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Invalid buyerId or sellerId format: buyer={}, seller={}",
+                    event.getBuyerId(), event.getSellerId());
+        }
+
+        return new Object[] {
+            event.getOrderId(),
+            event.getListingId(),
+            buyerId,
+            sellerId,
+            event.getQuantity(),
+            event.getQuantityUnit() != null ? event.getQuantityUnit() : "tCO2e",
+            event.getUnitPrice(),
+            event.getAmount(),
+            event.getCurrency(),
+            event.getTimestamp(),
+            event.getRegion(),
+            event.getIsAuction() != null ? event.getIsAuction() : false,
+            event.getOrderStatus(),
+            event.getStatusChangedAt() != null ? event.getStatusChangedAt() : OffsetDateTime.now()
+        };
+    }
+
+    /**
+     * Row values in {@link #PAYMENT_COLUMNS} order, key is (payment_id, completed_at)
+     */
+    public static Object[] paymentRow(PaymentEventDTO event) {
+        OffsetDateTime statusTimestamp = event.getCompletedAt() != null
+                ? event.getCompletedAt()
+                : (event.getFailedAt() != null ? event.getFailedAt() : event.getInitiatedAt());
+
+        return new Object[] {
+            event.getPaymentId(),
+            event.getOrderId(),
+            event.getPayerId(),
+            event.getPayeeId(),
+            event.getAmount(),
+            event.getCurrency(),
+            event.getStatus(),
+            event.getPaymentMethod(),
+            statusTimestamp,
+            event.getRegion(),
+            event.getTimestamp()
+        };
+    }
+
+    /**
+     * Row values in {@link #ISSUANCE_COLUMNS} order, key is (issuance_id, issued_at)
+     */
+    public static Object[] issuanceRow(IssuanceEventDTO event) {
+        // Convert userId from String to Long for database
+        Long userId = null;
+        try {
+            if (event.getUserId() != null && !event.getUserId().isEmpty()) {
+                userId = Long.parseLong(event.getUserId());
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Invalid userId format: {}", event.getUserId());
+        }
+
+        // Use requestId as unique identifier (issuanceId is null for PENDING/REJECTED)
+        String uniqueId = event.getIssuanceId() != null ? event.getIssuanceId() : event.getRequestId();
+
+        return new Object[] {
+            uniqueId,
+            userId,
+            event.getVehicleId(),
+            event.getQuantityTco2e(),
+            event.getDistanceKm(),
+            event.getEnergyKwh(),
+            event.getCo2AvoidedKg(),
+            event.getTimestamp(),
+            event.getRegion(),
+            event.getRequestId(),
+            event.getStatus()
+        };
+    }
+}
@@ -1,185 +1,169 @@
 package com.CCM_EV.admin.mq.consumer;
 
+import com.CCM_EV.admin.entity.SystemLog;
 import com.CCM_EV.admin.metrics.AdminMetricsService;
 import com.CCM_EV.admin.mq.dto.common.IssuanceEventDTO;
-import com.CCM_EV.admin.service.SystemLogService;
-import com.CCM_EV.admin.service.SystemNotificationService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.CCM_EV.admin.mq.pipeline.EventHandler;
+import com.CCM_EV.admin.rollup.RollupService;
+import com.CCM_EV.admin.rollup.Rollups;
+import com.CCM_EV.admin.service.NotificationAggregator;
+import com.CCM_EV.admin.service.NotificationAggregator.PendingNotification;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Consumer for carbon credit issuance events from CarbonModule
+ * Handler for carbon credit issuance events from CarbonModule
  */
-@Slf4j
 @Component
 @RequiredArgsConstructor
-public class IssuanceEventConsumer {
-    
+public class IssuanceEventConsumer implements EventHandler<IssuanceEventDTO> {
+
     private final JdbcTemplate jdbc;
-    private final ObjectMapper objectMapper;
-    private final SystemLogService logService;
-    private final SystemNotificationService notificationService;
+    private final ConsumedEventStore consumedEvents;
+    private final NotificationAggregator notifications;
     private final AdminMetricsService metricsService;
-    
-    @RabbitListener(queues = "${app.rabbitmq.queues.issuance-events:admin.issuance.events}")
-    @Transactional
-    public void handleIssuanceEvent(IssuanceEventDTO event) {
-        try {
-            
-            // Check if event already processed
-            if (isEventProcessed(event.getEventId())) {
-                log.debug("Event {} already processed, skipping", event.getEventId());
-                return;
-            }
-            
-            log.info("Processing issuance event: {} for request: {}", event.getStatus(), event.getRequestId());
-            
-            // Process all issuance statuses
-            upsertIssuance(event);
-            
-            // Create appropriate notifications based on status
-            switch (event.getStatus()) {
-                case "PENDING":
-                    notificationService.createNotification(
-                        "INFO",
-                        "BUSINESS",
-                        "Carbon Credit Request Submitted",
-                        String.format("Your carbon credit request for %.2f tCO2e is being reviewed", event.getQuantityTco2e()),
-                        event.getSource(),
-                        String.valueOf(event.getUserId()),
-                        168 // expires in 7 days
-                    );
-                    break;
-                    
-                case "APPROVED":
-                    metricsService.recordCreditIssued();
-                    notificationService.createNotification(
-                        "SUCCESS",
-                        "BUSINESS",
-                        "Carbon Credits Issued",
-                        String.format("%.2f tCO2e carbon credits have been issued to your account", event.getQuantityTco2e()),
-                        event.getSource(),
-                        String.valueOf(event.getUserId()),
-                        168 // expires in 7 days
-                    );
-                    break;
-                    
-                case "REJECTED":
-                    notificationService.createNotification(
-                        "WARNING",
-                        "BUSINESS",
-                        "Carbon Credit Request Rejected",
-                        String.format("Your carbon credit request for %.2f tCO2e has been rejected", event.getQuantityTco2e()),
-                        event.getSource(),
-                        String.valueOf(event.getUserId()),
-                        168 // expires in 7 days
-                    );
-                    break;
-            }
-            
-            // Mark event as processed
-            markEventAsProcessed(event.getEventId(), "ISSUANCE_EVENT", event);
-            
-            // Log the event
-            logService.createLog(
-                "INFO",
-                event.getSource(),
-                "BUSINESS",
-                "Issuance event: " + event.getStatus(),
-                objectMapper.writeValueAsString(event),
-                event.getCorrelationId(),
-                String.valueOf(event.getUserId())
-            );
-            
-        } catch (Exception e) {
-            log.error("Failed to process issuance event", e);
-            logService.createLog(
-                "ERROR",
-                "admin-service",
-                "SYSTEM",
-                "Failed to process issuance event",
-                e.getMessage(),
-                null,
-                null
-            );
-            metricsService.recordProcessingError();
+    private final RollupService rollups;
+
+    @Value("${app.rabbitmq.queues.issuance-events:admin.issuance.events}")
+    private String queue;
+
+    @Override
+    public String name() {
+        return "issuance";
+    }
+
+    @Override
+    public Class<IssuanceEventDTO> eventClass() {
+        return IssuanceEventDTO.class;
+    }
+
+    @Override
+    public String eventType() {
+        return "ISSUANCE_EVENT";
+    }
+
+    @Override
+    public String queue() {
+        return queue;
+    }
+
+    @Override
+    public Object laneKey(IssuanceEventDTO event) {
+        // Events of one issuance request stay in order on one lane, different requests run in parallel
+        return event.getRequestId() != null ? event.getRequestId() : event.getIssuanceId();
+    }
+
+    @Override
+    public void upsert(List<IssuanceEventDTO> batch) {
+        upsertIssuances(batch);
+    }
+
+    @Override
+    public void sendNotifications(List<IssuanceEventDTO> batch) {
+        notifyEvents(batch);
+    }
+
+    @Override
+    public List<String> tables() {
+        return List.of("fact_issuance");
+    }
+
+    @Override
+    public String logCategory() {
+        return "BUSINESS";
+    }
+
+    private void notifyEvents(List<IssuanceEventDTO> batch) {
+        for (IssuanceEventDTO event : batch) {
+            notifyStatusChange(event);
         }
     }
-    
-    private void upsertIssuance(IssuanceEventDTO event) {
-        // Convert userId from String to Long for database
-        Long userId = null;
-        try {
-            if (event.getUserId() != null && !event.getUserId().isEmpty()) {
-                userId = Long.parseLong(event.getUserId());
-            }
-        } catch (NumberFormatException e) {
-            log.warn("Invalid userId format: {}", event.getUserId());
+
+    @Override
+    public SystemLog logEntry(IssuanceEventDTO event) {
+        return SystemLog.builder()
+            .logLevel("INFO")
+            .sourceService(event.getSource())
+            .category("BUSINESS")
+            .message("Issuance event: " + event.getStatus())
+            .details(consumedEvents.payloadOf(event))
+            .correlationId(event.getCorrelationId())
+            .userId(String.valueOf(event.getUserId()))
+            .build();
+    }
+
+    @Override
+    public void recordMetrics(IssuanceEventDTO event) {
+        if ("APPROVED".equals(event.getStatus())) {
+            metricsService.recordCreditIssued();
         }
-        
-        // Use requestId as unique identifier (issuanceId is null for PENDING/REJECTED)
-        String uniqueId = event.getIssuanceId() != null ? event.getIssuanceId() : event.getRequestId();
-        
-        jdbc.update("""
-            INSERT INTO fact_issuance (
-                issuance_id, user_id, vehicle_id, quantity_tco2e, distance_km, 
-                energy_kwh, co2_avoided_kg, issued_at, region, request_id, status
-            )
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-            ON CONFLICT (issuance_id, issued_at) DO UPDATE SET
-                user_id = EXCLUDED.user_id,
-                vehicle_id = EXCLUDED.vehicle_id,
-                quantity_tco2e = EXCLUDED.quantity_tco2e,
-                distance_km = EXCLUDED.distance_km,
-                energy_kwh = EXCLUDED.energy_kwh,
-                co2_avoided_kg = EXCLUDED.co2_avoided_kg,
-                region = EXCLUDED.region,
-                status = EXCLUDED.status
-            """,
-            uniqueId,
-            userId,
-            event.getVehicleId(),
-            event.getQuantityTco2e(),
-            event.getDistanceKm(),
-            event.getEnergyKwh(),
-            event.getCo2AvoidedKg(),
-            event.getTimestamp(),
-            event.getRegion(),
-            event.getRequestId(),
-            event.getStatus()
-        );
     }
-    
-    private boolean isEventProcessed(String eventId) {
-        Integer count = jdbc.queryForObject(
-            "SELECT COUNT(*) FROM consumed_events WHERE event_id = ?",
-            Integer.class,
-            eventId
-        );
-        return count != null && count > 0;
+
+    private void notifyStatusChange(IssuanceEventDTO event) {
+        switch (event.getStatus()) {
+            case "PENDING":
+                notifications.add(PendingNotification.builder()
+                    .level("INFO")
+                    .category("BUSINESS")
+                    .title("Carbon Credit Request Submitted")
+                    .message(String.format("Your carbon credit request for %.2f tCO2e is being reviewed", event.getQuantityTco2e()))
+                    .sourceService(event.getSource())
+                    .targetUserId(String.valueOf(event.getUserId()))
+                    .expiresInHours(168) // expires in 7 days
+                    .summary("carbon credit requests submitted for review")
+                    .build());
+                break;
+
+            case "APPROVED":
+                notifications.add(PendingNotification.builder()
+                    .level("SUCCESS")
+                    .category("BUSINESS")
+                    .title("Carbon Credits Issued")
+                    .message(String.format("%.2f tCO2e carbon credits have been issued to your account", event.getQuantityTco2e()))
+                    .sourceService(event.getSource())
+                    .targetUserId(String.valueOf(event.getUserId()))
+                    .expiresInHours(168) // expires in 7 days
+                    .summary("carbon credit issuances approved")
+                    .build());
+                break;
+
+            case "REJECTED":
+                notifications.add(PendingNotification.builder()
+                    .level("WARNING")
+                    .category("BUSINESS")
+                    .title("Carbon Credit Request Rejected")
+                    .message(String.format("Your carbon credit request for %.2f tCO2e has been rejected", event.getQuantityTco2e()))
+                    .sourceService(event.getSource())
+                    .targetUserId(String.valueOf(event.getUserId()))
+                    .expiresInHours(168) // expires in 7 days
+                    .summary("carbon credit requests rejected")
+                    .build());
+                break;
+        }
     }
-    
-    private void markEventAsProcessed(String eventId, String eventType, IssuanceEventDTO event) {
-        try {
-            jdbc.update("""
-                INSERT INTO consumed_events (event_id, event_type, payload, received_at)
-                VALUES (?, ?, ?::jsonb, ?)
-                ON CONFLICT (event_id) DO NOTHING
-                """,
-                eventId,
-                eventType,
-                objectMapper.writeValueAsString(event),
-                OffsetDateTime.now()
-            );
-        } catch (Exception e) {
-            log.error("Failed to mark event as processed", e);
+
+    private void upsertIssuances(List<IssuanceEventDTO> batch) {
+        // A multi-row upsert may not touch the same key twice, keep the latest event per key
+        Map<String, Object[]> rows = new LinkedHashMap<>();
+        for (IssuanceEventDTO event : batch) {
+            Object[] row = FactRows.issuanceRow(event);
+            String key = row[0] + "|" + event.getTimestamp();
+            rows.remove(key);
+            rows.put(key, row);
         }
+
+        List<Object[]> keys = rows.values().stream().map(row -> new Object[] {row[0], row[7]}).toList();
+        rollups.track(Rollups.ISSUANCE_DAILY, keys, () -> jdbc.batchUpdate("""
+            INSERT INTO fact_issuance (%s)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            %s
+            """.formatted(FactRows.ISSUANCE_COLUMNS, FactRows.ISSUANCE_UPSERT_ACTION), new ArrayList<>(rows.values())));
     }
 }
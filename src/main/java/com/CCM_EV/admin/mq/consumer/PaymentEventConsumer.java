@@ -1,148 +1,135 @@
 package com.CCM_EV.admin.mq.consumer;
 
+import com.CCM_EV.admin.entity.SystemLog;
 import com.CCM_EV.admin.metrics.AdminMetricsService;
 import com.CCM_EV.admin.mq.dto.common.PaymentEventDTO;
-import com.CCM_EV.admin.service.SystemLogService;
-import com.CCM_EV.admin.service.SystemNotificationService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.CCM_EV.admin.mq.pipeline.EventHandler;
+import com.CCM_EV.admin.rollup.RollupService;
+import com.CCM_EV.admin.rollup.Rollups;
+import com.CCM_EV.admin.service.NotificationAggregator;
+import com.CCM_EV.admin.service.NotificationAggregator.PendingNotification;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * Consumer for payment events from Payment service
+ * Handler for payment events from Payment service
  */
-@Slf4j
 @Component
 @RequiredArgsConstructor
-public class PaymentEventConsumer {
-    
+public class PaymentEventConsumer implements EventHandler<PaymentEventDTO> {
+
     private final JdbcTemplate jdbc;
-    private final ObjectMapper objectMapper;
-    private final SystemLogService logService;
-    private final SystemNotificationService notificationService;
+    private final ConsumedEventStore consumedEvents;
+    private final NotificationAggregator notifications;
     private final AdminMetricsService metricsService;
-    
-    @RabbitListener(queues = "${app.rabbitmq.queues.payment-events:admin.payment.events}")
-    @Transactional
-    public void handlePaymentEvent(PaymentEventDTO event) {
-        try {
-            
-            // Check if event already processed
-            if (isEventProcessed(event.getEventId())) {
-                log.debug("Event {} already processed, skipping", event.getEventId());
-                return;
-            }
-            
-            log.info("Processing payment event: {} for payment: {}", event.getStatus(), event.getPaymentId());
-            
-            // Upsert payment data
-            upsertPayment(event);
-            metricsService.recordPayment(event.getStatus());
-            
-            // Mark event as processed
-            markEventAsProcessed(event.getEventId(), "PAYMENT_EVENT", event);
-            
-            // Log the event
-            logService.createLog(
-                "INFO",
-                event.getSource(),
-                "BUSINESS",
-                "Payment event: " + event.getStatus(),
-                objectMapper.writeValueAsString(event),
-                event.getCorrelationId(),
-                event.getPayerId()
-            );
-            
-            // Create notification for failed payments
+    private final RollupService rollups;
+
+    @Value("${app.rabbitmq.queues.payment-events:admin.payment.events}")
+    private String queue;
+
+    @Override
+    public String name() {
+        return "payment";
+    }
+
+    @Override
+    public Class<PaymentEventDTO> eventClass() {
+        return PaymentEventDTO.class;
+    }
+
+    @Override
+    public String eventType() {
+        return "PAYMENT_EVENT";
+    }
+
+    @Override
+    public String queue() {
+        return queue;
+    }
+
+    @Override
+    public Object laneKey(PaymentEventDTO event) {
+        // Events of one payment stay in order on one lane, different payments run in parallel
+        return event.getPaymentId();
+    }
+
+    @Override
+    public void upsert(List<PaymentEventDTO> batch) {
+        upsertPayments(batch);
+    }
+
+    @Override
+    public void sendNotifications(List<PaymentEventDTO> batch) {
+        notifyEvents(batch);
+    }
+
+    @Override
+    public List<String> tables() {
+        return List.of("fact_payment");
+    }
+
+    @Override
+    public String logCategory() {
+        return "BUSINESS";
+    }
+
+    private void notifyEvents(List<PaymentEventDTO> batch) {
+        for (PaymentEventDTO event : batch) {
             if ("FAILED".equals(event.getStatus())) {
-                notificationService.createNotification(
-                    "WARNING",
-                    "BUSINESS",
-                    "Payment Failed",
-                    String.format("Payment %s failed: %s", event.getPaymentId(), event.getErrorMessage()),
-                    event.getSource(),
-                    event.getPayerId(),
-                    48 // expires in 48 hours
-                );
+                notifications.add(PendingNotification.builder()
+                    .level("WARNING")
+                    .category("BUSINESS")
+                    .title("Payment Failed")
+                    .message(String.format("Payment %s failed: %s", event.getPaymentId(), event.getErrorMessage()))
+                    .sourceService(event.getSource())
+                    .targetUserId(event.getPayerId())
+                    .expiresInHours(48) // expires in 48 hours
+                    .summary("payments failed")
+                    .build());
             }
-            
-        } catch (Exception e) {
-            log.error("Failed to process payment event", e);
-            logService.createLog(
-                "ERROR",
-                "admin-service",
-                "SYSTEM",
-                "Failed to process payment event",
-                e.getMessage(),
-                null,
-                null
-            );
-            metricsService.recordProcessingError();
         }
     }
-    
-    private void upsertPayment(PaymentEventDTO event) {
-        var statusTimestamp = event.getCompletedAt() != null
-                ? event.getCompletedAt()
-                : (event.getFailedAt() != null ? event.getFailedAt() : event.getInitiatedAt());
-
-        jdbc.update("""
-            INSERT INTO fact_payment (
-                payment_id, order_id, payer_id, payee_id, amount, currency, 
-                status, payment_method, completed_at, region, status_changed_at
-            )
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-            ON CONFLICT (payment_id, completed_at) DO UPDATE SET
-                status = EXCLUDED.status,
-                completed_at = EXCLUDED.completed_at,
-                payer_id = EXCLUDED.payer_id,
-                payee_id = EXCLUDED.payee_id,
-                region = EXCLUDED.region,
-                status_changed_at = EXCLUDED.status_changed_at
-            """,
-            event.getPaymentId(),
-            event.getOrderId(),
-            event.getPayerId(),
-            event.getPayeeId(),
-            event.getAmount(),
-            event.getCurrency(),
-            event.getStatus(),
-            event.getPaymentMethod(),
-            statusTimestamp,
-            event.getRegion(),
-            event.getTimestamp()
-        );
+
+    @Override
+    public SystemLog logEntry(PaymentEventDTO event) {
+        return SystemLog.builder()
+            .logLevel("INFO")
+            .sourceService(event.getSource())
+            .category("BUSINESS")
+            .message("Payment event: " + event.getStatus())
+            .details(consumedEvents.payloadOf(event))
+            .correlationId(event.getCorrelationId())
+            .userId(event.getPayerId())
+            .build();
     }
-    
-    private boolean isEventProcessed(String eventId) {
-        Integer count = jdbc.queryForObject(
-            "SELECT COUNT(*) FROM consumed_events WHERE event_id = ?",
-            Integer.class,
-            eventId
-        );
-        return count != null && count > 0;
+
+    @Override
+    public void recordMetrics(PaymentEventDTO event) {
+        metricsService.recordPayment(event.getStatus());
     }
-    
-    private void markEventAsProcessed(String eventId, String eventType, PaymentEventDTO event) {
-        try {
-            jdbc.update("""
-                INSERT INTO consumed_events (event_id, event_type, payload, received_at)
-                VALUES (?, ?, ?::jsonb, ?)
-                ON CONFLICT (event_id) DO NOTHING
-                """,
-                eventId,
-                eventType,
-                objectMapper.writeValueAsString(event),
-                OffsetDateTime.now()
-            );
-        } catch (Exception e) {
-            log.error("Failed to mark event as processed", e);
+
+    private void upsertPayments(List<PaymentEventDTO> batch) {
+        // A multi-row upsert may not touch the same key twice, keep the latest event per key
+        Map<String, Object[]> rows = new LinkedHashMap<>();
+        for (PaymentEventDTO event : batch) {
+            Object[] row = FactRows.paymentRow(event);
+            String key = event.getPaymentId() + "|" + row[8];
+            rows.remove(key);
+            rows.put(key, row);
         }
+
+        List<Object[]> keys = rows.values().stream().map(row -> new Object[] {row[0], row[8]}).toList();
+        rollups.track(Rollups.PAYMENT_DAILY, keys, () -> jdbc.batchUpdate("""
+            INSERT INTO fact_payment (%s)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            %s
+            """.formatted(FactRows.PAYMENT_COLUMNS, FactRows.PAYMENT_UPSERT_ACTION), new ArrayList<>(rows.values())));
     }
 }
@@ -1,115 +1,208 @@
 package com.CCM_EV.admin.mq.consumer;
 
+import com.CCM_EV.admin.entity.SystemLog;
+import com.CCM_EV.admin.hotwindow.HotTables;
+import com.CCM_EV.admin.hotwindow.HotWindowService;
 import com.CCM_EV.admin.metrics.AdminMetricsService;
+import com.CCM_EV.admin.metrics.BusinessCounters;
 import com.CCM_EV.admin.mq.dto.common.UserEventDTO;
-import com.CCM_EV.admin.service.SystemLogService;
-import com.CCM_EV.admin.service.SystemNotificationService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.CCM_EV.admin.mq.pipeline.EventHandler;
+import com.CCM_EV.admin.rollup.RollupDeltas;
+import com.CCM_EV.admin.rollup.RollupService;
+import com.CCM_EV.admin.rollup.Rollups;
+import com.CCM_EV.admin.timeseries.TimeSeriesCatalog;
+import com.CCM_EV.admin.timeseries.TimeSeriesTierService;
+import com.CCM_EV.admin.service.NotificationAggregator;
+import com.CCM_EV.admin.service.NotificationAggregator.PendingNotification;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * Consumer for user-related events (register, login, update, etc.)
+ * Handler for user-related events (register, login, update, etc.)
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class UserEventConsumer {
+public class UserEventConsumer implements EventHandler<UserEventDTO> {
     
     private final JdbcTemplate jdbc;
-    private final ObjectMapper objectMapper;
-    private final SystemLogService logService;
-    private final SystemNotificationService notificationService;
+    private final ConsumedEventStore consumedEvents;
+    private final NotificationAggregator notifications;
+    private final UserStateBuffer userState;
     private final AdminMetricsService metricsService;
+    private final RollupService rollups;
+    private final BusinessCounters businessCounters;
+    private final HotWindowService hotWindow;
+    private final TimeSeriesTierService timeSeries;
     
-    @RabbitListener(queues = "${app.rabbitmq.queues.user-events:admin.user.events}")
-    @Transactional
-    public void handleUserEvent(UserEventDTO event) {
-        try {
-            
-            // Check if event already processed (deduplication)
-            if (isEventProcessed(event.getEventId())) {
-                log.debug("Event {} already processed, skipping", event.getEventId());
-                return;
+    @Value("${app.rabbitmq.queues.user-events:admin.user.events}")
+    private String queue;
+
+    @Override
+    public String name() {
+        return "user";
+    }
+
+    @Override
+    public Class<UserEventDTO> eventClass() {
+        return UserEventDTO.class;
+    }
+
+    @Override
+    public String eventType() {
+        return "USER_EVENT";
+    }
+
+    @Override
+    public String queue() {
+        return queue;
+    }
+
+    @Override
+    public Object laneKey(UserEventDTO event) {
+        // Events of one user stay in order on one lane, different users run in parallel
+        return event.getUserId();
+    }
+
+    @Override
+    public void upsert(List<UserEventDTO> batch) {
+        applyUserEvents(batch);
+    }
+
+    @Override
+    public void sendNotifications(List<UserEventDTO> batch) {
+        notifyRegistrations(batch);
+    }
+
+    @Override
+    public List<String> tables() {
+        return List.of("dim_users", "fact_user_activity");
+    }
+
+    @Override
+    public String logCategory() {
+        return "USER";
+    }
+
+    /**
+     * dim_users is folded from the whole event history, it is rebuilt by backfill rather than replay
+     */
+    @Override
+    public boolean isReplayable() {
+        return false;
+    }
+    
+    private void applyUserEvents(List<UserEventDTO> batch) {
+        List<Object[]> activities = new ArrayList<>(batch.size());
+        for (UserEventDTO event : batch) {
+            String activityType = applyUserEvent(event);
+            if (activityType != null) {
+                activities.add(toActivityRow(event, activityType));
             }
-            
-            log.info("Processing user event: {} for user: {}", event.getAction(), event.getUserId());
-            
-            // Process based on action type
-            switch (event.getAction()) {
-                case "REGISTERED":
-                    handleUserRegistered(event);
-                    metricsService.recordUserRegistered();
-                    break;
-                case "LOGGED_IN":
-                    handleUserLoggedIn(event);
-                    metricsService.recordUserLogin();
-                    break;
-                case "UPDATED":
-                    handleUserUpdated(event);
-                    break;
-                case "DELETED":
-                    handleUserDeleted(event);
-                    break;
-                case "ENABLED":
-                case "DISABLED":
-                    handleUserStatusChanged(event);
-                    break;
-                default:
-                    log.warn("Unknown user action: {}", event.getAction());
+        }
+        recordUserActivities(activities);
+    }
+
+    private void notifyRegistrations(List<UserEventDTO> batch) {
+        for (UserEventDTO event : batch) {
+            if ("REGISTERED".equals(event.getAction())) {
+                notifications.add(PendingNotification.builder()
+                    .level("INFO")
+                    .category("BUSINESS")
+                    .title("New User Registered")
+                    .message(String.format("User %s registered with role %s", event.getUsername(), event.getRole()))
+                    .sourceService(event.getSource())
+                    .expiresInHours(72) // expires in 72 hours
+                    .summary("new users registered")
+                    .facet(event.getRole() != null ? "with role " + event.getRole() : null)
+                    .build());
             }
-            
-            // Mark event as processed
-            markEventAsProcessed(event.getEventId(), "USER_EVENT", event);
-            
-            // Log the event
-            logService.createLog(
-                "INFO",
-                event.getSource(),
-                "USER",
-                "User event: " + event.getAction(),
-                objectMapper.writeValueAsString(event),
-                event.getCorrelationId(),
-                String.valueOf(event.getUserId())
-            );
-            
-        } catch (Exception e) {
-            log.error("Failed to process user event", e);
-            logService.createLog(
-                "ERROR",
-                "admin-service",
-                "SYSTEM",
-                "Failed to process user event",
-                e.getMessage(),
-                null,
-                null
-            );
-            metricsService.recordProcessingError();
+        }
+    }
+
+    /**
+     * Apply the dimension change for one event
+     * @return activity type to record, or null if none
+     */
+    private String applyUserEvent(UserEventDTO event) {
+        // Process based on action type
+        switch (event.getAction()) {
+            case "REGISTERED":
+                handleUserRegistered(event);
+                return "REGISTERED";
+            case "LOGGED_IN":
+                // Hot rows: buffered and written combined with other logins and status changes
+                userState.recordLogin(event.getUserId(), event.getTimestamp());
+                return "LOGGED_IN";
+            case "UPDATED":
+                handleUserUpdated(event);
+                return "UPDATED";
+            case "DELETED":
+                handleUserDeleted(event);
+                return "DELETED";
+            case "ENABLED":
+            case "DISABLED":
+                // Buffered like logins
+                userState.recordStatus(event.getUserId(), "ENABLED".equals(event.getAction()), event.getTimestamp());
+                return event.getAction();
+            default:
+                log.warn("Unknown user action: {}", event.getAction());
+                return null;
+        }
+    }
+    
+    @Override
+    public SystemLog logEntry(UserEventDTO event) {
+        return SystemLog.builder()
+            .logLevel("INFO")
+            .sourceService(event.getSource())
+            .category("USER")
+            .message("User event: " + event.getAction())
+            .details(consumedEvents.payloadOf(event))
+            .correlationId(event.getCorrelationId())
+            .userId(String.valueOf(event.getUserId()))
+            .build();
+    }
+
+    @Override
+    public void recordMetrics(UserEventDTO event) {
+        if ("REGISTERED".equals(event.getAction())) {
+            metricsService.recordUserRegistered();
+        } else if ("LOGGED_IN".equals(event.getAction())) {
+            metricsService.recordUserLogin();
         }
     }
     
     private void handleUserRegistered(UserEventDTO event) {
-        // Upsert to dim_users
-        jdbc.update("""
-            INSERT INTO dim_users (user_id, username, email, role, region, enabled, created_at, updated_at, organization_name, phone_number, last_login_at)
-            VALUES (CAST(? AS bigint), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        // Upsert to dim_users; xmax is only 0 for a row this statement inserted
+        Boolean inserted = jdbc.queryForObject("""
+            INSERT INTO dim_users (user_id, username, email, role, region, enabled, created_at, updated_at, organization_name, phone_number, last_login_at, enabled_at)
+            VALUES (CAST(? AS bigint), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
             ON CONFLICT (user_id) DO UPDATE SET
                 username = EXCLUDED.username,
                 email = EXCLUDED.email,
                 role = EXCLUDED.role,
                 region = EXCLUDED.region,
                 enabled = EXCLUDED.enabled,
+                enabled_at = EXCLUDED.enabled_at,
                 updated_at = EXCLUDED.updated_at,
                 organization_name = EXCLUDED.organization_name,
                 phone_number = EXCLUDED.phone_number,
                 last_login_at = EXCLUDED.last_login_at
+            RETURNING (xmax = 0)
             """,
+            Boolean.class,
             event.getUserId(),
             event.getUsername(),
             event.getEmail(),
@@ -120,38 +213,12 @@ public class UserEventConsumer {
             event.getTimestamp(),
             event.getOrganizationName(),
             event.getPhoneNumber(),
-            event.getTimestamp()
-        );
-        
-        // Record activity
-        recordUserActivity(event, "REGISTERED");
-        
-        // Create notification for admin
-        notificationService.createNotification(
-            "INFO",
-            "BUSINESS",
-            "New User Registered",
-            String.format("User %s registered with role %s", event.getUsername(), event.getRole()),
-            event.getSource(),
-            null, // broadcast to admins
-            72 // expires in 72 hours
-        );
-    }
-    
-    private void handleUserLoggedIn(UserEventDTO event) {
-        // Update last login
-        jdbc.update("""
-            UPDATE dim_users 
-            SET last_login_at = ?, updated_at = ?
-            WHERE user_id = CAST(? AS bigint)
-            """,
             event.getTimestamp(),
-            event.getTimestamp(),
-            event.getUserId()
+            event.getTimestamp()
         );
-        
-        // Record activity
-        recordUserActivity(event, "LOGGED_IN");
+        if (Boolean.TRUE.equals(inserted)) {
+            businessCounters.addUsers(1);
+        }
     }
     
     private void handleUserUpdated(UserEventDTO event) {
@@ -176,81 +243,53 @@ public class UserEventConsumer {
             event.getTimestamp(),
             event.getUserId()
         );
-        
-        // Record activity
-        recordUserActivity(event, "UPDATED");
     }
     
     private void handleUserDeleted(UserEventDTO event) {
         // Soft delete or mark as deleted
         jdbc.update("""
             UPDATE dim_users 
-            SET enabled = false, updated_at = ?
+            SET enabled = false, enabled_at = ?, updated_at = ?
             WHERE user_id = CAST(? AS bigint)
             """,
             event.getTimestamp(),
-            event.getUserId()
-        );
-        
-        // Record activity
-        recordUserActivity(event, "DELETED");
-    }
-    
-    private void handleUserStatusChanged(UserEventDTO event) {
-        jdbc.update("""
-            UPDATE dim_users 
-            SET enabled = ?, updated_at = ?
-            WHERE user_id = CAST(? AS bigint)
-            """,
-            event.getEnabled(),
             event.getTimestamp(),
             event.getUserId()
         );
-        
-        // Record activity
-        recordUserActivity(event, event.getAction());
     }
     
-    private void recordUserActivity(UserEventDTO event, String eventType) {
-        try {
-            String eventData = objectMapper.writeValueAsString(event);
-            jdbc.update("""
-                INSERT INTO fact_user_activity (user_id, event_type, event_data, occurred_at)
-                VALUES (CAST(? AS bigint), ?, ?::jsonb, ?)
-                """,
-                event.getUserId(),
-                eventType,
-                eventData,
-                event.getTimestamp()
-            );
-        } catch (Exception e) {
-            log.error("Failed to record user activity", e);
-        }
-    }
-    
-    private boolean isEventProcessed(String eventId) {
-        Integer count = jdbc.queryForObject(
-            "SELECT COUNT(*) FROM consumed_events WHERE event_id = ?",
-            Integer.class,
-            eventId
-        );
-        return count != null && count > 0;
+    private Object[] toActivityRow(UserEventDTO event, String eventType) {
+        return new Object[] {
+            event.getUserId(),
+            eventType,
+            consumedEvents.payloadOf(event),
+            event.getTimestamp()
+        };
     }
     
-    private void markEventAsProcessed(String eventId, String eventType, UserEventDTO event) {
-        try {
-            jdbc.update("""
-                INSERT INTO consumed_events (event_id, event_type, payload, received_at)
-                VALUES (?, ?, ?::jsonb, ?)
-                ON CONFLICT (event_id) DO NOTHING
-                """,
-                eventId,
-                eventType,
-                objectMapper.writeValueAsString(event),
-                OffsetDateTime.now()
-            );
-        } catch (Exception e) {
-            log.error("Failed to mark event as processed", e);
+    private void recordUserActivities(List<Object[]> activities) {
+        if (activities.isEmpty()) {
+            return;
+        }
+        // One multi-row insert, returning the generated keys for the hot window
+        List<Object[]> keys = jdbc.query("""
+            INSERT INTO fact_user_activity (user_id, event_type, event_data, occurred_at)
+            VALUES %s
+            RETURNING id, occurred_at
+            """.formatted(String.join(", ", Collections.nCopies(activities.size(), "(CAST(? AS bigint), ?, ?::jsonb, ?)"))),
+            (rs, rowNum) -> new Object[] {rs.getLong(1), rs.getObject(2, OffsetDateTime.class)},
+            activities.stream().flatMap(Arrays::stream).toArray());
+        hotWindow.capture(HotTables.ACTIVITIES, keys);
+        timeSeries.markLate(TimeSeriesCatalog.ACTIVITIES.getTable(), keys.stream().map(key -> (OffsetDateTime) key[1]).toList());
+
+        // Activities are append-only, the delta is the inserted rows
+        RollupDeltas deltas = new RollupDeltas(Rollups.USER_ACTIVITY_DAILY);
+        for (Object[] activity : activities) {
+            if (activity[3] instanceof OffsetDateTime occurredAt) {
+                LocalDate day = occurredAt.atZoneSameInstant(ZoneOffset.UTC).toLocalDate();
+                deltas.add(List.of(day, activity[1]), 1);
+            }
         }
+        rollups.apply(deltas);
     }
 }
@@ -0,0 +1,147 @@
+package com.CCM_EV.admin.mq.consumer;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-combining buffer for the hot dim_users columns: last login and enabled status.
+ *
+ * Logins and status changes only record the latest value per user in memory; every flush
+ * interval all buffered users are written with one UPDATE ... FROM (VALUES ...) per chunk,
+ * so a user logging in a hundred times in an interval costs one row update instead of a hundred.
+ * The update is ordered by event time rather than write time: last_login_at only moves forward,
+ * and a status change only applies when it is newer than the enabled_at of the row, which
+ * registrations and deletes also set when they write enabled directly.
+ * Buffered state not yet flushed is lost on a crash; it is flushed on shutdown.
+ */
+@Slf4j
+@Component
+public class UserStateBuffer {
+
+    private final JdbcTemplate jdbc;
+    private final int chunkSize;
+    private final Map<String, PendingState> pending = new ConcurrentHashMap<>();
+
+    public UserStateBuffer(JdbcTemplate jdbc,
+                           @Value("${app.user-state.flush-chunk-size:1000}") int chunkSize) {
+        this.jdbc = jdbc;
+        this.chunkSize = chunkSize;
+    }
+
+    public void recordLogin(String userId, OffsetDateTime at) {
+        pending.compute(userId, (id, state) -> (state != null ? state : new PendingState()).login(at));
+    }
+
+    public void recordStatus(String userId, boolean enabled, OffsetDateTime at) {
+        pending.compute(userId, (id, state) -> (state != null ? state : new PendingState()).status(enabled, at));
+    }
+
+    public int getPendingUsers() {
+        return pending.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.user-state.flush-interval-ms:2000}",
+               initialDelayString = "${app.user-state.flush-interval-ms:2000}")
+    public void flush() {
+        Map<String, PendingState> drained = new LinkedHashMap<>();
+        for (String userId : new ArrayList<>(pending.keySet())) {
+            PendingState state = pending.remove(userId);
+            if (state != null) {
+                drained.put(userId, state);
+            }
+        }
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        try {
+            write(drained);
+            log.debug("Flushed buffered login/status state of {} users", drained.size());
+        } catch (Exception e) {
+            // Put the state back under anything buffered since, newer values win
+            log.error("Failed to flush state of {} users, retrying next interval: {}", drained.size(), e.getMessage());
+            drained.forEach((userId, state) -> pending.merge(userId, state, (newer, older) -> older.then(newer)));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void write(Map<String, PendingState> states) {
+        List<Map.Entry<String, PendingState>> entries = new ArrayList<>(states.entrySet());
+        for (int from = 0; from < entries.size(); from += chunkSize) {
+            List<Map.Entry<String, PendingState>> chunk = entries.subList(from, Math.min(from + chunkSize, entries.size()));
+            List<Object> args = new ArrayList<>(chunk.size() * 4);
+            for (Map.Entry<String, PendingState> entry : chunk) {
+                PendingState state = entry.getValue();
+                args.add(entry.getKey());
+                args.add(state.lastLoginAt);
+                args.add(state.enabled);
+                args.add(state.enabledAt);
+            }
+            jdbc.update("""
+                UPDATE dim_users d
+                SET last_login_at = GREATEST(d.last_login_at, v.last_login_at),
+                    enabled = CASE WHEN v.enabled_at > d.enabled_at OR d.enabled_at IS NULL
+                                   THEN COALESCE(v.enabled, d.enabled) ELSE d.enabled END,
+                    enabled_at = GREATEST(d.enabled_at, v.enabled_at),
+                    updated_at = GREATEST(d.updated_at, v.last_login_at, v.enabled_at)
+                FROM (VALUES %s) AS v(user_id, last_login_at, enabled, enabled_at)
+                WHERE d.user_id = v.user_id
+                """.formatted(valueRows(chunk.size())), args.toArray());
+        }
+    }
+
+    private static String valueRows(int rows) {
+        return String.join(", ", Collections.nCopies(rows,
+                "(CAST(? AS bigint), CAST(? AS timestamptz), CAST(? AS boolean), CAST(? AS timestamptz))"));
+    }
+
+    /**
+     * Latest login and status of one user since the last flush
+     */
+    private static final class PendingState {
+        private OffsetDateTime lastLoginAt;
+        private Boolean enabled;
+        private OffsetDateTime enabledAt;
+
+        private PendingState login(OffsetDateTime at) {
+            lastLoginAt = at;
+            return this;
+        }
+
+        private PendingState status(boolean value, OffsetDateTime at) {
+            enabled = value;
+            enabledAt = at;
+            return this;
+        }
+
+        /**
+         * This older state with a newer one applied on top
+         */
+        private PendingState then(PendingState newer) {
+            if (newer.lastLoginAt != null) {
+                lastLoginAt = newer.lastLoginAt;
+            }
+            if (newer.enabled != null) {
+                enabled = newer.enabled;
+                enabledAt = newer.enabledAt;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.CCM_EV.admin.mq.dispatch;
+
+import com.CCM_EV.admin.mq.config.RabbitConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adjusts ingestion parallelism to what the database can take, AIMD style.
+ *
+ * Every interval it looks at threads waiting for a Hikari connection (the pool is shared with
+ * the report endpoints), the mean lane transaction time and the depth of each event queue.
+ * When the database is saturated the active lane count and every batch size are cut by
+ * decrease-factor; otherwise lanes and the batch size of queues with a backlog grow by one step.
+ *
+ * Consumers per queue stay at one so delivery order holds (see {@link LaneDispatcher}), the
+ * active lane count is the concurrency knob. The batch size is how many prefetched messages a
+ * consumer takes per batch; prefetch itself is fixed at twice the configured maximum batch size.
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyTuner {
+
+    public enum Action { INCREASE, DECREASE, HOLD }
+
+    private static final int HISTORY_SIZE = 50;
+
+    private final RabbitListenerEndpointRegistry registry;
+    private final LaneDispatcher lanes;
+    private final DataSource dataSource;
+    private final AmqpAdmin amqpAdmin;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final int minLanes;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int batchStep;
+    private final int maxPendingConnections;
+    private final double targetLatencyMs;
+    private final double decreaseFactor;
+
+    private final Map<String, Integer> batchSizes = new ConcurrentHashMap<>();
+    private final Map<String, Long> queueDepths = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> history = new ArrayDeque<>();
+    private final Map<Action, Counter> decisions = new ConcurrentHashMap<>();
+
+    private long lastCompletedTasks;
+    private double lastExecutionMs;
+
+    public AdaptiveConcurrencyTuner(RabbitListenerEndpointRegistry registry,
+                                    LaneDispatcher lanes,
+                                    DataSource dataSource,
+                                    AmqpAdmin amqpAdmin,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.rabbitmq.adaptive.enabled:true}") boolean enabled,
+                                    @Value("${app.rabbitmq.adaptive.min-lanes:2}") int minLanes,
+                                    @Value("${app.rabbitmq.adaptive.min-batch-size:50}") int minBatchSize,
+                                    @Value("${app.rabbitmq.listener.batch-size:100}") int maxBatchSize,
+                                    @Value("${app.rabbitmq.adaptive.batch-step:50}") int batchStep,
+                                    @Value("${app.rabbitmq.adaptive.max-pending-connections:2}") int maxPendingConnections,
+                                    @Value("${app.rabbitmq.adaptive.target-latency-ms:500}") double targetLatencyMs,
+                                    @Value("${app.rabbitmq.adaptive.decrease-factor:0.5}") double decreaseFactor) {
+        this.registry = registry;
+        this.lanes = lanes;
+        this.dataSource = dataSource;
+        this.amqpAdmin = amqpAdmin;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.minLanes = Math.min(minLanes, lanes.getLaneCount());
+        this.minBatchSize = Math.min(minBatchSize, maxBatchSize);
+        this.maxBatchSize = maxBatchSize;
+        this.batchStep = batchStep;
+        this.maxPendingConnections = maxPendingConnections;
+        this.targetLatencyMs = targetLatencyMs;
+        this.decreaseFactor = decreaseFactor;
+
+        for (Action action : Action.values()) {
+            decisions.put(action, Counter.builder("admin.adaptive.decisions")
+                .description("Adaptive concurrency decisions")
+                .tag("action", action.name())
+                .register(meterRegistry));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.rabbitmq.adaptive.interval-ms:5000}",
+               initialDelayString = "${app.rabbitmq.adaptive.interval-ms:5000}")
+    public synchronized void adjust() {
+        if (!enabled) {
+            return;
+        }
+
+        int pendingConnections = pendingConnections();
+        double latencyMs = windowLatencyMs();
+        Map<String, SimpleMessageListenerContainer> containers = eventContainers();
+        for (String queue : containers.keySet()) {
+            queueDepths.put(queue, queueDepth(queue));
+        }
+
+        Action action;
+        String reason;
+        if (pendingConnections > maxPendingConnections) {
+            action = Action.DECREASE;
+            reason = pendingConnections + " threads waiting for a database connection";
+        } else if (latencyMs > targetLatencyMs) {
+            action = Action.DECREASE;
+            reason = String.format("mean lane transaction %.0f ms over target", latencyMs);
+        } else if (queueDepths.values().stream().anyMatch(depth -> depth > 0)) {
+            action = Action.INCREASE;
+            reason = "queue backlog with database headroom";
+        } else {
+            action = Action.HOLD;
+            reason = "no backlog";
+        }
+
+        int lanesBefore = lanes.getActiveLanes();
+        if (action == Action.DECREASE) {
+            lanes.setActiveLanes(Math.max(minLanes, (int) (lanesBefore * decreaseFactor)));
+        } else if (action == Action.INCREASE) {
+            lanes.setActiveLanes(lanesBefore + 1);
+        }
+
+        containers.forEach((queue, container) -> {
+            int current = batchSizes.computeIfAbsent(queue, q -> {
+                registerQueueGauges(q);
+                return maxBatchSize;
+            });
+            int next = current;
+            if (action == Action.DECREASE) {
+                next = Math.max(minBatchSize, (int) (current * decreaseFactor));
+            } else if (action == Action.INCREASE && queueDepths.getOrDefault(queue, 0L) > 0) {
+                next = Math.min(maxBatchSize, current + batchStep);
+            }
+            if (next != current) {
+                container.setBatchSize(next);
+                batchSizes.put(queue, next);
+            }
+        });
+
+        decisions.get(action).increment();
+        if (action != Action.HOLD) {
+            log.debug("Adaptive concurrency {}: {} (lanes {} -> {}, batch sizes {})",
+                    action, reason, lanesBefore, lanes.getActiveLanes(), batchSizes);
+        }
+        record(action, reason, pendingConnections, latencyMs);
+    }
+
+    /**
+     * Current settings, the signals of the last evaluation and recent decisions
+     */
+    public synchronized Map<String, Object> getState() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", enabled);
+        state.put("activeLanes", lanes.getActiveLanes());
+        state.put("laneBounds", List.of(minLanes, lanes.getLaneCount()));
+        state.put("batchSizes", new LinkedHashMap<>(batchSizes));
+        state.put("batchSizeBounds", List.of(minBatchSize, maxBatchSize));
+        state.put("queueDepths", new LinkedHashMap<>(queueDepths));
+        state.put("decisions", new ArrayList<>(history));
+        return state;
+    }
+
+    private void record(Action action, String reason, int pendingConnections, double latencyMs) {
+        Map<String, Object> decision = new LinkedHashMap<>();
+        decision.put("at", OffsetDateTime.now());
+        decision.put("action", action);
+        decision.put("reason", reason);
+        decision.put("pendingConnections", pendingConnections);
+        decision.put("meanLaneLatencyMs", Math.round(latencyMs));
+        decision.put("activeLanes", lanes.getActiveLanes());
+        decision.put("batchSizes", new LinkedHashMap<>(batchSizes));
+        history.addFirst(decision);
+        while (history.size() > HISTORY_SIZE) {
+            history.removeLast();
+        }
+    }
+
+    /**
+     * Listener containers of the event queues, keyed by queue; the dead-letter queue is left alone
+     */
+    private Map<String, SimpleMessageListenerContainer> eventContainers() {
+        Map<String, SimpleMessageListenerContainer> containers = new LinkedHashMap<>();
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if (container instanceof SimpleMessageListenerContainer simple && container.isRunning()) {
+                Arrays.stream(simple.getQueueNames())
+                    .filter(queue -> !RabbitConfig.Q_DLQ.equals(queue))
+                    .forEach(queue -> containers.put(queue, simple));
+            }
+        }
+        return containers;
+    }
+
+    private int pendingConnections() {
+        if (dataSource instanceof HikariDataSource hikari) {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            if (pool != null) {
+                return pool.getThreadsAwaitingConnection();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Mean lane task time since the previous evaluation, 0 when nothing ran
+     */
+    private double windowLatencyMs() {
+        long completed = lanes.getCompletedTasks();
+        double executionMs = lanes.getTotalExecutionMs();
+        long tasks = completed - lastCompletedTasks;
+        double latency = tasks > 0 ? (executionMs - lastExecutionMs) / tasks : 0;
+        lastCompletedTasks = completed;
+        lastExecutionMs = executionMs;
+        return latency;
+    }
+
+    /**
+     * Ready messages in the queue, 0 when the broker cannot be asked
+     */
+    private long queueDepth(String queue) {
+        try {
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            return info != null ? info.getMessageCount() : 0;
+        } catch (AmqpException e) {
+            log.debug("Could not read depth of queue {}: {}", queue, e.getMessage());
+            return 0;
+        }
+    }
+
+    private void registerQueueGauges(String queue) {
+        Gauge.builder("admin.adaptive.batch_size", batchSizes, sizes -> sizes.getOrDefault(queue, maxBatchSize))
+            .description("Messages taken per listener transaction")
+            .tag("queue", queue)
+            .register(meterRegistry);
+        Gauge.builder("admin.adaptive.queue_depth", queueDepths, depths -> depths.getOrDefault(queue, 0L))
+            .description("Ready messages in the queue at the last evaluation")
+            .tag("queue", queue)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,216 @@
+package com.CCM_EV.admin.mq.dispatch;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs event work on a fixed set of single-threaded lanes, chosen by entity key.
+ *
+ * All events of one entity (order, payment, issuance request, user) land on the same lane and
+ * run in submission order, while different entities run in parallel. Ordering holds as long as
+ * events for an entity are submitted in delivery order, which is why each queue has a single
+ * listener thread and the lanes provide the parallelism.
+ *
+ * Only the first activeLanes lanes are used. Changing it remaps keys, which is safe between
+ * dispatches: callers wait for a dispatch before the next one, so no entity has work queued
+ * on an old lane.
+ *
+ * Every lane holds a pooled connection while it writes, so there are never more lanes than the
+ * connection pool has left after the reserve for the other users of the pool.
+ */
+@Slf4j
+@Component
+public class LaneDispatcher {
+
+    private final ThreadPoolExecutor[] lanes;
+    private final Timer[] waitTimers;
+    private final Timer[] executionTimers;
+    private volatile int activeLanes;
+
+    public LaneDispatcher(MeterRegistry meterRegistry,
+                          DataSource dataSource,
+                          @Value("${app.rabbitmq.listener.lanes:16}") int configuredLanes,
+                          @Value("${app.rabbitmq.listener.lane-connection-reserve:16}") int connectionReserve) {
+        int laneCount = configuredLanes;
+        if (dataSource instanceof HikariDataSource hikari) {
+            int available = Math.max(1, hikari.getMaximumPoolSize() - connectionReserve);
+            if (laneCount > available) {
+                log.warn("{} lanes configured but the pool of {} connections leaves {} after reserving {}, using {} lanes",
+                    configuredLanes, hikari.getMaximumPoolSize(), available, connectionReserve, available);
+                laneCount = available;
+            }
+        }
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        this.waitTimers = new Timer[laneCount];
+        this.executionTimers = new Timer[laneCount];
+        this.activeLanes = laneCount;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("event-lane-");
+        for (int i = 0; i < laneCount; i++) {
+            ThreadPoolExecutor lane = new ThreadPoolExecutor(
+                1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+            lanes[i] = lane;
+
+            String laneTag = String.valueOf(i);
+            Gauge.builder("admin.lanes.depth", lane, l -> l.getQueue().size() + l.getActiveCount())
+                .description("Tasks waiting or running on the lane")
+                .tag("lane", laneTag)
+                .register(meterRegistry);
+            waitTimers[i] = Timer.builder("admin.lanes.wait")
+                .description("Time a task waited on its lane before starting")
+                .tag("lane", laneTag)
+                .register(meterRegistry);
+            executionTimers[i] = Timer.builder("admin.lanes.execution")
+                .description("Time a task ran on its lane")
+                .tag("lane", laneTag)
+                .register(meterRegistry);
+        }
+        Gauge.builder("admin.lanes.active", this, LaneDispatcher::getActiveLanes)
+            .description("Lanes events are currently spread over")
+            .register(meterRegistry);
+        log.info("Event lane dispatcher started with {} lanes", laneCount);
+    }
+
+    /**
+     * Split events by lane, run each lane's share through the handler and wait for all of them.
+     * Events keep their relative order within a lane. Events without a key have no ordering
+     * requirement and are spread over the lanes.
+     *
+     * @param keyOf entity key of an event
+     * @param handler work for one lane's events, called on the lane thread
+     */
+    public <E> void dispatch(List<E> events, Function<E, ?> keyOf, Consumer<List<E>> handler) {
+        try {
+            dispatchAsync(events, keyOf, handler).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException re ? re : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Like {@link #dispatch} without waiting. The future completes once every lane is done, or
+     * exceptionally with a lane's failure. Callers must not dispatch events of the same entities
+     * again before it completes, or ordering is lost.
+     */
+    public <E> CompletableFuture<Void> dispatchAsync(List<E> events, Function<E, ?> keyOf, Consumer<List<E>> handler) {
+        int width = activeLanes;
+        List<List<E>> byLane = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            byLane.add(null);
+        }
+        for (E event : events) {
+            Object key = keyOf.apply(event);
+            int lane = laneOf(key != null ? key.hashCode() : System.identityHashCode(event), width);
+            List<E> laneEvents = byLane.get(lane);
+            if (laneEvents == null) {
+                laneEvents = new ArrayList<>();
+                byLane.set(lane, laneEvents);
+            }
+            laneEvents.add(event);
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            List<E> laneEvents = byLane.get(i);
+            if (laneEvents != null) {
+                futures.add(submit(i, () -> handler.accept(laneEvents)));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<Void> submit(int lane, Runnable task) {
+        long submittedAt = System.nanoTime();
+        return CompletableFuture.runAsync(() -> {
+            long startedAt = System.nanoTime();
+            waitTimers[lane].record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+            try {
+                task.run();
+            } finally {
+                executionTimers[lane].record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            }
+        }, lanes[lane]);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getActiveLanes() {
+        return activeLanes;
+    }
+
+    /**
+     * Spread events over the first n lanes, clamped to 1..laneCount
+     */
+    public void setActiveLanes(int n) {
+        activeLanes = Math.max(1, Math.min(n, lanes.length));
+    }
+
+    /**
+     * Tasks completed on all lanes so far
+     */
+    public long getCompletedTasks() {
+        long count = 0;
+        for (Timer timer : executionTimers) {
+            count += timer.count();
+        }
+        return count;
+    }
+
+    /**
+     * Total run time of completed tasks on all lanes so far, in milliseconds
+     */
+    public double getTotalExecutionMs() {
+        double total = 0;
+        for (Timer timer : executionTimers) {
+            total += timer.totalTime(TimeUnit.MILLISECONDS);
+        }
+        return total;
+    }
+
+    private static int laneOf(int hash, int width) {
+        // Spread the bits so keys with similar hash codes do not pile onto one lane
+        int h = hash ^ (hash >>> 16);
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return Math.floorMod(h, width);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            try {
+                if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                    lane.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.shutdownNow();
+            }
+        }
+    }
+}
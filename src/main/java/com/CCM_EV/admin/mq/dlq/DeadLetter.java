@@ -0,0 +1,33 @@
+package com.CCM_EV.admin.mq.dlq;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * A dead-lettered message as stored in dead_letter_events
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeadLetter {
+
+    private Long id;
+    private String eventId;
+    private String eventType;
+    private String sourceQueue;
+    private String routingKey;
+    private String errorClass;
+    private String errorMessage;
+    private String payload;
+    private String contentType;
+
+    /**
+     * Original message headers, without the dead-letter bookkeeping
+     */
+    private Map<String, String> headers;
+}
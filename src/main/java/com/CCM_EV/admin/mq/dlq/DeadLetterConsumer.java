@@ -0,0 +1,106 @@
+package com.CCM_EV.admin.mq.dlq;
+
+import com.CCM_EV.admin.metrics.AdminMetricsService;
+import com.CCM_EV.admin.mq.config.RabbitConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists everything that reaches co2.events.dlx.
+ * Messages come either from {@link DeadLetterPublisher} (reason in x-exception-* headers)
+ * or from the broker after a rejection (reason in x-death).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeadLetterConsumer {
+
+    private final DeadLetterStore store;
+    private final ObjectMapper objectMapper;
+    private final AdminMetricsService metricsService;
+
+    @RabbitListener(queues = RabbitConfig.Q_DLQ, containerFactory = "deadLetterContainerFactory")
+    public void handleDeadLetters(List<Message> messages) {
+        List<DeadLetter> letters = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            letters.add(toDeadLetter(message));
+        }
+
+        // Letters the table refuses are parked by the store, only an unavailable database
+        // fails here and is retried and then requeued by the container
+        int saved = store.saveAll(letters);
+        metricsService.recordDeadLettersCaptured(saved);
+        log.warn("Captured {} dead-lettered messages", saved);
+    }
+
+    private DeadLetter toDeadLetter(Message message) {
+        MessageProperties props = message.getMessageProperties();
+        List<Map<String, ?>> xDeath = props.getXDeathHeader();
+        Map<String, ?> death = xDeath != null && !xDeath.isEmpty() ? xDeath.get(0) : null;
+
+        String sourceQueue = props.getHeader(DeadLetterPublisher.HEADER_ORIGINAL_QUEUE);
+        String routingKey = props.getReceivedRoutingKey();
+        String errorClass = props.getHeader(DeadLetterPublisher.HEADER_EXCEPTION_CLASS);
+        String errorMessage = props.getHeader(DeadLetterPublisher.HEADER_EXCEPTION_MESSAGE);
+
+        if (death != null) {
+            if (sourceQueue == null) {
+                sourceQueue = String.valueOf(death.get("queue"));
+            }
+            if (death.get("routing-keys") instanceof List<?> keys && !keys.isEmpty()) {
+                routingKey = String.valueOf(keys.get(0));
+            }
+            if (errorClass == null) {
+                errorClass = "dead-letter:" + death.get("reason");
+                errorMessage = "Dead-lettered by broker from " + death.get("queue") + " (" + death.get("reason") + ")";
+            }
+        }
+        if (sourceQueue == null) {
+            sourceQueue = routingKey;
+        }
+
+        DeadLetter.DeadLetterBuilder letter = DeadLetter.builder()
+            .sourceQueue(sourceQueue)
+            .routingKey(routingKey)
+            .errorClass(errorClass)
+            .errorMessage(errorMessage)
+            .payload(new String(message.getBody(), StandardCharsets.UTF_8))
+            .contentType(props.getContentType())
+            .headers(originalHeaders(props));
+
+        // The body may be what failed to parse in the first place
+        try {
+            JsonNode json = objectMapper.readTree(message.getBody());
+            letter.eventId(json.path("eventId").asText(null));
+            letter.eventType(json.path("eventType").asText(null));
+        } catch (Exception e) {
+            log.debug("Dead-lettered message body is not JSON: {}", e.getMessage());
+        }
+
+        return letter.build();
+    }
+
+    private Map<String, String> originalHeaders(MessageProperties props) {
+        Map<String, String> headers = new HashMap<>();
+        props.getHeaders().forEach((name, value) -> {
+            if (value != null && !name.startsWith("x-death") && !name.startsWith("x-first-death")
+                    && !name.startsWith("x-last-death") && !name.startsWith("x-exception")
+                    && !name.equals(DeadLetterPublisher.HEADER_ORIGINAL_QUEUE)) {
+                headers.put(name, String.valueOf(value));
+            }
+        });
+        return headers;
+    }
+}
@@ -0,0 +1,67 @@
+package com.CCM_EV.admin.mq.dlq;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selection of dead letters for browsing, replay and discard
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeadLetterFilter {
+
+    private String sourceQueue;
+    private String eventType;
+    private String errorClass;
+    private String errorContains;
+    private String status;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private OffsetDateTime from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private OffsetDateTime to;
+
+    /**
+     * Build the WHERE conditions, appending bind values to params
+     */
+    String toSql(List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        if (sourceQueue != null) {
+            conditions.add("source_queue = ?");
+            params.add(sourceQueue);
+        }
+        if (eventType != null) {
+            conditions.add("event_type = ?");
+            params.add(eventType);
+        }
+        if (errorClass != null) {
+            conditions.add("error_class = ?");
+            params.add(errorClass);
+        }
+        if (errorContains != null) {
+            conditions.add("error_message ILIKE ?");
+            params.add("%" + errorContains + "%");
+        }
+        if (status != null) {
+            conditions.add("status = ?");
+            params.add(status);
+        }
+        if (from != null) {
+            conditions.add("failed_at >= ?");
+            params.add(from);
+        }
+        if (to != null) {
+            conditions.add("failed_at < ?");
+            params.add(to);
+        }
+        return conditions.isEmpty() ? "TRUE" : String.join(" AND ", conditions);
+    }
+}
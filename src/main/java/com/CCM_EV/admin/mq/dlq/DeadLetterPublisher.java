@@ -0,0 +1,97 @@
+package com.CCM_EV.admin.mq.dlq;
+
+import com.CCM_EV.admin.mq.config.RabbitConfig;
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends events that failed processing to the dead-letter exchange.
+ * Consumers acknowledge whole batches, so a single failed event is re-published explicitly
+ * instead of being rejected, carrying the failure reason in its headers.
+ *
+ * A publish returns once the broker confirmed the message and throws an AmqpException otherwise,
+ * the caller then must not acknowledge the event it dead-letters.
+ */
+@Component
+public class DeadLetterPublisher {
+
+    public static final String HEADER_ORIGINAL_QUEUE = "x-original-queue";
+    public static final String HEADER_EXCEPTION_CLASS = "x-exception-class";
+    public static final String HEADER_EXCEPTION_MESSAGE = "x-exception-message";
+
+    private static final int MAX_MESSAGE_LENGTH = 2000;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final long confirmTimeoutMs;
+
+    public DeadLetterPublisher(RabbitTemplate rabbitTemplate,
+                               @Value("${app.dlq.confirm-timeout-ms:30000}") long confirmTimeoutMs) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+    }
+
+    public void publish(String sourceQueue, BaseEvent event, Exception error) {
+        if (event.getRawPayload() != null) {
+            // Dead-letter the body exactly as it was received, with the received headers
+            MessageProperties props = new MessageProperties();
+            props.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            props.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+            if (event.getMessageHeaders() != null) {
+                event.getMessageHeaders().forEach(props::setHeader);
+            }
+            Message message = new Message(event.getRawPayload().getBytes(StandardCharsets.UTF_8), props);
+            send(sourceQueue, withFailure(message, sourceQueue, error));
+        } else {
+            rabbitTemplate.invoke(ops -> {
+                ops.convertAndSend(RabbitConfig.EX_DLX, sourceQueue, event, m -> withFailure(m, sourceQueue, error));
+                ops.waitForConfirmsOrDie(confirmTimeoutMs);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Dead-letter a message that could not be decoded into an event
+     */
+    public void publish(String sourceQueue, Message message, Exception error) {
+        MessageProperties received = message.getMessageProperties();
+        MessageProperties props = new MessageProperties();
+        props.setContentType(received.getContentType());
+        props.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        received.getHeaders().forEach(props::setHeader);
+
+        send(sourceQueue, withFailure(new Message(message.getBody(), props), sourceQueue, error));
+    }
+
+    /**
+     * Send on a single channel and wait for the broker to confirm it
+     */
+    private void send(String sourceQueue, Message message) {
+        rabbitTemplate.invoke(ops -> {
+            ops.send(RabbitConfig.EX_DLX, sourceQueue, message);
+            ops.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+    }
+
+    private Message withFailure(Message message, String sourceQueue, Exception error) {
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(error);
+        String reason = cause.getMessage() != null && cause.getMessage().length() > MAX_MESSAGE_LENGTH
+                ? cause.getMessage().substring(0, MAX_MESSAGE_LENGTH)
+                : cause.getMessage();
+
+        MessageProperties props = message.getMessageProperties();
+        props.setHeader(HEADER_ORIGINAL_QUEUE, sourceQueue);
+        props.setHeader(HEADER_EXCEPTION_CLASS, cause.getClass().getName());
+        props.setHeader(HEADER_EXCEPTION_MESSAGE, reason);
+        return message;
+    }
+}
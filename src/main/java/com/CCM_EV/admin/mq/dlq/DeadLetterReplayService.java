@@ -0,0 +1,164 @@
+package com.CCM_EV.admin.mq.dlq;
+
+import com.CCM_EV.admin.metrics.AdminMetricsService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-publishes pending dead letters to their source queue, so they go through the normal
+ * consumers, dedupe included. Letters are read in id order in large pages, each page is
+ * published on one channel and confirmed before it is marked REPLAYED, and the overall
+ * publish rate is held to the requested messages per second.
+ */
+@Slf4j
+@Service
+public class DeadLetterReplayService {
+
+    public static final String HEADER_REPLAYED_FROM = "x-replayed-from";
+
+    private final DeadLetterStore store;
+    private final RabbitTemplate rabbitTemplate;
+    private final AdminMetricsService metricsService;
+    private final int batchSize;
+    private final int defaultRate;
+    private final long confirmTimeoutMs;
+    private final ExecutorService executor =
+        Executors.newSingleThreadExecutor(new CustomizableThreadFactory("dlq-replay-"));
+    private final Map<String, ReplayJob> jobs = new ConcurrentHashMap<>();
+
+    public DeadLetterReplayService(DeadLetterStore store,
+                                   RabbitTemplate rabbitTemplate,
+                                   AdminMetricsService metricsService,
+                                   @Value("${app.dlq.replay.batch-size:1000}") int batchSize,
+                                   @Value("${app.dlq.replay.rate-per-second:5000}") int defaultRate,
+                                   @Value("${app.dlq.replay.confirm-timeout-ms:30000}") long confirmTimeoutMs) {
+        this.store = store;
+        this.rabbitTemplate = rabbitTemplate;
+        this.metricsService = metricsService;
+        this.batchSize = batchSize;
+        this.defaultRate = defaultRate;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+    }
+
+    /**
+     * Queue a replay of the pending letters matching the filter
+     * @param ratePerSecond messages per second, or null for the configured default
+     * @param limit maximum number of letters to replay, or null for all
+     */
+    public ReplayJob start(DeadLetterFilter filter, Integer ratePerSecond, Long limit) {
+        int rate = ratePerSecond != null ? ratePerSecond : defaultRate;
+        if (rate <= 0) {
+            throw new IllegalArgumentException("ratePerSecond must be positive");
+        }
+
+        ReplayJob job = new ReplayJob(UUID.randomUUID().toString().substring(0, 8), filter, rate, limit);
+        jobs.put(job.getId(), job);
+        executor.submit(() -> run(job));
+
+        log.info("Queued dead-letter replay {} at {} msg/s", job.getId(), rate);
+        return job;
+    }
+
+    public Optional<ReplayJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    public List<ReplayJob> getJobs() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(ReplayJob::getSubmittedAt).reversed())
+                .toList();
+    }
+
+    private void run(ReplayJob job) {
+        job.start();
+        long startNanos = System.nanoTime();
+        long afterId = 0;
+
+        try {
+            while (!job.isCancelRequested()) {
+                long remaining = job.getLimit() != null ? job.getLimit() - job.getReplayed().get() : Long.MAX_VALUE;
+                if (remaining <= 0) {
+                    break;
+                }
+
+                List<DeadLetter> batch = store.findPending(job.getFilter(), afterId, (int) Math.min(batchSize, remaining));
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                publish(batch);
+                List<Long> ids = batch.stream().map(DeadLetter::getId).toList();
+                store.markReplayed(ids);
+                afterId = ids.get(ids.size() - 1);
+
+                long replayed = job.getReplayed().addAndGet(batch.size());
+                metricsService.recordDeadLettersReplayed(batch.size());
+
+                // Hold the average rate: sleep off whatever we are ahead of schedule
+                long dueNanos = TimeUnit.SECONDS.toNanos(replayed) / job.getRatePerSecond();
+                long aheadNanos = dueNanos - (System.nanoTime() - startNanos);
+                if (aheadNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                }
+            }
+            job.finish();
+            log.info("Dead-letter replay {} {}: {} messages", job.getId(), job.getStatus(), job.getReplayed().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Interrupted");
+        } catch (Exception e) {
+            log.error("Dead-letter replay {} failed after {} messages", job.getId(), job.getReplayed().get(), e);
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Publish one page on a single channel and wait for the broker to confirm all of it
+     */
+    private void publish(List<DeadLetter> batch) {
+        rabbitTemplate.invoke(ops -> {
+            for (DeadLetter letter : batch) {
+                ops.send("", letter.getSourceQueue(), toMessage(letter));
+            }
+            ops.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+    }
+
+    private Message toMessage(DeadLetter letter) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(letter.getContentType() != null
+                ? letter.getContentType()
+                : MessageProperties.CONTENT_TYPE_JSON);
+        props.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        if (letter.getHeaders() != null) {
+            letter.getHeaders().forEach(props::setHeader);
+        }
+        props.setHeader(HEADER_REPLAYED_FROM, letter.getId());
+        return new Message(letter.getPayload().getBytes(StandardCharsets.UTF_8), props);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(ReplayJob::cancel);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,242 @@
+package com.CCM_EV.admin.mq.dlq;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * JDBC access to dead_letter_events
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeadLetterStore {
+
+    private static final String SUMMARY_COLUMNS =
+        "id, event_id, event_type, source_queue, routing_key, error_class, error_message, " +
+        "status, replay_count, failed_at, replayed_at";
+
+    private static final TypeReference<Map<String, String>> HEADERS_TYPE = new TypeReference<>() {};
+
+    private static final String INSERT = """
+        INSERT INTO dead_letter_events (
+            event_id, event_type, source_queue, routing_key, error_class,
+            error_message, payload, content_type, headers
+        )
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, CAST(? AS jsonb))
+        """;
+
+    // Text columns and header values are cut to this many characters
+    private static final int MAX_TEXT = 10000;
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Insert the letters in one batch, or one at a time when the batch is refused.
+     * Letters the table still refuses are parked: logged and left out, so they are acknowledged
+     * instead of being redelivered forever. Failures to reach the database are thrown.
+     * @return letters stored
+     */
+    public int saveAll(List<DeadLetter> letters) {
+        List<Object[]> rows = new ArrayList<>(letters.size());
+        for (DeadLetter letter : letters) {
+            rows.add(toRow(letter));
+        }
+        try {
+            // One transaction, so a refused batch leaves nothing behind for the row-by-row retry
+            transactionTemplate.executeWithoutResult(status -> jdbc.batchUpdate(INSERT, rows));
+            return rows.size();
+        } catch (DataAccessException e) {
+            if (isUnavailable(e)) {
+                throw e;
+            }
+            log.warn("Failed to store {} dead letters in one batch, storing them one by one: {}",
+                letters.size(), e.getMessage());
+        }
+
+        int saved = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            try {
+                jdbc.update(INSERT, rows.get(i));
+                saved++;
+            } catch (DataAccessException e) {
+                if (isUnavailable(e)) {
+                    throw e;
+                }
+                DeadLetter letter = letters.get(i);
+                log.error("Parking dead letter {} ({}) from {}, it cannot be stored: {}, payload: {}",
+                    letter.getEventId(), letter.getEventType(), letter.getSourceQueue(), e.getMessage(),
+                    abbreviate(letter.getPayload(), 1000));
+            }
+        }
+        return saved;
+    }
+
+    public List<Map<String, Object>> search(DeadLetterFilter filter, int page, int size) {
+        List<Object> params = new ArrayList<>();
+        String where = filter.toSql(params);
+        params.add(size);
+        params.add((long) page * size);
+        return jdbc.queryForList(
+            "SELECT " + SUMMARY_COLUMNS + " FROM dead_letter_events WHERE " + where +
+            " ORDER BY failed_at DESC, id DESC LIMIT ? OFFSET ?",
+            params.toArray()
+        );
+    }
+
+    public Optional<Map<String, Object>> findById(long id) {
+        List<Map<String, Object>> rows = jdbc.queryForList(
+            "SELECT " + SUMMARY_COLUMNS + ", payload, content_type, headers::text AS headers " +
+            "FROM dead_letter_events WHERE id = ?",
+            id
+        );
+        return rows.stream().findFirst();
+    }
+
+    /**
+     * Counts per queue, event type, error and status
+     */
+    public List<Map<String, Object>> summarize(DeadLetterFilter filter) {
+        List<Object> params = new ArrayList<>();
+        String where = filter.toSql(params);
+        return jdbc.queryForList(
+            "SELECT source_queue, event_type, error_class, status, COUNT(*) AS count, " +
+            "       MIN(failed_at) AS first_failed_at, MAX(failed_at) AS last_failed_at " +
+            "FROM dead_letter_events WHERE " + where + " " +
+            "GROUP BY source_queue, event_type, error_class, status " +
+            "ORDER BY count DESC",
+            params.toArray()
+        );
+    }
+
+    /**
+     * Next page of pending letters after the given id, in id order
+     */
+    List<DeadLetter> findPending(DeadLetterFilter filter, long afterId, int limit) {
+        List<Object> params = new ArrayList<>();
+        String where = filter.toSql(params);
+        params.add(afterId);
+        params.add(limit);
+        return jdbc.query(
+            "SELECT id, event_id, event_type, source_queue, routing_key, error_class, error_message, " +
+            "       payload, content_type, headers::text AS headers " +
+            "FROM dead_letter_events " +
+            "WHERE status = 'PENDING' AND " + where + " AND id > ? " +
+            "ORDER BY id LIMIT ?",
+            (rs, rowNum) -> DeadLetter.builder()
+                .id(rs.getLong("id"))
+                .eventId(rs.getString("event_id"))
+                .eventType(rs.getString("event_type"))
+                .sourceQueue(rs.getString("source_queue"))
+                .routingKey(rs.getString("routing_key"))
+                .errorClass(rs.getString("error_class"))
+                .errorMessage(rs.getString("error_message"))
+                .payload(rs.getString("payload"))
+                .contentType(rs.getString("content_type"))
+                .headers(fromJson(rs.getString("headers")))
+                .build(),
+            params.toArray()
+        );
+    }
+
+    int markReplayed(List<Long> ids) {
+        return jdbc.update(
+            "UPDATE dead_letter_events " +
+            "SET status = 'REPLAYED', replay_count = replay_count + 1, replayed_at = NOW() " +
+            "WHERE id = ANY(?)",
+            (Object) ids.toArray(new Long[0])
+        );
+    }
+
+    public int discard(DeadLetterFilter filter) {
+        List<Object> params = new ArrayList<>();
+        String where = filter.toSql(params);
+        return jdbc.update(
+            "UPDATE dead_letter_events SET status = 'DISCARDED' WHERE status = 'PENDING' AND " + where,
+            params.toArray()
+        );
+    }
+
+    /**
+     * Insert parameters, cut to the column sizes and without NUL characters, which Postgres
+     * refuses in text and jsonb
+     */
+    private Object[] toRow(DeadLetter letter) {
+        return new Object[] {
+            clean(letter.getEventId(), MAX_TEXT),
+            clean(letter.getEventType(), 50),
+            Objects.requireNonNullElse(clean(letter.getSourceQueue(), MAX_TEXT), "unknown"),
+            clean(letter.getRoutingKey(), MAX_TEXT),
+            clean(letter.getErrorClass(), MAX_TEXT),
+            clean(letter.getErrorMessage(), MAX_TEXT),
+            Objects.requireNonNullElse(clean(letter.getPayload(), Integer.MAX_VALUE), ""),
+            clean(letter.getContentType(), 100),
+            toJson(letter.getHeaders())
+        };
+    }
+
+    private static String clean(String value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        String cleaned = value.indexOf('\u0000') >= 0 ? value.replace("\u0000", "") : value;
+        return abbreviate(cleaned, maxLength);
+    }
+
+    private static String abbreviate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    /**
+     * The database is down or busy rather than refusing the row, the container retries
+     */
+    private static boolean isUnavailable(DataAccessException e) {
+        return e instanceof TransientDataAccessException
+            || e instanceof RecoverableDataAccessException
+            || e instanceof DataAccessResourceFailureException;
+    }
+
+    private String toJson(Map<String, String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return null;
+        }
+        Map<String, String> cleaned = new HashMap<>();
+        headers.forEach((name, value) -> cleaned.put(clean(name, MAX_TEXT), clean(value, MAX_TEXT)));
+        try {
+            return objectMapper.writeValueAsString(cleaned);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize dead-letter headers: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<String, String> fromJson(String headers) {
+        if (headers == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(headers, HEADERS_TYPE);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to read dead-letter headers: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.CCM_EV.admin.mq.dlq;
+
+import lombok.Getter;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one dead-letter replay
+ */
+@Getter
+public class ReplayJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final String id;
+    private final DeadLetterFilter filter;
+    private final int ratePerSecond;
+    private final Long limit;
+    private final OffsetDateTime submittedAt = OffsetDateTime.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile OffsetDateTime finishedAt;
+    private volatile String error;
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    ReplayJob(String id, DeadLetterFilter filter, int ratePerSecond, Long limit) {
+        this.id = id;
+        this.filter = filter;
+        this.ratePerSecond = ratePerSecond;
+        this.limit = limit;
+    }
+
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void finish() {
+        status = cancelRequested ? Status.CANCELLED : Status.COMPLETED;
+        finishedAt = OffsetDateTime.now();
+    }
+
+    void fail(String error) {
+        this.status = Status.FAILED;
+        this.error = error;
+        this.finishedAt = OffsetDateTime.now();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jobId", id);
+        result.put("filter", filter);
+        result.put("ratePerSecond", ratePerSecond);
+        result.put("limit", limit);
+        result.put("status", status);
+        result.put("replayed", replayed.get());
+        result.put("submittedAt", submittedAt);
+        result.put("finishedAt", finishedAt);
+        result.put("error", error);
+        return result;
+    }
+}
@@ -1,11 +1,15 @@
 package com.CCM_EV.admin.mq.dto.common;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import lombok.experimental.SuperBuilder;
 
 import java.time.OffsetDateTime;
+import java.util.Map;
 
 /**
  * Base event DTO 
@@ -50,4 +54,28 @@ public abstract class BaseEvent {
      * User ID who triggered this event (if applicable)
      */
     private String userId;
+
+    /**
+     * Message body as received, stored verbatim instead of serializing the event again
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private String rawPayload;
+
+    /**
+     * Headers of the received message, e.g. correlation and trace headers, carried over when
+     * the event is dead-lettered
+     */
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Map<String, Object> messageHeaders;
+
+    /**
+     * Routing key the message was published with, if known
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private String routingKey;
 }
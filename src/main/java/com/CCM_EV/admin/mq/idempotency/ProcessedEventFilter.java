@@ -0,0 +1,88 @@
+package com.CCM_EV.admin.mq.idempotency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-instance filter of event IDs this service has already committed.
+ *
+ * A Bloom filter answers "definitely new" for almost every fresh event without touching the database.
+ * A bounded LRU of recent IDs turns Bloom hits for recent events into certain duplicates;
+ * any other Bloom hit is only a maybe and has to be confirmed against consumed_events.
+ * The Bloom filter rotates through two generations so memory stays bounded.
+ */
+@Slf4j
+@Component
+public class ProcessedEventFilter {
+
+    public enum Verdict { NEW, DUPLICATE, MAYBE }
+
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final Map<String, Boolean> recent;
+
+    private volatile BloomFilter current;
+    private volatile BloomFilter previous;
+
+    public ProcessedEventFilter(
+            @Value("${app.idempotency.bloom.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${app.idempotency.bloom.false-positive-rate:0.001}") double falsePositiveRate,
+            @Value("${app.idempotency.lru-size:100000}") int lruSize) {
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.current = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.previous = null;
+        this.recent = new LinkedHashMap<>(lruSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > lruSize;
+            }
+        };
+    }
+
+    public Verdict check(String eventId) {
+        BloomFilter prev = previous;
+        if (!current.mightContain(eventId) && (prev == null || !prev.mightContain(eventId))) {
+            return Verdict.NEW;
+        }
+        synchronized (recent) {
+            return recent.get(eventId) != null ? Verdict.DUPLICATE : Verdict.MAYBE;
+        }
+    }
+
+    /**
+     * Remember committed event IDs
+     */
+    public void recordProcessed(Collection<String> eventIds) {
+        for (String eventId : eventIds) {
+            current.put(eventId);
+        }
+        synchronized (recent) {
+            for (String eventId : eventIds) {
+                recent.put(eventId, Boolean.TRUE);
+            }
+        }
+        rotateIfFull();
+    }
+
+    /**
+     * Seed the Bloom filter only, e.g. from consumed_events at startup
+     */
+    public void seed(Collection<String> eventIds) {
+        eventIds.forEach(current::put);
+        rotateIfFull();
+    }
+
+    private synchronized void rotateIfFull() {
+        if (current.insertions() >= expectedInsertions) {
+            log.info("Rotating processed event Bloom filter after {} insertions", current.insertions());
+            previous = current;
+            current = new BloomFilter(expectedInsertions, falsePositiveRate);
+        }
+    }
+}
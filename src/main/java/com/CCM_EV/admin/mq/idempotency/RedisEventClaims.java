@@ -0,0 +1,93 @@
+package com.CCM_EV.admin.mq.idempotency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shared idempotency tier for multi-instance deployments.
+ * Claims event IDs with SET NX in one pipelined round trip per batch;
+ * an ID that is already claimed is only a possible duplicate and is confirmed against the database.
+ */
+@Slf4j
+@Component
+public class RedisEventClaims {
+
+    private final StringRedisTemplate redis;
+    private final boolean enabled;
+    private final String keyPrefix;
+    private final Duration ttl;
+
+    public RedisEventClaims(
+            StringRedisTemplate redis,
+            @Value("${app.idempotency.redis.enabled:false}") boolean enabled,
+            @Value("${app.idempotency.redis.key-prefix:evt:}") String keyPrefix,
+            @Value("${app.idempotency.redis.ttl-hours:48}") long ttlHours) {
+        this.redis = redis;
+        this.enabled = enabled;
+        this.keyPrefix = keyPrefix;
+        this.ttl = Duration.ofHours(ttlHours);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Try to claim every ID
+     * @return IDs another consumer had already claimed; all IDs if Redis is unavailable
+     */
+    public List<String> claim(List<String> eventIds) {
+        if (eventIds.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<Object> results = redis.executePipelined((RedisCallback<Object>) connection -> {
+                for (String eventId : eventIds) {
+                    connection.stringCommands().set(
+                        (keyPrefix + eventId).getBytes(StandardCharsets.UTF_8),
+                        new byte[] { '1' },
+                        Expiration.from(ttl),
+                        RedisStringCommands.SetOption.ifAbsent()
+                    );
+                }
+                return null;
+            });
+
+            List<String> alreadyClaimed = new ArrayList<>();
+            for (int i = 0; i < eventIds.size(); i++) {
+                if (!Boolean.TRUE.equals(results.get(i))) {
+                    alreadyClaimed.add(eventIds.get(i));
+                }
+            }
+            return alreadyClaimed;
+        } catch (Exception e) {
+            log.warn("Redis idempotency tier unavailable, falling back to database: {}", e.getMessage());
+            return eventIds;
+        }
+    }
+
+    /**
+     * Release claims for events whose transaction rolled back so a redelivery is not sent to the database
+     */
+    public void release(Set<String> eventIds) {
+        if (!enabled || eventIds.isEmpty()) {
+            return;
+        }
+        try {
+            redis.delete(eventIds.stream().map(id -> keyPrefix + id).toList());
+        } catch (Exception e) {
+            log.debug("Failed to release Redis event claims: {}", e.getMessage());
+        }
+    }
+}
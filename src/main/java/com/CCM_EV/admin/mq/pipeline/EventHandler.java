@@ -0,0 +1,69 @@
+package com.CCM_EV.admin.mq.pipeline;
+
+import com.CCM_EV.admin.entity.SystemLog;
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+
+import java.util.List;
+
+/**
+ * The event-type specific part of ingestion. {@link EventPipeline} does the rest:
+ * decoding, dedupe, batching over lanes, transactions, timing, error handling and dead-lettering.
+ */
+public interface EventHandler<E extends BaseEvent> {
+
+    /**
+     * Short name for logs, e.g. "trade"
+     */
+    String name();
+
+    Class<E> eventClass();
+
+    /**
+     * Event type recorded in consumed_events
+     */
+    String eventType();
+
+    /**
+     * Queue the events are consumed from, also the dead-letter source queue
+     */
+    String queue();
+
+    /**
+     * Entity whose events must be applied in order
+     */
+    Object laneKey(E event);
+
+    /**
+     * Apply a batch to the reporting tables, events are in delivery order.
+     * Runs inside the batch transaction, and alone when a stream is replayed.
+     */
+    void upsert(List<E> batch);
+
+    /**
+     * Tables {@link #upsert} writes, cached responses reading them are invalidated once it committed
+     */
+    List<String> tables();
+
+    /**
+     * Audit log category, entries are only built for events the log policy samples
+     */
+    String logCategory();
+
+    SystemLog logEntry(E event);
+
+    default void sendNotifications(List<E> batch) {
+    }
+
+    /**
+     * Counters for an event, called after its transaction committed
+     */
+    default void recordMetrics(E event) {
+    }
+
+    /**
+     * Whether replaying the stream through {@link #upsert} rebuilds this event type's tables
+     */
+    default boolean isReplayable() {
+        return true;
+    }
+}
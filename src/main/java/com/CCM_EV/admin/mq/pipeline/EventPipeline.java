@@ -0,0 +1,304 @@
+package com.CCM_EV.admin.mq.pipeline;
+
+import com.CCM_EV.admin.cache.TableVersions;
+import com.CCM_EV.admin.entity.SystemLog;
+import com.CCM_EV.admin.metrics.AdminMetricsService;
+import com.CCM_EV.admin.metrics.IngestionMetrics;
+import com.CCM_EV.admin.metrics.IngestionMetrics.Stage;
+import com.CCM_EV.admin.mq.consumer.ConsumedEventStore;
+import com.CCM_EV.admin.mq.consumer.EventDecoder;
+import com.CCM_EV.admin.mq.dispatch.LaneDispatcher;
+import com.CCM_EV.admin.mq.dlq.DeadLetterPublisher;
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+import com.CCM_EV.admin.service.SystemLogService;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * Ingestion of one event type, in stages:
+ * decode, dedupe, then per lane in one transaction claim, upsert, audit log and notifications,
+ * then latency and counters once committed.
+ *
+ * Batches are pipelined: decode and dedupe of a batch run while the previous batch is still
+ * being written, and the next write only starts once the previous one is done, which keeps
+ * per-entity order. Listener batches are acknowledged manually after their write, in order;
+ * prefetch has to cover two batches for the overlap to happen. Writes complete on lane threads,
+ * their acknowledgements are handed back to the consumer thread, which owns the channel, and
+ * sent with the next batch or when the container goes idle ({@link #settlePending}).
+ * Undecodable messages and events that fail on their own are dead-lettered; a batch that cannot
+ * be deduplicated because the database or Redis is unavailable, or whose dead letters the broker
+ * did not confirm, is requeued.
+ */
+@Slf4j
+public class EventPipeline<E extends BaseEvent> implements ChannelAwareBatchMessageListener {
+
+    // Pause before requeueing a batch, so an outage is not a hot loop
+    private static final long REQUEUE_DELAY_MS = 1000;
+
+    private final EventHandler<E> handler;
+    private final EventDecoder decoder;
+    private final ConsumedEventStore consumedEvents;
+    private final LaneDispatcher lanes;
+    private final TransactionTemplate transactionTemplate;
+    private final SystemLogService logService;
+    private final AdminMetricsService metricsService;
+    private final IngestionMetrics ingestionMetrics;
+    private final DeadLetterPublisher deadLetters;
+    private final TableVersions tableVersions;
+    private final List<String> tables;
+
+    // Write of the previous batch
+    private CompletableFuture<Void> inFlight = CompletableFuture.completedFuture(null);
+    // Acknowledgements of completed writes, waiting for the consumer thread
+    private final Queue<Runnable> settlements = new ConcurrentLinkedQueue<>();
+
+    EventPipeline(EventHandler<E> handler,
+                  EventDecoder decoder,
+                  ConsumedEventStore consumedEvents,
+                  LaneDispatcher lanes,
+                  TransactionTemplate transactionTemplate,
+                  SystemLogService logService,
+                  AdminMetricsService metricsService,
+                  IngestionMetrics ingestionMetrics,
+                  DeadLetterPublisher deadLetters,
+                  TableVersions tableVersions) {
+        this.handler = handler;
+        this.decoder = decoder;
+        this.consumedEvents = consumedEvents;
+        this.lanes = lanes;
+        this.transactionTemplate = transactionTemplate;
+        this.logService = logService;
+        this.metricsService = metricsService;
+        this.ingestionMetrics = ingestionMetrics;
+        this.deadLetters = deadLetters;
+        this.tableVersions = tableVersions;
+        this.tables = new ArrayList<>(handler.tables());
+        this.tables.add("consumed_events");
+    }
+
+    public EventHandler<E> getHandler() {
+        return handler;
+    }
+
+    /**
+     * Listener entry point: returns once the batch is dispatched, the write acknowledges it
+     */
+    @Override
+    public void onMessageBatch(List<Message> messages, Channel channel) {
+        settlePending();
+        long lastTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+        List<E> events;
+        try {
+            events = decoder.decode(messages, handler.eventClass(), handler.queue());
+        } catch (Exception e) {
+            // An undecodable message could not be dead-lettered: requeue once earlier batches are settled
+            log.error("Failed to decode {} {} messages, requeueing them", messages.size(), handler.name(), e);
+            awaitInFlight();
+            settlePending();
+            pause();
+            nack(channel, lastTag, true);
+            return;
+        }
+        try {
+            submit(events, (result, failure) -> {
+                if (failure != null) {
+                    log.error("Writing {} {} messages failed, requeueing them", messages.size(), handler.name(), failure);
+                }
+                // Settled on the consumer thread, which owns the channel
+                settlements.add(() -> {
+                    if (failure == null) {
+                        acknowledge(channel, lastTag);
+                    } else {
+                        // Events written meanwhile drop out as duplicates on redelivery
+                        pause();
+                        nack(channel, lastTag, true);
+                    }
+                });
+            });
+        } catch (Exception e) {
+            // Dedupe failed, e.g. the database or Redis is briefly down: requeue after a pause
+            log.warn("Failed to dedupe {} {} messages, requeueing them: {}", messages.size(), handler.name(), e.getMessage());
+            awaitInFlight();
+            settlePending();
+            pause();
+            nack(channel, lastTag, true);
+            return;
+        }
+        settlePending();
+    }
+
+    /**
+     * Acknowledge or reject the batches whose write completed, must run on the consumer thread
+     */
+    public void settlePending() {
+        Runnable settlement;
+        while ((settlement = settlements.poll()) != null) {
+            settlement.run();
+        }
+    }
+
+    /**
+     * Stream entry point: returns once the batch is committed
+     */
+    public void process(List<Message> messages) {
+        try {
+            submit(decoder.decode(messages, handler.eventClass(), handler.queue()), (result, failure) -> { }).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException re ? re : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Re-apply events read back from a stream with {@link EventHandler#upsert} only.
+     * Dedupe, logs and notifications are skipped, the upsert makes a replay idempotent.
+     */
+    public void replay(List<Message> messages) {
+        List<E> events = decoder.decode(messages, handler.eventClass(), handler.queue());
+        lanes.dispatch(events, handler::laneKey,
+                lane -> transactionTemplate.executeWithoutResult(status -> {
+                    handler.upsert(lane);
+                    tableVersions.bumpCoalesced(handler.tables());
+                }));
+    }
+
+    private CompletableFuture<Void> submit(List<E> events, BiConsumer<Void, Throwable> completion) {
+        // Counts towards the queue's lag until settled, also across failed and requeued attempts
+        ingestionMetrics.recordReceived(handler.queue(), events);
+        // Overlaps with the write of the previous batch
+        List<E> pending = ingestionMetrics.time(Stage.DEDUPE, handler.queue(), events,
+                () -> consumedEvents.filterUnprocessed(events));
+        if (!pending.isEmpty()) {
+            log.info("Processing {} {} events ({} duplicates skipped)",
+                    pending.size(), handler.name(), events.size() - pending.size());
+        }
+
+        synchronized (this) {
+            awaitInFlight();
+            CompletableFuture<Void> write = pending.isEmpty()
+                    ? CompletableFuture.completedFuture(null)
+                    : lanes.dispatchAsync(pending, handler::laneKey, this::processLane);
+            CompletableFuture<Void> settled = write.whenComplete((result, failure) -> {
+                if (failure == null) {
+                    ingestionMetrics.recordSettled(handler.queue(), events);
+                }
+                completion.accept(result, failure);
+            });
+            inFlight = settled;
+            return settled;
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(REQUEUE_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void awaitInFlight() {
+        try {
+            inFlight.join();
+        } catch (CompletionException e) {
+            // Already handled by that batch's completion
+        }
+    }
+
+    private void processLane(List<E> events) {
+        try {
+            List<E> processed = transactionTemplate.execute(status -> processBatch(events));
+            committed(processed);
+        } catch (Exception e) {
+            // One bad event must not block the rest of the batch
+            log.warn("Batch of {} {} events failed, retrying one by one", events.size(), handler.name(), e);
+            events.forEach(this::processSingle);
+        }
+    }
+
+    private void processSingle(E event) {
+        try {
+            committed(transactionTemplate.execute(status -> processBatch(List.of(event))));
+        } catch (Exception e) {
+            log.error("Failed to process {} event {}", handler.name(), event.getEventId(), e);
+            logService.createLog(
+                "ERROR",
+                "admin-service",
+                "SYSTEM",
+                "Failed to process " + handler.name() + " event",
+                e.getMessage(),
+                null,
+                null
+            );
+            metricsService.recordProcessingError();
+            consumedEvents.release(List.of(event));
+            // Throws when the broker does not confirm, failing the batch so that it is requeued
+            deadLetters.publish(handler.queue(), event, e);
+        }
+    }
+
+    private List<E> processBatch(List<E> events) {
+        // Mark events as processed first, events committed concurrently elsewhere drop out here
+        List<E> batch = ingestionMetrics.time(Stage.CLAIM, handler.queue(), events,
+                () -> consumedEvents.claim(handler.eventType(), events));
+        if (batch.isEmpty()) {
+            return batch;
+        }
+
+        ingestionMetrics.time(Stage.UPSERT, handler.queue(), batch, () -> handler.upsert(batch));
+        ingestionMetrics.time(Stage.AUDIT_LOG, handler.queue(), batch, () -> logEvents(batch));
+        ingestionMetrics.time(Stage.NOTIFICATION, handler.queue(), batch, () -> handler.sendNotifications(batch));
+        // Invalidates cached responses over these tables at the next flush after the commit
+        tableVersions.bumpCoalesced(tables);
+        return batch;
+    }
+
+    /**
+     * Audit log entries for the batch, routine entries are sampled before an entry is built
+     */
+    private void logEvents(List<E> batch) {
+        List<SystemLog> logs = new ArrayList<>();
+        for (E event : batch) {
+            if (logService.isLoggable("INFO", handler.logCategory())) {
+                logs.add(handler.logEntry(event));
+            }
+        }
+        logService.createLogs(logs);
+    }
+
+    private void committed(List<E> processed) {
+        ingestionMetrics.recordCommitted(handler.queue(), processed);
+        processed.forEach(handler::recordMetrics);
+    }
+
+    private void acknowledge(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, true);
+        } catch (IOException | AlreadyClosedException e) {
+            // The channel is gone, the broker redelivers and consumed_events drops what was written
+            log.warn("Failed to acknowledge {} messages up to {}: {}", handler.name(), deliveryTag, e.getMessage());
+        }
+    }
+
+    private void nack(Channel channel, long deliveryTag, boolean requeue) {
+        try {
+            channel.basicNack(deliveryTag, true, requeue);
+        } catch (IOException | AlreadyClosedException e) {
+            log.warn("Failed to {} {} messages up to {}: {}", requeue ? "requeue" : "reject",
+                    handler.name(), deliveryTag, e.getMessage());
+        }
+    }
+}
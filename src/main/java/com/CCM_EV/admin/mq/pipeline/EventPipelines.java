@@ -0,0 +1,95 @@
+package com.CCM_EV.admin.mq.pipeline;
+
+import com.CCM_EV.admin.cache.TableVersions;
+import com.CCM_EV.admin.metrics.AdminMetricsService;
+import com.CCM_EV.admin.metrics.IngestionMetrics;
+import com.CCM_EV.admin.mq.consumer.ConsumedEventStore;
+import com.CCM_EV.admin.mq.consumer.EventDecoder;
+import com.CCM_EV.admin.mq.dispatch.LaneDispatcher;
+import com.CCM_EV.admin.mq.dlq.DeadLetterPublisher;
+import com.CCM_EV.admin.mq.dto.common.BaseEvent;
+import com.CCM_EV.admin.service.SystemLogService;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.ListenerContainerIdleEvent;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One {@link EventPipeline} per {@link EventHandler} bean, each registered as the listener of
+ * its handler's queue on the default listener container factory.
+ */
+@Component
+public class EventPipelines implements RabbitListenerConfigurer {
+
+    private static final String LISTENER_PREFIX = "pipeline-";
+
+    private final Map<String, EventPipeline<?>> pipelines = new LinkedHashMap<>();
+
+    public EventPipelines(List<EventHandler<?>> handlers,
+                          EventDecoder decoder,
+                          ConsumedEventStore consumedEvents,
+                          LaneDispatcher lanes,
+                          TransactionTemplate transactionTemplate,
+                          SystemLogService logService,
+                          AdminMetricsService metricsService,
+                          IngestionMetrics ingestionMetrics,
+                          DeadLetterPublisher deadLetters,
+                          TableVersions tableVersions) {
+        for (EventHandler<?> handler : handlers) {
+            pipelines.put(handler.name(), create(handler, decoder, consumedEvents, lanes, transactionTemplate,
+                    logService, metricsService, ingestionMetrics, deadLetters, tableVersions));
+        }
+    }
+
+    private static <E extends BaseEvent> EventPipeline<E> create(EventHandler<E> handler,
+                                                                 EventDecoder decoder,
+                                                                 ConsumedEventStore consumedEvents,
+                                                                 LaneDispatcher lanes,
+                                                                 TransactionTemplate transactionTemplate,
+                                                                 SystemLogService logService,
+                                                                 AdminMetricsService metricsService,
+                                                                 IngestionMetrics ingestionMetrics,
+                                                                 DeadLetterPublisher deadLetters,
+                                                                 TableVersions tableVersions) {
+        return new EventPipeline<>(handler, decoder, consumedEvents, lanes, transactionTemplate,
+                logService, metricsService, ingestionMetrics, deadLetters, tableVersions);
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (EventPipeline<?> pipeline : pipelines.values()) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId(LISTENER_PREFIX + pipeline.getHandler().name());
+            endpoint.setQueueNames(pipeline.getHandler().queue());
+            endpoint.setMessageListener(pipeline);
+            endpoint.setBatchListener(true);
+            registrar.registerEndpoint(endpoint);
+        }
+    }
+
+    /**
+     * Published on the idle container's consumer thread: acknowledge the batches written since
+     * the last delivery
+     */
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        String listenerId = event.getListenerId();
+        if (listenerId != null && listenerId.startsWith(LISTENER_PREFIX)) {
+            EventPipeline<?> pipeline = pipelines.get(listenerId.substring(LISTENER_PREFIX.length()));
+            if (pipeline != null) {
+                pipeline.settlePending();
+            }
+        }
+    }
+
+    public EventPipeline<?> get(EventHandler<?> handler) {
+        return pipelines.get(handler.name());
+    }
+}
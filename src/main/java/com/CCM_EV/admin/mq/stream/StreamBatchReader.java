@@ -0,0 +1,239 @@
+package com.CCM_EV.admin.mq.stream;
+
+import com.rabbitmq.stream.Consumer;
+import com.rabbitmq.stream.ConsumerFlowStrategy;
+import com.rabbitmq.stream.Environment;
+import com.rabbitmq.stream.MessageHandler;
+import com.rabbitmq.stream.OffsetSpecification;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads one stream and hands its messages to a sink in batches, like the batch listener
+ * containers do for classic queues: up to batchSize messages, or whatever arrived within
+ * receiveTimeout of the first one.
+ *
+ * The stream client delivers chunk by chunk on its own thread; credits are only returned
+ * once the sink has applied a message, so the client never runs more than a few chunks ahead.
+ * Offsets are not tracked on the broker, the sink commits them.
+ */
+@Slf4j
+class StreamBatchReader {
+
+    /**
+     * Applies a batch, lastOffset is the offset of its last message
+     */
+    interface BatchSink {
+        void accept(List<Message> messages, long lastOffset) throws Exception;
+    }
+
+    private static final long MAX_BACKOFF_MS = 30_000;
+    private static final String ROUTING_KEY_ANNOTATION = "x-routing-key";
+
+    private final Environment environment;
+    private final String stream;
+    private final OffsetSpecification from;
+    private final long untilOffset;
+    private final int batchSize;
+    private final long receiveTimeoutMs;
+    private final boolean retryForever;
+    private final BatchSink sink;
+    private final java.util.function.Consumer<Exception> onEnd;
+
+    private final BlockingQueue<Delivery> buffer = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile Consumer consumer;
+    private volatile boolean running;
+    private long lastOffset = -1;
+    private boolean pastEnd;
+
+    /**
+     * @param untilOffset last offset to read, Long.MAX_VALUE to keep following the stream
+     * @param retryForever retry a failed batch until it succeeds instead of ending the reader
+     * @param onEnd called once when the reader ends on its own, with the failure if any
+     */
+    StreamBatchReader(Environment environment, String stream, OffsetSpecification from, long untilOffset,
+                      int batchSize, long receiveTimeoutMs, boolean retryForever, String threadName,
+                      BatchSink sink, java.util.function.Consumer<Exception> onEnd) {
+        this.environment = environment;
+        this.stream = stream;
+        this.from = from;
+        this.untilOffset = untilOffset;
+        this.batchSize = batchSize;
+        this.receiveTimeoutMs = receiveTimeoutMs;
+        this.retryForever = retryForever;
+        this.sink = sink;
+        this.onEnd = onEnd;
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Subscribe and start applying batches, throws if the broker cannot be reached
+     */
+    void start() {
+        consumer = environment.consumerBuilder()
+            .stream(stream)
+            .offset(from)
+            .noTrackingStrategy()
+            .flow()
+                .strategy(ConsumerFlowStrategy.creditWhenHalfMessagesProcessed())
+                .builder()
+            .messageHandler((context, message) -> buffer.add(new Delivery(
+                context, message.getBodyAsBinary(), routingKeyOf(message))))
+            .build();
+        running = true;
+        worker.start();
+        log.info("Reading stream {} from {}", stream, from);
+    }
+
+    void stop() {
+        running = false;
+        closeConsumer();
+        if (Thread.currentThread() != worker) {
+            worker.interrupt();
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    int getBuffered() {
+        return buffer.size();
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        Exception failure = null;
+        try {
+            while (running) {
+                List<Delivery> batch = nextBatch();
+                if (batch.isEmpty()) {
+                    if (pastEnd) {
+                        break;
+                    }
+                    continue;
+                }
+                apply(batch);
+                batch.forEach(delivery -> delivery.context.processed());
+                if (lastOffset >= untilOffset || pastEnd) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failure = e;
+        }
+
+        if (running) {
+            // Ended on its own: reached untilOffset or gave up on a batch
+            running = false;
+            closeConsumer();
+            onEnd.accept(failure);
+        }
+    }
+
+    private List<Delivery> nextBatch() throws InterruptedException {
+        List<Delivery> batch = new ArrayList<>(batchSize);
+        Delivery first = buffer.poll(receiveTimeoutMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return batch;
+        }
+        addBounded(batch, first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(receiveTimeoutMs);
+        while (batch.size() < batchSize) {
+            Delivery next = buffer.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            addBounded(batch, next);
+        }
+        return batch;
+    }
+
+    /**
+     * Messages past untilOffset are acknowledged to the client but not applied, and end the read
+     */
+    private void addBounded(List<Delivery> batch, Delivery delivery) {
+        if (delivery.context.offset() <= untilOffset) {
+            batch.add(delivery);
+        } else {
+            delivery.context.processed();
+            pastEnd = true;
+        }
+    }
+
+    private void apply(List<Delivery> batch) throws Exception {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Delivery delivery : batch) {
+            MessageProperties props = new MessageProperties();
+            props.setReceivedRoutingKey(delivery.routingKey);
+            messages.add(new Message(delivery.body, props));
+        }
+        long batchLastOffset = batch.get(batch.size() - 1).context.offset();
+
+        long backoffMs = 1000;
+        while (true) {
+            try {
+                sink.accept(messages, batchLastOffset);
+                lastOffset = batchLastOffset;
+                return;
+            } catch (Exception e) {
+                if (!retryForever || !running) {
+                    throw e;
+                }
+                log.error("Failed to apply {} messages from stream {} up to offset {}, retrying in {} ms",
+                        messages.size(), stream, batchLastOffset, backoffMs, e);
+                TimeUnit.MILLISECONDS.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    /**
+     * Messages published over AMQP 0-9-1 carry their routing key as a message annotation
+     */
+    private static String routingKeyOf(com.rabbitmq.stream.Message message) {
+        Map<String, Object> annotations = message.getMessageAnnotations();
+        Object routingKey = annotations != null ? annotations.get(ROUTING_KEY_ANNOTATION) : null;
+        return routingKey != null ? routingKey.toString() : null;
+    }
+
+    private void closeConsumer() {
+        Consumer current = consumer;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (Exception e) {
+                log.warn("Failed to close consumer of stream {}", stream, e);
+            }
+        }
+    }
+
+    private static final class Delivery {
+        private final MessageHandler.Context context;
+        private final byte[] body;
+        private final String routingKey;
+
+        private Delivery(MessageHandler.Context context, byte[] body, String routingKey) {
+            this.context = context;
+            this.body = body;
+            this.routingKey = routingKey;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.CCM_EV.admin.mq.stream;
+
+import com.CCM_EV.admin.mq.config.RabbitConfig;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams for the stream ingestion mode, bound to the events exchange with the same routing keys
+ * as the classic queues. Streams keep their history for max-age regardless of consumption.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.rabbitmq.ingestion.mode", havingValue = "stream")
+public class StreamConfig {
+
+    @Bean
+    Declarables eventStreams(
+            @Value("${app.rabbitmq.streams.user-events:admin.user.stream}") String userStream,
+            @Value("${app.rabbitmq.streams.trade-events:admin.trade.stream}") String tradeStream,
+            @Value("${app.rabbitmq.streams.issuance-events:admin.issuance.stream}") String issuanceStream,
+            @Value("${app.rabbitmq.streams.payment-events:admin.payment.stream}") String paymentStream,
+            @Value("${app.rabbitmq.streams.max-age:7D}") String maxAge) {
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(stream(userStream, maxAge));
+        declarables.addAll(RabbitConfig.eventBindings(userStream, RabbitConfig.USER_ROUTING_KEYS).getDeclarables());
+        declarables.add(stream(tradeStream, maxAge));
+        declarables.addAll(RabbitConfig.eventBindings(tradeStream, RabbitConfig.TRADE_ROUTING_KEYS).getDeclarables());
+        declarables.add(stream(issuanceStream, maxAge));
+        declarables.addAll(RabbitConfig.eventBindings(issuanceStream, RabbitConfig.ISSUANCE_ROUTING_KEYS).getDeclarables());
+        declarables.add(stream(paymentStream, maxAge));
+        declarables.addAll(RabbitConfig.eventBindings(paymentStream, RabbitConfig.PAYMENT_ROUTING_KEYS).getDeclarables());
+        return new Declarables(declarables);
+    }
+
+    private static Queue stream(String name, String maxAge) {
+        return QueueBuilder.durable(name)
+                .stream()
+                .withArgument("x-max-age", maxAge)
+                .build();
+    }
+}
@@ -0,0 +1,269 @@
+package com.CCM_EV.admin.mq.stream;
+
+import com.CCM_EV.admin.mq.consumer.IssuanceEventConsumer;
+import com.CCM_EV.admin.mq.consumer.PaymentEventConsumer;
+import com.CCM_EV.admin.mq.consumer.TradeEventConsumer;
+import com.CCM_EV.admin.mq.consumer.UserEventConsumer;
+import com.CCM_EV.admin.mq.pipeline.EventHandler;
+import com.CCM_EV.admin.mq.pipeline.EventPipeline;
+import com.CCM_EV.admin.mq.pipeline.EventPipelines;
+import com.rabbitmq.stream.Environment;
+import com.rabbitmq.stream.OffsetSpecification;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Stream ingestion mode: follows the event streams instead of the classic queues and feeds
+ * their batches to the same event pipelines, one batch at a time. The offset of the last applied message is committed
+ * to stream_offsets after every batch and consumption resumes right after it; anything
+ * redelivered after a crash is dropped by consumed_events.
+ *
+ * Replays read a stream again from an offset or timestamp up to the committed offset and
+ * re-apply the fact upserts, for rebuilding reporting data without upstream re-publishing.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.rabbitmq.ingestion.mode", havingValue = "stream")
+public class StreamIngestionService implements SmartLifecycle {
+
+    private final Environment environment;
+    private final StreamOffsetStore offsets;
+    private final String consumerName;
+    private final String initialOffset;
+    private final int batchSize;
+    private final long receiveTimeoutMs;
+
+    private final Map<String, StreamSource> sources = new LinkedHashMap<>();
+    private final Map<String, StreamBatchReader> readers = new ConcurrentHashMap<>();
+    private final Map<String, StreamReplayJob> replayJobs = new ConcurrentHashMap<>();
+    private final Map<String, StreamBatchReader> replayReaders = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    public StreamIngestionService(Environment environment,
+                                  StreamOffsetStore offsets,
+                                  EventPipelines pipelines,
+                                  UserEventConsumer userConsumer,
+                                  TradeEventConsumer tradeConsumer,
+                                  IssuanceEventConsumer issuanceConsumer,
+                                  PaymentEventConsumer paymentConsumer,
+                                  @Value("${app.rabbitmq.streams.user-events:admin.user.stream}") String userStream,
+                                  @Value("${app.rabbitmq.streams.trade-events:admin.trade.stream}") String tradeStream,
+                                  @Value("${app.rabbitmq.streams.issuance-events:admin.issuance.stream}") String issuanceStream,
+                                  @Value("${app.rabbitmq.streams.payment-events:admin.payment.stream}") String paymentStream,
+                                  @Value("${app.rabbitmq.streams.consumer-name:admin-report-service}") String consumerName,
+                                  @Value("${app.rabbitmq.streams.initial-offset:first}") String initialOffset,
+                                  @Value("${app.rabbitmq.listener.batch-size:100}") int batchSize,
+                                  @Value("${app.rabbitmq.listener.batch-receive-timeout-ms:250}") long receiveTimeoutMs) {
+        this.environment = environment;
+        this.offsets = offsets;
+        this.consumerName = consumerName;
+        this.initialOffset = initialOffset;
+        this.batchSize = batchSize;
+        this.receiveTimeoutMs = receiveTimeoutMs;
+
+        addSource(userStream, pipelines, userConsumer);
+        addSource(tradeStream, pipelines, tradeConsumer);
+        addSource(issuanceStream, pipelines, issuanceConsumer);
+        addSource(paymentStream, pipelines, paymentConsumer);
+    }
+
+    private void addSource(String stream, EventPipelines pipelines, EventHandler<?> handler) {
+        EventPipeline<?> pipeline = pipelines.get(handler);
+        sources.put(stream, new StreamSource(stream, pipeline::process,
+                handler.isReplayable() ? pipeline::replay : null));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        sources.keySet().forEach(this::startReader);
+    }
+
+    /**
+     * Restart readers that could not subscribe, e.g. because the broker was down at startup
+     */
+    @Scheduled(fixedDelayString = "${app.rabbitmq.streams.restart-interval-ms:30000}",
+               initialDelayString = "${app.rabbitmq.streams.restart-interval-ms:30000}")
+    public void restartStoppedReaders() {
+        if (!running) {
+            return;
+        }
+        for (String stream : sources.keySet()) {
+            StreamBatchReader reader = readers.get(stream);
+            if (reader == null || !reader.isRunning()) {
+                startReader(stream);
+            }
+        }
+    }
+
+    private synchronized void startReader(String stream) {
+        StreamSource source = sources.get(stream);
+        OffsetSpecification from = offsets.find(consumerName, stream)
+                .map(committed -> OffsetSpecification.offset(committed + 1))
+                .orElseGet(this::initialOffsetSpecification);
+
+        StreamBatchReader reader = new StreamBatchReader(
+            environment, stream, from, Long.MAX_VALUE, batchSize, receiveTimeoutMs, true,
+            "stream-" + stream,
+            (messages, lastOffset) -> {
+                source.live.accept(messages);
+                offsets.commit(consumerName, stream, lastOffset);
+            },
+            failure -> log.error("Reader of stream {} stopped", stream, failure)
+        );
+        try {
+            reader.start();
+            readers.put(stream, reader);
+        } catch (Exception e) {
+            log.error("Failed to subscribe to stream {}, retrying later: {}", stream, e.getMessage());
+        }
+    }
+
+    private OffsetSpecification initialOffsetSpecification() {
+        return switch (initialOffset.toLowerCase()) {
+            case "last" -> OffsetSpecification.last();
+            case "next" -> OffsetSpecification.next();
+            default -> OffsetSpecification.first();
+        };
+    }
+
+    /**
+     * Replay a stream into the fact tables, from an offset or a timestamp up to the committed offset
+     */
+    public StreamReplayJob replay(String stream, Long fromOffset, OffsetDateTime fromTimestamp) {
+        StreamSource source = sources.get(stream);
+        if (source == null) {
+            throw new IllegalArgumentException("Unknown stream: " + stream);
+        }
+        if (source.replay == null) {
+            throw new IllegalArgumentException("Stream " + stream + " cannot be replayed, rebuild dim_users with a backfill");
+        }
+        if ((fromOffset == null) == (fromTimestamp == null)) {
+            throw new IllegalArgumentException("Exactly one of fromOffset or fromTimestamp is required");
+        }
+
+        long untilOffset = offsets.find(consumerName, stream)
+                .orElseThrow(() -> new IllegalArgumentException("Nothing ingested from stream " + stream + " yet"));
+        if (fromOffset != null && fromOffset > untilOffset) {
+            throw new IllegalArgumentException("fromOffset is past the committed offset " + untilOffset);
+        }
+
+        OffsetSpecification from = fromOffset != null
+                ? OffsetSpecification.offset(fromOffset)
+                : OffsetSpecification.timestamp(fromTimestamp.toInstant().toEpochMilli());
+        String fromDescription = fromOffset != null ? "offset " + fromOffset : "timestamp " + fromTimestamp;
+        StreamReplayJob job = new StreamReplayJob(
+            UUID.randomUUID().toString().substring(0, 8), stream, fromDescription, untilOffset);
+
+        StreamBatchReader reader = new StreamBatchReader(
+            environment, stream, from, untilOffset, batchSize, receiveTimeoutMs, false,
+            "stream-replay-" + job.getId(),
+            (messages, lastOffset) -> {
+                source.replay.accept(messages);
+                job.progress(messages.size(), lastOffset);
+            },
+            failure -> {
+                replayReaders.remove(job.getId());
+                if (failure == null) {
+                    job.finish();
+                    log.info("Stream replay {} of {} completed: {} messages", job.getId(), stream, job.getReplayed().get());
+                } else {
+                    job.fail(failure.getMessage());
+                    log.error("Stream replay {} of {} failed at offset {}", job.getId(), stream, job.getLastOffset().get(), failure);
+                }
+            }
+        );
+
+        replayJobs.put(job.getId(), job);
+        replayReaders.put(job.getId(), reader);
+        try {
+            reader.start();
+        } catch (Exception e) {
+            replayReaders.remove(job.getId());
+            job.fail(e.getMessage());
+            throw e;
+        }
+
+        log.info("Started stream replay {} of {} from {} until offset {}", job.getId(), stream, fromDescription, untilOffset);
+        return job;
+    }
+
+    public Optional<StreamReplayJob> getReplayJob(String jobId) {
+        return Optional.ofNullable(replayJobs.get(jobId));
+    }
+
+    public List<StreamReplayJob> getReplayJobs() {
+        return replayJobs.values().stream()
+                .sorted(Comparator.comparing(StreamReplayJob::getSubmittedAt).reversed())
+                .toList();
+    }
+
+    public Optional<StreamReplayJob> cancelReplay(String jobId) {
+        StreamReplayJob job = replayJobs.get(jobId);
+        StreamBatchReader reader = replayReaders.remove(jobId);
+        if (reader != null) {
+            reader.stop();
+            job.cancel();
+        }
+        return Optional.ofNullable(job);
+    }
+
+    /**
+     * Position of every stream: committed offset, last applied offset and messages buffered locally
+     */
+    public List<Map<String, Object>> getStreams() {
+        Map<String, Long> committed = offsets.findAll(consumerName);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (StreamSource source : sources.values()) {
+            StreamBatchReader reader = readers.get(source.stream);
+            Map<String, Object> stream = new LinkedHashMap<>();
+            stream.put("stream", source.stream);
+            stream.put("reading", reader != null && reader.isRunning());
+            stream.put("committedOffset", committed.get(source.stream));
+            stream.put("buffered", reader != null ? reader.getBuffered() : 0);
+            stream.put("replayable", source.replay != null);
+            result.add(stream);
+        }
+        return result;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        replayReaders.values().forEach(StreamBatchReader::stop);
+        readers.values().forEach(StreamBatchReader::stop);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private static final class StreamSource {
+        private final String stream;
+        private final Consumer<List<Message>> live;
+        private final Consumer<List<Message>> replay;
+
+        private StreamSource(String stream, Consumer<List<Message>> live, Consumer<List<Message>> replay) {
+            this.stream = stream;
+            this.live = live;
+            this.replay = replay;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.CCM_EV.admin.mq.stream;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Offsets of the streams consumed in stream ingestion mode, kept in stream_offsets
+ * instead of the broker so they can be inspected and reset alongside the reporting data.
+ */
+@Component
+@RequiredArgsConstructor
+public class StreamOffsetStore {
+
+    private final JdbcTemplate jdbc;
+
+    /**
+     * Offset of the last message applied from the stream, if any
+     */
+    public Optional<Long> find(String consumerName, String stream) {
+        List<Long> offsets = jdbc.queryForList(
+            "SELECT committed_offset FROM stream_offsets WHERE consumer_name = ? AND stream = ?",
+            Long.class,
+            consumerName,
+            stream
+        );
+        return offsets.stream().findFirst();
+    }
+
+    public Map<String, Long> findAll(String consumerName) {
+        Map<String, Long> offsets = new HashMap<>();
+        jdbc.query(
+            "SELECT stream, committed_offset FROM stream_offsets WHERE consumer_name = ?",
+            rs -> {
+                offsets.put(rs.getString("stream"), rs.getLong("committed_offset"));
+            },
+            consumerName
+        );
+        return offsets;
+    }
+
+    public void commit(String consumerName, String stream, long offset) {
+        jdbc.update("""
+            INSERT INTO stream_offsets (consumer_name, stream, committed_offset, committed_at)
+            VALUES (?, ?, ?, NOW())
+            ON CONFLICT (consumer_name, stream) DO UPDATE SET
+                committed_offset = EXCLUDED.committed_offset,
+                committed_at = EXCLUDED.committed_at
+            """,
+            consumerName,
+            stream,
+            offset
+        );
+    }
+}
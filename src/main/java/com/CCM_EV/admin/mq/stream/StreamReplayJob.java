@@ -0,0 +1,73 @@
+package com.CCM_EV.admin.mq.stream;
+
+import lombok.Getter;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one stream replay into the fact tables
+ */
+@Getter
+public class StreamReplayJob {
+
+    public enum Status { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final String id;
+    private final String stream;
+    private final String from;
+    private final long untilOffset;
+    private final OffsetDateTime submittedAt = OffsetDateTime.now();
+
+    private volatile Status status = Status.RUNNING;
+    private volatile OffsetDateTime finishedAt;
+    private volatile String error;
+
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong lastOffset = new AtomicLong(-1);
+
+    StreamReplayJob(String id, String stream, String from, long untilOffset) {
+        this.id = id;
+        this.stream = stream;
+        this.from = from;
+        this.untilOffset = untilOffset;
+    }
+
+    void progress(int messages, long offset) {
+        replayed.addAndGet(messages);
+        lastOffset.set(offset);
+    }
+
+    void finish() {
+        status = Status.COMPLETED;
+        finishedAt = OffsetDateTime.now();
+    }
+
+    void cancel() {
+        status = Status.CANCELLED;
+        finishedAt = OffsetDateTime.now();
+    }
+
+    void fail(String error) {
+        this.status = Status.FAILED;
+        this.error = error;
+        this.finishedAt = OffsetDateTime.now();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jobId", id);
+        result.put("stream", stream);
+        result.put("from", from);
+        result.put("untilOffset", untilOffset);
+        result.put("status", status);
+        result.put("replayed", replayed.get());
+        result.put("lastOffset", lastOffset.get());
+        result.put("submittedAt", submittedAt);
+        result.put("finishedAt", finishedAt);
+        result.put("error", error);
+        return result;
+    }
+}
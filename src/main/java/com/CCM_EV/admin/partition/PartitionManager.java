@@ -0,0 +1,383 @@
+package com.CCM_EV.admin.partition;
+
+import com.CCM_EV.admin.archive.ArchiveService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lifecycle of the monthly partitions of every table in partition_metadata.
+ *
+ * Jobs, run at startup and on a schedule:
+ * premake creates the months from the last partition up to months-ahead from now;
+ * defaults makes sure each table has a default partition and moves rows that landed in it into
+ * their month; analyze refreshes statistics of partitions that got rows since they were created,
+ * and of the parents, which autovacuum never analyzes; retention detaches partitions older than
+ * retention_months and hands them to {@link ArchiveService}, which writes them to files and drops
+ * them; with archiving disabled they stay as plain tables.
+ *
+ * DDL runs with a short lock_timeout so it gives way to ingestion and is retried on the next run.
+ */
+@Slf4j
+@Service
+public class PartitionManager {
+
+    private static final String JOB_PREMAKE = "premake";
+    private static final String JOB_DEFAULTS = "defaults";
+    private static final String JOB_ANALYZE = "analyze";
+    private static final String JOB_RETENTION = "retention";
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('([^']+)'\\) TO \\('([^']+)'\\)");
+    private static final Pattern PARTITION_KEY = Pattern.compile("RANGE \\((\\w+)\\)");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final ArchiveService archiveService;
+    private final int monthsAhead;
+    private final long lockTimeoutMs;
+    private final boolean retentionEnabled;
+
+    private final Map<String, Map<String, Object>> lastRuns = new ConcurrentHashMap<>();
+
+    public PartitionManager(JdbcTemplate jdbc,
+                            TransactionTemplate transactionTemplate,
+                            ArchiveService archiveService,
+                            @Value("${app.partitions.months-ahead:3}") int monthsAhead,
+                            @Value("${app.partitions.lock-timeout-ms:5000}") long lockTimeoutMs,
+                            @Value("${app.partitions.retention-enabled:true}") boolean retentionEnabled) {
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.archiveService = archiveService;
+        this.monthsAhead = monthsAhead;
+        this.lockTimeoutMs = lockTimeoutMs;
+        this.retentionEnabled = retentionEnabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${app.partitions.maintenance-cron:0 15 * * * *}")
+    public synchronized void maintain() {
+        premake();
+        splitDefaults();
+        analyze();
+    }
+
+    @Scheduled(cron = "${app.partitions.retention-cron:0 45 3 * * *}")
+    public synchronized void enforceRetention() {
+        if (retentionEnabled) {
+            run(JOB_RETENTION, this::detachExpired);
+        }
+    }
+
+    public synchronized void premake() {
+        run(JOB_PREMAKE, actions -> {
+            LocalDate current = LocalDate.now().withDayOfMonth(1);
+            for (Map<String, Object> meta : metadata()) {
+                String table = (String) meta.get("table_name");
+                LocalDate last = ((Date) meta.get("last_partition_date")).toLocalDate();
+                int retentionMonths = ((Number) meta.get("retention_months")).intValue();
+
+                // Close any gap since the last partition, but never further back than retention
+                LocalDate from = last.plusMonths(1);
+                LocalDate oldestKept = current.minusMonths(retentionMonths);
+                if (from.isBefore(oldestKept)) {
+                    from = oldestKept;
+                }
+                for (LocalDate month = from; !month.isAfter(current.plusMonths(monthsAhead)); month = month.plusMonths(1)) {
+                    if (create(table, month)) {
+                        actions.add("created " + partitionName(table, month));
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized void splitDefaults() {
+        run(JOB_DEFAULTS, actions -> {
+            for (Map<String, Object> meta : metadata()) {
+                String table = (String) meta.get("table_name");
+                String defaultPartition = defaultPartitionOf(table);
+                if (defaultPartition == null) {
+                    defaultPartition = identifier(table + "_default");
+                    withLockTimeout("CREATE TABLE IF NOT EXISTS " + defaultPartition + " PARTITION OF " + table + " DEFAULT");
+                    actions.add("created " + defaultPartition);
+                    continue;
+                }
+
+                // Rows older than retention stay in the default partition, their month would be detached anyway
+                String key = partitionKey(table);
+                LocalDate oldestKept = LocalDate.now().withDayOfMonth(1)
+                        .minusMonths(((Number) meta.get("retention_months")).intValue());
+                List<LocalDate> months = jdbc.queryForList(
+                    "SELECT DISTINCT date_trunc('month', " + key + ")::date FROM " + defaultPartition +
+                    " WHERE " + key + " >= ? ORDER BY 1",
+                    LocalDate.class, oldestKept
+                );
+                for (LocalDate month : months) {
+                    create(table, month);
+                    actions.add("split " + partitionName(table, month) + " out of " + defaultPartition);
+                }
+            }
+        });
+    }
+
+    public synchronized void analyze() {
+        run(JOB_ANALYZE, actions -> {
+            for (Map<String, Object> meta : metadata()) {
+                String table = (String) meta.get("table_name");
+                // Partitions that got rows but were never analyzed, e.g. months created ahead that are now filling up
+                List<String> stale = jdbc.queryForList("""
+                    SELECT s.relname
+                    FROM pg_inherits i
+                    JOIN pg_stat_user_tables s ON s.relid = i.inhrelid
+                    WHERE i.inhparent = ?::regclass
+                      AND s.n_live_tup > 0
+                      AND s.last_analyze IS NULL AND s.last_autoanalyze IS NULL
+                    """, String.class, table);
+                for (String partition : stale) {
+                    jdbc.execute("ANALYZE " + identifier(partition));
+                    actions.add("analyzed " + partition);
+                }
+                if (!stale.isEmpty()) {
+                    jdbc.execute("ANALYZE " + table);
+                    actions.add("analyzed " + table);
+                }
+            }
+        });
+    }
+
+    /**
+     * Create the partition of one month unless it exists, moving its rows out of the default
+     * partition if any landed there
+     * @return name of the partition
+     */
+    public String createPartition(String table, LocalDate month) {
+        create(table, month);
+        return partitionName(table, month);
+    }
+
+    /**
+     * @return whether the partition was created
+     */
+    private boolean create(String table, LocalDate month) {
+        String partition = partitionName(table, month);
+        if (isAttached(table, partition)) {
+            return false;
+        }
+
+        LocalDate next = month.plusMonths(1);
+        String key = partitionKey(table);
+        String defaultPartition = defaultPartitionOf(table);
+        boolean hasDefaultRows = defaultPartition != null && Boolean.TRUE.equals(jdbc.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM " + defaultPartition + " WHERE " + key + " >= ? AND " + key + " < ?)",
+            Boolean.class, month, next));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbc.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+            if (!hasDefaultRows) {
+                jdbc.queryForObject("SELECT create_next_partition(?, ?, ?)", String.class, table, month, next);
+                return;
+            }
+            // A partition cannot be created while the default holds rows of its range:
+            // build it standalone, move the rows over and attach it, all in one transaction.
+            // Inserts that would land in the default wait meanwhile, so attaching finds it clean.
+            jdbc.execute("LOCK TABLE " + defaultPartition + " IN EXCLUSIVE MODE");
+            String columns = columnsOf(table);
+            jdbc.execute("CREATE TABLE " + partition + " (LIKE " + table + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            int moved = jdbc.update(
+                "WITH moved AS (DELETE FROM " + defaultPartition + " WHERE " + key + " >= ? AND " + key + " < ? RETURNING " + columns + ") " +
+                "INSERT INTO " + partition + " (" + columns + ") SELECT " + columns + " FROM moved",
+                month, next);
+            jdbc.execute("ALTER TABLE " + table + " ATTACH PARTITION " + partition +
+                " FOR VALUES FROM ('" + month + "') TO ('" + next + "')");
+            log.info("Moved {} rows of {} out of {}", moved, partition, defaultPartition);
+        });
+        if (hasDefaultRows) {
+            jdbc.execute("ANALYZE " + partition);
+        }
+
+        jdbc.update("""
+            UPDATE partition_metadata
+            SET last_partition_date = GREATEST(last_partition_date, ?), updated_at = now()
+            WHERE table_name = ?
+            """, month, table);
+        log.info("Created partition {}", partition);
+        return true;
+    }
+
+    /**
+     * Every managed table with its partitions and the last run of each job
+     */
+    public Map<String, Object> getState() {
+        List<Map<String, Object>> tables = new ArrayList<>();
+        for (Map<String, Object> meta : metadata()) {
+            String table = (String) meta.get("table_name");
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("table", table);
+            state.put("lastPartitionDate", meta.get("last_partition_date"));
+            state.put("retentionMonths", meta.get("retention_months"));
+            state.put("partitions", partitionsOf(table));
+            tables.add(state);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("monthsAhead", monthsAhead);
+        result.put("retentionEnabled", retentionEnabled);
+        result.put("tables", tables);
+        result.put("lastRuns", new LinkedHashMap<>(lastRuns));
+        return result;
+    }
+
+    private void detachExpired(List<String> actions) {
+        LocalDate current = LocalDate.now().withDayOfMonth(1);
+        for (Map<String, Object> meta : metadata()) {
+            String table = (String) meta.get("table_name");
+            LocalDate cutoff = current.minusMonths(((Number) meta.get("retention_months")).intValue());
+            for (Map<String, Object> partition : partitionsOf(table)) {
+                LocalDate to = (LocalDate) partition.get("to");
+                if (to != null && !to.isAfter(cutoff)) {
+                    String name = identifier((String) partition.get("name"));
+                    if (archiveService.isEnabled()) {
+                        archiveService.detach(table, name, (LocalDate) partition.get("from"), to);
+                    } else {
+                        withLockTimeout("ALTER TABLE " + table + " DETACH PARTITION " + name);
+                    }
+                    log.info("Detached partition {} from {}, older than {} months", name, table, meta.get("retention_months"));
+                    actions.add("detached " + name);
+                }
+            }
+        }
+        // Also retries partitions detached by earlier runs whose archiving failed
+        if (archiveService.isEnabled()) {
+            actions.addAll(archiveService.archivePending());
+        }
+    }
+
+    private void run(String job, Consumer<List<String>> work) {
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("startedAt", OffsetDateTime.now());
+        List<String> actions = new ArrayList<>();
+        try {
+            work.accept(actions);
+            run.put("status", "COMPLETED");
+        } catch (Exception e) {
+            log.error("Partition job {} failed", job, e);
+            run.put("status", "FAILED");
+            run.put("error", e.getMessage());
+        }
+        run.put("finishedAt", OffsetDateTime.now());
+        run.put("actions", actions);
+        lastRuns.put(job, run);
+    }
+
+    private List<Map<String, Object>> metadata() {
+        return jdbc.queryForList(
+            "SELECT table_name, last_partition_date, retention_months FROM partition_metadata ORDER BY table_name");
+    }
+
+    private List<Map<String, Object>> partitionsOf(String table) {
+        List<Map<String, Object>> partitions = new ArrayList<>();
+        jdbc.query("""
+            SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound, c.reltuples::bigint AS estimated_rows
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = ?::regclass
+            ORDER BY c.relname
+            """, rs -> {
+                Map<String, Object> partition = new LinkedHashMap<>();
+                String bound = rs.getString("bound");
+                Matcher range = RANGE_BOUND.matcher(bound);
+                boolean ranged = range.find();
+                partition.put("name", rs.getString("relname"));
+                partition.put("default", "DEFAULT".equals(bound));
+                partition.put("from", ranged ? LocalDate.parse(range.group(1).substring(0, 10)) : null);
+                partition.put("to", ranged ? LocalDate.parse(range.group(2).substring(0, 10)) : null);
+                partition.put("estimatedRows", Math.max(0, rs.getLong("estimated_rows")));
+                partitions.add(partition);
+            }, table);
+        return partitions;
+    }
+
+    private String defaultPartitionOf(String table) {
+        List<String> names = jdbc.queryForList("""
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = ?::regclass AND pg_get_expr(c.relpartbound, c.oid) = 'DEFAULT'
+            """, String.class, table);
+        return names.isEmpty() ? null : identifier(names.get(0));
+    }
+
+    private boolean isAttached(String table, String partition) {
+        return Boolean.TRUE.equals(jdbc.queryForObject("""
+            SELECT EXISTS (
+                SELECT 1 FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = ?::regclass AND c.relname = ?
+            )
+            """, Boolean.class, table, partition));
+    }
+
+    /**
+     * Column the table is range partitioned on
+     */
+    public String partitionKey(String table) {
+        String definition = jdbc.queryForObject("SELECT pg_get_partkeydef(?::regclass)", String.class, table);
+        Matcher key = PARTITION_KEY.matcher(definition != null ? definition : "");
+        if (!key.matches()) {
+            throw new IllegalStateException(table + " is not range partitioned on a single column: " + definition);
+        }
+        return identifier(key.group(1));
+    }
+
+    private String columnsOf(String table) {
+        return jdbc.queryForObject("""
+            SELECT string_agg(quote_ident(attname), ', ' ORDER BY attnum)
+            FROM pg_attribute
+            WHERE attrelid = ?::regclass AND attnum > 0 AND NOT attisdropped
+            """, String.class, table);
+    }
+
+    private void withLockTimeout(String ddl) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbc.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+            jdbc.execute(ddl);
+        });
+    }
+
+    private static String partitionName(String table, LocalDate month) {
+        return identifier(table + "_" + month.format(SUFFIX));
+    }
+
+    /**
+     * Table names end up in DDL, only plain lower-case identifiers are accepted
+     */
+    private static String identifier(String name) {
+        if (!IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("Unexpected table name: " + name);
+        }
+        return name;
+    }
+}
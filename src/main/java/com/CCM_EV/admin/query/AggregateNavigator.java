@@ -0,0 +1,170 @@
+package com.CCM_EV.admin.query;
+
+import com.CCM_EV.admin.query.AggregateSource.Kind;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers dimensional report queries from the smallest source that can answer them.
+ *
+ * A source can answer a query when it has every requested dimension and measure, its grain
+ * fits the time range, and distinct counts are not summed across its rows. Among those the
+ * navigator prefers rollups over materialized views and, within a kind, the source with the
+ * fewest rows by catalog statistics; raw partitions are only read when no pre-aggregate can
+ * answer. Every response says which source was used and why the others were not.
+ */
+@Service
+@RequiredArgsConstructor
+public class AggregateNavigator {
+
+    private final JdbcTemplate jdbc;
+    private final FreshViewService freshViews;
+
+    /**
+     * Measures per group over the last days UTC days, today included
+     */
+    public Map<String, Object> query(ReportSubject subject, List<String> measures, List<String> groupBy, int days) {
+        OffsetDateTime to = OffsetDateTime.now(ZoneOffset.UTC).toLocalDate().plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+        return query(subject, measures, groupBy, to.minusDays(days), to);
+    }
+
+    /**
+     * Measures per group over [from, to), groups in dimension order
+     */
+    public Map<String, Object> query(ReportSubject subject, List<String> measures, List<String> groupBy,
+                                     OffsetDateTime from, OffsetDateTime to) {
+        AggregateSource raw = subject.getRawSource();
+        if (measures.isEmpty()) {
+            throw new IllegalArgumentException("At least one measure is required");
+        }
+        for (String measure : measures) {
+            if (!raw.getMeasures().containsKey(measure)) {
+                throw new IllegalArgumentException("Unknown measure for " + subject.getName() + ": " + measure +
+                        ", expected one of " + raw.getMeasures().keySet());
+            }
+        }
+        for (String dimension : groupBy) {
+            if (!raw.getDimensions().containsKey(dimension)) {
+                throw new IllegalArgumentException("Unknown dimension for " + subject.getName() + ": " + dimension +
+                        ", expected one of " + raw.getDimensions().keySet());
+            }
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+
+        List<Map<String, Object>> considered = new ArrayList<>();
+        AggregateSource chosen = raw;
+        long chosenRows = Long.MAX_VALUE;
+        for (AggregateSource source : subject.getSources()) {
+            Map<String, Object> candidate = new LinkedHashMap<>();
+            candidate.put("source", source.getName());
+            candidate.put("kind", source.getKind());
+            String reason = source.getKind() == Kind.RAW ? null : unusableReason(source, measures, groupBy, from, to);
+            candidate.put("usable", reason == null);
+            if (reason != null) {
+                candidate.put("reason", reason);
+            } else if (source.getKind() != Kind.RAW) {
+                long rows = estimatedRows(source.getName());
+                candidate.put("estimatedRows", rows);
+                if (chosen.getKind() == Kind.RAW
+                        || source.getKind().ordinal() < chosen.getKind().ordinal()
+                        || source.getKind() == chosen.getKind() && rows < chosenRows) {
+                    chosen = source;
+                    chosenRows = rows;
+                }
+            }
+            considered.add(candidate);
+        }
+
+        String relation = chosen.getRelation();
+        List<Object> args = new ArrayList<>();
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (chosen.getKind() == Kind.MATERIALIZED_VIEW) {
+            FreshView view = freshViews.view(chosen.getName());
+            relation = view.getRelation();
+            args.addAll(List.of(view.getArgs()));
+            result.put("freshness", view.getFreshness());
+        }
+        args.add(from);
+        args.add(to);
+
+        AggregateSource source = chosen;
+        List<String> select = new ArrayList<>();
+        groupBy.forEach(dimension -> select.add(source.getDimensions().get(dimension) + " AS " + dimension));
+        measures.forEach(measure -> select.add(source.getMeasures().get(measure) + " AS " + measure));
+        StringBuilder sql = new StringBuilder()
+            .append("SELECT ").append(String.join(", ", select))
+            .append(" FROM ").append(relation)
+            .append(" WHERE ").append(source.getTimeFilter());
+        if (!groupBy.isEmpty()) {
+            String positions = positions(groupBy.size());
+            sql.append(" GROUP BY ").append(positions).append(" ORDER BY ").append(positions);
+        }
+
+        result.put("subject", subject.getName());
+        result.put("measures", measures);
+        result.put("groupBy", groupBy);
+        result.put("from", from);
+        result.put("to", to);
+        result.put("source", source.getName());
+        result.put("sourceKind", source.getKind());
+        result.put("considered", considered);
+        result.put("rows", jdbc.queryForList(sql.toString(), args.toArray()));
+        return result;
+    }
+
+    /**
+     * Why a pre-aggregate cannot answer the query, null when it can
+     */
+    private static String unusableReason(AggregateSource source, List<String> measures, List<String> groupBy,
+                                         OffsetDateTime from, OffsetDateTime to) {
+        List<String> missingDimensions = groupBy.stream().filter(d -> !source.getDimensions().containsKey(d)).toList();
+        if (!missingDimensions.isEmpty()) {
+            return "No dimension " + missingDimensions;
+        }
+        List<String> missingMeasures = measures.stream().filter(m -> !source.getMeasures().containsKey(m)).toList();
+        if (!missingMeasures.isEmpty()) {
+            return "No measure " + missingMeasures;
+        }
+        if (source.isDaily() && !(isMidnightUtc(from) && isMidnightUtc(to))) {
+            return "Range does not start and end at midnight UTC";
+        }
+        List<String> distinct = measures.stream().filter(source.getDistinctMeasures()::contains).toList();
+        if (!distinct.isEmpty() && !new HashSet<>(groupBy).equals(source.getDimensions().keySet())) {
+            return "Distinct counts " + distinct + " only per " + source.getDimensions().keySet();
+        }
+        return null;
+    }
+
+    private long estimatedRows(String relation) {
+        Long rows = jdbc.queryForObject(
+            "SELECT COALESCE(SUM(GREATEST(c.reltuples, 0)), 0)::bigint " +
+            "FROM pg_partition_tree(?::regclass) t JOIN pg_class c ON c.oid = t.relid",
+            Long.class, relation
+        );
+        return rows != null ? rows : 0;
+    }
+
+    private static boolean isMidnightUtc(OffsetDateTime time) {
+        return time.atZoneSameInstant(ZoneOffset.UTC).toLocalTime().equals(LocalTime.MIDNIGHT);
+    }
+
+    private static String positions(int count) {
+        List<String> positions = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            positions.add(String.valueOf(i));
+        }
+        return String.join(", ", positions);
+    }
+}
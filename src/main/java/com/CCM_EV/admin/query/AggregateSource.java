@@ -0,0 +1,55 @@
+package com.CCM_EV.admin.query;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One relation a report subject can be read from, with the SQL expression of every dimension
+ * and measure it can provide
+ */
+@Getter
+@Builder
+public class AggregateSource {
+
+    /**
+     * In order of preference: rollups are current and small, materialized views need the facts
+     * since their last refresh aggregated live, raw partitions are read when nothing else can answer
+     */
+    public enum Kind {
+        ROLLUP, MATERIALIZED_VIEW, RAW
+    }
+
+    private final String name;
+    private final Kind kind;
+
+    /**
+     * FROM clause; materialized views are read through {@link FreshViewService} instead
+     */
+    private final String relation;
+
+    /**
+     * Condition selecting the time range, with the range start and end as placeholders
+     */
+    private final String timeFilter;
+
+    /**
+     * Rows cover whole UTC days, so only ranges starting and ending at midnight UTC can be answered
+     */
+    private final boolean daily;
+
+    @Singular
+    private final Map<String, String> dimensions;
+
+    @Singular
+    private final Map<String, String> measures;
+
+    /**
+     * Measures summed from per-row distinct counts, only correct when grouping by every dimension
+     */
+    @Singular
+    private final Set<String> distinctMeasures;
+}
@@ -0,0 +1,27 @@
+package com.CCM_EV.admin.query;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * A daily materialized view brought up to date with the facts since its last refresh.
+ * Use {@link #getRelation()} in a FROM clause and {@link #getArgs()} as the query's arguments.
+ */
+@Getter
+@AllArgsConstructor
+public class FreshView {
+
+    /**
+     * Subquery with the view's columns, aliased as the view name
+     */
+    private final String relation;
+
+    private final Object[] args;
+
+    /**
+     * Where the rows came from and how current they are, for the response
+     */
+    private final Map<String, Object> freshness;
+}
@@ -0,0 +1,25 @@
+package com.CCM_EV.admin.query;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.util.List;
+
+/**
+ * Something to report on, e.g. trades, and the sources that hold it at different grains.
+ * The last source reads the raw fact partitions and provides every dimension and measure.
+ */
+@Getter
+@Builder
+public class ReportSubject {
+
+    private final String name;
+
+    @Singular
+    private final List<AggregateSource> sources;
+
+    public AggregateSource getRawSource() {
+        return sources.get(sources.size() - 1);
+    }
+}
@@ -0,0 +1,203 @@
+package com.CCM_EV.admin.query;
+
+import com.CCM_EV.admin.query.AggregateSource.Kind;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The report subjects and their sources. Days are UTC days everywhere; mv_payments_daily only
+ * holds completed payments and is not a source of payments.
+ */
+public final class ReportSubjects {
+
+    public static final ReportSubject TRADES = ReportSubject.builder()
+        .name("trades")
+        .source(AggregateSource.builder()
+            .name("rollup_trade_daily")
+            .kind(Kind.ROLLUP)
+            .relation("rollup_trade_daily")
+            .timeFilter(dayRange("day"))
+            .daily(true)
+            .dimension("day", "day")
+            .dimension("region", "region")
+            .dimension("currency", "currency")
+            .measure("trade_count", "SUM(trade_count)")
+            .measure("credits_sold", "SUM(credits_sold)")
+            .measure("revenue", "SUM(revenue)")
+            .measure("avg_unit_price", "SUM(unit_price_sum) / NULLIF(SUM(unit_price_count), 0)")
+            .measure("auction_count", "SUM(auction_count)")
+            .build())
+        .source(AggregateSource.builder()
+            .name("mv_trades_daily")
+            .kind(Kind.MATERIALIZED_VIEW)
+            .timeFilter(timeRange("day"))
+            .daily(true)
+            .dimension("day", "(day AT TIME ZONE 'UTC')::date")
+            .measure("trade_count", "SUM(trade_count)")
+            .measure("credits_sold", "SUM(credits_sold)")
+            .measure("revenue", "SUM(revenue)")
+            .measure("avg_unit_price", "SUM(avg_unit_price * trade_count) / NULLIF(SUM(trade_count), 0)")
+            .measure("unique_buyers", "SUM(unique_buyers)")
+            .measure("unique_sellers", "SUM(unique_sellers)")
+            .distinctMeasure("unique_buyers")
+            .distinctMeasure("unique_sellers")
+            .build())
+        .source(AggregateSource.builder()
+            .name("fact_trade")
+            .kind(Kind.RAW)
+            .relation("fact_trade")
+            .timeFilter(timeRange("executed_at"))
+            .dimension("day", "(executed_at AT TIME ZONE 'UTC')::date")
+            .dimension("hour", "date_trunc('hour', executed_at)")
+            .dimension("region", "COALESCE(region, 'Unknown')")
+            .dimension("currency", "COALESCE(currency, 'Unknown')")
+            .dimension("status", "COALESCE(order_status, 'Unknown')")
+            .measure("trade_count", "COUNT(*)")
+            .measure("credits_sold", "COALESCE(SUM(quantity), 0)")
+            .measure("revenue", "COALESCE(SUM(amount), 0)")
+            .measure("avg_unit_price", "AVG(unit_price)")
+            .measure("auction_count", "COUNT(*) FILTER (WHERE is_auction)")
+            .measure("unique_buyers", "COUNT(DISTINCT buyer_id)")
+            .measure("unique_sellers", "COUNT(DISTINCT seller_id)")
+            .build())
+        .build();
+
+    public static final ReportSubject ISSUANCES = ReportSubject.builder()
+        .name("issuances")
+        .source(AggregateSource.builder()
+            .name("rollup_issuance_daily")
+            .kind(Kind.ROLLUP)
+            .relation("rollup_issuance_daily")
+            .timeFilter(dayRange("day"))
+            .daily(true)
+            .dimension("day", "day")
+            .dimension("region", "region")
+            .measure("issuance_count", "SUM(issuance_count)")
+            .measure("credits_issued", "SUM(credits_issued)")
+            .measure("distance_km", "SUM(distance_km)")
+            .measure("energy_kwh", "SUM(energy_kwh)")
+            .measure("co2_avoided_kg", "SUM(co2_avoided_kg)")
+            .measure("avg_issuance", "SUM(credits_issued) / NULLIF(SUM(issuance_count), 0)")
+            .build())
+        .source(AggregateSource.builder()
+            .name("mv_issuance_daily")
+            .kind(Kind.MATERIALIZED_VIEW)
+            .timeFilter(timeRange("day"))
+            .daily(true)
+            .dimension("day", "(day AT TIME ZONE 'UTC')::date")
+            .measure("issuance_count", "SUM(issuance_count)")
+            .measure("credits_issued", "SUM(credits_issued)")
+            .measure("avg_issuance", "SUM(avg_issuance * issuance_count) / NULLIF(SUM(issuance_count), 0)")
+            .measure("unique_users", "SUM(unique_users)")
+            .distinctMeasure("unique_users")
+            .build())
+        .source(AggregateSource.builder()
+            .name("fact_issuance")
+            .kind(Kind.RAW)
+            .relation("fact_issuance f LEFT JOIN dim_users u ON u.user_id = f.user_id")
+            .timeFilter(timeRange("f.issued_at"))
+            .dimension("day", "(f.issued_at AT TIME ZONE 'UTC')::date")
+            .dimension("hour", "date_trunc('hour', f.issued_at)")
+            .dimension("region", "COALESCE(f.region, 'Unknown')")
+            .dimension("status", "COALESCE(f.status, 'Unknown')")
+            .dimension("role", "COALESCE(u.role, 'Unknown')")
+            .measure("issuance_count", "COUNT(*)")
+            .measure("credits_issued", "COALESCE(SUM(f.quantity_tco2e), 0)")
+            .measure("distance_km", "COALESCE(SUM(f.distance_km), 0)")
+            .measure("energy_kwh", "COALESCE(SUM(f.energy_kwh), 0)")
+            .measure("co2_avoided_kg", "COALESCE(SUM(f.co2_avoided_kg), 0)")
+            .measure("avg_issuance", "AVG(f.quantity_tco2e)")
+            .measure("unique_users", "COUNT(DISTINCT f.user_id)")
+            .build())
+        .build();
+
+    public static final ReportSubject PAYMENTS = ReportSubject.builder()
+        .name("payments")
+        .source(AggregateSource.builder()
+            .name("rollup_payment_daily")
+            .kind(Kind.ROLLUP)
+            .relation("rollup_payment_daily")
+            .timeFilter(dayRange("day"))
+            .daily(true)
+            .dimension("day", "day")
+            .dimension("region", "region")
+            .dimension("currency", "currency")
+            .dimension("status", "status")
+            .measure("payment_count", "SUM(payment_count)")
+            .measure("total_amount", "SUM(total_amount)")
+            .measure("avg_amount", "SUM(total_amount) / NULLIF(SUM(payment_count), 0)")
+            .build())
+        .source(AggregateSource.builder()
+            .name("fact_payment")
+            .kind(Kind.RAW)
+            .relation("fact_payment")
+            .timeFilter(timeRange("completed_at"))
+            .dimension("day", "(completed_at AT TIME ZONE 'UTC')::date")
+            .dimension("hour", "date_trunc('hour', completed_at)")
+            .dimension("region", "COALESCE(region, 'Unknown')")
+            .dimension("currency", "COALESCE(currency, 'Unknown')")
+            .dimension("status", "COALESCE(status, 'Unknown')")
+            .measure("payment_count", "COUNT(*)")
+            .measure("total_amount", "COALESCE(SUM(amount), 0)")
+            .measure("avg_amount", "AVG(amount)")
+            .measure("unique_payers", "COUNT(DISTINCT payer_id)")
+            .build())
+        .build();
+
+    public static final ReportSubject ACTIVITIES = ReportSubject.builder()
+        .name("activities")
+        .source(AggregateSource.builder()
+            .name("rollup_user_activity_daily")
+            .kind(Kind.ROLLUP)
+            .relation("rollup_user_activity_daily")
+            .timeFilter(dayRange("day"))
+            .daily(true)
+            .dimension("day", "day")
+            .dimension("event_type", "event_type")
+            .measure("event_count", "SUM(event_count)")
+            .build())
+        .source(AggregateSource.builder()
+            .name("mv_user_activity_daily")
+            .kind(Kind.MATERIALIZED_VIEW)
+            .timeFilter(timeRange("day"))
+            .daily(true)
+            .dimension("day", "(day AT TIME ZONE 'UTC')::date")
+            .dimension("event_type", "COALESCE(event_type, 'Unknown')")
+            .measure("event_count", "SUM(event_count)")
+            .measure("unique_users", "SUM(unique_users)")
+            .distinctMeasure("unique_users")
+            .build())
+        .source(AggregateSource.builder()
+            .name("fact_user_activity")
+            .kind(Kind.RAW)
+            .relation("fact_user_activity a LEFT JOIN dim_users u ON u.user_id = a.user_id")
+            .timeFilter(timeRange("a.occurred_at"))
+            .dimension("day", "(a.occurred_at AT TIME ZONE 'UTC')::date")
+            .dimension("hour", "date_trunc('hour', a.occurred_at)")
+            .dimension("event_type", "COALESCE(a.event_type, 'Unknown')")
+            .dimension("region", "COALESCE(u.region, 'Unknown')")
+            .dimension("role", "COALESCE(u.role, 'Unknown')")
+            .measure("event_count", "COUNT(*)")
+            .measure("unique_users", "COUNT(DISTINCT a.user_id)")
+            .build())
+        .build();
+
+    public static final List<ReportSubject> ALL = List.of(TRADES, ISSUANCES, PAYMENTS, ACTIVITIES);
+
+    public static Optional<ReportSubject> byName(String name) {
+        return ALL.stream().filter(subject -> subject.getName().equals(name)).findFirst();
+    }
+
+    private static String timeRange(String column) {
+        return column + " >= ? AND " + column + " < ?";
+    }
+
+    private static String dayRange(String column) {
+        return column + " >= (CAST(? AS timestamptz) AT TIME ZONE 'UTC')::date AND " +
+               column + " < (CAST(? AS timestamptz) AT TIME ZONE 'UTC')::date";
+    }
+
+    private ReportSubjects() {
+    }
+}
@@ -0,0 +1,51 @@
+package com.CCM_EV.admin.rollup;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.util.List;
+
+/**
+ * Definition of a rollup table: the fact table it aggregates, the group columns (the first one
+ * is always the UTC day) and the additive measures (the first one is always the row count).
+ * Only sums and counts are allowed, so a change to the facts maps to a delta of the rollup.
+ */
+@Getter
+@Builder
+public class Rollup {
+
+    private final String name;
+    private final String table;
+    private final String factTable;
+
+    /**
+     * Timestamp column of the fact table the day is derived from
+     */
+    private final String timeColumn;
+
+    /**
+     * Primary key of the fact table and its SQL types, null for append-only facts
+     */
+    private final List<String> keyColumns;
+    private final List<String> keyTypes;
+
+    @Singular
+    private final List<Column> dimensions;
+
+    @Singular
+    private final List<Column> measures;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Column {
+        private final String name;
+        private final String type;
+        private final String expression;
+    }
+
+    public static Column column(String name, String type, String expression) {
+        return new Column(name, type, expression);
+    }
+}
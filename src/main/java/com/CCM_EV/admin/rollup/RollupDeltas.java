@@ -0,0 +1,101 @@
+package com.CCM_EV.admin.rollup;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measure deltas per group of one rollup, groups are the dimension values in definition order
+ */
+public class RollupDeltas {
+
+    private final Rollup rollup;
+    private final Map<List<Object>, BigDecimal[]> groups = new HashMap<>();
+
+    public RollupDeltas(Rollup rollup) {
+        this.rollup = rollup;
+    }
+
+    public Rollup getRollup() {
+        return rollup;
+    }
+
+    /**
+     * Add measures to a group, in measure definition order
+     */
+    public RollupDeltas add(List<Object> dimensions, Number... measures) {
+        BigDecimal[] sums = groups.computeIfAbsent(normalize(dimensions), group -> zeros());
+        for (int i = 0; i < measures.length; i++) {
+            if (measures[i] != null) {
+                sums[i] = sums[i].add(decimal(measures[i]));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * This minus other, e.g. the facts after a write minus the facts before it
+     */
+    public RollupDeltas minus(RollupDeltas other) {
+        RollupDeltas result = new RollupDeltas(rollup);
+        groups.forEach((group, sums) -> result.add(group, sums));
+        other.groups.forEach((group, sums) -> result.add(group, Arrays.stream(sums).map(BigDecimal::negate).toArray(BigDecimal[]::new)));
+        return result;
+    }
+
+    /**
+     * Groups with a non-zero delta, in key order so writers lock rollup rows in the same order
+     */
+    public List<Map.Entry<List<Object>, BigDecimal[]>> changes() {
+        List<Map.Entry<List<Object>, BigDecimal[]>> changes = new ArrayList<>();
+        for (Map.Entry<List<Object>, BigDecimal[]> entry : groups.entrySet()) {
+            if (Arrays.stream(entry.getValue()).anyMatch(value -> value.signum() != 0)) {
+                changes.add(entry);
+            }
+        }
+        changes.sort(Map.Entry.comparingByKey(RollupDeltas::compare));
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return changes().isEmpty();
+    }
+
+    private BigDecimal[] zeros() {
+        BigDecimal[] zeros = new BigDecimal[rollup.getMeasures().size()];
+        Arrays.fill(zeros, BigDecimal.ZERO);
+        return zeros;
+    }
+
+    private static List<Object> normalize(List<Object> dimensions) {
+        List<Object> values = new ArrayList<>(dimensions.size());
+        for (Object value : dimensions) {
+            values.add(value instanceof Date date ? date.toLocalDate() : value);
+        }
+        return values;
+    }
+
+    private static BigDecimal decimal(Number value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        return value instanceof Double || value instanceof Float
+                ? BigDecimal.valueOf(value.doubleValue())
+                : BigDecimal.valueOf(value.longValue());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(List<Object> a, List<Object> b) {
+        for (int i = 0; i < a.size(); i++) {
+            int result = ((Comparable) a.get(i)).compareTo(b.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,235 @@
+package com.CCM_EV.admin.rollup;
+
+import com.CCM_EV.admin.hotwindow.HotWindowService;
+import com.CCM_EV.admin.metrics.BusinessCounters;
+import com.CCM_EV.admin.rollup.Rollup.Column;
+import com.CCM_EV.admin.timeseries.TimeSeriesTierService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Incremental maintenance of the rollup tables.
+ *
+ * Writers to a fact table wrap their write in {@link #track}: the rollup groups of the touched
+ * fact rows are aggregated before and after the write, and the difference is added to the rollup
+ * in the same transaction. A late event, or an update that moves a row to another group, so
+ * retracts its old values and re-adds the new ones, and the cost of a batch only depends on the
+ * rows it touches. Deltas are written with one upsert per batch, in group order, so concurrent
+ * batches lock rollup rows in the same order and cannot deadlock on them. The touched rows
+ * also feed the distinct-count sketches and the hot window, and mark late time-series hours.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RollupService {
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final BusinessCounters businessCounters;
+    private final SketchService sketches;
+    private final HotWindowService hotWindow;
+    private final TimeSeriesTierService timeSeries;
+
+    /**
+     * Apply a write to the fact table and its delta to the rollup, must run inside the write's transaction
+     * @param keys primary keys of the fact rows the write touches, in {@link Rollup#getKeyColumns()} order
+     */
+    public void track(Rollup rollup, Collection<Object[]> keys, Runnable write) {
+        if (keys.isEmpty()) {
+            write.run();
+            return;
+        }
+        String source = keyValues(rollup, keys.size());
+        Object[] args = keys.stream().flatMap(Arrays::stream).toArray();
+        track(rollup, source, args, write);
+    }
+
+    /**
+     * Same, with the keys selected by a query, e.g. from a staging table
+     * @param keySource query returning the key columns of the touched rows, without duplicates
+     */
+    public void track(Rollup rollup, String keySource, Object[] args, Runnable write) {
+        RollupDeltas before = snapshot(rollup, keySource, args);
+        write.run();
+        RollupDeltas after = snapshot(rollup, keySource, args);
+        apply(after.minus(before));
+        sketches.add(rollup, keySource, args);
+        hotWindow.capture(rollup.getFactTable(), keySource, args);
+        timeSeries.markLate(rollup.getFactTable(), keySource, rollup.getKeyColumns(), args);
+    }
+
+    /**
+     * Add deltas to the rollup, and to the business totals once committed
+     */
+    public void apply(RollupDeltas deltas) {
+        List<Map.Entry<List<Object>, BigDecimal[]>> changes = deltas.changes();
+        if (changes.isEmpty()) {
+            return;
+        }
+        Rollup rollup = deltas.getRollup();
+        List<Column> columns = new ArrayList<>(rollup.getDimensions());
+        columns.addAll(rollup.getMeasures());
+
+        String row = columns.stream()
+                .map(column -> "CAST(? AS " + column.getType() + ")")
+                .collect(Collectors.joining(", ", "(", ")"));
+        List<Object> args = new ArrayList<>(changes.size() * columns.size());
+        for (Map.Entry<List<Object>, BigDecimal[]> change : changes) {
+            args.addAll(change.getKey());
+            Collections.addAll(args, (Object[]) change.getValue());
+        }
+
+        jdbc.update("""
+            INSERT INTO %s AS r (%s)
+            VALUES %s
+            ON CONFLICT (%s) DO UPDATE SET %s, updated_at = now()
+            """.formatted(
+                rollup.getTable(), names(columns),
+                String.join(", ", Collections.nCopies(changes.size(), row)),
+                names(rollup.getDimensions()),
+                rollup.getMeasures().stream()
+                    .map(measure -> measure.getName() + " = r." + measure.getName() + " + EXCLUDED." + measure.getName())
+                    .collect(Collectors.joining(", "))
+            ), args.toArray());
+        businessCounters.add(deltas);
+    }
+
+    /**
+     * Recompute the rollup and its sketches for the days [from, to) from the fact partitions,
+     * replacing what they hold, then the time-series tiers of the fact table.
+     * Meant for repairs after writes that bypassed {@link #track}; days of archived partitions
+     * have no facts left and keep their rollup rows.
+     * @return groups written
+     */
+    public int rebuild(Rollup rollup, LocalDate from, LocalDate to) {
+        String day = rollup.getDimensions().get(0).getName();
+        OffsetDateTime start = from.atStartOfDay().atOffset(ZoneOffset.UTC);
+        OffsetDateTime end = to.atStartOfDay().atOffset(ZoneOffset.UTC);
+        Integer written = transactionTemplate.execute(status -> {
+            // Blocks writers' deltas until the rebuild commits; their uncommitted facts are not
+            // seen below, so their deltas still apply correctly on top afterwards
+            jdbc.execute("LOCK TABLE " + rollup.getTable() + " IN SHARE ROW EXCLUSIVE MODE");
+            jdbc.update("""
+                DELETE FROM %s r
+                WHERE r.%s >= ? AND r.%s < ?
+                  AND NOT EXISTS (
+                      SELECT 1 FROM archived_partitions a
+                      WHERE a.table_name = ? AND a.status = 'ARCHIVED'
+                        AND r.%s >= a.range_from AND r.%s < a.range_to
+                  )
+                """.formatted(rollup.getTable(), day, day, day, day), from, to, rollup.getFactTable());
+            int groups = jdbc.update("""
+                INSERT INTO %s (%s)
+                SELECT %s FROM %s
+                WHERE %s >= ? AND %s < ?
+                GROUP BY %s
+                """.formatted(
+                    rollup.getTable(), names(allColumns(rollup)),
+                    expressions(allColumns(rollup)), rollup.getFactTable(),
+                    rollup.getTimeColumn(), rollup.getTimeColumn(),
+                    groupPositions(rollup)
+                ), start, end);
+            sketches.rebuild(rollup, from, to);
+            return groups;
+        });
+        log.info("Rebuilt {} for {} to {}: {} groups", rollup.getTable(), from, to, written);
+        timeSeries.rebuild(rollup.getFactTable(), start, end);
+        return written != null ? written : 0;
+    }
+
+    /**
+     * Groups and estimated size of every rollup
+     */
+    public List<Map<String, Object>> getState() {
+        List<Map<String, Object>> state = new ArrayList<>();
+        for (Rollup rollup : Rollups.ALL) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", rollup.getName());
+            entry.put("table", rollup.getTable());
+            entry.put("factTable", rollup.getFactTable());
+            entry.put("dimensions", rollup.getDimensions().stream().map(Column::getName).toList());
+            entry.put("measures", rollup.getMeasures().stream().map(Column::getName).toList());
+            entry.put("sketches", Sketches.of(rollup).stream().map(Sketch::getName).toList());
+            entry.putAll(jdbc.queryForMap(
+                "SELECT GREATEST(c.reltuples, 0)::bigint AS estimated_rows, " +
+                "(SELECT MAX(updated_at) FROM " + rollup.getTable() + ") AS last_updated_at " +
+                "FROM pg_class c WHERE c.oid = ?::regclass",
+                rollup.getTable()));
+            state.add(entry);
+        }
+        return state;
+    }
+
+    private RollupDeltas snapshot(Rollup rollup, String keySource, Object[] args) {
+        RollupDeltas snapshot = new RollupDeltas(rollup);
+        int dimensions = rollup.getDimensions().size();
+        int measures = rollup.getMeasures().size();
+        jdbc.query("""
+            SELECT %s
+            FROM (%s) AS k (%s)
+            JOIN %s f USING (%s)
+            GROUP BY %s
+            """.formatted(
+                expressions(allColumns(rollup)),
+                keySource, String.join(", ", rollup.getKeyColumns()),
+                rollup.getFactTable(), String.join(", ", rollup.getKeyColumns()),
+                groupPositions(rollup)
+            ), rs -> {
+                List<Object> group = new ArrayList<>(dimensions);
+                for (int i = 1; i <= dimensions; i++) {
+                    group.add(rs.getObject(i));
+                }
+                Number[] values = new Number[measures];
+                for (int i = 0; i < measures; i++) {
+                    values[i] = rs.getBigDecimal(dimensions + 1 + i);
+                }
+                snapshot.add(group, values);
+            }, args);
+        return snapshot;
+    }
+
+    private static String keyValues(Rollup rollup, int rows) {
+        String row = rollup.getKeyTypes().stream()
+                .map(type -> "CAST(? AS " + type + ")")
+                .collect(Collectors.joining(", ", "(", ")"));
+        return "VALUES " + String.join(", ", Collections.nCopies(rows, row));
+    }
+
+    private static List<Column> allColumns(Rollup rollup) {
+        List<Column> columns = new ArrayList<>(rollup.getDimensions());
+        columns.addAll(rollup.getMeasures());
+        return columns;
+    }
+
+    private static String names(List<Column> columns) {
+        return columns.stream().map(Column::getName).collect(Collectors.joining(", "));
+    }
+
+    private static String expressions(List<Column> columns) {
+        return columns.stream().map(Column::getExpression).collect(Collectors.joining(", "));
+    }
+
+    private static String groupPositions(Rollup rollup) {
+        List<String> positions = new ArrayList<>();
+        for (int i = 1; i <= rollup.getDimensions().size(); i++) {
+            positions.add(String.valueOf(i));
+        }
+        return String.join(", ", positions);
+    }
+}
@@ -0,0 +1,83 @@
+package com.CCM_EV.admin.rollup;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.CCM_EV.admin.rollup.Rollup.column;
+
+/**
+ * The rollup tables, see V12__add_rollup_tables.sql for their layout
+ */
+public final class Rollups {
+
+    public static final Rollup TRADE_DAILY = Rollup.builder()
+        .name("trade_daily")
+        .table("rollup_trade_daily")
+        .factTable("fact_trade")
+        .timeColumn("executed_at")
+        .keyColumns(List.of("order_id", "executed_at"))
+        .keyTypes(List.of("text", "timestamptz"))
+        .dimension(column("day", "date", "(executed_at AT TIME ZONE 'UTC')::date"))
+        .dimension(column("region", "text", "COALESCE(region, 'Unknown')"))
+        .dimension(column("currency", "text", "COALESCE(currency, 'Unknown')"))
+        .measure(column("trade_count", "bigint", "COUNT(*)"))
+        .measure(column("credits_sold", "numeric", "COALESCE(SUM(quantity), 0)"))
+        .measure(column("revenue", "numeric", "COALESCE(SUM(amount), 0)"))
+        .measure(column("unit_price_sum", "numeric", "COALESCE(SUM(unit_price), 0)"))
+        .measure(column("unit_price_count", "bigint", "COUNT(unit_price)"))
+        .measure(column("auction_count", "bigint", "COUNT(*) FILTER (WHERE is_auction)"))
+        .build();
+
+    public static final Rollup ISSUANCE_DAILY = Rollup.builder()
+        .name("issuance_daily")
+        .table("rollup_issuance_daily")
+        .factTable("fact_issuance")
+        .timeColumn("issued_at")
+        .keyColumns(List.of("issuance_id", "issued_at"))
+        .keyTypes(List.of("text", "timestamptz"))
+        .dimension(column("day", "date", "(issued_at AT TIME ZONE 'UTC')::date"))
+        .dimension(column("region", "text", "COALESCE(region, 'Unknown')"))
+        .measure(column("issuance_count", "bigint", "COUNT(*)"))
+        .measure(column("credits_issued", "numeric", "COALESCE(SUM(quantity_tco2e), 0)"))
+        .measure(column("distance_km", "numeric", "COALESCE(SUM(distance_km), 0)"))
+        .measure(column("energy_kwh", "numeric", "COALESCE(SUM(energy_kwh), 0)"))
+        .measure(column("co2_avoided_kg", "numeric", "COALESCE(SUM(co2_avoided_kg), 0)"))
+        .build();
+
+    public static final Rollup PAYMENT_DAILY = Rollup.builder()
+        .name("payment_daily")
+        .table("rollup_payment_daily")
+        .factTable("fact_payment")
+        .timeColumn("completed_at")
+        .keyColumns(List.of("payment_id", "completed_at"))
+        .keyTypes(List.of("text", "timestamptz"))
+        .dimension(column("day", "date", "(completed_at AT TIME ZONE 'UTC')::date"))
+        .dimension(column("region", "text", "COALESCE(region, 'Unknown')"))
+        .dimension(column("currency", "text", "COALESCE(currency, 'Unknown')"))
+        .dimension(column("status", "text", "COALESCE(status, 'Unknown')"))
+        .measure(column("payment_count", "bigint", "COUNT(*)"))
+        .measure(column("total_amount", "numeric", "COALESCE(SUM(amount), 0)"))
+        .build();
+
+    /**
+     * Activities are only ever inserted, their deltas are built from the inserted rows
+     */
+    public static final Rollup USER_ACTIVITY_DAILY = Rollup.builder()
+        .name("user_activity_daily")
+        .table("rollup_user_activity_daily")
+        .factTable("fact_user_activity")
+        .timeColumn("occurred_at")
+        .dimension(column("day", "date", "(occurred_at AT TIME ZONE 'UTC')::date"))
+        .dimension(column("event_type", "text", "COALESCE(event_type, 'Unknown')"))
+        .measure(column("event_count", "bigint", "COUNT(*)"))
+        .build();
+
+    public static final List<Rollup> ALL = List.of(TRADE_DAILY, ISSUANCE_DAILY, PAYMENT_DAILY, USER_ACTIVITY_DAILY);
+
+    public static Optional<Rollup> byName(String name) {
+        return ALL.stream().filter(rollup -> rollup.getName().equals(name)).findFirst();
+    }
+
+    private Rollups() {
+    }
+}
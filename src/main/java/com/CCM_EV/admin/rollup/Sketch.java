@@ -0,0 +1,21 @@
+package com.CCM_EV.admin.rollup;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Definition of a distinct-count sketch: the IDs of a fact column, per UTC day and region of
+ * a rollup. Maintained by the same writes as the rollup, see {@link SketchService}.
+ */
+@Getter
+@AllArgsConstructor
+public class Sketch {
+
+    private final String name;
+    private final Rollup rollup;
+
+    /**
+     * Fact column whose distinct values are counted, rows where it is null are skipped
+     */
+    private final String valueColumn;
+}
@@ -0,0 +1,348 @@
+package com.CCM_EV.admin.rollup;
+
+import com.CCM_EV.admin.rollup.Rollup.Column;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Maintenance and merging of the distinct-count sketches.
+ *
+ * Writes tracked by {@link RollupService#track} add the IDs of the fact rows they touched to the
+ * sketches of their day and region. The stored sketches of a batch are locked in group order,
+ * merged with the new registers in memory and written back, the database only stores bytes.
+ * Adding is idempotent, so replays and updates of a row add
+ * nothing twice; an update that changes a row's ID or day cannot take the old ID back out,
+ * {@link #rebuild} recomputes the sketches for that.
+ *
+ * Distinct counts over a range merge the daily sketches in memory, e.g. 30 days of 10 regions
+ * are 300 sketches of 4 KB.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SketchService {
+
+    // Sketches written per upsert statement
+    private static final int WRITE_BATCH = 500;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Add the IDs of the fact rows selected by the key source to the rollup's sketches,
+     * must run inside the write's transaction
+     * @param keySource query returning the key columns of the touched rows, see {@link RollupService#track}
+     */
+    public void add(Rollup rollup, String keySource, Object[] args) {
+        List<Sketch> sketches = Sketches.of(rollup);
+        if (sketches.isEmpty()) {
+            return;
+        }
+        Map<Group, HyperLogLog> groups = new TreeMap<>();
+        jdbc.query("""
+            SELECT %s, %s, %s
+            FROM (%s) AS k (%s)
+            JOIN %s f USING (%s)
+            """.formatted(
+                day(rollup).getExpression(), region(rollup).getExpression(),
+                sketches.stream().map(sketch -> sketch.getValueColumn() + "::text").collect(Collectors.joining(", ")),
+                keySource, String.join(", ", rollup.getKeyColumns()),
+                rollup.getFactTable(), String.join(", ", rollup.getKeyColumns())
+            ), rs -> {
+                for (int i = 0; i < sketches.size(); i++) {
+                    collect(groups, sketches.get(i), rs, 3 + i);
+                }
+            }, args);
+        write(groups);
+    }
+
+    /**
+     * Estimated distinct IDs over the last days UTC days, today included
+     */
+    public long estimate(Sketch sketch, int days) {
+        LocalDate to = LocalDate.now(ZoneOffset.UTC).plusDays(1);
+        return estimate(sketch, to.minusDays(days), to);
+    }
+
+    /**
+     * Estimated distinct IDs over the days [from, to)
+     */
+    public long estimate(Sketch sketch, LocalDate from, LocalDate to) {
+        HyperLogLog union = new HyperLogLog();
+        jdbc.query("SELECT registers FROM rollup_sketches WHERE sketch = ? AND day >= ? AND day < ?",
+            rs -> {
+                union.merge(HyperLogLog.fromBytes(rs.getBytes(1)));
+            }, sketch.getName(), from, to);
+        return union.estimate();
+    }
+
+    /**
+     * Estimated distinct IDs per region over the last days UTC days, today included
+     */
+    public Map<String, Long> estimateByRegion(Sketch sketch, int days) {
+        LocalDate to = LocalDate.now(ZoneOffset.UTC).plusDays(1);
+        Map<String, HyperLogLog> regions = new TreeMap<>();
+        jdbc.query("SELECT region, registers FROM rollup_sketches WHERE sketch = ? AND day >= ? AND day < ?",
+            rs -> {
+                regions.computeIfAbsent(rs.getString(1), region -> new HyperLogLog())
+                    .merge(HyperLogLog.fromBytes(rs.getBytes(2)));
+            }, sketch.getName(), to.minusDays(days), to);
+        Map<String, Long> estimates = new LinkedHashMap<>();
+        regions.forEach((region, union) -> estimates.put(region, union.estimate()));
+        return estimates;
+    }
+
+    /**
+     * Recompute the rollup's sketches for the days [from, to) from the fact partitions, must run
+     * inside the rollup's rebuild transaction. Days of archived partitions keep their sketches.
+     * @return sketches written
+     */
+    public int rebuild(Rollup rollup, LocalDate from, LocalDate to) {
+        List<Sketch> sketches = Sketches.of(rollup);
+        if (sketches.isEmpty()) {
+            return 0;
+        }
+        // Same lock order as the writers: the rollup table is already locked by the caller
+        jdbc.execute("LOCK TABLE rollup_sketches IN SHARE ROW EXCLUSIVE MODE");
+        jdbc.update("""
+            DELETE FROM rollup_sketches r
+            WHERE r.sketch = ANY (?) AND r.day >= ? AND r.day < ?
+              AND NOT EXISTS (
+                  SELECT 1 FROM archived_partitions a
+                  WHERE a.table_name = ? AND a.status = 'ARCHIVED'
+                    AND r.day >= a.range_from AND r.day < a.range_to
+              )
+            """, sketches.stream().map(Sketch::getName).toArray(String[]::new), from, to, rollup.getFactTable());
+        int written = fill(rollup, sketches, from, to);
+        log.info("Rebuilt the sketches of {} for {} to {}: {} sketches", rollup.getName(), from, to, written);
+        return written;
+    }
+
+    /**
+     * Fill the sketches from the facts unless a fill of the rollup completed before. Consumers
+     * may already be adding to the sketches, so their rows say nothing about the fill; the fill
+     * is recorded in rollup_sketch_fills after its last chunk and simply runs again on the next
+     * start if it did not get there.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void fillHistory() {
+        for (Rollup rollup : Rollups.ALL) {
+            List<Sketch> sketches = Sketches.of(rollup);
+            if (sketches.isEmpty()) {
+                continue;
+            }
+            try {
+                Boolean filled = jdbc.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM rollup_sketch_fills WHERE rollup = ?)", Boolean.class,
+                    rollup.getName());
+                if (Boolean.TRUE.equals(filled)) {
+                    continue;
+                }
+                LocalDate[] days = jdbc.queryForObject(
+                    "SELECT (MIN(%1$s) AT TIME ZONE 'UTC')::date, (MAX(%1$s) AT TIME ZONE 'UTC')::date FROM %2$s"
+                        .formatted(rollup.getTimeColumn(), rollup.getFactTable()),
+                    (rs, rowNum) -> new LocalDate[] {rs.getObject(1, LocalDate.class), rs.getObject(2, LocalDate.class)});
+                LocalDate from = days != null ? days[0] : null;
+                LocalDate to = days != null && days[1] != null ? days[1].plusDays(1) : null;
+                if (from != null) {
+                    // Unions only, writers adding to the same sketches meanwhile are merged in
+                    int written = fill(rollup, sketches, from, to);
+                    log.info("Filled the sketches of {} for {} to {}: {} sketches", rollup.getName(), from, to, written);
+                }
+                // Later facts are added by their writers
+                jdbc.update("""
+                    INSERT INTO rollup_sketch_fills (rollup, filled_from, filled_to)
+                    VALUES (?, ?, ?)
+                    ON CONFLICT (rollup) DO NOTHING
+                    """, rollup.getName(), from, to);
+            } catch (Exception e) {
+                log.error("Failed to fill the sketches of {}, retrying on the next start: {}", rollup.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sketches and the days they cover
+     */
+    public List<Map<String, Object>> getState() {
+        return jdbc.queryForList("""
+            SELECT sketch, COUNT(*) AS sketches, MIN(day) AS first_day, MAX(day) AS last_day,
+                   MAX(updated_at) AS last_updated_at
+            FROM rollup_sketches
+            GROUP BY sketch
+            ORDER BY sketch
+            """);
+    }
+
+    /**
+     * Add the facts of the days [from, to) to the sketches, a month at a time
+     */
+    private int fill(Rollup rollup, List<Sketch> sketches, LocalDate from, LocalDate to) {
+        int written = 0;
+        for (LocalDate start = from; start.isBefore(to); ) {
+            LocalDate end = start.withDayOfMonth(1).plusMonths(1);
+            if (end.isAfter(to)) {
+                end = to;
+            }
+            Map<Group, HyperLogLog> groups = new TreeMap<>();
+            for (Sketch sketch : sketches) {
+                jdbc.query("""
+                    SELECT DISTINCT %s, %s, %s::text
+                    FROM %s
+                    WHERE %s >= ? AND %s < ?
+                    """.formatted(
+                        day(rollup).getExpression(), region(rollup).getExpression(), sketch.getValueColumn(),
+                        rollup.getFactTable(), rollup.getTimeColumn(), rollup.getTimeColumn()
+                    ), rs -> {
+                        collect(groups, sketch, rs, 3);
+                    }, start.atStartOfDay().atOffset(ZoneOffset.UTC), end.atStartOfDay().atOffset(ZoneOffset.UTC));
+            }
+            write(groups);
+            written += groups.size();
+            start = end;
+        }
+        return written;
+    }
+
+    private static void collect(Map<Group, HyperLogLog> groups, Sketch sketch, ResultSet rs, int valueIndex) throws SQLException {
+        String value = rs.getString(valueIndex);
+        if (value == null) {
+            return;
+        }
+        Group group = new Group(sketch.getName(), rs.getObject(1, LocalDate.class), rs.getString(2));
+        groups.computeIfAbsent(group, g -> new HyperLogLog()).add(value);
+    }
+
+    /**
+     * Merge the sketches into the stored ones, in group order
+     */
+    private void write(Map<Group, HyperLogLog> groups) {
+        List<Map.Entry<Group, HyperLogLog>> entries = new ArrayList<>(groups.entrySet());
+        for (int offset = 0; offset < entries.size(); offset += WRITE_BATCH) {
+            Map<Group, HyperLogLog> batch = new TreeMap<>();
+            entries.subList(offset, Math.min(offset + WRITE_BATCH, entries.size()))
+                .forEach(entry -> batch.put(entry.getKey(), entry.getValue()));
+            // Joins the writer's transaction, the fill commits batch by batch
+            transactionTemplate.executeWithoutResult(status -> merge(batch));
+        }
+    }
+
+    /**
+     * Lock the stored sketches of the groups, merge them in and write the groups back.
+     * Groups another writer inserted since their rows were locked go round again.
+     */
+    private void merge(Map<Group, HyperLogLog> pending) {
+        while (!pending.isEmpty()) {
+            List<Group> stored = new ArrayList<>();
+            jdbc.query("""
+                SELECT sketch, day, region, registers
+                FROM rollup_sketches
+                WHERE (sketch, day, region) IN (VALUES %s)
+                ORDER BY sketch COLLATE "C", day, region COLLATE "C"
+                FOR UPDATE
+                """.formatted(keyRows(pending.size())), rs -> {
+                    Group group = new Group(rs.getString(1), rs.getObject(2, LocalDate.class), rs.getString(3));
+                    pending.get(group).merge(HyperLogLog.fromBytes(rs.getBytes(4)));
+                    stored.add(group);
+                }, keys(pending.keySet()));
+
+            if (!stored.isEmpty()) {
+                List<Object> args = new ArrayList<>(stored.size() * 4);
+                for (Group group : stored) {
+                    args.addAll(List.of(group.getSketch(), group.getDay(), group.getRegion()));
+                    args.add(pending.remove(group).toBytes());
+                }
+                jdbc.update("""
+                    UPDATE rollup_sketches r
+                    SET registers = v.registers, updated_at = now()
+                    FROM (VALUES %s) AS v (sketch, day, region, registers)
+                    WHERE r.sketch = v.sketch AND r.day = v.day AND r.region = v.region
+                    """.formatted(sketchRows(stored.size())), args.toArray());
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            List<Object> args = new ArrayList<>(pending.size() * 4);
+            pending.forEach((group, sketch) -> {
+                args.addAll(List.of(group.getSketch(), group.getDay(), group.getRegion()));
+                args.add(sketch.toBytes());
+            });
+            jdbc.query("""
+                INSERT INTO rollup_sketches (sketch, day, region, registers)
+                VALUES %s
+                ON CONFLICT (sketch, day, region) DO NOTHING
+                RETURNING sketch, day, region
+                """.formatted(sketchRows(pending.size())), rs -> {
+                    pending.remove(new Group(rs.getString(1), rs.getObject(2, LocalDate.class), rs.getString(3)));
+                }, args.toArray());
+        }
+    }
+
+    private static Object[] keys(Collection<Group> groups) {
+        List<Object> args = new ArrayList<>(groups.size() * 3);
+        for (Group group : groups) {
+            args.addAll(List.of(group.getSketch(), group.getDay(), group.getRegion()));
+        }
+        return args.toArray();
+    }
+
+    private static String keyRows(int rows) {
+        return String.join(", ", Collections.nCopies(rows, "(?, CAST(? AS date), ?)"));
+    }
+
+    private static String sketchRows(int rows) {
+        return String.join(", ", Collections.nCopies(rows, "(?, CAST(? AS date), ?, CAST(? AS bytea))"));
+    }
+
+    private static Column day(Rollup rollup) {
+        return rollup.getDimensions().get(0);
+    }
+
+    private static Column region(Rollup rollup) {
+        return rollup.getDimensions().stream()
+            .filter(dimension -> dimension.getName().equals("region"))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("Rollup " + rollup.getName() + " has no region"));
+    }
+
+    /**
+     * One sketch of a day and region
+     */
+    @Value
+    private static class Group implements Comparable<Group> {
+
+        private static final Comparator<Group> ORDER = Comparator.comparing(Group::getSketch)
+            .thenComparing(Group::getDay)
+            .thenComparing(Group::getRegion);
+
+        String sketch;
+        LocalDate day;
+        String region;
+
+        @Override
+        public int compareTo(Group other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
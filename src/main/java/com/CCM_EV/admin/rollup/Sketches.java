@@ -0,0 +1,25 @@
+package com.CCM_EV.admin.rollup;
+
+import java.util.List;
+
+/**
+ * The distinct-count sketches, see V16__add_rollup_sketches.sql for their layout
+ */
+public final class Sketches {
+
+    public static final Sketch TRADE_BUYERS = new Sketch("trade_buyers", Rollups.TRADE_DAILY, "buyer_id");
+    public static final Sketch TRADE_SELLERS = new Sketch("trade_sellers", Rollups.TRADE_DAILY, "seller_id");
+    public static final Sketch ISSUANCE_USERS = new Sketch("issuance_users", Rollups.ISSUANCE_DAILY, "user_id");
+
+    public static final List<Sketch> ALL = List.of(TRADE_BUYERS, TRADE_SELLERS, ISSUANCE_USERS);
+
+    /**
+     * Sketches maintained along with the rollup
+     */
+    public static List<Sketch> of(Rollup rollup) {
+        return ALL.stream().filter(sketch -> sketch.getRollup() == rollup).toList();
+    }
+
+    private Sketches() {
+    }
+}
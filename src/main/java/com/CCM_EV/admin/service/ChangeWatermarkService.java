@@ -0,0 +1,74 @@
+package com.CCM_EV.admin.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Change watermarks of the tables materialized views are built from.
+ *
+ * The watermark of a table is its cumulative count of inserted, updated and deleted rows from
+ * the statistics collector, summed over its partitions. Reading it is a catalog lookup whatever
+ * the size of the table, and it sees every writer: consumers, backfills and manual fixes alike.
+ * Detached partitions and statistics resets make the counter drop, which also counts as a change.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChangeWatermarkService {
+
+    private final JdbcTemplate jdbc;
+
+    /**
+     * Current change counter of each table
+     */
+    public Map<String, Long> currentCounts(Collection<String> tables) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (String table : tables) {
+            counts.put(table, jdbc.queryForObject(
+                "SELECT COALESCE(SUM(s.n_tup_ins + s.n_tup_upd + s.n_tup_del), 0) " +
+                "FROM pg_partition_tree(?::regclass) t " +
+                "JOIN pg_stat_user_tables s ON s.relid = t.relid",
+                Long.class, table
+            ));
+        }
+        return counts;
+    }
+
+    /**
+     * Remember the counters a view was refreshed at, call in the refresh transaction
+     */
+    public void record(String viewName, Map<String, Long> counts) {
+        counts.forEach((table, count) -> jdbc.update(
+            "INSERT INTO mv_refresh_watermarks (mv_name, source_table, change_count, recorded_at) " +
+            "VALUES (?, ?, ?, now()) " +
+            "ON CONFLICT (mv_name, source_table) DO UPDATE SET change_count = EXCLUDED.change_count, recorded_at = now()",
+            viewName, table, count
+        ));
+    }
+
+    /**
+     * Rows changed in the sources since the view was last refreshed, every row of a source the
+     * view has no watermark for yet
+     */
+    public long pendingChanges(String viewName, Collection<String> sources) {
+        Map<String, Long> recorded = new HashMap<>();
+        jdbc.query(
+            "SELECT source_table, change_count FROM mv_refresh_watermarks WHERE mv_name = ?",
+            rs -> {
+                recorded.put(rs.getString(1), rs.getLong(2));
+            },
+            viewName
+        );
+        long changes = 0;
+        for (Map.Entry<String, Long> current : currentCounts(sources).entrySet()) {
+            Long before = recorded.get(current.getKey());
+            changes += before == null ? current.getValue() : Math.abs(current.getValue() - before);
+        }
+        return changes;
+    }
+}
@@ -1,96 +1,303 @@
 package com.CCM_EV.admin.service;
 
-import lombok.RequiredArgsConstructor;
+import com.CCM_EV.admin.config.MaterializedViewProperties;
+import com.CCM_EV.admin.config.MaterializedViewProperties.View;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Service to manage materialized view refreshes
  * Materialized views provide pre-aggregated data for fast reporting
+ *
+ * Every view has its own schedule and refreshes after the views it depends on. Views that do
+ * not depend on each other refresh in parallel, each on its own connection and in its own
+ * transaction, and a transaction-scoped advisory lock per view keeps two refreshes of the same
+ * view, from this or another instance, from ever running at once.
+ *
+ * Refreshes are driven by the change watermarks of the views' source tables: a scheduled
+ * refresh is skipped when nothing changed since the last one, and a view whose sources changed
+ * by more than the threshold is refreshed right away instead of waiting for its schedule.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MaterializedViewService {
-    
+
+    public static final String STATUS_SUCCESS = "SUCCESS";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_SKIPPED = "SKIPPED";
+
     private final JdbcTemplate jdbc;
-    
-    private static final String[] MATERIALIZED_VIEWS = {
-        "mv_trades_daily",
-        "mv_issuance_daily", 
-        "mv_payments_daily",
-        "mv_user_activity_daily"
-    };
-    
+    private final TransactionTemplate transactionTemplate;
+    private final TaskScheduler taskScheduler;
+    private final ChangeWatermarkService watermarks;
+    private final Map<String, View> views;
+    private final long changeThreshold;
+
     /**
-     * Refresh all materialized views
-     * Called every hour to keep data fresh
+     * Source tables of each view, including those of the views it depends on
      */
-    @Scheduled(cron = "0 15 * * * *") // Every hour at :15
-    @Transactional
-    public void refreshAllViews() {
-        log.info("Starting scheduled refresh of all materialized views");
-        
-        for (String viewName : MATERIALIZED_VIEWS) {
-            refreshView(viewName);
+    private final Map<String, List<String>> sources = new HashMap<>();
+
+    /**
+     * Views with a refresh queued or running
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Views ordered so every view comes after the views it depends on
+     */
+    private final List<String> refreshOrder;
+
+    private final ExecutorService executor;
+
+    public MaterializedViewService(JdbcTemplate jdbc,
+                                   TransactionTemplate transactionTemplate,
+                                   TaskScheduler taskScheduler,
+                                   ChangeWatermarkService watermarks,
+                                   MaterializedViewProperties properties) {
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.taskScheduler = taskScheduler;
+        this.watermarks = watermarks;
+        this.views = properties.getViews();
+        this.changeThreshold = properties.getChangeThreshold();
+        this.refreshOrder = topologicalOrder(views);
+        for (String name : refreshOrder) {
+            Set<String> tables = new LinkedHashSet<>(views.get(name).getSources());
+            views.get(name).getDependsOn().forEach(dependency -> tables.addAll(sources.get(dependency)));
+            sources.put(name, List.copyOf(tables));
         }
-        
-        log.info("Completed refresh of all materialized views");
+        this.executor = Executors.newFixedThreadPool(properties.getParallelism(), new CustomizableThreadFactory("mv-refresh-"));
     }
-    
+
     /**
-     * Refresh a single materialized view
+     * One trigger per distinct schedule, so views sharing a schedule still refresh in dependency order
      */
-    @Transactional
-    public void refreshView(String viewName) {
+    @PostConstruct
+    public void schedule() {
+        Map<String, List<String>> viewsByCron = new LinkedHashMap<>();
+        views.forEach((name, view) -> {
+            if (view.getCron() != null && !view.getCron().isBlank()
+                    && !ScheduledTaskRegistrar.CRON_DISABLED.equals(view.getCron())) {
+                viewsByCron.computeIfAbsent(view.getCron(), cron -> new ArrayList<>()).add(name);
+            }
+        });
+        viewsByCron.forEach((cron, names) -> {
+            taskScheduler.schedule(() -> refreshScheduled(names), new CronTrigger(cron));
+            log.info("Scheduled refresh of {} at '{}'", names, cron);
+        });
+    }
+
+    /**
+     * Refresh the views whose sources changed by more than their threshold since their last refresh
+     */
+    @Scheduled(fixedDelayString = "${app.materialized-views.change-check-interval-ms:60000}",
+               initialDelayString = "${app.materialized-views.change-check-interval-ms:60000}")
+    public void refreshChanged() {
+        List<String> changed = new ArrayList<>();
+        for (String name : refreshOrder) {
+            View view = views.get(name);
+            if (refreshing.contains(name) || sources.get(name).isEmpty()) {
+                continue;
+            }
+            long threshold = view.getChangeThreshold() != null ? view.getChangeThreshold() : changeThreshold;
+            long pending = watermarks.pendingChanges(name, sources.get(name));
+            if (pending >= threshold) {
+                log.info("Materialized view {} has {} pending changes, refreshing ahead of schedule", name, pending);
+                changed.add(name);
+            }
+        }
+        if (!changed.isEmpty()) {
+            refresh(changed).whenComplete((results, e) -> {
+                if (e != null) {
+                    log.error("Refresh of changed views {} failed: {}", changed, e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Refresh all materialized views, waiting for the last one
+     */
+    public List<Map<String, Object>> refreshAllViews() {
+        log.info("Starting refresh of all materialized views");
+        List<Map<String, Object>> results = refresh(views.keySet()).join();
+        log.info("Completed refresh of all materialized views: {}", summary(results));
+        return results;
+    }
+
+    /**
+     * Refresh views and every view depending on them, in dependency order
+     * @return one result per refreshed view, completing when the last one finishes
+     */
+    public CompletableFuture<List<Map<String, Object>>> refresh(Collection<String> requested) {
+        for (String name : requested) {
+            if (!views.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown materialized view: " + name);
+            }
+        }
+        Set<String> selected = withDependents(requested);
+        refreshing.addAll(selected);
+
+        Map<String, CompletableFuture<Map<String, Object>>> runs = new LinkedHashMap<>();
+        for (String name : refreshOrder) {
+            if (!selected.contains(name)) {
+                continue;
+            }
+            List<CompletableFuture<Map<String, Object>>> upstream = views.get(name).getDependsOn().stream()
+                    .map(runs::get)
+                    .filter(Objects::nonNull)
+                    .toList();
+            runs.put(name, CompletableFuture.allOf(upstream.toArray(CompletableFuture[]::new))
+                    .thenApplyAsync(ignored -> {
+                        List<Object> failed = upstream.stream()
+                                .map(CompletableFuture::join)
+                                .filter(result -> !STATUS_SUCCESS.equals(result.get("status")))
+                                .map(result -> result.get("viewName"))
+                                .toList();
+                        return failed.isEmpty()
+                                ? refreshView(name)
+                                : skip(name, "Not refreshed because " + failed + " did not refresh");
+                    }, executor)
+                    .whenComplete((result, e) -> refreshing.remove(name)));
+        }
+        return CompletableFuture.allOf(runs.values().toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> runs.values().stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Refresh a single materialized view on the calling thread, without its dependents
+     */
+    public Map<String, Object> refreshView(String viewName) {
+        if (!views.containsKey(viewName)) {
+            throw new IllegalArgumentException("Unknown materialized view: " + viewName);
+        }
         OffsetDateTime startTime = OffsetDateTime.now();
-        
+        Long logId = jdbc.queryForObject(
+            "INSERT INTO mv_refresh_log (mv_name, refresh_started_at, status) VALUES (?, ?, 'RUNNING') RETURNING id",
+            Long.class, viewName, startTime
+        );
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("viewName", viewName);
         try {
-            // Log start of refresh
-            jdbc.update(
-                "INSERT INTO mv_refresh_log (mv_name, refresh_started_at, status) VALUES (?, ?, 'RUNNING')",
-                viewName, startTime
-            );
-            
-            // Perform concurrent refresh (non-blocking for reads)
-            jdbc.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY " + viewName);
-            
+            // Null when another refresh of the view holds the lock
+            Long rowCount = transactionTemplate.execute(status -> {
+                Boolean locked = jdbc.queryForObject(
+                    "SELECT pg_try_advisory_xact_lock(hashtext('mv_refresh'), hashtext(?))",
+                    Boolean.class, viewName
+                );
+                if (!Boolean.TRUE.equals(locked)) {
+                    return null;
+                }
+                // Read before the refresh, so changes committed while it runs count for the next one
+                Map<String, Long> counts = watermarks.currentCounts(sources.get(viewName));
+                // Concurrent refresh (non-blocking for reads)
+                jdbc.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY " + viewName);
+                // Sampled, so the row count below costs the same however large the view grows
+                jdbc.execute("ANALYZE " + viewName);
+                watermarks.record(viewName, counts);
+                return getEstimatedRowCount(viewName);
+            });
             OffsetDateTime endTime = OffsetDateTime.now();
-            
-            // Get row count
-            Long rowCount = jdbc.queryForObject(
-                "SELECT COUNT(*) FROM " + viewName, 
-                Long.class
-            );
-            
-            // Log success
+
+            String status = rowCount != null ? STATUS_SUCCESS : STATUS_SKIPPED;
+            String message = rowCount != null ? null : "Refresh already running";
             jdbc.update(
-                "UPDATE mv_refresh_log SET refresh_completed_at = ?, status = 'SUCCESS', rows_affected = ? " +
-                "WHERE mv_name = ? AND refresh_started_at = ?",
-                endTime, rowCount, viewName, startTime
+                "UPDATE mv_refresh_log SET refresh_completed_at = ?, status = ?, rows_affected = ?, error_message = ? WHERE id = ?",
+                endTime, status, rowCount, message, logId
             );
-            
-            log.info("Refreshed materialized view {} - {} rows in {} ms", 
-                    viewName, rowCount, 
-                    java.time.Duration.between(startTime, endTime).toMillis());
-            
+            result.put("status", status);
+            result.put("rows", rowCount);
+            result.put("durationMs", Duration.between(startTime, endTime).toMillis());
+            if (message != null) {
+                result.put("message", message);
+            }
+
+            log.info("Refreshed materialized view {} - {} ({} rows) in {} ms",
+                    viewName, status, rowCount, result.get("durationMs"));
         } catch (Exception e) {
             log.error("Failed to refresh materialized view {}: {}", viewName, e.getMessage(), e);
-            
-            // Log failure
+
             jdbc.update(
-                "UPDATE mv_refresh_log SET refresh_completed_at = ?, status = 'FAILED', error_message = ? " +
-                "WHERE mv_name = ? AND refresh_started_at = ?",
-                OffsetDateTime.now(), e.getMessage(), viewName, startTime
+                "UPDATE mv_refresh_log SET refresh_completed_at = ?, status = 'FAILED', error_message = ? WHERE id = ?",
+                OffsetDateTime.now(), e.getMessage(), logId
             );
+            result.put("status", STATUS_FAILED);
+            result.put("message", e.getMessage());
         }
+        return result;
     }
-    
+
+    /**
+     * Configured views in refresh order
+     */
+    public List<String> getViews() {
+        return refreshOrder;
+    }
+
+    public boolean isView(String viewName) {
+        return views.containsKey(viewName);
+    }
+
+    /**
+     * Schedule and dependencies of a view
+     */
+    public View getView(String viewName) {
+        return views.get(viewName);
+    }
+
+    /**
+     * Source rows changed since the last refresh, null for views without known sources
+     */
+    public Long getPendingChanges(String viewName) {
+        List<String> tables = sources.get(viewName);
+        return tables == null || tables.isEmpty() ? null : watermarks.pendingChanges(viewName, tables);
+    }
+
+    public boolean isRefreshing(String viewName) {
+        return refreshing.contains(viewName);
+    }
+
+    /**
+     * Row count from the catalog statistics, null while the view was never analyzed
+     */
+    public Long getEstimatedRowCount(String viewName) {
+        Long rows = jdbc.queryForObject(
+            "SELECT reltuples::bigint FROM pg_class WHERE oid = ?::regclass",
+            Long.class, viewName
+        );
+        return rows != null && rows >= 0 ? rows : null;
+    }
+
     /**
      * Get last refresh time for a view
      */
@@ -106,7 +313,7 @@ public class MaterializedViewService {
             return null;
         }
     }
-    
+
     /**
      * Clean up old refresh logs (keep last 30 days)
      */
@@ -116,9 +323,108 @@ public class MaterializedViewService {
         int deleted = jdbc.update(
             "DELETE FROM mv_refresh_log WHERE refresh_started_at < NOW() - INTERVAL '30 days'"
         );
-        
+
         if (deleted > 0) {
             log.info("Cleaned up {} old materialized view refresh logs", deleted);
         }
     }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void refreshScheduled(List<String> names) {
+        List<String> changed = new ArrayList<>();
+        for (String name : names) {
+            Long pending = getPendingChanges(name);
+            if (pending == null || pending > 0) {
+                changed.add(name);
+            } else {
+                log.debug("Skipping scheduled refresh of {}, no changes since the last refresh", name);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        log.info("Starting scheduled refresh of {}", changed);
+        refresh(changed).whenComplete((results, e) -> {
+            if (e != null) {
+                log.error("Scheduled refresh of {} failed: {}", changed, e.getMessage(), e);
+            } else {
+                log.info("Completed scheduled refresh of {}: {}", changed, summary(results));
+            }
+        });
+    }
+
+    private Map<String, Object> skip(String viewName, String message) {
+        OffsetDateTime now = OffsetDateTime.now();
+        jdbc.update(
+            "INSERT INTO mv_refresh_log (mv_name, refresh_started_at, refresh_completed_at, status, error_message) " +
+            "VALUES (?, ?, ?, 'SKIPPED', ?)",
+            viewName, now, now, message
+        );
+        log.warn("Skipped refresh of materialized view {}: {}", viewName, message);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("viewName", viewName);
+        result.put("status", STATUS_SKIPPED);
+        result.put("message", message);
+        return result;
+    }
+
+    /**
+     * The requested views plus everything that depends on them, directly or not
+     */
+    private Set<String> withDependents(Collection<String> requested) {
+        Set<String> selected = new LinkedHashSet<>(requested);
+        Deque<String> pending = new ArrayDeque<>(requested);
+        while (!pending.isEmpty()) {
+            String name = pending.poll();
+            views.forEach((dependent, view) -> {
+                if (view.getDependsOn().contains(name) && selected.add(dependent)) {
+                    pending.add(dependent);
+                }
+            });
+        }
+        return selected;
+    }
+
+    private static List<String> topologicalOrder(Map<String, View> views) {
+        Map<String, Integer> unresolved = new HashMap<>();
+        views.forEach((name, view) -> {
+            for (String dependency : view.getDependsOn()) {
+                if (!views.containsKey(dependency)) {
+                    throw new IllegalStateException("Materialized view " + name + " depends on unknown view " + dependency);
+                }
+            }
+            unresolved.put(name, view.getDependsOn().size());
+        });
+
+        List<String> order = new ArrayList<>();
+        Deque<String> ready = new ArrayDeque<>();
+        views.keySet().stream().filter(name -> unresolved.get(name) == 0).forEach(ready::add);
+        while (!ready.isEmpty()) {
+            String name = ready.poll();
+            order.add(name);
+            views.forEach((dependent, view) -> {
+                if (view.getDependsOn().contains(name) && unresolved.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            });
+        }
+        if (order.size() != views.size()) {
+            throw new IllegalStateException("Materialized view dependencies contain a cycle: " +
+                    views.keySet().stream().filter(name -> !order.contains(name)).toList());
+        }
+        return List.copyOf(order);
+    }
+
+    private static Map<String, Long> summary(List<Map<String, Object>> results) {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        for (Map<String, Object> result : results) {
+            summary.merge((String) result.get("status"), 1L, Long::sum);
+        }
+        return summary;
+    }
 }
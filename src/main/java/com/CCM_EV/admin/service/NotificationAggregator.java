@@ -0,0 +1,200 @@
+package com.CCM_EV.admin.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Builder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces notifications raised by event ingestion into digests.
+ *
+ * Notifications with the same level, category, title, source and target are held for one
+ * window and written as a single row: unchanged when only one arrived, otherwise as a digest like
+ * "143 new users registered, 12 with role CVA". Notifications raised inside a transaction only
+ * count once it commits, so a rolled back batch that is retried event by event is not counted twice.
+ * Rows are written with one JDBC batch per window, outside any ingestion transaction.
+ */
+@Slf4j
+@Component
+public class NotificationAggregator {
+
+    private static final int MAX_FACETS_SHOWN = 3;
+
+    private final JdbcTemplate jdbc;
+    private final Map<String, Digest> pending = new ConcurrentHashMap<>();
+
+    public NotificationAggregator(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * A notification as raised by a consumer, with how to count it in a digest
+     */
+    @Data
+    @Builder
+    public static class PendingNotification {
+        private String level;
+        private String category;
+        private String title;
+        private String message;
+        private String sourceService;
+        private String targetUserId; // null if broadcast
+        private Integer expiresInHours;
+
+        /**
+         * What a digest counts, e.g. "new users registered"
+         */
+        private String summary;
+
+        /**
+         * Optional breakdown within the digest, e.g. "with role CVA"
+         */
+        private String facet;
+    }
+
+    public void add(PendingNotification notification) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accept(notification);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<PendingNotification> raised = (List<PendingNotification>) TransactionSynchronizationManager.getResource(this);
+        if (raised == null) {
+            List<PendingNotification> bound = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, bound);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bound.forEach(NotificationAggregator.this::accept);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(NotificationAggregator.this);
+                }
+            });
+            raised = bound;
+        }
+        raised.add(notification);
+    }
+
+    public int getPendingDigests() {
+        return pending.size();
+    }
+
+    private void accept(PendingNotification notification) {
+        String key = String.join("|",
+                notification.getLevel(),
+                notification.getCategory(),
+                notification.getTitle(),
+                Objects.toString(notification.getSourceService(), ""),
+                Objects.toString(notification.getTargetUserId(), ""));
+        pending.compute(key, (k, digest) -> {
+            Digest d = digest != null ? digest : new Digest(notification);
+            d.add(notification);
+            return d;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.notifications.digest.window-ms:60000}",
+               initialDelayString = "${app.notifications.digest.window-ms:60000}")
+    public void flush() {
+        List<Object[]> rows = new ArrayList<>();
+        OffsetDateTime now = OffsetDateTime.now();
+        for (String key : new ArrayList<>(pending.keySet())) {
+            Digest digest = pending.remove(key);
+            if (digest != null) {
+                rows.add(digest.toRow(now));
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbc.batchUpdate("""
+                INSERT INTO system_notifications (
+                    notification_id, level, category, title, message,
+                    source_service, target_user_id, read_status, created_at, expires_at
+                )
+                VALUES (?, ?, ?, ?, ?, ?, ?, false, ?, ?)
+                """, rows);
+            log.debug("Wrote {} notification digests", rows.size());
+        } catch (Exception e) {
+            log.error("Failed to write {} notification digests: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Notifications of one key collected during the current window
+     */
+    private static final class Digest {
+        private final PendingNotification first;
+        private final Map<String, Integer> facets = new LinkedHashMap<>();
+        private int count;
+
+        private Digest(PendingNotification first) {
+            this.first = first;
+        }
+
+        private void add(PendingNotification notification) {
+            count++;
+            if (notification.getFacet() != null) {
+                facets.merge(notification.getFacet(), 1, Integer::sum);
+            }
+        }
+
+        private Object[] toRow(OffsetDateTime now) {
+            String title = first.getTitle();
+            String message = first.getMessage();
+            if (count > 1) {
+                title = title + " (" + count + ")";
+                message = count + " " + first.getSummary() + facetBreakdown();
+            }
+            return new Object[] {
+                UUID.randomUUID().toString(),
+                first.getLevel(),
+                first.getCategory(),
+                title,
+                message,
+                first.getSourceService(),
+                first.getTargetUserId(),
+                now,
+                first.getExpiresInHours() != null ? now.plusHours(first.getExpiresInHours()) : null
+            };
+        }
+
+        private String facetBreakdown() {
+            if (facets.isEmpty()) {
+                return "";
+            }
+            return facets.entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .limit(MAX_FACETS_SHOWN)
+                    .map(facet -> facet.getValue() + " " + facet.getKey())
+                    .collect(Collectors.joining(", ", ", ", ""));
+        }
+    }
+}
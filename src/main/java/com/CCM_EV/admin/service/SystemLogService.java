@@ -1,5 +1,6 @@
 package com.CCM_EV.admin.service;
 
+import com.CCM_EV.admin.config.SystemLogProperties;
 import com.CCM_EV.admin.entity.SystemLog;
 import com.CCM_EV.admin.repository.SystemLogRepository;
 import lombok.RequiredArgsConstructor;
@@ -10,11 +11,14 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.OffsetDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Slf4j
 @Service
@@ -22,10 +26,17 @@ import java.util.Map;
 public class SystemLogService {
     
     private final SystemLogRepository systemLogRepository;
+    private final SystemLogWriter logWriter;
+    private final SystemLogProperties properties;
     
-    @Transactional
-    public SystemLog createLog(String level, String source, String category, 
-                               String message, String details, String correlationId, String userId) {
+    /**
+     * Queue a single log entry, subject to the category's level and sampling policy
+     */
+    public void createLog(String level, String source, String category, 
+                          String message, String details, String correlationId, String userId) {
+        if (!isLoggable(level, category)) {
+            return;
+        }
         SystemLog systemLog = SystemLog.builder()
                 .logLevel(level)
                 .sourceService(source)
@@ -36,7 +47,60 @@ public class SystemLogService {
                 .userId(userId)
                 .build();
         
-        return systemLogRepository.save(systemLog);
+        createLogs(List.of(systemLog));
+    }
+    
+    /**
+     * Queue logs for the write-behind writer.
+     * Callers are expected to have applied {@link #isLoggable} already. Inside a transaction the
+     * entries are handed over only after commit, so rolled back work leaves no audit rows behind.
+     */
+    public void createLogs(List<SystemLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    logWriter.submit(logs);
+                }
+            });
+        } else {
+            logWriter.submit(logs);
+        }
+    }
+    
+    /**
+     * Decide whether an entry of this level and category should be written.
+     * Check before building the entry so sampled out events are never serialized.
+     */
+    public boolean isLoggable(String level, String category) {
+        SystemLogProperties.CategoryPolicy policy = properties.getPolicies().get(category);
+        if (policy == null) {
+            return true;
+        }
+        int severity = severityOf(level);
+        if (severity < severityOf(policy.getMinLevel())) {
+            return false;
+        }
+        // Warnings and errors are always kept
+        return severity >= severityOf("WARN")
+                || policy.getSampleRate() >= 1.0
+                || ThreadLocalRandom.current().nextDouble() < policy.getSampleRate();
+    }
+    
+    private static int severityOf(String level) {
+        if (level == null) {
+            return 1;
+        }
+        return switch (level.toUpperCase()) {
+            case "DEBUG" -> 0;
+            case "WARN", "WARNING" -> 2;
+            case "ERROR" -> 3;
+            case "FATAL" -> 4;
+            default -> 1;
+        };
     }
     
     @Transactional(readOnly = true)
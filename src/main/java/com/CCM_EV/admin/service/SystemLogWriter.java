@@ -0,0 +1,198 @@
+package com.CCM_EV.admin.service;
+
+import com.CCM_EV.admin.config.SystemLogProperties;
+import com.CCM_EV.admin.entity.SystemLog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind writer for system_logs.
+ *
+ * Producers append to a bounded lock-free queue and return immediately; a single flusher thread
+ * drains it in JDBC batches. When the queue is full the producer waits briefly, at most once per
+ * submitted batch, and then writes its own entries, which slows ingestion down instead of dropping
+ * audit rows.
+ * Runs in phase 0 so it stops after the Rabbit listener containers and flushes everything on shutdown.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SystemLogWriter implements SmartLifecycle {
+
+    private final JdbcTemplate jdbc;
+    private final SystemLogProperties properties;
+
+    private final ConcurrentLinkedQueue<SystemLog> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private volatile boolean running;
+    private volatile Thread flusher;
+
+    public void submit(Collection<SystemLog> logs) {
+        if (!running) {
+            write(new ArrayList<>(logs));
+            return;
+        }
+
+        List<SystemLog> overflow = null;
+        for (SystemLog entry : logs) {
+            // One wait per batch: once a slot timed out the rest goes straight to the caller's write
+            if (overflow == null && reserveSlot()) {
+                queue.offer(entry);
+            } else {
+                if (overflow == null) {
+                    overflow = new ArrayList<>();
+                }
+                overflow.add(entry);
+            }
+        }
+
+        if (size.get() >= properties.getBatchSize()) {
+            LockSupport.unpark(flusher);
+        }
+        if (overflow != null) {
+            log.debug("System log queue full, writing {} entries on the caller thread", overflow.size());
+            write(overflow);
+        }
+    }
+
+    public int getQueueSize() {
+        return size.get();
+    }
+
+    private boolean reserveSlot() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getOfferTimeoutMs());
+        while (true) {
+            int current = size.get();
+            if (current < properties.getQueueCapacity()) {
+                if (size.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(flusher);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private void runFlusher() {
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(properties.getFlushIntervalMs());
+        long lastFlush = System.nanoTime();
+        while (running) {
+            long waited = System.nanoTime() - lastFlush;
+            if (size.get() < properties.getBatchSize() && waited < flushIntervalNanos) {
+                LockSupport.parkNanos(flushIntervalNanos - waited);
+                continue;
+            }
+            flushOnce();
+            lastFlush = System.nanoTime();
+        }
+    }
+
+    /**
+     * Drain and write at most one batch
+     * @return number of entries drained
+     */
+    private int flushOnce() {
+        List<SystemLog> batch = new ArrayList<>(Math.min(size.get(), properties.getBatchSize()));
+        SystemLog entry;
+        while (batch.size() < properties.getBatchSize() && (entry = queue.poll()) != null) {
+            batch.add(entry);
+        }
+        size.addAndGet(-batch.size());
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+        return batch.size();
+    }
+
+    private void write(List<SystemLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        OffsetDateTime now = OffsetDateTime.now();
+        List<Object[]> rows = new ArrayList<>(logs.size());
+        for (SystemLog l : logs) {
+            rows.add(new Object[] {
+                l.getLogLevel(),
+                l.getSourceService(),
+                l.getCategory(),
+                l.getMessage(),
+                l.getDetails(),
+                l.getCorrelationId(),
+                l.getUserId(),
+                l.getIpAddress(),
+                l.getLogTimestamp() != null ? l.getLogTimestamp() : now
+            });
+        }
+        try {
+            jdbc.batchUpdate("""
+                INSERT INTO system_logs (
+                    log_level, source_service, category, message, details,
+                    correlation_id, user_id, ip_address, log_timestamp
+                )
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                """, rows);
+        } catch (Exception e) {
+            log.error("Failed to write {} system logs: {}", logs.size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::runFlusher, "system-log-writer");
+        thread.setDaemon(true);
+        flusher = thread;
+        thread.start();
+        log.info("System log writer started (capacity={}, batchSize={})",
+                properties.getQueueCapacity(), properties.getBatchSize());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = flusher;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Flush whatever is left before the data source goes away
+        int flushed = 0;
+        int drained;
+        while ((drained = flushOnce()) > 0) {
+            flushed += drained;
+        }
+        log.info("System log writer stopped, flushed {} pending entries", flushed);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+}
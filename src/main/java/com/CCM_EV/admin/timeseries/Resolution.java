@@ -0,0 +1,40 @@
+package com.CCM_EV.admin.timeseries;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Bucket sizes of the time-series tiers, finest first; buckets start at UTC boundaries
+ */
+public enum Resolution {
+
+    MINUTE(Duration.ofMinutes(1)),
+    HOUR(Duration.ofHours(1)),
+    DAY(Duration.ofDays(1)),
+    MONTH(Duration.ofDays(30));
+
+    /**
+     * Length of a bucket, approximate for months
+     */
+    private final Duration length;
+
+    Resolution(Duration length) {
+        this.length = length;
+    }
+
+    public Duration getLength() {
+        return length;
+    }
+
+    /**
+     * Name as stored in timeseries_tiers and understood by date_trunc
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+
+    public static Optional<Resolution> byName(String name) {
+        return Arrays.stream(values()).filter(resolution -> resolution.getName().equalsIgnoreCase(name)).findFirst();
+    }
+}
@@ -0,0 +1,31 @@
+package com.CCM_EV.admin.timeseries;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Definition of a chart series: the table it counts and the sums kept per bucket
+ */
+@Getter
+@Builder
+public class TimeSeries {
+
+    private final String name;
+    private final String table;
+    private final String timeColumn;
+
+    /**
+     * Splits the series, e.g. by event type; buckets of an unsplit series have the key ''
+     */
+    @Builder.Default
+    private final String keyExpression = "''";
+
+    /**
+     * Summed into the amount and quantity columns
+     */
+    @Builder.Default
+    private final String amountExpression = "0";
+
+    @Builder.Default
+    private final String quantityExpression = "0";
+}
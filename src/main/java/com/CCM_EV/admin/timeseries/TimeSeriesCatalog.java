@@ -0,0 +1,60 @@
+package com.CCM_EV.admin.timeseries;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The series kept in timeseries_tiers
+ */
+public final class TimeSeriesCatalog {
+
+    public static final TimeSeries TRADES = TimeSeries.builder()
+        .name("trades")
+        .table("fact_trade")
+        .timeColumn("executed_at")
+        .amountExpression("amount")
+        .quantityExpression("quantity")
+        .build();
+
+    public static final TimeSeries PAYMENTS = TimeSeries.builder()
+        .name("payments")
+        .table("fact_payment")
+        .timeColumn("completed_at")
+        .keyExpression("COALESCE(status, 'Unknown')")
+        .amountExpression("amount")
+        .build();
+
+    public static final TimeSeries ISSUANCES = TimeSeries.builder()
+        .name("issuances")
+        .table("fact_issuance")
+        .timeColumn("issued_at")
+        .quantityExpression("quantity_tco2e")
+        .build();
+
+    public static final TimeSeries ACTIVITIES = TimeSeries.builder()
+        .name("activities")
+        .table("fact_user_activity")
+        .timeColumn("occurred_at")
+        .keyExpression("COALESCE(event_type, 'Unknown')")
+        .build();
+
+    public static final TimeSeries EVENTS = TimeSeries.builder()
+        .name("events")
+        .table("consumed_events")
+        .timeColumn("received_at")
+        .keyExpression("COALESCE(event_type, 'Unknown')")
+        .build();
+
+    public static final List<TimeSeries> ALL = List.of(TRADES, PAYMENTS, ISSUANCES, ACTIVITIES, EVENTS);
+
+    public static Optional<TimeSeries> byName(String name) {
+        return ALL.stream().filter(series -> series.getName().equals(name)).findFirst();
+    }
+
+    public static List<TimeSeries> byTable(String table) {
+        return ALL.stream().filter(series -> series.getTable().equals(table)).toList();
+    }
+
+    private TimeSeriesCatalog() {
+    }
+}
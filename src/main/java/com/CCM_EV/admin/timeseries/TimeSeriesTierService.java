@@ -0,0 +1,387 @@
+package com.CCM_EV.admin.timeseries;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maintains and reads the time-series tiers.
+ *
+ * Every run recomputes the minute buckets of a trailing window from the facts, then the hour,
+ * day and month buckets overlapping that window from the tier below, so each tier only reads
+ * a small, already aggregated range. The first run of a series fills the hours, days and
+ * months from the complete fact history. Writers report facts older than the trailing window
+ * ({@link #markLate}) in their own transaction, e.g. after consumer lag, a dead-letter replay
+ * or a backfill; the next run rebuilds their hours and the days and months above them
+ * ({@link #rebuild}). Late hours are kept in timeseries_late_hours until then, so they survive
+ * a restart and a failed refresh.
+ *
+ * Reads use the finest tier that covers the range and stays within the requested number of
+ * points, so a chart over ten years gets monthly buckets instead of every row.
+ */
+@Slf4j
+@Service
+public class TimeSeriesTierService {
+
+    private static final OffsetDateTime EPOCH = OffsetDateTime.parse("1970-01-01T00:00:00Z");
+    private static final OffsetDateTime END_OF_TIME = OffsetDateTime.parse("9999-01-01T00:00:00Z");
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration lookback;
+    private final Duration minuteRetention;
+    private final Duration hourRetention;
+    private final Duration refreshInterval;
+
+    public TimeSeriesTierService(JdbcTemplate jdbc,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${app.timeseries.enabled:true}") boolean enabled,
+                                 @Value("${app.timeseries.lookback-minutes:120}") long lookbackMinutes,
+                                 @Value("${app.timeseries.minute-retention-hours:48}") long minuteRetentionHours,
+                                 @Value("${app.timeseries.hour-retention-days:90}") long hourRetentionDays,
+                                 @Value("${app.timeseries.refresh-interval-ms:60000}") long refreshIntervalMs) {
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.lookback = Duration.ofMinutes(lookbackMinutes);
+        this.minuteRetention = Duration.ofHours(minuteRetentionHours);
+        this.hourRetention = Duration.ofDays(hourRetentionDays);
+        this.refreshInterval = Duration.ofMillis(refreshIntervalMs);
+    }
+
+    @Scheduled(fixedDelayString = "${app.timeseries.refresh-interval-ms:60000}",
+               initialDelayString = "${app.timeseries.refresh-interval-ms:60000}")
+    public void refreshAll() {
+        if (!enabled) {
+            return;
+        }
+        for (TimeSeries series : TimeSeriesCatalog.ALL) {
+            try {
+                refresh(series);
+            } catch (Exception e) {
+                log.error("Failed to refresh time series {}: {}", series.getName(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Recompute the trailing window of a series in all tiers, or fill it on its first run
+     */
+    public void refresh(TimeSeries series) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        transactionTemplate.executeWithoutResult(status -> {
+            Boolean locked = jdbc.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(hashtext('timeseries'), hashtext(?))",
+                Boolean.class, series.getName()
+            );
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+            Boolean filled = jdbc.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM timeseries_tiers WHERE series = ? AND resolution = 'hour')",
+                Boolean.class, series.getName()
+            );
+            Set<OffsetDateTime> late = drainLateHours(series);
+            if (Boolean.TRUE.equals(filled)) {
+                for (OffsetDateTime[] range : ranges(late)) {
+                    rebuildRange(series, range[0], range[1], now);
+                }
+                // Whole hours, so every hour bucket below is rebuilt from all of its minutes
+                OffsetDateTime start = now.minus(lookback).truncatedTo(ChronoUnit.HOURS);
+                replaceFromFacts(series, Resolution.MINUTE, start, END_OF_TIME);
+                cascade(series, Resolution.MINUTE, Resolution.HOUR, start, END_OF_TIME);
+            } else {
+                replaceFromFacts(series, Resolution.MINUTE, now.minus(minuteRetention).truncatedTo(ChronoUnit.HOURS), END_OF_TIME);
+                replaceFromFacts(series, Resolution.HOUR, EPOCH, END_OF_TIME);
+                log.info("Filled time series {} from the facts", series.getName());
+            }
+            OffsetDateTime hourStart = filled ? now.minus(lookback).truncatedTo(ChronoUnit.HOURS) : EPOCH;
+            OffsetDateTime dayStart = hourStart.truncatedTo(ChronoUnit.DAYS);
+            cascade(series, Resolution.HOUR, Resolution.DAY, dayStart, END_OF_TIME);
+            cascade(series, Resolution.DAY, Resolution.MONTH, dayStart.withDayOfMonth(1), END_OF_TIME);
+
+            jdbc.update(
+                "DELETE FROM timeseries_tiers WHERE series = ? AND " +
+                "((resolution = 'minute' AND bucket < ?) OR (resolution = 'hour' AND bucket < ?))",
+                series.getName(), now.minus(minuteRetention), now.minus(hourRetention)
+            );
+        });
+    }
+
+    /**
+     * Recompute [from, to) of a series in all tiers from the facts, widened to whole hours, days
+     * and months, e.g. after facts were changed by hand. Waits for a running refresh.
+     */
+    public void rebuild(TimeSeries series, OffsetDateTime from, OffsetDateTime to) {
+        if (!enabled || !from.isBefore(to)) {
+            return;
+        }
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbc.query("SELECT pg_advisory_xact_lock(hashtext('timeseries'), hashtext(?))",
+                rs -> { }, series.getName());
+            Boolean filled = jdbc.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM timeseries_tiers WHERE series = ? AND resolution = 'hour')",
+                Boolean.class, series.getName()
+            );
+            // An unfilled series is filled from all facts by its first refresh
+            if (Boolean.TRUE.equals(filled)) {
+                rebuildRange(series, from.withOffsetSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.HOURS),
+                    ceil(to.withOffsetSameInstant(ZoneOffset.UTC), ChronoUnit.HOURS), now);
+            }
+        });
+        log.info("Rebuilt time series {} for {} to {}", series.getName(), from, to);
+    }
+
+    /**
+     * Same, for every series of a fact table
+     */
+    public void rebuild(String table, OffsetDateTime from, OffsetDateTime to) {
+        TimeSeriesCatalog.byTable(table).forEach(series -> rebuild(series, from, to));
+    }
+
+    /**
+     * Report the facts a write touched that the trailing window may already have passed, must
+     * run inside the write's transaction after the write; their hours are rebuilt once it committed
+     * @param keySource query returning the key columns of the touched rows, without duplicates
+     */
+    public void markLate(String table, String keySource, List<String> keyColumns, Object[] args) {
+        if (!enabled) {
+            return;
+        }
+        for (TimeSeries series : TimeSeriesCatalog.byTable(table)) {
+            Object[] withSeries = new Object[args.length + 2];
+            withSeries[0] = series.getName();
+            System.arraycopy(args, 0, withSeries, 1, args.length);
+            withSeries[args.length + 1] = lateBefore();
+            // In hour order, so concurrent writers wait for each other instead of deadlocking
+            jdbc.update("""
+                INSERT INTO timeseries_late_hours (series, hour)
+                SELECT DISTINCT CAST(? AS text), date_trunc('hour', f.%s, 'UTC')
+                FROM (%s) AS k (%s)
+                JOIN %s f USING (%s)
+                WHERE f.%s < ?
+                ORDER BY 2
+                ON CONFLICT DO NOTHING
+                """.formatted(series.getTimeColumn(), keySource, String.join(", ", keyColumns),
+                    table, String.join(", ", keyColumns), series.getTimeColumn()),
+                withSeries);
+        }
+    }
+
+    /**
+     * Same, for facts given by their times
+     */
+    public void markLate(String table, Collection<OffsetDateTime> times) {
+        if (!enabled || times.isEmpty()) {
+            return;
+        }
+        OffsetDateTime threshold = lateBefore();
+        List<OffsetDateTime> hours = times.stream()
+            .filter(time -> time.isBefore(threshold))
+            .map(time -> time.withOffsetSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.HOURS))
+            .distinct()
+            .toList();
+        TimeSeriesCatalog.byTable(table).forEach(series -> addLateHours(series, hours));
+    }
+
+    /**
+     * Points of a series over [from, to), summed over keys unless split by key
+     * @param resolution tier to read, null to pick the finest one within maxPoints
+     */
+    public Map<String, Object> read(TimeSeries series, OffsetDateTime from, OffsetDateTime to,
+                                    Resolution resolution, int maxPoints, boolean byKey) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        Resolution tier = resolution != null ? resolution : pick(from, to, maxPoints);
+        String groups = byKey ? "bucket, key" : "bucket";
+        List<Map<String, Object>> points = jdbc.queryForList(
+            "SELECT " + groups + ", SUM(event_count) AS event_count, SUM(amount) AS amount, SUM(quantity) AS quantity " +
+            "FROM timeseries_tiers " +
+            "WHERE series = ? AND resolution = ? AND bucket >= date_trunc(?, CAST(? AS timestamptz), 'UTC') AND bucket < ? " +
+            "GROUP BY " + groups + " ORDER BY " + groups,
+            series.getName(), tier.getName(), tier.getName(), from, to
+        );
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("series", series.getName());
+        result.put("resolution", tier.getName());
+        result.put("from", from);
+        result.put("to", to);
+        result.put("coveredFrom", coveredFrom(tier));
+        result.put("points", points);
+        return result;
+    }
+
+    /**
+     * Finest tier that still holds the start of the range and has at most maxPoints buckets in it
+     */
+    public Resolution pick(OffsetDateTime from, OffsetDateTime to, int maxPoints) {
+        Duration range = Duration.between(from, to);
+        for (Resolution resolution : Resolution.values()) {
+            OffsetDateTime covered = coveredFrom(resolution);
+            long points = range.dividedBy(resolution.getLength()) + 1;
+            if ((covered == null || !from.isBefore(covered)) && points <= maxPoints) {
+                return resolution;
+            }
+        }
+        return Resolution.MONTH;
+    }
+
+    /**
+     * Oldest bucket a tier keeps, null when it keeps everything
+     */
+    private OffsetDateTime coveredFrom(Resolution resolution) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        return switch (resolution) {
+            case MINUTE -> now.minus(minuteRetention);
+            case HOUR -> now.minus(hourRetention);
+            default -> null;
+        };
+    }
+
+    /**
+     * Facts before this time may be missed by the trailing window of the next refresh
+     */
+    private OffsetDateTime lateBefore() {
+        return OffsetDateTime.now(ZoneOffset.UTC).minus(lookback).plus(refreshInterval.multipliedBy(2));
+    }
+
+    /**
+     * Record late hours in the caller's transaction; a refresh only sees them once it committed,
+     * together with the facts
+     */
+    private void addLateHours(TimeSeries series, List<OffsetDateTime> hours) {
+        if (hours.isEmpty()) {
+            return;
+        }
+        List<OffsetDateTime> sorted = new ArrayList<>(hours);
+        Collections.sort(sorted);
+        Object[] args = new Object[sorted.size() + 1];
+        args[0] = series.getName();
+        for (int i = 0; i < sorted.size(); i++) {
+            args[i + 1] = sorted.get(i);
+        }
+        jdbc.update(
+            "INSERT INTO timeseries_late_hours (series, hour) " +
+            "SELECT CAST(? AS text), hour FROM (VALUES " +
+            String.join(", ", Collections.nCopies(sorted.size(), "(CAST(? AS timestamptz))")) +
+            ") AS v (hour) ORDER BY hour ON CONFLICT DO NOTHING",
+            args
+        );
+    }
+
+    /**
+     * Take the late hours of a series, the refresh's rollback puts them back
+     */
+    private Set<OffsetDateTime> drainLateHours(TimeSeries series) {
+        return new TreeSet<>(jdbc.query(
+            "DELETE FROM timeseries_late_hours WHERE series = ? RETURNING hour",
+            (rs, rowNum) -> rs.getObject(1, OffsetDateTime.class), series.getName()
+        ));
+    }
+
+    /**
+     * Consecutive hours as [start, end) ranges
+     */
+    private static List<OffsetDateTime[]> ranges(Set<OffsetDateTime> hours) {
+        List<OffsetDateTime[]> ranges = new ArrayList<>();
+        for (OffsetDateTime hour : new TreeSet<>(hours)) {
+            OffsetDateTime[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1].isEqual(hour)) {
+                last[1] = hour.plusHours(1);
+            } else {
+                ranges.add(new OffsetDateTime[] {hour, hour.plusHours(1)});
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Recompute the whole hours [from, to) in the minute and hour tiers they are still kept in,
+     * then their days and months
+     */
+    private void rebuildRange(TimeSeries series, OffsetDateTime from, OffsetDateTime to, OffsetDateTime now) {
+        OffsetDateTime minuteStart = latest(from, now.minus(minuteRetention).truncatedTo(ChronoUnit.HOURS));
+        if (minuteStart.isBefore(to)) {
+            replaceFromFacts(series, Resolution.MINUTE, minuteStart, to);
+        }
+        OffsetDateTime hourStart = latest(from, now.minus(hourRetention).truncatedTo(ChronoUnit.HOURS));
+        if (hourStart.isBefore(to)) {
+            replaceFromFacts(series, Resolution.HOUR, hourStart, to);
+        }
+        OffsetDateTime dayFrom = from.truncatedTo(ChronoUnit.DAYS);
+        OffsetDateTime dayTo = ceil(to, ChronoUnit.DAYS);
+        if (!dayFrom.isBefore(now.minus(hourRetention))) {
+            cascade(series, Resolution.HOUR, Resolution.DAY, dayFrom, dayTo);
+        } else {
+            // The hours of these days are no longer all kept
+            replaceFromFacts(series, Resolution.DAY, dayFrom, dayTo);
+        }
+        OffsetDateTime monthFrom = dayFrom.withDayOfMonth(1);
+        OffsetDateTime monthTo = dayTo.getDayOfMonth() == 1 ? dayTo : dayTo.withDayOfMonth(1).plusMonths(1);
+        cascade(series, Resolution.DAY, Resolution.MONTH, monthFrom, monthTo);
+    }
+
+    private static OffsetDateTime latest(OffsetDateTime a, OffsetDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    /**
+     * Start of the unit containing the time, or of the next one when it is not already a start
+     */
+    private static OffsetDateTime ceil(OffsetDateTime time, ChronoUnit unit) {
+        OffsetDateTime start = time.truncatedTo(unit);
+        return start.isEqual(time) ? start : start.plus(1, unit);
+    }
+
+    private void replaceFromFacts(TimeSeries series, Resolution resolution, OffsetDateTime start, OffsetDateTime end) {
+        jdbc.update(
+            "DELETE FROM timeseries_tiers WHERE series = ? AND resolution = ? AND bucket >= ? AND bucket < ?",
+            series.getName(), resolution.getName(), start, end
+        );
+        jdbc.update("""
+            INSERT INTO timeseries_tiers (series, resolution, bucket, key, event_count, amount, quantity)
+            SELECT ?, ?, date_trunc(?, %s, 'UTC'), %s, COUNT(*), COALESCE(SUM(%s), 0), COALESCE(SUM(%s), 0)
+            FROM %s
+            WHERE %s >= ? AND %s < ?
+            GROUP BY 3, 4
+            """.formatted(
+                series.getTimeColumn(), series.getKeyExpression(),
+                series.getAmountExpression(), series.getQuantityExpression(),
+                series.getTable(), series.getTimeColumn(), series.getTimeColumn()
+            ), series.getName(), resolution.getName(), resolution.getName(), start, end);
+    }
+
+    private void cascade(TimeSeries series, Resolution from, Resolution to, OffsetDateTime start, OffsetDateTime end) {
+        jdbc.update(
+            "DELETE FROM timeseries_tiers WHERE series = ? AND resolution = ? AND bucket >= ? AND bucket < ?",
+            series.getName(), to.getName(), start, end
+        );
+        jdbc.update("""
+            INSERT INTO timeseries_tiers (series, resolution, bucket, key, event_count, amount, quantity)
+            SELECT series, ?, date_trunc(?, bucket, 'UTC'), key, SUM(event_count), SUM(amount), SUM(quantity)
+            FROM timeseries_tiers
+            WHERE series = ? AND resolution = ? AND bucket >= ? AND bucket < ?
+            GROUP BY series, 3, key
+            """, to.getName(), to.getName(), series.getName(), from.getName(), start, end);
+    }
+}
@@ -0,0 +1,12 @@
+-- ============================================
+-- V10: Default partitions for the fact tables
+-- Rows outside every monthly partition land here instead of failing the insert;
+-- PartitionManager creates the missing month and moves them out
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS fact_trade_default PARTITION OF fact_trade DEFAULT;
+CREATE TABLE IF NOT EXISTS fact_payment_default PARTITION OF fact_payment DEFAULT;
+CREATE TABLE IF NOT EXISTS fact_issuance_default PARTITION OF fact_issuance DEFAULT;
+CREATE TABLE IF NOT EXISTS fact_user_activity_default PARTITION OF fact_user_activity DEFAULT;
+
+COMMENT ON TABLE partition_metadata IS 'Partitioned tables maintained by PartitionManager: months are created ahead, partitions older than retention_months are detached';
@@ -0,0 +1,23 @@
+-- ============================================
+-- V11: Manifest of archived partitions
+-- Partitions past retention are detached, written to a compressed columnar file on local disk
+-- and dropped; this table keeps track of where each one went
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS archived_partitions (
+    partition_name TEXT PRIMARY KEY,
+    table_name TEXT NOT NULL,
+    range_from DATE NOT NULL,
+    range_to DATE NOT NULL,
+    status TEXT NOT NULL DEFAULT 'DETACHED',  -- DETACHED, ARCHIVED
+    file_path TEXT,
+    row_count BIGINT,
+    file_bytes BIGINT,
+    detached_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    archived_at TIMESTAMPTZ,
+    CONSTRAINT archived_partitions_status_check CHECK (status IN ('DETACHED', 'ARCHIVED'))
+);
+
+CREATE INDEX IF NOT EXISTS idx_archived_partitions_table_range ON archived_partitions(table_name, range_from);
+
+COMMENT ON TABLE archived_partitions IS 'Partitions detached by retention: DETACHED until written to file_path, then ARCHIVED and dropped';
@@ -0,0 +1,117 @@
+-- ============================================
+-- V12: Incrementally maintained rollups
+-- Daily, per-region sums and counts of the fact tables. The consumers add the delta of every
+-- batch in the batch transaction (RollupService), so unlike the materialized views they are
+-- current as soon as a batch commits and never recompute history.
+-- Days are UTC days.
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS rollup_trade_daily (
+    day DATE NOT NULL,
+    region TEXT NOT NULL,
+    currency TEXT NOT NULL,
+    trade_count BIGINT NOT NULL DEFAULT 0,
+    credits_sold NUMERIC NOT NULL DEFAULT 0,
+    revenue NUMERIC NOT NULL DEFAULT 0,
+    unit_price_sum NUMERIC NOT NULL DEFAULT 0,
+    unit_price_count BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (day, region, currency)
+);
+
+CREATE TABLE IF NOT EXISTS rollup_issuance_daily (
+    day DATE NOT NULL,
+    region TEXT NOT NULL,
+    issuance_count BIGINT NOT NULL DEFAULT 0,
+    credits_issued NUMERIC NOT NULL DEFAULT 0,
+    distance_km NUMERIC NOT NULL DEFAULT 0,
+    energy_kwh NUMERIC NOT NULL DEFAULT 0,
+    co2_avoided_kg NUMERIC NOT NULL DEFAULT 0,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (day, region)
+);
+
+CREATE TABLE IF NOT EXISTS rollup_payment_daily (
+    day DATE NOT NULL,
+    region TEXT NOT NULL,
+    currency TEXT NOT NULL,
+    status TEXT NOT NULL,
+    payment_count BIGINT NOT NULL DEFAULT 0,
+    total_amount NUMERIC NOT NULL DEFAULT 0,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (day, region, currency, status)
+);
+
+CREATE TABLE IF NOT EXISTS rollup_user_activity_daily (
+    day DATE NOT NULL,
+    event_type TEXT NOT NULL,
+    event_count BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (day, event_type)
+);
+
+-- Initial contents from the facts already loaded
+INSERT INTO rollup_trade_daily (day, region, currency, trade_count, credits_sold, revenue, unit_price_sum, unit_price_count)
+SELECT (executed_at AT TIME ZONE 'UTC')::date, COALESCE(region, 'Unknown'), COALESCE(currency, 'Unknown'),
+       COUNT(*), COALESCE(SUM(quantity), 0), COALESCE(SUM(amount), 0), COALESCE(SUM(unit_price), 0), COUNT(unit_price)
+FROM fact_trade
+WHERE executed_at IS NOT NULL
+GROUP BY 1, 2, 3
+ON CONFLICT DO NOTHING;
+
+INSERT INTO rollup_issuance_daily (day, region, issuance_count, credits_issued, distance_km, energy_kwh, co2_avoided_kg)
+SELECT (issued_at AT TIME ZONE 'UTC')::date, COALESCE(region, 'Unknown'),
+       COUNT(*), COALESCE(SUM(quantity_tco2e), 0), COALESCE(SUM(distance_km), 0),
+       COALESCE(SUM(energy_kwh), 0), COALESCE(SUM(co2_avoided_kg), 0)
+FROM fact_issuance
+WHERE issued_at IS NOT NULL
+GROUP BY 1, 2
+ON CONFLICT DO NOTHING;
+
+INSERT INTO rollup_payment_daily (day, region, currency, status, payment_count, total_amount)
+SELECT (completed_at AT TIME ZONE 'UTC')::date, COALESCE(region, 'Unknown'), COALESCE(currency, 'Unknown'),
+       COALESCE(status, 'Unknown'), COUNT(*), COALESCE(SUM(amount), 0)
+FROM fact_payment
+WHERE completed_at IS NOT NULL
+GROUP BY 1, 2, 3, 4
+ON CONFLICT DO NOTHING;
+
+INSERT INTO rollup_user_activity_daily (day, event_type, event_count)
+SELECT (occurred_at AT TIME ZONE 'UTC')::date, COALESCE(event_type, 'Unknown'), COUNT(*)
+FROM fact_user_activity
+WHERE occurred_at IS NOT NULL
+GROUP BY 1, 2
+ON CONFLICT DO NOTHING;
+
+-- Regional views read the rollups instead of re-aggregating 90 days of facts per request
+DROP VIEW IF EXISTS v_regional_co2_stats;
+CREATE VIEW v_regional_co2_stats AS
+SELECT
+    region,
+    issuance_count,
+    credits_issued as total_tco2e,
+    distance_km as total_distance_km,
+    energy_kwh as total_energy_kwh,
+    co2_avoided_kg as total_co2_avoided_kg,
+    day::timestamp AT TIME ZONE 'UTC' as date
+FROM rollup_issuance_daily
+WHERE day >= CURRENT_DATE - 90 AND issuance_count <> 0;
+
+DROP VIEW IF EXISTS v_regional_trade_stats;
+CREATE VIEW v_regional_trade_stats AS
+SELECT
+    region,
+    trade_count,
+    credits_sold as total_quantity,
+    revenue as total_amount,
+    currency,
+    day::timestamp AT TIME ZONE 'UTC' as date
+FROM rollup_trade_daily
+WHERE day >= CURRENT_DATE - 90 AND trade_count <> 0;
+
+COMMENT ON TABLE rollup_trade_daily IS 'Trades per UTC day, region and currency, maintained incrementally by RollupService';
+COMMENT ON TABLE rollup_issuance_daily IS 'Issuances per UTC day and region, maintained incrementally by RollupService';
+COMMENT ON TABLE rollup_payment_daily IS 'Payments per UTC day, region, currency and status, maintained incrementally by RollupService';
+COMMENT ON TABLE rollup_user_activity_daily IS 'User activities per UTC day and event type, maintained incrementally by RollupService';
+COMMENT ON VIEW v_regional_co2_stats IS 'Regional CO2 emission statistics (last 90 days, from rollup_issuance_daily)';
+COMMENT ON VIEW v_regional_trade_stats IS 'Regional trade volume and revenue statistics (last 90 days, from rollup_trade_daily)';
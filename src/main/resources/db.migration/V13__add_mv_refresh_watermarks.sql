@@ -0,0 +1,16 @@
+-- ============================================
+-- V13: Change watermarks of materialized view sources
+-- Cumulative change counter (inserted + updated + deleted rows from pg_stat_user_tables, over
+-- all partitions) of every source table as of a view's last successful refresh. The difference
+-- to the current counter is the number of changes the view has not seen yet.
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS mv_refresh_watermarks (
+    mv_name TEXT NOT NULL,
+    source_table TEXT NOT NULL,
+    change_count BIGINT NOT NULL,
+    recorded_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (mv_name, source_table)
+);
+
+COMMENT ON TABLE mv_refresh_watermarks IS 'Source table change counters as of the last successful refresh of each materialized view';
@@ -0,0 +1,18 @@
+-- ============================================
+-- V14: Auction trades in rollup_trade_daily
+-- Lets regional transaction reports split auction and fixed-price trades without reading
+-- fact_trade. Days of already archived partitions keep 0.
+-- ============================================
+
+ALTER TABLE rollup_trade_daily ADD COLUMN IF NOT EXISTS auction_count BIGINT NOT NULL DEFAULT 0;
+
+UPDATE rollup_trade_daily r
+SET auction_count = f.auction_count
+FROM (
+    SELECT (executed_at AT TIME ZONE 'UTC')::date AS day, COALESCE(region, 'Unknown') AS region,
+           COALESCE(currency, 'Unknown') AS currency, COUNT(*) FILTER (WHERE is_auction) AS auction_count
+    FROM fact_trade
+    WHERE is_auction
+    GROUP BY 1, 2, 3
+) f
+WHERE r.day = f.day AND r.region = f.region AND r.currency = f.currency;
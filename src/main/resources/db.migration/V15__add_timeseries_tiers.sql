@@ -0,0 +1,20 @@
+-- ============================================
+-- V15: Multi-resolution time-series tiers
+-- Counts and sums per minute, hour, UTC day and UTC month for the chart series. Minutes are
+-- aggregated from the facts, every coarser tier from the one below it (TimeSeriesTierService);
+-- the first run of a series fills the hours from the facts.
+-- Minutes and hours are only kept for a limited time, days and months for good.
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS timeseries_tiers (
+    series TEXT NOT NULL,
+    resolution TEXT NOT NULL,  -- minute, hour, day, month
+    bucket TIMESTAMPTZ NOT NULL,
+    key TEXT NOT NULL DEFAULT '',
+    event_count BIGINT NOT NULL DEFAULT 0,
+    amount NUMERIC NOT NULL DEFAULT 0,
+    quantity NUMERIC NOT NULL DEFAULT 0,
+    PRIMARY KEY (series, resolution, bucket, key)
+);
+
+COMMENT ON TABLE timeseries_tiers IS 'Chart series per minute, hour, day and month, cascaded from the facts by TimeSeriesTierService';
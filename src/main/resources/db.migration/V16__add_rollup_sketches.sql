@@ -0,0 +1,38 @@
+-- ============================================
+-- V16: Distinct-count sketches next to the rollups
+-- One HyperLogLog sketch (4096 one-byte registers, see HyperLogLog.java) per sketch, UTC day
+-- and region, e.g. the buyers of a day in a region. The writers that maintain the rollups add
+-- the IDs of the rows they touch (SketchService); distinct counts over a range merge the daily
+-- sketches instead of summing daily distinct counts, which counts a user once per day.
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS rollup_sketches (
+    sketch TEXT NOT NULL,      -- trade_buyers, trade_sellers, issuance_users
+    day DATE NOT NULL,
+    region TEXT NOT NULL,
+    registers BYTEA NOT NULL,
+    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (sketch, day, region)
+);
+
+-- Union of two sketches: the larger value of every register
+create or replace function hll_union(a bytea, b bytea) returns bytea as $$
+declare
+    v_result bytea := a;
+begin
+    if a is null then
+        return b;
+    end if;
+    if b is null then
+        return a;
+    end if;
+    for i in 0 .. length(b) - 1 loop
+        if get_byte(b, i) > get_byte(v_result, i) then
+            v_result := set_byte(v_result, i, get_byte(b, i));
+        end if;
+    end loop;
+    return v_result;
+end;
+$$ language plpgsql immutable parallel safe;
+
+COMMENT ON TABLE rollup_sketches IS 'HyperLogLog sketches of distinct IDs per day and region, merged at query time by SketchService';
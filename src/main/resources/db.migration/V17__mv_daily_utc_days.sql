@@ -0,0 +1,57 @@
+-- ============================================
+-- V17: UTC days in the daily materialized views
+-- The views of V1 truncated to days in the session time zone, while the rollups, the report
+-- navigator and FreshViewService count UTC days, so on a server outside UTC view and fact
+-- answers disagreed at day boundaries. The views are recreated with days truncated in UTC;
+-- day stays a timestamptz, now always a UTC midnight.
+-- ============================================
+
+DROP MATERIALIZED VIEW IF EXISTS mv_trades_daily;
+CREATE MATERIALIZED VIEW mv_trades_daily AS
+SELECT date_trunc('day', executed_at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' AS day,
+       sum(quantity) AS credits_sold,
+       sum(amount) AS revenue,
+       count(*) AS trade_count,
+       avg(unit_price) AS avg_unit_price,
+       count(DISTINCT buyer_id) AS unique_buyers,
+       count(DISTINCT seller_id) AS unique_sellers
+FROM fact_trade
+GROUP BY 1;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_mv_trades_daily_day ON mv_trades_daily(day);
+
+DROP MATERIALIZED VIEW IF EXISTS mv_issuance_daily;
+CREATE MATERIALIZED VIEW mv_issuance_daily AS
+SELECT date_trunc('day', issued_at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' AS day,
+       sum(quantity_tco2e) AS credits_issued,
+       count(*) AS issuance_count,
+       avg(quantity_tco2e) AS avg_issuance,
+       count(DISTINCT user_id) AS unique_users
+FROM fact_issuance
+GROUP BY 1;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_mv_issuance_daily_day ON mv_issuance_daily(day);
+
+DROP MATERIALIZED VIEW IF EXISTS mv_payments_daily;
+CREATE MATERIALIZED VIEW mv_payments_daily AS
+SELECT date_trunc('day', completed_at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' AS day,
+       sum(amount) AS total_payments,
+       count(*) AS payment_count,
+       avg(amount) AS avg_payment,
+       count(DISTINCT payment_method) AS payment_methods_used
+FROM fact_payment
+WHERE status = 'COMPLETED'
+GROUP BY 1;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_mv_payments_daily_day ON mv_payments_daily(day);
+
+DROP MATERIALIZED VIEW IF EXISTS mv_user_activity_daily;
+CREATE MATERIALIZED VIEW mv_user_activity_daily AS
+SELECT date_trunc('day', occurred_at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC' AS day,
+       event_type,
+       count(*) AS event_count,
+       count(DISTINCT user_id) AS unique_users
+FROM fact_user_activity
+GROUP BY 1, 2;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_mv_user_activity_daily_day_type ON mv_user_activity_daily(day, event_type);
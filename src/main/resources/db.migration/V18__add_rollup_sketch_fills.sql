@@ -0,0 +1,15 @@
+-- ============================================
+-- V18: Completed history fills of the distinct-count sketches
+-- SketchService fills a rollup's sketches from the facts once; the row is written after the
+-- last chunk, so a fill that was interrupted, or that consumers' sketch rows got ahead of on
+-- the first start, runs again. Re-running only merges registers, so it is safe.
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS rollup_sketch_fills (
+    rollup TEXT PRIMARY KEY,
+    filled_from DATE,
+    filled_to DATE,
+    completed_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+COMMENT ON TABLE rollup_sketch_fills IS 'Rollups whose sketches were filled from the complete fact history';
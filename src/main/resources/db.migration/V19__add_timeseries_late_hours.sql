@@ -0,0 +1,15 @@
+-- ============================================
+-- V19: Pending late hours of the time-series tiers
+-- Writers add the hours of facts the trailing window already passed in their own transaction;
+-- the next refresh of the series deletes them in the transaction that rebuilds them, so they
+-- survive a restart and are kept when the refresh fails.
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS timeseries_late_hours (
+    series TEXT NOT NULL,
+    hour TIMESTAMPTZ NOT NULL,
+    marked_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    PRIMARY KEY (series, hour)
+);
+
+COMMENT ON TABLE timeseries_late_hours IS 'Hours of late facts not yet rebuilt in timeseries_tiers';
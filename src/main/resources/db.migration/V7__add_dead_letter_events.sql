@@ -0,0 +1,39 @@
+-- ============================================
+-- V7: Dead-letter capture
+-- Messages that could not be processed, kept for browsing and replay
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS dead_letter_events (
+    id BIGSERIAL PRIMARY KEY,
+    event_id TEXT,
+    event_type VARCHAR(50),
+    source_queue TEXT NOT NULL,
+    routing_key TEXT,
+    error_class TEXT,
+    error_message TEXT,
+    payload TEXT NOT NULL,
+    content_type VARCHAR(100),
+    headers JSONB,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+    replay_count INT NOT NULL DEFAULT 0,
+    failed_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    replayed_at TIMESTAMPTZ
+);
+
+-- Browsing by event type and by error, newest first
+CREATE INDEX IF NOT EXISTS idx_dead_letter_events_type
+ON dead_letter_events(event_type, failed_at DESC);
+
+CREATE INDEX IF NOT EXISTS idx_dead_letter_events_error
+ON dead_letter_events(error_class, failed_at DESC);
+
+-- Replay scans pending messages per queue in id order
+CREATE INDEX IF NOT EXISTS idx_dead_letter_events_pending
+ON dead_letter_events(source_queue, id)
+WHERE status = 'PENDING';
+
+CREATE INDEX IF NOT EXISTS idx_dead_letter_events_event_id
+ON dead_letter_events(event_id);
+
+COMMENT ON TABLE dead_letter_events IS 'Messages dead-lettered to co2.events.dlx, with failure reason';
+COMMENT ON COLUMN dead_letter_events.status IS 'PENDING (waiting), REPLAYED (re-published to source_queue), DISCARDED';
@@ -0,0 +1,15 @@
+-- ============================================
+-- V8: Stream ingestion offsets
+-- Last offset applied per stream, redelivery after a crash is absorbed by consumed_events
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS stream_offsets (
+    consumer_name TEXT NOT NULL,
+    stream TEXT NOT NULL,
+    committed_offset BIGINT NOT NULL,
+    committed_at TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (consumer_name, stream)
+);
+
+COMMENT ON TABLE stream_offsets IS 'Offsets of RabbitMQ streams processed by the stream ingestion mode';
+COMMENT ON COLUMN stream_offsets.committed_offset IS 'Offset of the last message applied, consumption resumes after it';
@@ -0,0 +1,10 @@
+-- ============================================
+-- V9: Event time of the last enabled/disabled change per user
+-- Buffered status changes are written later than direct dim_users writes,
+-- enabled_at lets the later event win regardless of write order
+-- ============================================
+
+ALTER TABLE dim_users
+    ADD COLUMN IF NOT EXISTS enabled_at TIMESTAMPTZ;
+
+COMMENT ON COLUMN dim_users.enabled_at IS 'Event time of the change that set enabled';
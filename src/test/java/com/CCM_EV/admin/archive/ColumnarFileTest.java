@@ -0,0 +1,173 @@
+package com.CCM_EV.admin.archive;
+
+import com.CCM_EV.admin.archive.ColumnarFile.Column;
+import com.CCM_EV.admin.archive.ColumnarFile.Type;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ColumnarFileTest {
+
+	private static final List<Column> COLUMNS = List.of(
+		new Column("id", Type.LONG),
+		new Column("ratio", Type.DOUBLE),
+		new Column("amount", Type.DECIMAL),
+		new Column("enabled", Type.BOOLEAN),
+		new Column("occurred_at", Type.TIMESTAMP),
+		new Column("day", Type.DATE),
+		new Column("note", Type.STRING));
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void roundTripsEveryTypeAcrossRowGroups() throws Exception {
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] {Long.MIN_VALUE, -0.5, new BigDecimal("12.3400"), true,
+			Instant.parse("1969-12-31T23:59:59.999999Z"), LocalDate.of(1900, 1, 1), "Ürün 电动车 ⚡"});
+		rows.add(new Object[] {null, null, null, null, null, null, null});
+		rows.add(new Object[] {Long.MAX_VALUE, Double.MAX_VALUE, new BigDecimal("-0.000001"), false,
+			Instant.parse("2025-03-01T12:34:56.000001Z"), LocalDate.of(2025, 3, 1), ""});
+		rows.add(new Object[] {0L, 0.0, new BigDecimal("123456789012345678901234567890.5"), false,
+			Instant.parse("1950-06-15T00:00:00.123456Z"), LocalDate.of(1969, 12, 31), "plain"});
+		for (long i = 0; i < 7; i++) {
+			rows.add(new Object[] {i, i / 4.0, BigDecimal.valueOf(i, 2), i % 2 == 0,
+				Instant.ofEpochSecond(1_700_000_000L + i, 1_000 * i), LocalDate.ofEpochDay(20_000 + i), "row " + i});
+		}
+
+		Path file = write(rows, 3);
+		List<Object[]> read = read(file, new int[] {0, 1, 2, 3, 4, 5, 6});
+
+		assertEquals(rows.size(), read.size());
+		for (int r = 0; r < rows.size(); r++) {
+			assertArrayEquals(expected(rows.get(r)), read.get(r), "row " + r);
+		}
+	}
+
+	@Test
+	void keepsTheScaleOfDecimals() throws Exception {
+		Path file = write(List.<Object[]>of(new Object[] {1L, 1.0, new BigDecimal("5.000000"), true,
+			Instant.EPOCH, LocalDate.EPOCH, "x"}), 10);
+
+		BigDecimal amount = (BigDecimal) read(file, new int[] {2}).get(0)[2];
+
+		assertEquals(6, amount.scale());
+	}
+
+	@Test
+	void readsOnlyTheProjectedColumns() throws Exception {
+		Path file = write(List.<Object[]>of(
+			new Object[] {1L, 1.0, BigDecimal.ONE, true, Instant.EPOCH, LocalDate.EPOCH, "a"},
+			new Object[] {2L, 2.0, BigDecimal.TEN, false, Instant.EPOCH, LocalDate.EPOCH, "b"}), 1);
+
+		List<Object[]> read = read(file, new int[] {6, 0});
+
+		assertEquals(2L, read.get(1)[0]);
+		assertEquals("b", read.get(1)[6]);
+		assertNull(read.get(1)[2]);
+	}
+
+	@Test
+	void readsAnEmptyFile() throws Exception {
+		Path file = write(List.of(), 3);
+
+		try (ColumnarFileReader reader = new ColumnarFileReader(file)) {
+			assertEquals(COLUMNS.size(), reader.getColumns().size());
+			assertEquals(Type.TIMESTAMP, reader.getColumns().get(reader.indexOf("occurred_at")).getType());
+		}
+		assertEquals(0, read(file, new int[] {0}).size());
+	}
+
+	@Test
+	void rejectsOtherFiles() throws Exception {
+		Path file = directory.resolve("other" + ColumnarFile.EXTENSION);
+		Files.writeString(file, "not an archive");
+
+		assertThrows(IOException.class, () -> new ColumnarFileReader(file));
+	}
+
+	private Path write(List<Object[]> rows, int rowGroupSize) throws Exception {
+		Path file = directory.resolve("partition" + ColumnarFile.EXTENSION);
+		ResultSet rs = resultSet(rows);
+		try (ColumnarFileWriter writer = new ColumnarFileWriter(file, COLUMNS, rowGroupSize)) {
+			while (rs.next()) {
+				writer.write(rs);
+			}
+			assertEquals(rows.size(), writer.getRowCount());
+		}
+		return file;
+	}
+
+	private static List<Object[]> read(Path file, int[] projection) throws IOException {
+		List<Object[]> rows = new ArrayList<>();
+		try (ColumnarFileReader reader = new ColumnarFileReader(file)) {
+			reader.scan(projection, row -> rows.add(row.clone()));
+		}
+		return rows;
+	}
+
+	/**
+	 * Values as the reader returns them: timestamps in UTC
+	 */
+	private static Object[] expected(Object[] row) {
+		Object[] values = row.clone();
+		if (values[4] != null) {
+			values[4] = OffsetDateTime.ofInstant((Instant) values[4], ZoneOffset.UTC);
+		}
+		return values;
+	}
+
+	/**
+	 * Result set over the rows, with the JDBC conversions the writer relies on
+	 */
+	private static ResultSet resultSet(List<Object[]> rows) {
+		int[] cursor = {-1};
+		boolean[] wasNull = {false};
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+			(proxy, method, args) -> {
+				switch (method.getName()) {
+					case "next":
+						return ++cursor[0] < rows.size();
+					case "wasNull":
+						return wasNull[0];
+					default:
+						break;
+				}
+				if (!method.getName().startsWith("get") || args == null || !(args[0] instanceof Integer index)) {
+					throw new SQLException("Unsupported " + method.getName() + Arrays.toString(args));
+				}
+				Object value = rows.get(cursor[0])[index - 1];
+				wasNull[0] = value == null;
+				return switch (method.getName()) {
+					case "getLong" -> value != null ? (Long) value : 0L;
+					case "getDouble" -> value != null ? (Double) value : 0.0;
+					case "getBoolean" -> value != null && (Boolean) value;
+					case "getBigDecimal", "getString" -> value;
+					case "getTimestamp" -> value != null ? Timestamp.from((Instant) value) : null;
+					case "getDate" -> value != null ? Date.valueOf((LocalDate) value) : null;
+					default -> throw new SQLException("Unsupported " + method.getName());
+				};
+			});
+	}
+}
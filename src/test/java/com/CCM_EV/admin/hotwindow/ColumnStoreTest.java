@@ -0,0 +1,159 @@
+package com.CCM_EV.admin.hotwindow;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.CCM_EV.admin.hotwindow.HotTable.dimension;
+import static com.CCM_EV.admin.hotwindow.HotTable.measure;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColumnStoreTest {
+
+	private static final HotTable TABLE = HotTable.builder()
+		.name("test")
+		.factTable("fact_test")
+		.timeColumn("occurred_at")
+		.keyColumns(List.of("id", "occurred_at"))
+		.keyTypes(List.of("text", "timestamptz"))
+		.dimension(dimension("region", "region"))
+		.measure(measure("amount", "amount", 2))
+		.build();
+
+	private static final String[] REGIONS = {"east", "north", "south"};
+
+	@Test
+	void upsertReplacesOrKeepsKnownKeys() {
+		ColumnStore store = new ColumnStore(TABLE);
+		store.upsert(List.of(row("a", 10, "east", 100), row("b", 20, "north", 200)), true);
+
+		store.upsert(List.of(row("a", 10, "south", 999), row("c", 30, "north", 300)), false);
+		assertEquals(3, store.rowCount());
+		assertEquals(Map.of("east", sums(1, 100), "north", sums(2, 500)), byRegion(store, 0, 100));
+
+		store.upsert(List.of(row("a", 10, "south", 999)), true);
+		assertEquals(3, store.rowCount());
+		assertEquals(Map.of("north", sums(2, 500), "south", sums(1, 999)), byRegion(store, 0, 100));
+	}
+
+	@Test
+	void compactsAcrossStraddlingSegmentsAndKeepsUpsertingInPlace() {
+		ColumnStore store = new ColumnStore(TABLE);
+		Map<String, Fact> facts = new LinkedHashMap<>();
+		// Three segments in time order, then late rows for old times landing in the last one
+		int ordered = 2 * ColumnStore.SEGMENT_ROWS + 20_000;
+		for (int i = 0; i < ordered; i++) {
+			facts.put("k" + i, new Fact(i, REGIONS[i % 3], i % 100));
+		}
+		for (int i = 0; i < 1_000; i++) {
+			facts.put("late" + i, new Fact(i * 150L, REGIONS[i % 3], 7));
+		}
+		List<HotRow> rows = new ArrayList<>();
+		facts.forEach((key, fact) -> rows.add(row(key, fact.time, fact.region, fact.amount)));
+		store.upsert(rows, true);
+		assertEquals(facts.size(), store.rowCount());
+		assertEquals(expected(facts, 0, Long.MAX_VALUE), byRegion(store, 0, Long.MAX_VALUE));
+
+		// The first segment expires whole, the second and the last straddle the cutoff
+		long cutoff = ColumnStore.SEGMENT_ROWS + 30_000;
+		long expired = facts.values().stream().filter(fact -> fact.time < cutoff).count();
+		assertEquals(expired, store.retainFrom(cutoff));
+		facts.values().removeIf(fact -> fact.time < cutoff);
+		assertEquals(facts.size(), store.rowCount());
+		assertEquals(expected(facts, 0, Long.MAX_VALUE), byRegion(store, 0, Long.MAX_VALUE));
+		assertEquals(expected(facts, cutoff, cutoff + 1_000), byRegion(store, cutoff, cutoff + 1_000));
+		assertEquals(0, store.retainFrom(cutoff));
+
+		// Survivors of a copied segment, of a kept segment and of the late rows overwrite in place
+		List<HotRow> updates = new ArrayList<>();
+		for (String key : List.of("k" + cutoff, "k" + (ColumnStore.SEGMENT_ROWS + 40_000),
+				"k" + (2 * ColumnStore.SEGMENT_ROWS + 100), "k" + (ordered - 1), "late999")) {
+			Fact fact = facts.get(key);
+			Fact updated = new Fact(fact.time, "west", 5_000);
+			facts.put(key, updated);
+			updates.add(row(key, updated.time, updated.region, updated.amount));
+		}
+		// An expired key comes back as a new row
+		facts.put("k0", new Fact(cutoff + 5, "west", 1));
+		updates.add(row("k0", cutoff + 5, "west", 1));
+		store.upsert(updates, true);
+
+		assertEquals(facts.size(), store.rowCount());
+		assertEquals(expected(facts, 0, Long.MAX_VALUE), byRegion(store, 0, Long.MAX_VALUE));
+	}
+
+	@Test
+	void filtersDimensions() {
+		ColumnStore store = new ColumnStore(TABLE);
+		store.upsert(List.of(row("a", 1, "east", 100), row("b", 2, "north", 200), row("c", 3, "south", 300)), true);
+
+		List<Map<String, Object>> totals = store.aggregate(0, 10, List.of(), List.of("amount"),
+			Map.of("region", Set.of("east", "south", "unknown")), 1);
+
+		assertEquals(1, totals.size());
+		assertEquals(2L, totals.get(0).get("count"));
+		assertEquals(0, new BigDecimal("4.00").compareTo((BigDecimal) totals.get(0).get("amount")));
+	}
+
+	/**
+	 * Count and amount in units of the scale per region of the rows in [from, to)
+	 */
+	private static Map<String, List<Long>> byRegion(ColumnStore store, long from, long to) {
+		Map<String, List<Long>> totals = new TreeMap<>();
+		for (Map<String, Object> row : store.aggregate(from, to, List.of("region"), List.of("amount"), Map.of(), 1)) {
+			long amount = ((BigDecimal) row.get("amount")).movePointRight(2).longValueExact();
+			totals.put((String) row.get("region"), sums((Long) row.get("count"), amount));
+		}
+		return totals;
+	}
+
+	private static Map<String, List<Long>> expected(Map<String, Fact> facts, long from, long to) {
+		Map<String, List<Long>> totals = new TreeMap<>();
+		facts.values().stream().filter(fact -> fact.time >= from && fact.time < to).forEach(fact ->
+			totals.merge(fact.region, sums(1, fact.amount), (a, b) -> sums(a.get(0) + b.get(0), a.get(1) + b.get(1))));
+		return totals;
+	}
+
+	private static List<Long> sums(long count, long amount) {
+		return List.of(count, amount);
+	}
+
+	/**
+	 * Row as HotWindowService reads it: key text, epoch milliseconds, region, scaled amount
+	 */
+	private static HotRow row(String key, long time, String region, long amount) {
+		Object[] values = {key, time, region, amount};
+		ResultSet rs = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+			(proxy, method, args) -> switch (method.getName()) {
+				case "getString" -> (String) values[(Integer) args[0] - 1];
+				case "getLong" -> (Long) values[(Integer) args[0] - 1];
+				default -> throw new SQLException("Unsupported " + method.getName());
+			});
+		try {
+			return HotRow.of(TABLE, rs);
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final class Fact {
+		private final long time;
+		private final String region;
+		private final long amount;
+
+		private Fact(long time, String region, long amount) {
+			this.time = time;
+			this.region = region;
+			this.amount = amount;
+		}
+	}
+}
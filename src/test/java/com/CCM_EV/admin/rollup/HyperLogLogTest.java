@@ -0,0 +1,87 @@
+package com.CCM_EV.admin.rollup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+	// Three standard errors, the estimates below are deterministic for the fixed inputs
+	private static final double TOLERANCE = 3 * HyperLogLog.RELATIVE_ERROR;
+
+	@Test
+	void emptySketchEstimatesZero() {
+		assertEquals(0, new HyperLogLog().estimate());
+	}
+
+	@Test
+	void estimatesWithinErrorAcrossRanges() {
+		for (int count : new int[] {10, 1_000, 10_000, 100_000, 1_000_000}) {
+			HyperLogLog sketch = of(0, count);
+			assertWithinError(count, sketch.estimate());
+		}
+	}
+
+	@Test
+	void addingValuesAgainChangesNothing() {
+		HyperLogLog sketch = of(0, 50_000);
+		byte[] before = sketch.toBytes();
+		for (int i = 0; i < 50_000; i++) {
+			sketch.add("user-" + i);
+		}
+		assertArrayEquals(before, sketch.toBytes());
+	}
+
+	@Test
+	void mergeIsTheSketchOfTheUnion() {
+		HyperLogLog left = of(0, 60_000);
+		HyperLogLog right = of(40_000, 100_000);
+
+		left.merge(right);
+
+		assertArrayEquals(of(0, 100_000).toBytes(), left.toBytes());
+		assertWithinError(100_000, left.estimate());
+	}
+
+	@Test
+	void mergeIsIdempotent() {
+		HyperLogLog sketch = of(0, 20_000);
+		byte[] before = sketch.toBytes();
+
+		sketch.merge(of(0, 20_000));
+		sketch.merge(of(5_000, 10_000));
+
+		assertArrayEquals(before, sketch.toBytes());
+	}
+
+	@Test
+	void roundTripsThroughBytes() {
+		HyperLogLog sketch = of(0, 30_000);
+
+		HyperLogLog copy = HyperLogLog.fromBytes(sketch.toBytes());
+
+		assertArrayEquals(sketch.toBytes(), copy.toBytes());
+		assertEquals(sketch.estimate(), copy.estimate());
+	}
+
+	@Test
+	void rejectsRegistersOfAnotherPrecision() {
+		assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[HyperLogLog.REGISTERS / 2]));
+	}
+
+	private static HyperLogLog of(int from, int to) {
+		HyperLogLog sketch = new HyperLogLog();
+		for (int i = from; i < to; i++) {
+			sketch.add("user-" + i);
+		}
+		return sketch;
+	}
+
+	private static void assertWithinError(long expected, long estimate) {
+		double error = Math.abs(estimate - expected) / (double) expected;
+		assertTrue(error <= TOLERANCE, "estimate " + estimate + " of " + expected + " is off by " + error);
+	}
+}